@@ -0,0 +1,156 @@
+package org.example.benchmark;
+
+import org.example.config.RedisConnection;
+import org.example.model.Customer;
+import org.example.repository.InMemoryCustomerRepository;
+import org.example.repository.InMemoryOrderRepository;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the CRUD operations of {@link CustomerService} against a local Redis server
+ * or the in-memory engine.
+ * Every benchmark is reported both as throughput and as sampled latency (p50/p90/p99/p99.9/max), except
+ * {@link #deleteCustomer}, which needs a fresh customer per call and is timed in batches of
+ * {@link #DELETE_BATCH} deletes. Customers created by a benchmark are deleted after each iteration, so the data
+ * set keeps the size given by {@code customers}.
+ *
+ * @author isil
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerServiceBenchmark {
+
+    static final int DELETE_BATCH = 1000;
+
+    @Param({"1000", "10000"})
+    public int customers;
+
+    /**
+     * The storage engine: "redis" or "memory" (see org.example.repository.Repositories).
+     */
+    @Param({"redis", "memory"})
+    public String engine;
+
+    private LocalRedis redis; // Only for the Redis engine
+    private CustomerService customerService;
+    private List<String> customerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        OrderService orderService;
+        if ("memory".equals(engine)) {
+            customerService = new CustomerService(new InMemoryCustomerRepository());
+            orderService = new OrderService(new InMemoryOrderRepository());
+        } else {
+            redis = LocalRedis.start();
+            redis.flushIfOwned();
+            customerService = new CustomerService();
+            orderService = new OrderService();
+        }
+        customerIds = Datasets.seed(customerService, orderService, customers, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (redis != null) {
+            RedisConnection.closeConnection();
+            redis.stop();
+        }
+    }
+
+    /**
+     * The customers a thread created in the current iteration, deleted again after it.
+     */
+    @State(Scope.Thread)
+    public static class Created {
+        final List<String> ids = new ArrayList<>();
+
+        @TearDown(Level.Iteration)
+        public void delete(CustomerServiceBenchmark benchmark) {
+            benchmark.customerService.deleteCustomers(ids);
+            ids.clear();
+        }
+    }
+
+    /**
+     * The customers the delete benchmark removes in one iteration; created before it, outside the measured
+     * section.
+     */
+    @State(Scope.Thread)
+    public static class DeleteCandidates {
+        final List<String> ids = new ArrayList<>(DELETE_BATCH);
+        int next;
+
+        @Setup(Level.Iteration)
+        public void create(CustomerServiceBenchmark benchmark) {
+            ids.clear();
+            next = 0;
+            for (int i = 0; i < DELETE_BATCH; i++) {
+                Customer customer = Datasets.newCustomer();
+                benchmark.customerService.createCustomer(customer);
+                ids.add(customer.getId());
+            }
+        }
+    }
+
+    private String randomId() {
+        return customerIds.get(ThreadLocalRandom.current().nextInt(customerIds.size()));
+    }
+
+    @Benchmark
+    public Customer createCustomer(Created created) {
+        Customer customer = Datasets.newCustomer();
+        customerService.createCustomer(customer);
+        created.ids.add(customer.getId());
+        return customer;
+    }
+
+    @Benchmark
+    public Customer getCustomer() {
+        return customerService.getCustomer(randomId());
+    }
+
+    @Benchmark
+    public List<Customer> getAllCustomers() {
+        return customerService.getAllCustomers();
+    }
+
+    @Benchmark
+    public Customer updateCustomer() {
+        Customer customer = Datasets.newCustomer();
+        customer.setId(randomId());
+        customerService.updateCustomer(customer);
+        return customer;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = DELETE_BATCH)
+    @Measurement(iterations = 20, batchSize = DELETE_BATCH)
+    public void deleteCustomer(DeleteCandidates candidates) {
+        customerService.deleteCustomer(candidates.ids.get(candidates.next++));
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.benchmark;
+
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates the synthetic customers and orders used by the benchmarks and the load generator.
+ *
+ * @author isil
+ */
+public final class Datasets {
+
+    private static final List<String> PRODUCTS = Arrays.asList(
+            "Laptop", "Mouse", "Keyboard", "Monitor", "Headset", "Webcam", "Docking Station", "USB Cable",
+            "Printer", "Paper", "Desk Lamp", "Office Chair", "Notebook", "Pen", "Backpack", "Charger");
+    private static final String[] STATUSES = {"Pending", "Processing", "Shipped", "Delivered", "Canceled"};
+
+    private Datasets() {
+    }
+
+    public static Customer newCustomer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = random.nextInt(1_000_000);
+        return new Customer(null, "Customer " + letters(n), "customer" + n + "@example.com",
+                String.format("%010d", random.nextLong(10_000_000_000L)), n + " Benchmark Street",
+                new ArrayList<>());
+    }
+
+    public static Order newOrder(String orderNumber, String customerId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int itemCount = 1 + random.nextInt(5);
+        List<String> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(PRODUCTS.get(random.nextInt(PRODUCTS.size())));
+        }
+        LocalDate orderDate = LocalDate.now().minusDays(random.nextInt(3 * 365));
+        return new Order(orderNumber, customerId, random.nextInt(1000) + " Delivery Road", items, orderDate,
+                STATUSES[random.nextInt(STATUSES.length)]);
+    }
+
+    /**
+     * Creates {@code customers} customers and {@code orders} orders spread randomly over them.
+     *
+     * @return the IDs of the created customers
+     */
+    public static List<String> seed(CustomerService customerService, OrderService orderService,
+                                    int customers, int orders) {
+        List<String> ids = new ArrayList<>(customers);
+        for (int i = 0; i < customers; i++) {
+            Customer customer = newCustomer();
+            customerService.createCustomer(customer);
+            ids.add(customer.getId());
+        }
+        for (int i = 0; i < orders && !ids.isEmpty(); i++) {
+            String customerId = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+            orderService.saveOrder(newOrder(orderService.generateOrderNumber(), customerId));
+        }
+        return ids;
+    }
+
+    /**
+     * Customer names may only contain letters, so numbers are spelled with letters a-j.
+     */
+    private static String letters(int n) {
+        char[] digits = String.valueOf(n).toCharArray();
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = (char) ('a' + (digits[i] - '0'));
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,480 @@
+package org.example.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.example.config.RedisConnection;
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless load generator and soak test that simulates many clerks working against one Redis server.
+ * <p>
+ * Every clerk is a thread that repeatedly picks an operation according to the configured mix and calls
+ * {@link CustomerService} / {@link OrderService} exactly like the GUI does. Latencies are recorded per
+ * operation in HdrHistograms and printed every reporting interval and at the end of the run.
+ * <p>
+ * Clerks only update and delete customers and orders they own (seeded for them or created by them), so the
+ * last acknowledged write of every owned record is known. A write that threw (e.g. a timeout) may still have
+ * been applied: the clerk leaves such a record alone from then on, and it is accepted with either its last
+ * acknowledged or the attempted state. After the run the data in Redis is checked for
+ * <ul>
+ *     <li>lost updates: an owned customer or order whose stored state differs from the last acknowledged write,</li>
+ *     <li>lost records: an owned customer or order that was acknowledged but no longer exists,</li>
+ *     <li>orphaned orders: orders whose customer does not exist any more.</li>
+ * </ul>
+ * Usage (all options are optional):
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.example.benchmark.LoadGenerator \
+ *      --clerks=32 --rampUp=10 --duration=60 --customers=1000 --orders=5000 --report=10 \
+ *      --mix=create:10,lookup:30,search:5,update:15,orderAdd:15,orderUpdate:15,delete:10
+ * </pre>
+ * Durations are in seconds. The Redis server is chosen as described in {@link LocalRedis}.
+ *
+ * @author isil
+ */
+public class LoadGenerator {
+
+    /**
+     * The operations a simulated clerk performs.
+     */
+    enum Operation {
+        CREATE("create"),
+        LOOKUP("lookup"),
+        SEARCH("search"),
+        UPDATE("update"),
+        ORDER_ADD("orderAdd"),
+        ORDER_UPDATE("orderUpdate"),
+        DELETE("delete");
+
+        final String option;
+
+        Operation(String option) {
+            this.option = option;
+        }
+    }
+
+    private static final String DEFAULT_MIX = "create:10,lookup:30,search:5,update:15,orderAdd:15,orderUpdate:15,delete:10";
+    private static final String[] STATUSES = {"Pending", "Processing", "Shipped", "Delivered", "Canceled"};
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final String DELETED = "<deleted>"; // The attempted state of a delete
+
+    private final int clerks;
+    private final long rampUpNanos;
+    private final long durationNanos;
+    private final int seedCustomers;
+    private final int seedOrders;
+    private final long reportNanos;
+    private final Operation[] weightedOperations;
+
+    private final CustomerService customerService = new CustomerService();
+    private final OrderService orderService = new OrderService();
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final List<Clerk> clerkList = new ArrayList<>();
+    private volatile List<String> sharedCustomerIds = new ArrayList<>();
+
+    LoadGenerator(Map<String, String> options) {
+        this.clerks = Integer.parseInt(options.getOrDefault("clerks", "32"));
+        this.rampUpNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("rampUp", "10")));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        this.seedCustomers = Integer.parseInt(options.getOrDefault("customers", "1000"));
+        this.seedOrders = Integer.parseInt(options.getOrDefault("orders", "5000"));
+        this.reportNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("report", "10")));
+        this.weightedOperations = parseMix(options.getOrDefault("mix", DEFAULT_MIX));
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+            totals.put(operation, new Histogram(HIGHEST_TRACKABLE_NANOS, 3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "true");
+        }
+
+        // Every simulated clerk stands for a workstation with its own connection
+        System.setProperty("cms.redis.pool.size", options.getOrDefault("clerks", "32"));
+        LocalRedis redis = LocalRedis.start();
+        int problems;
+        try {
+            redis.flushIfOwned();
+            problems = new LoadGenerator(options).run();
+        } finally {
+            RedisConnection.closeConnection();
+            redis.stop();
+        }
+        System.exit(problems == 0 ? 0 : 1);
+    }
+
+    /**
+     * Seeds the data, runs the clerks for the configured duration and verifies the final state.
+     *
+     * @return the number of correctness problems found
+     */
+    int run() throws InterruptedException {
+        System.out.printf("Seeding %d customers and %d orders...%n", seedCustomers, seedOrders);
+        List<String> seeded = Datasets.seed(customerService, orderService, seedCustomers, 0);
+        sharedCustomerIds = seeded;
+        for (int i = 0; i < clerks; i++) {
+            clerkList.add(new Clerk(i));
+        }
+        // Hand every clerk its share of the seeded customers and orders
+        for (int i = 0; i < seeded.size(); i++) {
+            Clerk owner = clerkList.get(i % clerks);
+            Customer customer = customerService.getCustomer(seeded.get(i));
+            owner.customers.put(customer.getId(), customer.getAddress());
+        }
+        for (int i = 0; i < seedOrders; i++) {
+            clerkList.get(i % clerks).addOrder();
+        }
+
+        System.out.printf("Starting %d clerks (ramp-up %d s, duration %d s)%n", clerks,
+                TimeUnit.NANOSECONDS.toSeconds(rampUpNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        long start = System.nanoTime();
+        long end = start + rampUpNanos + durationNanos;
+        CountDownLatch finished = new CountDownLatch(clerks);
+        for (Clerk clerk : clerkList) {
+            long startAt = start + rampUpNanos * clerk.index / clerks;
+            Thread thread = new Thread(() -> {
+                try {
+                    clerk.work(startAt, end);
+                } finally {
+                    finished.countDown();
+                }
+            }, "clerk-" + clerk.index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        while (!finished.await(reportNanos, TimeUnit.NANOSECONDS)) {
+            report(String.format("t=%ds", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)),
+                    reportNanos, false);
+        }
+        report("final (all intervals)", System.nanoTime() - start, true);
+        return verify();
+    }
+
+    /**
+     * Prints the latency distribution per operation, either for the last interval or for the whole run.
+     */
+    private void report(String label, long intervalNanos, boolean total) {
+        System.out.println("---- " + label + " ----");
+        System.out.printf("%-12s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        double seconds = intervalNanos / 1e9;
+        for (Operation operation : Operation.values()) {
+            Histogram interval = recorders.get(operation).getIntervalHistogram();
+            Histogram cumulative = totals.get(operation);
+            cumulative.add(interval);
+            Histogram histogram = total ? cumulative : interval;
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-12s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.option, histogram.getTotalCount(), errors.get(operation).get(),
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Compares the final data in Redis with the last acknowledged writes of every clerk.
+     *
+     * @return the number of problems found
+     */
+    private int verify() {
+        System.out.println("---- verification ----");
+        int lostCustomers = 0;
+        int lostCustomerUpdates = 0;
+        int lostOrders = 0;
+        int lostOrderUpdates = 0;
+        int inDoubt = 0;
+        for (Clerk clerk : clerkList) {
+            inDoubt += clerk.customersInDoubt.size() + clerk.ordersInDoubt.size();
+            Map<String, InDoubt> customers = new HashMap<>(clerk.customersInDoubt);
+            clerk.customers.forEach((id, address) -> customers.put(id, new InDoubt(address, address)));
+            for (Map.Entry<String, InDoubt> expected : customers.entrySet()) {
+                Customer customer = customerService.getCustomer(expected.getKey());
+                if (!expected.getValue().accepts(customer == null ? DELETED : customer.getAddress())) {
+                    if (customer == null) {
+                        lostCustomers++;
+                    } else {
+                        lostCustomerUpdates++;
+                    }
+                }
+            }
+            Map<String, InDoubt> orders = new HashMap<>(clerk.ordersInDoubt);
+            clerk.orders.forEach((orderNumber, status) -> orders.put(orderNumber, new InDoubt(status, status)));
+            for (Map.Entry<String, InDoubt> expected : orders.entrySet()) {
+                Order order = orderService.getOrder(expected.getKey());
+                if (!expected.getValue().accepts(order == null ? DELETED : order.getOrderStatus())) {
+                    if (order == null) {
+                        lostOrders++;
+                    } else {
+                        lostOrderUpdates++;
+                    }
+                }
+            }
+        }
+
+        Set<String> customerIds = new HashSet<>();
+        for (Customer customer : customerService.getAllCustomers()) {
+            customerIds.add(customer.getId());
+        }
+        int orphanedOrders = 0;
+        for (Order order : orderService.getAllOrders()) {
+            if (!customerIds.contains(order.getCustomerId())) {
+                orphanedOrders++;
+            }
+        }
+
+        System.out.println("lost customers:        " + lostCustomers);
+        System.out.println("lost customer updates: " + lostCustomerUpdates);
+        System.out.println("lost orders:           " + lostOrders);
+        System.out.println("lost order updates:    " + lostOrderUpdates);
+        System.out.println("orphaned orders:       " + orphanedOrders);
+        System.out.println("failed writes checked: " + inDoubt);
+        return lostCustomers + lostCustomerUpdates + lostOrders + lostOrderUpdates + orphanedOrders;
+    }
+
+    private static Operation[] parseMix(String mix) {
+        List<Operation> weighted = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            Operation operation = null;
+            for (Operation candidate : Operation.values()) {
+                if (candidate.option.equalsIgnoreCase(nameAndWeight[0])) {
+                    operation = candidate;
+                }
+            }
+            if (operation == null) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + nameAndWeight[0]);
+            }
+            int weight = Integer.parseInt(nameAndWeight[1]);
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty.");
+        }
+        return weighted.toArray(new Operation[0]);
+    }
+
+    /**
+     * The possible final states of a record whose last write threw: it may or may not have been applied.
+     */
+    private static final class InDoubt {
+        final String acknowledged;
+        final String attempted;
+
+        InDoubt(String acknowledged, String attempted) {
+            this.acknowledged = acknowledged;
+            this.attempted = attempted;
+        }
+
+        boolean accepts(String stored) {
+            return stored.equals(acknowledged) || stored.equals(attempted);
+        }
+    }
+
+    /**
+     * A simulated clerk. Owned customers map to their last written address, owned orders to their last
+     * written status; only the owning clerk writes them, so these maps are the expected final state. A record
+     * whose write threw is moved to the in-doubt maps and not touched again ({@link #DELETED} stands for a
+     * missing record).
+     */
+    private final class Clerk {
+        final int index;
+        final Map<String, String> customers = new HashMap<>();
+        final Map<String, String> orders = new HashMap<>();
+        final Map<String, InDoubt> customersInDoubt = new HashMap<>();
+        final Map<String, InDoubt> ordersInDoubt = new HashMap<>();
+        private long sequence = 0;
+
+        Clerk(int index) {
+            this.index = index;
+        }
+
+        void work(long startAt, long end) {
+            long wait = startAt - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < end) {
+                Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+                long begin = System.nanoTime();
+                try {
+                    execute(operation, random);
+                    recorders.get(operation).recordValue(Math.min(System.nanoTime() - begin, HIGHEST_TRACKABLE_NANOS));
+                } catch (RuntimeException e) {
+                    if (errors.get(operation).incrementAndGet() == 1) {
+                        System.out.println("First " + operation.option + " error: " + e);
+                    }
+                }
+            }
+        }
+
+        private void execute(Operation operation, ThreadLocalRandom random) {
+            switch (operation) {
+                case CREATE: {
+                    Customer customer = Datasets.newCustomer();
+                    try {
+                        customerService.createCustomer(customer);
+                    } catch (RuntimeException e) {
+                        if (customer.getId() != null) { // The ID was assigned, the write may have been applied
+                            customerFailed(customer.getId(), customer.getAddress());
+                        }
+                        throw e;
+                    }
+                    customers.put(customer.getId(), customer.getAddress());
+                    break;
+                }
+                case LOOKUP: {
+                    List<String> ids = sharedCustomerIds;
+                    customerService.getCustomer(ids.get(random.nextInt(ids.size())));
+                    break;
+                }
+                case SEARCH: {
+                    // The GUI loads all customers and filters them locally
+                    String term = Integer.toString(random.nextInt(10));
+                    customerService.getAllCustomers().removeIf(customer -> !customer.getId().contains(term));
+                    break;
+                }
+                case UPDATE: {
+                    String id = anyKey(customers, random);
+                    if (id != null) {
+                        Customer customer = customerService.getCustomer(id);
+                        String address = "Clerk " + index + " update " + (++sequence);
+                        customer.setAddress(address);
+                        try {
+                            customerService.updateCustomer(customer);
+                        } catch (RuntimeException e) {
+                            customerFailed(id, address);
+                            throw e;
+                        }
+                        customers.put(id, address);
+                    }
+                    break;
+                }
+                case ORDER_ADD:
+                    addOrder();
+                    break;
+                case ORDER_UPDATE: {
+                    String orderNumber = anyKey(orders, random);
+                    if (orderNumber != null) {
+                        Order order = orderService.getOrder(orderNumber);
+                        String status = STATUSES[random.nextInt(STATUSES.length)];
+                        order.setOrderStatus(status);
+                        try {
+                            orderService.updateOrder(order);
+                        } catch (RuntimeException e) {
+                            orderFailed(orderNumber, status);
+                            throw e;
+                        }
+                        orders.put(orderNumber, status);
+                    }
+                    break;
+                }
+                case DELETE: {
+                    // Deleting a customer also deletes its orders, as a clerk would do it in the GUI
+                    String id = anyKey(customers, random);
+                    if (id != null) {
+                        for (Order order : orderService.getOrdersByCustomerId(id)) {
+                            try {
+                                orderService.deleteOrder(order.getOrderNumber());
+                            } catch (RuntimeException e) {
+                                orderFailed(order.getOrderNumber(), DELETED);
+                                throw e;
+                            }
+                            orders.remove(order.getOrderNumber());
+                        }
+                        try {
+                            customerService.deleteCustomer(id);
+                        } catch (RuntimeException e) {
+                            customerFailed(id, DELETED);
+                            throw e;
+                        }
+                        customers.remove(id);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unexpected operation " + operation);
+            }
+        }
+
+        /**
+         * Saves a new order for one of the clerk's own customers.
+         */
+        void addOrder() {
+            String customerId = anyKey(customers, ThreadLocalRandom.current());
+            if (customerId != null) {
+                Order order = Datasets.newOrder(orderService.generateOrderNumber(), customerId);
+                try {
+                    orderService.saveOrder(order);
+                } catch (RuntimeException e) {
+                    orderFailed(order.getOrderNumber(), order.getOrderStatus());
+                    throw e;
+                }
+                orders.put(order.getOrderNumber(), order.getOrderStatus());
+            }
+        }
+
+        /**
+         * Takes a customer whose write threw out of the clerk's hands; it is checked against both outcomes.
+         */
+        private void customerFailed(String id, String attempted) {
+            String acknowledged = customers.remove(id);
+            customersInDoubt.put(id, new InDoubt(acknowledged == null ? DELETED : acknowledged, attempted));
+        }
+
+        private void orderFailed(String orderNumber, String attempted) {
+            String acknowledged = orders.remove(orderNumber);
+            ordersInDoubt.put(orderNumber, new InDoubt(acknowledged == null ? DELETED : acknowledged, attempted));
+        }
+
+        private String anyKey(Map<String, String> map, ThreadLocalRandom random) {
+            if (map.isEmpty()) {
+                return null;
+            }
+            int skip = random.nextInt(Math.min(map.size(), 64)); // Bounded walk instead of copying the keys
+            for (String key : map.keySet()) {
+                if (skip-- == 0) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+}
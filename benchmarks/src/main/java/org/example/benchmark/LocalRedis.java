@@ -0,0 +1,274 @@
+package org.example.benchmark;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Redis server (or cluster) for benchmarks and load tests.
+ * <p>
+ * By default a private {@code redis-server} process without persistence is started on a free port, so a run
+ * never touches real data. The binary is taken from {@code -Dbench.redis.server} or the PATH.
+ * With {@code -Dbench.redis.external=host:port} an already running server is used instead; it is never
+ * flushed, so results then include whatever data is already there. A comma-separated list
+ * ({@code host:port,host:port}) is treated as the seed nodes of an existing cluster.
+ * <p>
+ * With {@code -Dbench.redis.cluster=N} (N &gt;= 3) a local cluster of N master processes is started instead of
+ * a single server, with the hash slots spread evenly over the masters.
+ * <p>
+ * With {@code -Dbench.redis.replicas=N} N replica processes of the single server are started as well and
+ * configured as {@code cms.redis.replicas}, so reads are routed to them.
+ * <p>
+ * Servers started by this class also listen on a Unix domain socket ({@link #getUnixSocket()}); for an external
+ * server, its socket path can be given with {@code -Dbench.redis.socket}.
+ * <p>
+ * {@link #start()} points {@code org.example.config.RedisConnection} at the server through the
+ * {@code cms.redis.host}/{@code cms.redis.port} (or {@code cms.redis.cluster}) system properties, so it must
+ * run before the first service call.
+ *
+ * @author isil
+ */
+public final class LocalRedis {
+
+    private static final int SLOTS = 16384;
+
+    private final List<HostAndPort> nodes;
+    private final List<Process> processes;
+    private final boolean cluster;
+    private final List<HostAndPort> replicas = new ArrayList<>();
+    private String unixSocket;
+
+    private LocalRedis(List<HostAndPort> nodes, List<Process> processes, boolean cluster) {
+        this.nodes = nodes;
+        this.processes = new ArrayList<>(processes);
+        this.cluster = cluster;
+    }
+
+    /**
+     * Starts (or attaches to) the benchmark server and configures the application to use it.
+     */
+    public static LocalRedis start() throws IOException, InterruptedException {
+        LocalRedis redis;
+        String external = System.getProperty("bench.redis.external");
+        int clusterSize = Integer.getInteger("bench.redis.cluster", 0);
+        if (external != null) {
+            List<HostAndPort> nodes = new ArrayList<>();
+            for (String node : external.split(",")) {
+                nodes.add(HostAndPort.from(node.trim()));
+            }
+            redis = new LocalRedis(nodes, Collections.emptyList(), nodes.size() > 1);
+            redis.unixSocket = System.getProperty("bench.redis.socket");
+        } else if (clusterSize > 0) {
+            redis = startCluster(clusterSize);
+        } else {
+            HostAndPort node = new HostAndPort("127.0.0.1", freePort());
+            redis = new LocalRedis(Collections.singletonList(node),
+                    Collections.singletonList(startServer(node.getPort(), false)), false);
+            redis.unixSocket = socketFile(node.getPort()).getAbsolutePath();
+            redis.awaitReady(redis.nodes, redis.processes);
+            redis.startReplicas(Integer.getInteger("bench.redis.replicas", 0));
+        }
+
+        if (!redis.replicas.isEmpty()) {
+            StringJoiner addresses = new StringJoiner(",");
+            redis.replicas.forEach(replica -> addresses.add(replica.toString()));
+            System.setProperty("cms.redis.replicas", addresses.toString());
+        }
+        if (redis.cluster) {
+            StringJoiner seeds = new StringJoiner(",");
+            redis.nodes.forEach(node -> seeds.add(node.toString()));
+            System.setProperty("cms.redis.cluster", seeds.toString());
+        } else {
+            System.setProperty("cms.redis.host", redis.getHost());
+            System.setProperty("cms.redis.port", String.valueOf(redis.getPort()));
+        }
+        return redis;
+    }
+
+    private static LocalRedis startCluster(int masters) throws IOException, InterruptedException {
+        if (masters < 3) {
+            throw new IllegalArgumentException("A Redis Cluster needs at least 3 masters");
+        }
+        List<HostAndPort> nodes = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < masters; i++) {
+            HostAndPort node = new HostAndPort("127.0.0.1", freeClusterPort());
+            nodes.add(node);
+            processes.add(startServer(node.getPort(), true));
+        }
+        LocalRedis redis = new LocalRedis(nodes, processes, true);
+        redis.awaitReady(nodes, processes);
+
+        // Same as redis-cli --cluster create without replicas: introduce the nodes and split the slots
+        // (ADDSLOTS instead of ADDSLOTSRANGE, which needs Redis 7)
+        try {
+            for (int i = 0; i < masters; i++) {
+                HostAndPort node = nodes.get(i);
+                try (Jedis jedis = new Jedis(node)) {
+                    if (i > 0) {
+                        jedis.clusterMeet(nodes.get(0).getHost(), nodes.get(0).getPort());
+                    }
+                    int first = SLOTS * i / masters;
+                    int[] slots = new int[SLOTS * (i + 1) / masters - first];
+                    for (int slot = 0; slot < slots.length; slot++) {
+                        slots[slot] = first + slot;
+                    }
+                    jedis.clusterAddSlots(slots);
+                }
+            }
+        } catch (RuntimeException e) {
+            redis.stop();
+            throw e;
+        }
+        redis.awaitClusterOk();
+        return redis;
+    }
+
+    private void startReplicas(int count) throws IOException, InterruptedException {
+        List<Process> started = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            HostAndPort replica = new HostAndPort("127.0.0.1", freePort());
+            replicas.add(replica);
+            Process process = startServer(replica.getPort(), false, "--replicaof", getHost(), String.valueOf(getPort()));
+            started.add(process);
+            processes.add(process);
+        }
+        awaitReady(replicas, started);
+    }
+
+    private static Process startServer(int port, boolean clusterEnabled, String... extraArgs) throws IOException {
+        List<String> command = new ArrayList<>(List.of(System.getProperty("bench.redis.server", "redis-server"),
+                "--port", String.valueOf(port), "--bind", "127.0.0.1", "--save", "", "--appendonly", "no"));
+        if (clusterEnabled) {
+            File config = new File(System.getProperty("java.io.tmpdir"), "bench-redis-nodes-" + port + ".conf");
+            config.delete(); // Left over from an earlier run on the same port
+            command.addAll(List.of("--cluster-enabled", "yes", "--cluster-config-file", config.getAbsolutePath()));
+        } else {
+            command.addAll(List.of("--unixsocket", socketFile(port).getAbsolutePath(), "--unixsocketperm", "700"));
+        }
+        command.addAll(List.of(extraArgs));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "bench-redis-" + port + ".log"))
+                .start();
+    }
+
+    private static File socketFile(int port) {
+        return new File(System.getProperty("java.io.tmpdir"), "bench-redis-" + port + ".sock");
+    }
+
+    /**
+     * Removes all data, but only from servers this class started itself. Replicas follow their primary.
+     */
+    public void flushIfOwned() {
+        if (!processes.isEmpty()) {
+            for (HostAndPort node : nodes) {
+                try (Jedis jedis = new Jedis(node)) {
+                    jedis.flushAll();
+                }
+            }
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return the host of the (first) node
+     */
+    public String getHost() {
+        return nodes.get(0).getHost();
+    }
+
+    /**
+     * @return the port of the (first) node
+     */
+    public int getPort() {
+        return nodes.get(0).getPort();
+    }
+
+    /**
+     * @return the path of the single server's Unix domain socket, for {@code cms.redis.socket}, or null if it is
+     * not known
+     */
+    public String getUnixSocket() {
+        return unixSocket;
+    }
+
+    private void awaitReady(List<HostAndPort> addresses, List<Process> started)
+            throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < addresses.size(); i++) {
+            Process process = started.get(i);
+            HostAndPort node = addresses.get(i);
+            while (true) {
+                if (!process.isAlive()) {
+                    stop();
+                    throw new IOException("redis-server exited with code " + process.exitValue());
+                }
+                try (Jedis jedis = new Jedis(node)) {
+                    jedis.ping();
+                    break;
+                } catch (Exception e) {
+                    if (System.nanoTime() > deadline) {
+                        stop();
+                        throw new IOException("redis-server did not start on port " + node.getPort());
+                    }
+                    Thread.sleep(50); // Not listening yet
+                }
+            }
+        }
+    }
+
+    private void awaitClusterOk() throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (HostAndPort node : nodes) {
+            try (Jedis jedis = new Jedis(node)) {
+                while (!jedis.clusterInfo().contains("cluster_state:ok")) {
+                    if (System.nanoTime() > deadline) {
+                        stop();
+                        throw new IOException("Cluster did not reach state ok");
+                    }
+                    Thread.sleep(100); // Nodes are still gossiping
+                }
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * A free port whose cluster bus port (port + 10000) is valid and free as well.
+     */
+    private static int freeClusterPort() throws IOException {
+        while (true) {
+            int port = freePort();
+            if (port + 10000 > 65535) {
+                continue;
+            }
+            try (ServerSocket bus = new ServerSocket(port + 10000)) {
+                return port;
+            } catch (IOException e) {
+                // Bus port taken, try another one
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.benchmark;
+
+import org.example.config.RedisConnection;
+import org.example.model.Order;
+import org.example.repository.InMemoryCustomerRepository;
+import org.example.repository.InMemoryOrderRepository;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link OrderService#saveOrder} and {@link OrderService#getOrdersByCustomerId} against a local
+ * Redis server (or the in-memory engine) seeded with {@code orders} orders spread over one customer per ten
+ * orders. The orders saved by a benchmark are deleted after each iteration, so the data set keeps its size.
+ *
+ * @author isil
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderServiceBenchmark {
+
+    @Param({"1000", "10000"})
+    public int orders;
+
+    /**
+     * The storage engine: "redis" or "memory" (see org.example.repository.Repositories).
+     */
+    @Param({"redis", "memory"})
+    public String engine;
+
+    private LocalRedis redis; // Only for the Redis engine
+    private OrderService orderService;
+    private List<String> customerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CustomerService customerService;
+        if ("memory".equals(engine)) {
+            customerService = new CustomerService(new InMemoryCustomerRepository());
+            orderService = new OrderService(new InMemoryOrderRepository());
+        } else {
+            redis = LocalRedis.start();
+            redis.flushIfOwned();
+            customerService = new CustomerService();
+            orderService = new OrderService();
+        }
+        customerIds = Datasets.seed(customerService, orderService, Math.max(1, orders / 10), orders);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (redis != null) {
+            RedisConnection.closeConnection();
+            redis.stop();
+        }
+    }
+
+    /**
+     * The orders a thread saved in the current iteration, deleted again after it.
+     */
+    @State(Scope.Thread)
+    public static class Saved {
+        final List<String> orderNumbers = new ArrayList<>();
+
+        @TearDown(Level.Iteration)
+        public void delete(OrderServiceBenchmark benchmark) {
+            benchmark.orderService.deleteOrders(orderNumbers);
+            orderNumbers.clear();
+        }
+    }
+
+    private String randomCustomerId() {
+        return customerIds.get(ThreadLocalRandom.current().nextInt(customerIds.size()));
+    }
+
+    @Benchmark
+    public Order saveOrder(Saved saved) {
+        Order order = Datasets.newOrder(orderService.generateOrderNumber(), randomCustomerId());
+        orderService.saveOrder(order);
+        saved.orderNumbers.add(order.getOrderNumber());
+        return order;
+    }
+
+    @Benchmark
+    public List<Order> getOrdersByCustomerId() {
+        return orderService.getOrdersByCustomerId(randomCustomerId());
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.benchmark;
+
+import org.example.config.RedisConnection;
+import org.example.model.Customer;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the TCP transport with the Unix domain socket transport ({@code cms.redis.socket}) to a Redis server on
+ * the same host, on calls of {@link CustomerService} that cost one round trip per key: a bare PING, a single
+ * customer read, a loop reading {@link #LOOP_SIZE} customers one by one (as a table refresh or an API client
+ * does) and an update. A single caller never waits for the batch window of {@code getCustomer}, so each read is
+ * a plain round trip and the difference is the transport's.
+ * <p>
+ * Needs a server started by {@link LocalRedis}, or {@code -Dbench.redis.socket} with an external one.
+ *
+ * @author isil
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+    private static final int LOOP_SIZE = 20;
+
+    /**
+     * "tcp" (host and port) or "unix" (the server's Unix domain socket).
+     */
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    private LocalRedis redis;
+    private CustomerService customerService;
+    private List<String> customerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        if ("unix".equals(transport)) {
+            if (redis.getUnixSocket() == null) {
+                redis.stop();
+                throw new IllegalStateException("Set -Dbench.redis.socket to the external server's socket path");
+            }
+            System.setProperty("cms.redis.socket", redis.getUnixSocket());
+        }
+        redis.flushIfOwned();
+        customerService = new CustomerService();
+        customerIds = Datasets.seed(customerService, new OrderService(), 1000, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        RedisConnection.closeConnection();
+        redis.stop();
+    }
+
+    private String randomId() {
+        return customerIds.get(ThreadLocalRandom.current().nextInt(customerIds.size()));
+    }
+
+    @Benchmark
+    public String ping() {
+        return RedisConnection.getConnection().ping();
+    }
+
+    @Benchmark
+    public Customer getCustomer() {
+        return customerService.getCustomer(randomId());
+    }
+
+    @Benchmark
+    public void getCustomersOneByOne(Blackhole blackhole) {
+        for (int i = 0; i < LOOP_SIZE; i++) {
+            blackhole.consume(customerService.getCustomer(randomId()));
+        }
+    }
+
+    @Benchmark
+    public Customer updateCustomer() {
+        Customer customer = Datasets.newCustomer();
+        customer.setId(randomId());
+        customerService.updateCustomer(customer);
+        return customer;
+    }
+}
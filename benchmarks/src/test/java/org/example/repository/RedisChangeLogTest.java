@@ -0,0 +1,100 @@
+package org.example.repository;
+
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The version stamp and the compaction of the change log ({@link ChangeLog}), through
+ * {@code changesSince}.
+ *
+ * @author isil
+ */
+class RedisChangeLogTest extends RedisEngineTest {
+
+    static {
+        System.setProperty("cms.changelog.retain", "10"); // Read when ChangeLog is loaded
+    }
+
+    private static Customer customer(String id, String name) {
+        return new Customer(id, name, name.toLowerCase() + "@example.com", "555", "Ankara", new ArrayList<>());
+    }
+
+    @Test
+    void deltasContainChangedAndDeletedCustomers() {
+        RedisCustomerRepository customers = new RedisCustomerRepository();
+        customers.save(customer("1", "Ayşe"));
+        customers.save(customer("2", "Mehmet"));
+        customers.save(customer("3", "Cem"));
+        long version = customers.changesSince(0).getVersion();
+        assertEquals(3, version);
+
+        customers.update(customer("1", "Ayşe Yılmaz"));
+        customers.delete("2");
+        ChangeSet<Customer> delta = customers.changesSince(version);
+
+        assertFalse(delta.isFullReload());
+        assertEquals(1, delta.getChanged().size());
+        assertEquals("Ayşe Yılmaz", delta.getChanged().get(0).getName());
+        assertEquals(Collections.singletonList("2"), delta.getDeletedIds());
+        assertEquals(5, delta.getVersion());
+        assertTrue(customers.changesSince(5).getChanged().isEmpty());
+    }
+
+    @Test
+    void deltasContainChangedAndDeletedOrders() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "Pending"));
+        orders.save(order("11", "Pending"));
+        long version = orders.changesSince(0).getVersion();
+
+        orders.update(order("10", "Shipped"));
+        orders.deleteAll(Collections.singletonList("11"));
+        ChangeSet<Order> delta = orders.changesSince(version);
+
+        assertFalse(delta.isFullReload());
+        assertEquals("Shipped", delta.getChanged().get(0).getOrderStatus());
+        assertEquals(Arrays.asList("Kalem", "Defter"), delta.getChanged().get(0).getItems());
+        assertEquals(Collections.singletonList("11"), delta.getDeletedIds());
+    }
+
+    @Test
+    void clientsBehindTheTrimmedPartReloadEverything() {
+        RedisCustomerRepository customers = new RedisCustomerRepository();
+        // 12 entries exceed the retained 10 plus a tenth, so the log is cut back to 10
+        for (int id = 1; id <= 12; id++) {
+            customers.save(customer(String.valueOf(id), "Müşteri" + id));
+        }
+
+        assertTrue(customers.changesSince(1).isFullReload());
+        ChangeSet<Customer> delta = customers.changesSince(2);
+        assertFalse(delta.isFullReload());
+        assertEquals(10, delta.getChanged().size());
+        assertEquals(12, delta.getVersion());
+    }
+
+    @Test
+    void clientsAheadOfTheServerReloadEverything() {
+        RedisCustomerRepository customers = new RedisCustomerRepository();
+        customers.save(customer("1", "Ayşe"));
+
+        ChangeSet<Customer> changes = customers.changesSince(7); // Seen before the data was flushed
+        assertTrue(changes.isFullReload());
+        assertEquals(1, changes.getVersion());
+    }
+
+    private static Order order(String orderNumber, String status) {
+        List<String> items = new ArrayList<>(Arrays.asList("Kalem", "Defter"));
+        return new Order(orderNumber, "1", "Ankara", items, LocalDate.of(2024, 5, 1), status);
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.repository;
+
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Delta synchronisation and change events in cluster mode, where the version is stamped by a second script in
+ * the change log's slot.
+ *
+ * @author isil
+ */
+class RedisClusterTest extends RedisEngineTest {
+
+    @Override
+    int clusterMasters() {
+        return 3;
+    }
+
+    private static Customer customer(String id, String name) {
+        return new Customer(id, name, name.toLowerCase() + "@example.com", "555", "Ankara", new ArrayList<>());
+    }
+
+    @Test
+    void customerChangesAreDeliveredAsDeltas() {
+        RedisCustomerRepository customers = new RedisCustomerRepository();
+        customers.save(customer("1", "Ayşe"));
+        customers.save(customer("2", "Mehmet"));
+        ChangeSet<Customer> all = customers.changesSince(0);
+        assertTrue(all.isFullReload());
+        assertEquals(2, all.getChanged().size());
+        assertEquals(2, all.getVersion());
+
+        customers.update(customer("1", "Ayşe Yılmaz"));
+        customers.deleteAll(Collections.singletonList("2"));
+        ChangeSet<Customer> delta = customers.changesSince(all.getVersion());
+
+        assertFalse(delta.isFullReload());
+        assertEquals("Ayşe Yılmaz", delta.getChanged().get(0).getName());
+        assertEquals(Collections.singletonList("2"), delta.getDeletedIds());
+        assertEquals(4, delta.getVersion());
+    }
+
+    @Test
+    void orderWritesPublishEvents() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        ChangeStream events = orders.changeStream();
+        events.createGroup("test", true);
+
+        orders.save(new Order("10", "1", "Ankara", new ArrayList<>(Arrays.asList("Kalem")), LocalDate.of(2024, 5, 1),
+                "Pending"));
+        orders.delete("10");
+
+        List<ChangeEvent> read = events.read("test", "c1", 10, 0);
+        assertEquals(2, read.size());
+        assertEquals(ChangeEvent.Operation.UPSERT, read.get(0).getOperation());
+        assertEquals("Pending", read.get(0).getFields().get("orderStatus"));
+        assertEquals(ChangeEvent.Operation.DELETE, read.get(1).getOperation());
+        assertEquals("10", read.get(1).getRecordId());
+        assertEquals(2, read.get(1).getVersion());
+        assertFalse(orders.changesSince(1).isFullReload());
+    }
+
+    @Test
+    void ordersInTheOldFormatAreIndexedWithoutAVersion() {
+        writeLegacyOrder("10", "1", "Delivered", LocalDate.of(2023, 1, 5), "Kalem", "Defter");
+        RedisOrderRepository orders = new RedisOrderRepository();
+
+        List<Order> page = orders.findPageByCustomerId("1", null, 10).getOrders();
+        assertEquals(1, page.size());
+        assertEquals(Arrays.asList("Kalem", "Defter"), page.get(0).getItems());
+        assertEquals(0, orders.changesSince(0).getVersion());
+    }
+}
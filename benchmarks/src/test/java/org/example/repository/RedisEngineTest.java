@@ -0,0 +1,85 @@
+package org.example.repository;
+
+import org.example.benchmark.LocalRedis;
+import org.example.config.RedisConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Base of the tests that run the Redis repositories, and with them the Lua scripts, against a private
+ * redis-server started by {@link LocalRedis} (from the PATH or {@code -Dbench.redis.server}). The server lives as
+ * long as the test class and is emptied before every test. Without a redis-server binary the tests are skipped.
+ *
+ * @author isil
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+abstract class RedisEngineTest {
+
+    private LocalRedis redis;
+
+    /**
+     * @return the number of masters of a local cluster to run against, 0 for a single server
+     */
+    int clusterMasters() {
+        return 0;
+    }
+
+    @BeforeAll
+    void startRedis() throws IOException, InterruptedException {
+        assumeTrue(serverInstalled(), "redis-server not found, see -Dbench.redis.server");
+        if (clusterMasters() > 0) {
+            System.setProperty("bench.redis.cluster", String.valueOf(clusterMasters()));
+        }
+        redis = LocalRedis.start();
+    }
+
+    @AfterAll
+    void stopRedis() throws InterruptedException {
+        RedisConnection.closeConnection();
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        redis.flushIfOwned();
+    }
+
+    /**
+     * Writes an order hash the way the application did before the change log, statistics and catalog existed:
+     * item names in {@code items}, no version, in no index.
+     */
+    static void writeLegacyOrder(String orderNumber, String customerId, String status, LocalDate orderDate,
+                                 String... items) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("customerId", customerId);
+        fields.put("address", "Kızılay, Ankara");
+        fields.put("orderDate", orderDate.toString());
+        fields.put("orderStatus", status);
+        fields.put("items", String.join(", ", items));
+        fields.put("itemCount", String.valueOf(items.length));
+        RedisConnection.getWriteConnection().hset(KeySpace.current().orderKey(customerId, orderNumber), fields);
+    }
+
+    private static boolean serverInstalled() throws InterruptedException {
+        try {
+            Process process = new ProcessBuilder(System.getProperty("bench.redis.server", "redis-server"), "--version")
+                    .redirectErrorStream(true)
+                    .start();
+            process.getInputStream().readAllBytes();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false; // Not installed
+        }
+    }
+}
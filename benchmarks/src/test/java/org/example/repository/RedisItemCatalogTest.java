@@ -0,0 +1,54 @@
+package org.example.repository;
+
+import org.example.config.RedisConnection;
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The product catalog shared by all processes ({@link RedisItemCatalog}): IDs assigned by the ASSIGN script and
+ * the per-process caches.
+ *
+ * @author isil
+ */
+class RedisItemCatalogTest extends RedisEngineTest {
+
+    private static RedisItemCatalog catalog() { // Her biri ayrı bir sürecin önbelleği gibi
+        return new RedisItemCatalog(KeySpace.current(), RedisConnection::getReadConnection,
+                RedisConnection::getWriteConnection);
+    }
+
+    @Test
+    void processesAgreeOnTheIds() {
+        RedisItemCatalog first = catalog();
+        RedisItemCatalog second = catalog();
+        UnifiedJedis jedis = RedisConnection.getWriteConnection();
+
+        assertEquals("1,2,1", first.encode(jedis, Arrays.asList("Kalem", "Defter", "Kalem")));
+        assertEquals("2,3", second.encode(jedis, Arrays.asList("Defter", "Şişe")));
+
+        // The first process has not seen "Şişe" yet and loads the catalog
+        assertEquals(Arrays.asList("Şişe", "Kalem"), first.decode("3,1"));
+        assertEquals(Collections.emptyList(), first.decode(""));
+        assertEquals("#99", first.name(99));
+    }
+
+    @Test
+    void ordersStoreTheIds() {
+        new RedisOrderRepository().save(new Order("10", "1", "Kızılay, Ankara",
+                new ArrayList<>(Arrays.asList("Kalem, kırmızı", "Defter")), LocalDate.of(2024, 5, 1), "Pending"));
+
+        assertEquals("1,2", RedisConnection.getWriteConnection()
+                .hget(KeySpace.current().orderKey("1", "10"), "itemIds"));
+        // Another process decodes them, names with commas included
+        assertEquals(Arrays.asList("Kalem, kırmızı", "Defter"),
+                new RedisOrderRepository().findByNumber("10").getItems());
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The best-selling items kept by the order write scripts ({@link RedisItemRanking}).
+ *
+ * @author isil
+ */
+class RedisItemRankingTest extends RedisEngineTest {
+
+    private static Order order(String orderNumber, LocalDate date, String... items) {
+        return new Order(orderNumber, "1", "Kızılay, Ankara", new ArrayList<>(Arrays.asList(items)), date,
+                "Pending");
+    }
+
+    private static Map<String, Long> ranking(Object... nameAndCount) {
+        Map<String, Long> ranking = new LinkedHashMap<>();
+        for (int i = 0; i < nameAndCount.length; i += 2) {
+            ranking.put((String) nameAndCount[i], ((Integer) nameAndCount[i + 1]).longValue());
+        }
+        return ranking;
+    }
+
+    @Test
+    void writesMoveTheCounts() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", LocalDate.of(2024, 5, 1), "Kalem", "Defter", "Kalem"));
+        orders.save(order("11", LocalDate.of(2024, 6, 1), "Defter"));
+        orders.save(order("12", LocalDate.of(2024, 6, 2), "Silgi"));
+        assertEquals(ranking("Kalem", 2, "Defter", 2, "Silgi", 1), orders.findTopItems(10));
+
+        // The order moves to June and loses a pen, the eraser order is deleted
+        orders.update(order("10", LocalDate.of(2024, 6, 3), "Kalem", "Defter"));
+        orders.deleteAll(Collections.singletonList("12"));
+
+        assertEquals(ranking("Defter", 2, "Kalem", 1), orders.findTopItems(10));
+        assertEquals(ranking("Defter", 2), orders.findTopItems(1));
+        assertEquals(Collections.emptyMap(), orders.findTopItems(YearMonth.of(2024, 5), 10));
+        assertEquals(ranking("Defter", 2, "Kalem", 1), orders.findTopItems(YearMonth.of(2024, 6), 10));
+    }
+
+    @Test
+    void ordersWrittenBeforeTheRankingAreCounted() {
+        writeLegacyOrder("10", "1", "Delivered", LocalDate.of(2023, 1, 5), "Kalem", "Defter");
+        writeLegacyOrder("11", "2", "Pending", LocalDate.of(2023, 2, 5), "Kalem");
+        RedisOrderRepository orders = new RedisOrderRepository();
+
+        assertEquals(ranking("Kalem", 2, "Defter", 1), orders.findTopItems(10));
+        assertEquals(ranking("Kalem", 1), orders.findTopItems(YearMonth.of(2023, 2), 10));
+
+        orders.delete("11"); // Now counted, so subtracted again
+        assertEquals(ranking("Defter", 1, "Kalem", 1), orders.findTopItems(10));
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The archival job moving old orders into compressed segments ({@link RedisOrderArchive}).
+ *
+ * @author isil
+ */
+class RedisOrderArchiveTest extends RedisEngineTest {
+
+    private static final List<String> DONE = Arrays.asList("Delivered", "Canceled");
+
+    private static Order order(String orderNumber, String status, LocalDate date) {
+        return new Order(orderNumber, "1", "Kızılay, Ankara", new ArrayList<>(Arrays.asList("Kalem")), date, status);
+    }
+
+    @Test
+    void oldFinishedOrdersAreMovedAndStayInTheHistory() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "Delivered", LocalDate.of(2023, 1, 5)));
+        orders.save(order("11", "Pending", LocalDate.of(2023, 1, 6)));
+        orders.save(order("12", "Canceled", LocalDate.of(2023, 2, 1)));
+        orders.save(order("13", "Delivered", LocalDate.of(2024, 6, 1)));
+
+        assertEquals(2, orders.archive(LocalDate.of(2024, 1, 1), DONE));
+        assertEquals(0, orders.archive(LocalDate.of(2024, 1, 1), DONE));
+
+        assertNull(orders.findByNumber("10"));
+        assertEquals(2, orders.findAll().size());
+        List<Order> history = orders.findPageByCustomerId("1", null, 10).getOrders();
+        assertEquals(4, history.size());
+        assertEquals("12", history.get(1).getOrderNumber());
+        assertTrue(history.get(1).isArchived());
+        assertFalse(history.get(2).isArchived());
+        assertEquals(4, orders.findStatsByCustomerId("1").getOrderCount()); // Still counted
+
+        // Read-only: writes see archived orders as deleted
+        assertFalse(orders.update(order("10", "Pending", LocalDate.of(2023, 1, 5))));
+        assertFalse(orders.delete("12"));
+    }
+
+    @Test
+    void ordersWrittenBeforeTheIndexAreArchived() {
+        writeLegacyOrder("10", "1", "Delivered", LocalDate.of(2022, 3, 5), "Kalem");
+        writeLegacyOrder("11", "2", "Canceled", LocalDate.of(2022, 4, 5), "Silgi");
+        RedisOrderRepository orders = new RedisOrderRepository();
+
+        assertEquals(2, orders.archive(LocalDate.of(2024, 1, 1), DONE));
+        assertTrue(orders.findAll().isEmpty());
+        Order archived = orders.findPageByCustomerId("2", null, 10).getOrders().get(0);
+        assertTrue(archived.isArchived());
+        assertEquals(Arrays.asList("Silgi"), archived.getItems());
+    }
+}
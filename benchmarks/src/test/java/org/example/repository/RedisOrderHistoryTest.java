@@ -0,0 +1,87 @@
+package org.example.repository;
+
+import org.example.config.RedisConnection;
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A customer's paginated and sorted order history, read from the date and sort indexes, including orders written
+ * before the indexes existed.
+ *
+ * @author isil
+ */
+class RedisOrderHistoryTest extends RedisEngineTest {
+
+    private static Order order(String orderNumber, String customerId, String status, LocalDate date,
+                               String... items) {
+        return new Order(orderNumber, customerId, "Kızılay, Ankara", new ArrayList<>(Arrays.asList(items)), date,
+                status);
+    }
+
+    @Test
+    void pagesFollowTheDates() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        for (int day = 1; day <= 5; day++) {
+            orders.save(order(String.valueOf(10 + day), "1", "Pending", LocalDate.of(2024, 5, day), "Kalem"));
+        }
+        orders.save(order("20", "2", "Pending", LocalDate.of(2024, 5, 3), "Silgi"));
+
+        OrderPage first = orders.findPageByCustomerId("1", null, 3);
+        assertEquals(Arrays.asList("15", "14", "13"), numbers(first.getOrders()));
+        OrderPage second = orders.findPageByCustomerId("1", first.getNextCursor(), 3);
+        assertEquals(Arrays.asList("12", "11"), numbers(second.getOrders()));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void ordersWrittenBeforeTheIndexesAreIncluded() {
+        writeLegacyOrder("10", "1", "Delivered", LocalDate.of(2023, 1, 5), "Kalem", "Defter");
+        writeLegacyOrder("11", "1", "Pending", LocalDate.of(2023, 2, 5), "Silgi");
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("12", "1", "Pending", LocalDate.of(2024, 5, 1), "Kalem"));
+
+        assertEquals(Arrays.asList("12", "11", "10"), numbers(orders.findPageByCustomerId("1", null, 10).getOrders()));
+        SortedPage<Order> byItems = orders.findSortedPageByCustomerId("1", OrderSort.ITEM_COUNT, false, 0, 10);
+        assertEquals(3, byItems.getTotal());
+        assertEquals("10", byItems.getItems().get(0).getOrderNumber());
+
+        // Converted to the current format, without a version or change event
+        Map<String, String> stored = RedisConnection.getWriteConnection().hgetAll(KeySpace.current().orderKey("1", "10"));
+        assertFalse(stored.containsKey("items"));
+        assertFalse(stored.containsKey("version"));
+        assertEquals(Arrays.asList("Kalem", "Defter"), orders.findByNumber("10").getItems());
+        assertEquals(1, orders.changesSince(0).getVersion());
+    }
+
+    @Test
+    void ordersWrittenAgainAreNotConvertedTwice() {
+        writeLegacyOrder("10", "1", "Pending", LocalDate.of(2023, 1, 5), "Kalem");
+        RedisOrderRepository orders = new RedisOrderRepository();
+        assertTrue(orders.update(order("10", "1", "Shipped", LocalDate.of(2023, 1, 5), "Kalem", "Silgi")));
+
+        new RedisOrderRepository().findPageByCustomerId("1", null, 10);
+        Order order = orders.findByNumber("10");
+        assertEquals("Shipped", order.getOrderStatus());
+        assertEquals(Arrays.asList("Kalem", "Silgi"), order.getItems());
+        assertEquals(1, orders.findPageByCustomerId("1", null, 10).getOrders().size());
+    }
+
+    private static List<String> numbers(List<Order> orders) {
+        List<String> numbers = new ArrayList<>();
+        for (Order order : orders) {
+            numbers.add(order.getOrderNumber());
+        }
+        return numbers;
+    }
+}
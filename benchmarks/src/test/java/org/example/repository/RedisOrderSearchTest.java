@@ -0,0 +1,76 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The order search index kept by the order write scripts and the queries run on it ({@link RedisOrderSearch}).
+ *
+ * @author isil
+ */
+class RedisOrderSearchTest extends RedisEngineTest {
+
+    private static Order order(String orderNumber, String customerId, String address, String... items) {
+        return new Order(orderNumber, customerId, address, new ArrayList<>(Arrays.asList(items)),
+                LocalDate.of(2024, 5, 1), "Pending");
+    }
+
+    @Test
+    void itemMatchesRankAboveAddressMatches() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "1", "Kalem Sokak, Ankara", "Defter"));
+        orders.save(order("11", "1", "Kızılay, Ankara", "Kalem", "Kırmızı Kalem", "Silgi"));
+        orders.save(order("12", "2", "Bornova, İzmir", "Kurşun Kalem"));
+
+        assertEquals(Arrays.asList("11", "12", "10"), numbers(orders.search("kalem", null, 10)));
+        assertEquals(Arrays.asList("11", "10"), numbers(orders.search("KALEM", "1", 10)));
+        assertEquals(Collections.singletonList("11"), numbers(orders.search("kalem ankara", null, 1)));
+        assertEquals(Collections.singletonList("12"), numbers(orders.search("kursun izmir", null, 10)));
+        assertTrue(orders.search("kalem bornova silgi", null, 10).isEmpty());
+    }
+
+    @Test
+    void writesUpdateTheIndex() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "1", "Kızılay, Ankara", "Kalem"));
+        orders.save(order("11", "1", "Kızılay, Ankara", "Kalem"));
+
+        orders.update(order("10", "1", "Kızılay, Ankara", "Silgi"));
+        orders.delete("11");
+
+        assertTrue(orders.search("kalem", null, 10).isEmpty());
+        assertEquals(Collections.singletonList("10"), numbers(orders.search("silgi", null, 10)));
+    }
+
+    @Test
+    void ordersWrittenBeforeTheIndexAreFound() {
+        writeLegacyOrder("10", "1", "Delivered", LocalDate.of(2023, 1, 5), "Kalem", "Defter");
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("11", "1", "Kızılay, Ankara", "Kalem"));
+
+        assertEquals(Arrays.asList("10", "11"), sorted(numbers(orders.search("kalem", "1", 10))));
+        assertEquals(Collections.singletonList("10"), numbers(orders.search("defter", null, 10)));
+    }
+
+    private static List<String> numbers(List<Order> orders) {
+        List<String> numbers = new ArrayList<>();
+        for (Order order : orders) {
+            numbers.add(order.getOrderNumber());
+        }
+        return numbers;
+    }
+
+    private static List<String> sorted(List<String> numbers) {
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
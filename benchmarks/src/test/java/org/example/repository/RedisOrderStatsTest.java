@@ -0,0 +1,89 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.example.model.OrderStats;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The per-customer statistics kept by the order write scripts ({@link RedisOrderStats}).
+ *
+ * @author isil
+ */
+class RedisOrderStatsTest extends RedisEngineTest {
+
+    private static Order order(String orderNumber, String customerId, String status, LocalDate date,
+                               String... items) {
+        return new Order(orderNumber, customerId, "Kızılay, Ankara", new ArrayList<>(Arrays.asList(items)), date,
+                status);
+    }
+
+    @Test
+    void writesKeepTheCountsAndDates() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "1", "Pending", LocalDate.of(2024, 5, 1), "Kalem", "Defter"));
+        orders.save(order("11", "1", "Pending", LocalDate.of(2024, 3, 1), "Silgi"));
+        orders.save(order("12", "1", "Shipped", LocalDate.of(2024, 7, 1), "Kalem"));
+        orders.update(order("11", "1", "Delivered", LocalDate.of(2024, 3, 1), "Silgi", "Cetvel"));
+        orders.delete("12");
+
+        OrderStats stats = orders.findStatsByCustomerId("1");
+        assertEquals(2, stats.getOrderCount());
+        assertEquals(4, stats.getItemTotal());
+        assertEquals(LocalDate.of(2024, 3, 1), stats.getFirstOrderDate());
+        assertEquals(LocalDate.of(2024, 5, 1), stats.getLastOrderDate());
+        assertEquals(Long.valueOf(1), stats.getCountsByStatus().get("Pending"));
+        assertEquals(Long.valueOf(1), stats.getCountsByStatus().get("Delivered"));
+        assertNull(stats.getCountsByStatus().get("Shipped"));
+    }
+
+    @Test
+    void movingAnOrderMovesItsCounts() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "1", "Pending", LocalDate.of(2024, 5, 1), "Kalem"));
+        orders.save(order("11", "1", "Pending", LocalDate.of(2024, 6, 1), "Silgi"));
+        orders.update(order("11", "2", "Pending", LocalDate.of(2024, 6, 1), "Silgi"));
+
+        assertEquals(LocalDate.of(2024, 5, 1), orders.findStatsByCustomerId("1").getLastOrderDate());
+        assertEquals(1, orders.findStatsByCustomerIds(Arrays.asList("1", "2")).get("2").getOrderCount());
+    }
+
+    @Test
+    void ordersWrittenBeforeTheStatisticsAreCounted() {
+        writeLegacyOrder("10", "1", "Delivered", LocalDate.of(2023, 1, 5), "Kalem", "Defter");
+        writeLegacyOrder("11", "1", "Pending", LocalDate.of(2023, 2, 5), "Silgi");
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("12", "1", "Pending", LocalDate.of(2024, 5, 1), "Kalem"));
+
+        OrderStats stats = orders.findStatsByCustomerIds(Collections.singletonList("1")).get("1");
+        assertEquals(3, stats.getOrderCount());
+        assertEquals(4, stats.getItemTotal());
+        assertEquals(LocalDate.of(2023, 1, 5), stats.getFirstOrderDate());
+        assertEquals(Long.valueOf(2), stats.getCountsByStatus().get("Pending"));
+
+        orders.delete("10"); // Now counted, so subtracted again
+        assertEquals(2, orders.findStatsByCustomerId("1").getOrderCount());
+    }
+
+    @Test
+    void uncountedOrdersAreNotSubtracted() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        writeLegacyOrder("10", "1", "Pending", LocalDate.of(2024, 5, 1), "Kalem", "Defter");
+        writeLegacyOrder("11", "1", "Pending", LocalDate.of(2024, 6, 1), "Silgi");
+
+        orders.update(order("10", "1", "Shipped", LocalDate.of(2024, 5, 1), "Kalem", "Defter"));
+        orders.deleteAll(Collections.singletonList("11"));
+
+        OrderStats stats = orders.findStatsByCustomerId("1");
+        assertEquals(1, stats.getOrderCount());
+        assertEquals(2, stats.getItemTotal());
+        assertEquals(Collections.singletonMap("Shipped", 1L), stats.getCountsByStatus());
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.example.model.OrderStatusRule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bulk status transitions evaluated over the customers' date indexes ({@link RedisOrderTransitions}).
+ *
+ * @author isil
+ */
+class RedisOrderTransitionsTest extends RedisEngineTest {
+
+    private static Order order(String orderNumber, String customerId, String status, LocalDate date) {
+        return new Order(orderNumber, customerId, "Kızılay, Ankara", new ArrayList<>(Arrays.asList("Kalem")), date,
+                status);
+    }
+
+    @Test
+    void theRuleSelectsByStatusDateAndCustomer() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "1", "Pending", LocalDate.of(2024, 5, 1)));
+        orders.save(order("11", "1", "Pending", LocalDate.of(2024, 5, 31)));
+        orders.save(order("12", "1", "Pending", LocalDate.of(2024, 6, 1)));
+        orders.save(order("13", "1", "Shipped", LocalDate.of(2024, 5, 10)));
+        orders.save(order("14", "2", "Pending", LocalDate.of(2024, 5, 10)));
+        OrderStatusRule may = new OrderStatusRule("Pending", "Shipped", LocalDate.of(2024, 5, 1),
+                LocalDate.of(2024, 5, 31), null);
+
+        assertEquals(3, orders.applyStatusRule(may, true));
+        assertEquals("Pending", orders.findByNumber("10").getOrderStatus());
+        assertEquals(1, orders.applyStatusRule(new OrderStatusRule("Pending", "Shipped", LocalDate.of(2024, 5, 1),
+                LocalDate.of(2024, 5, 31), "2"), false));
+        assertEquals(2, orders.applyStatusRule(may, false));
+
+        assertEquals("Shipped", orders.findByNumber("11").getOrderStatus());
+        assertEquals("Pending", orders.findByNumber("12").getOrderStatus());
+        assertEquals(0, orders.applyStatusRule(may, true));
+        assertEquals(Long.valueOf(3), orders.findStatsByCustomerId("1").getCountsByStatus().get("Shipped"));
+    }
+
+    @Test
+    void ordersWrittenBeforeTheIndexAreChanged() {
+        writeLegacyOrder("10", "1", "Pending", LocalDate.of(2023, 1, 5), "Kalem");
+        writeLegacyOrder("11", "2", "Pending", LocalDate.of(2023, 2, 5), "Silgi");
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("12", "1", "Pending", LocalDate.of(2024, 5, 1)));
+        OrderStatusRule all = new OrderStatusRule("Pending", "Canceled", null, null, null);
+
+        assertEquals(3, orders.applyStatusRule(all, true));
+        assertEquals(3, orders.applyStatusRule(all, false));
+        assertEquals("Canceled", orders.findByNumber("11").getOrderStatus());
+        assertEquals(Arrays.asList("Silgi"), orders.findByNumber("11").getItems());
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.repository;
+
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The Redis repositories against a real server: the write scripts, single and pipelined.
+ *
+ * @author isil
+ */
+class RedisRepositoryTest extends RedisEngineTest {
+
+    private static Customer customer(String id, String name) {
+        return new Customer(id, name, name.toLowerCase() + "@example.com", "555", "Ankara", new ArrayList<>());
+    }
+
+    private static Order order(String orderNumber, String customerId, String status, String... items) {
+        return new Order(orderNumber, customerId, "Kızılay, Ankara", new ArrayList<>(Arrays.asList(items)),
+                LocalDate.of(2024, 5, 1), status);
+    }
+
+    @Test
+    void customersAreWrittenAndRead() {
+        RedisCustomerRepository customers = new RedisCustomerRepository();
+        customers.save(customer("1", "Ayşe"));
+        customers.save(customer("2", "Mehmet"));
+
+        assertTrue(customers.update(customer("1", "Ayşe Yılmaz")));
+        assertFalse(customers.update(customer("3", "Nobody")));
+        assertEquals("Ayşe Yılmaz", customers.findById("1").getName());
+        assertEquals(2, customers.findAll().size());
+
+        assertArrayEquals(new boolean[]{true, false},
+                customers.updateAll(Arrays.asList(customer("2", "Mehmet Kaya"), customer("3", "Nobody"))));
+        assertEquals("Mehmet Kaya", customers.findByIds(Arrays.asList("2", "3")).get("2").getName());
+
+        assertTrue(customers.delete("1"));
+        assertFalse(customers.delete("1"));
+        assertArrayEquals(new boolean[]{true, false}, customers.deleteAll(Arrays.asList("2", "3")));
+        assertTrue(customers.findAll().isEmpty());
+    }
+
+    @Test
+    void ordersAreWrittenAndRead() {
+        RedisOrderRepository orders = new RedisOrderRepository();
+        orders.save(order("10", "1", "Pending", "Kalem", "Defter"));
+        orders.save(order("11", "2", "Pending", "Silgi"));
+
+        Order found = orders.findByNumber("10");
+        assertEquals(Arrays.asList("Kalem", "Defter"), found.getItems());
+        assertEquals("Kızılay, Ankara", found.getAddress());
+        assertEquals(LocalDate.of(2024, 5, 1), found.getOrderDate());
+
+        assertTrue(orders.update(order("10", "1", "Shipped", "Kalem")));
+        assertFalse(orders.update(order("12", "1", "Shipped", "Kalem")));
+        assertEquals("Shipped", orders.findByNumber("10").getOrderStatus());
+        assertEquals(Arrays.asList("11"), numbers(orders.findByStatus("Pending")));
+
+        assertArrayEquals(new boolean[]{true, false},
+                orders.updateAll(Arrays.asList(order("11", "2", "Delivered", "Silgi"), order("12", "1", "Pending"))));
+        assertEquals("Delivered", orders.findByNumber("11").getOrderStatus());
+
+        assertTrue(orders.delete("10"));
+        assertFalse(orders.delete("10"));
+        assertArrayEquals(new boolean[]{true, false}, orders.deleteAll(Arrays.asList("11", "12")));
+        assertNull(orders.findByNumber("11"));
+        assertTrue(orders.findAll().isEmpty());
+    }
+
+    private static List<String> numbers(List<Order> orders) {
+        List<String> numbers = new ArrayList<>();
+        for (Order order : orders) {
+            numbers.add(order.getOrderNumber());
+        }
+        return numbers;
+    }
+}
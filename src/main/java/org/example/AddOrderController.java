@@ -4,6 +4,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
 import javafx.stage.Stage;
+import org.example.metrics.CommandTracer;
 import org.example.model.Order;
 import org.example.service.OrderService;
 
@@ -84,14 +85,16 @@ public class AddOrderController {
                 .filter(item -> !item.isEmpty()) // Exclude empty lines
                 .collect(Collectors.toList());
 
-        // Generate a unique order number
-        String orderNumber = orderService.generateOrderNumber();
+        CommandTracer.run("AddOrderController.saveOrder", () -> {
+            // Generate a unique order number
+            String orderNumber = orderService.generateOrderNumber();
 
-        // Create a new order object
-        Order order = new Order(orderNumber, customerId, address, items, orderDate, orderStatus);
+            // Create a new order object
+            Order order = new Order(orderNumber, customerId, address, items, orderDate, orderStatus);
 
-        // Save the order to the database
-        orderService.saveOrder(order);
+            // Save the order to the database
+            orderService.saveOrder(order);
+        });
 
         // Display a success message
         showAlert(AlertType.INFORMATION, "Success", "Order saved successfully!");
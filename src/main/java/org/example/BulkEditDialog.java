@@ -0,0 +1,61 @@
+package org.example;
+
+import javafx.collections.FXCollections;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Dialog for editing the selected rows of a table at once: the user picks one field and the value all selected
+ * rows get. Confirming the dialog is the only confirmation of the bulk edit.
+ *
+ * @author isil
+ */
+final class BulkEditDialog {
+
+    private BulkEditDialog() {
+    }
+
+    /**
+     * @param count  the number of selected rows
+     * @param fields the editable fields and their suggested values (empty for free text), e.g. "Address"
+     * @return the chosen field and the new value, or empty if the dialog was cancelled
+     */
+    static Optional<Map.Entry<String, String>> show(String title, int count, Map<String, List<String>> fields) {
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle(title);
+        dialog.setHeaderText("Set one field of the " + count + " selected rows.");
+
+        ChoiceBox<String> fieldChoice = new ChoiceBox<>(FXCollections.observableArrayList(new ArrayList<>(fields.keySet())));
+        ComboBox<String> valueBox = new ComboBox<>();
+        valueBox.setEditable(true);
+        valueBox.setPrefWidth(250.0);
+        // Seçilen alana göre önerilen değerleri göster
+        fieldChoice.valueProperty().addListener((observable, oldField, newField) ->
+                valueBox.getItems().setAll(fields.getOrDefault(newField, List.of())));
+        fieldChoice.getSelectionModel().selectFirst();
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10.0);
+        grid.setVgap(10.0);
+        grid.addRow(0, new Label("Field:"), fieldChoice);
+        grid.addRow(1, new Label("New value:"), valueBox);
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        Optional<ButtonType> result = dialog.showAndWait();
+        String value = valueBox.getEditor().getText();
+        if (result.isEmpty() || result.get() != ButtonType.OK || value == null || value.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(Map.entry(fieldChoice.getValue(), value.trim()));
+    }
+}
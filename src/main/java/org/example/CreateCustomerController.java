@@ -5,6 +5,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
+import org.example.metrics.CommandTracer;
 import org.example.model.Customer;
 import org.example.service.CustomerService;
 
@@ -78,7 +79,8 @@ public class CreateCustomerController {
         Customer newCustomer = new Customer(null, name, email, phoneNumber, address, purchases);
 
         // Save the customer to the database
-        customerService.createCustomer(newCustomer);
+        CommandTracer.run("CreateCustomerController.saveCustomer",
+                () -> customerService.createCustomer(newCustomer));
 
         // Refresh the customer list in the main controller if linked
         if (customerController != null) {
@@ -1,9 +1,14 @@
 package org.example;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -12,10 +17,33 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import org.example.config.RedisConnection;
+import org.example.gui.Main;
+import org.example.metrics.CommandTracer;
 import org.example.model.Customer;
+import org.example.model.OrderStats;
+import org.example.repository.ChangeSet;
+import org.example.repository.Repositories;
 import org.example.service.CustomerService;
-
+import org.example.service.CustomerSnapshotStore;
+import org.example.service.OrderService;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Controller class responsible for managing customer data within the Customer Management System.
@@ -27,9 +55,13 @@ import java.util.Optional;
  */
 public class CustomerController {
 
+    private static final Logger LOG = Logger.getLogger(CustomerController.class.getName());
+
     @FXML
     private TextField searchField; // Search field for filtering customer data
     @FXML
+    private Label staleBanner; // Shown while the rows come from the local snapshot and Redis is unreachable
+    @FXML
     private TableView<Customer> customerTableView;
     @FXML
     private TableColumn<Customer, String> idColumn;
@@ -41,8 +73,32 @@ public class CustomerController {
     private TableColumn<Customer, String> phoneNumberColumn;
     @FXML
     private TableColumn<Customer, String> addressColumn;
+    @FXML
+    private TableColumn<Customer, Long> orderCountColumn;
+    @FXML
+    private TableColumn<Customer, Long> itemTotalColumn;
+    @FXML
+    private TableColumn<Customer, LocalDate> lastOrderColumn;
 
     private CustomerService customerService;
+    private final OrderService orderService = new OrderService();
+
+    // Single background thread so that consecutive reloads and writes are applied in order
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Duration SNAPSHOT_INTERVAL = Duration.minutes(1);
+
+    private final ObservableList<Customer> customers = FXCollections.observableArrayList();
+    private final CustomerSnapshotStore snapshotStore = CustomerSnapshotStore.defaultStore();
+    private final boolean redisStorage = Repositories.usesRedis(); // The snapshot only mirrors Redis data
+    private final Map<String, OrderStats> orderStats = new HashMap<>(); // Müşteri ID -> sipariş istatistikleri
+    private long syncVersion = 0; // Change log version the displayed rows correspond to
+    private volatile boolean snapshotLoaded = false; // Until then the table is not worth saving over the snapshot
+    private boolean firstLoadReported = false;
 
     /**
      * Constructor that initializes the CustomerService.
@@ -64,20 +120,36 @@ public class CustomerController {
         emailColumn.setCellValueFactory(new PropertyValueFactory<>("email"));
         phoneNumberColumn.setCellValueFactory(new PropertyValueFactory<>("phoneNumber"));
         addressColumn.setCellValueFactory(new PropertyValueFactory<>("address"));
+        // Order statistics come from the per-customer stats, not from the orders themselves
+        orderCountColumn.setCellValueFactory(
+                cell -> new ReadOnlyObjectWrapper<>(statsOf(cell.getValue()).getOrderCount()));
+        itemTotalColumn.setCellValueFactory(
+                cell -> new ReadOnlyObjectWrapper<>(statsOf(cell.getValue()).getItemTotal()));
+        lastOrderColumn.setCellValueFactory(
+                cell -> new ReadOnlyObjectWrapper<>(statsOf(cell.getValue()).getLastOrderDate()));
+
+        // Several customers can be selected for bulk delete and bulk edit
+        customerTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+        // Set up filtering and sorting once, then show the local snapshot and reconcile it with Redis
+        setUpFilteringAndSorting();
+        staleBanner.setOnMouseClicked(event -> loadCustomerData());
+        if (redisStorage) {
+            loadSnapshot();
+        } else {
+            loadCustomerData();
+        }
 
-        // Enable single selection mode for the table
-        customerTableView.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
-
-        // Load customer data and apply filtering
-        loadCustomerData();
+        // Keep the snapshot up to date
+        Timeline snapshotTimer = new Timeline(new KeyFrame(SNAPSHOT_INTERVAL, event -> saveSnapshot()));
+        snapshotTimer.setCycleCount(Animation.INDEFINITE);
+        snapshotTimer.play();
     }
 
     /**
-     * Loads the customer data from the service and sets up filtering and sorting.
+     * Wraps the customer list in a filtered and sorted view and binds it to the table.
      */
-    public void loadCustomerData() {
-        ObservableList<Customer> customers = FXCollections.observableArrayList(customerService.getAllCustomers());
-
+    private void setUpFilteringAndSorting() {
         // Create a filtered list for the customers
         FilteredList<Customer> filteredData = new FilteredList<>(customers, p -> true);
 
@@ -109,6 +181,220 @@ public class CustomerController {
         customerTableView.setItems(sortedData);
     }
 
+    /**
+     * Reads the local snapshot on the background thread, shows its rows and then reconciles them with Redis.
+     * Decoding a large snapshot would otherwise delay the first frame.
+     */
+    private void loadSnapshot() {
+        Task<CustomerSnapshotStore.Snapshot> snapshotTask = new Task<>() {
+            @Override
+            protected CustomerSnapshotStore.Snapshot call() {
+                return snapshotStore.load();
+            }
+        };
+        snapshotTask.setOnSucceeded(event -> {
+            CustomerSnapshotStore.Snapshot snapshot = snapshotTask.getValue();
+            customers.setAll(snapshot.getCustomers());
+            syncVersion = snapshot.getVersion();
+            snapshotLoaded = true;
+            loadCustomerData();
+        });
+        snapshotTask.setOnFailed(event -> {
+            LOG.log(Level.WARNING, "Could not load the customer snapshot", snapshotTask.getException());
+            snapshotLoaded = true;
+            loadCustomerData();
+        });
+        LOADER.submit(snapshotTask);
+    }
+
+    /**
+     * Loads the customer changes since the last synchronisation on a background thread and applies them to the
+     * rows already shown (for example the ones restored from the local snapshot).
+     * While Redis is still connecting the table shows a "connecting" placeholder instead of blocking the UI; if
+     * it cannot be reached while snapshot rows are shown, a banner says that they may be out of date.
+     */
+    public void loadCustomerData() {
+        if (redisStorage && !RedisConnection.isConnected()) {
+            customerTableView.setPlaceholder(new Label("Connecting to Redis..."));
+        }
+
+        long knownVersion = syncVersion;
+        Task<ChangeSet<Customer>> loadTask = new Task<>() {
+            @Override
+            protected ChangeSet<Customer> call() {
+                return CommandTracer.call("CustomerController.loadCustomerData",
+                        () -> customerService.changesSince(knownVersion));
+            }
+        };
+        loadTask.setOnSucceeded(event -> {
+            ChangeSet<Customer> changeSet = loadTask.getValue();
+            int changes = changeSet.isFullReload()
+                    ? applyDifferences(changeSet.getChanged())
+                    : applyChanges(changeSet.getChanged(), changeSet.getDeletedIds());
+            syncVersion = Math.max(syncVersion, changeSet.getVersion());
+            customerTableView.setPlaceholder(new Label("No customers found."));
+            staleBanner.setVisible(false);
+            if (!firstLoadReported && redisStorage) {
+                firstLoadReported = true;
+                LOG.info("Customer table reconciled with Redis " + Main.millisSinceLaunch()
+                        + " ms after launch (" + changes + " rows changed, Redis warm-up took "
+                        + RedisConnection.getConnectMillis() + " ms)");
+            }
+            saveSnapshot();
+            loadOrderStats();
+        });
+        loadTask.setOnFailed(event -> {
+            LOG.log(Level.WARNING, "Could not load customers", loadTask.getException());
+            customerTableView.setPlaceholder(new Label(redisStorage
+                    ? "Could not connect to Redis." : "Could not load customers."));
+            staleBanner.setVisible(redisStorage && !customers.isEmpty()); // The placeholder is hidden by the rows
+        });
+        LOADER.submit(loadTask);
+    }
+
+    private OrderStats statsOf(Customer customer) {
+        return orderStats.getOrDefault(customer.getId(), OrderStats.EMPTY);
+    }
+
+    /**
+     * Loads the order statistics of all displayed customers in one batch on the background thread and refreshes
+     * the statistics columns.
+     */
+    public void loadOrderStats() {
+        List<String> customerIds = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            customerIds.add(customer.getId());
+        }
+        Task<Map<String, OrderStats>> statsTask = new Task<>() {
+            @Override
+            protected Map<String, OrderStats> call() {
+                return CommandTracer.call("CustomerController.loadOrderStats",
+                        () -> orderService.getOrderStats(customerIds));
+            }
+        };
+        statsTask.setOnSucceeded(event -> {
+            orderStats.clear();
+            orderStats.putAll(statsTask.getValue());
+            customerTableView.refresh();
+        });
+        statsTask.setOnFailed(event ->
+                LOG.log(Level.WARNING, "Could not load order statistics", statsTask.getException()));
+        LOADER.submit(statsTask);
+    }
+
+    /**
+     * Brings the displayed rows in line with the latest data from Redis.
+     * Existing rows are updated in place, so only rows that really changed are touched.
+     *
+     * @param latest the customers currently stored in Redis
+     * @return the number of rows that were added, updated or removed
+     */
+    private int applyDifferences(List<Customer> latest) {
+        Map<String, Customer> latestById = new HashMap<>();
+        for (Customer customer : latest) {
+            latestById.put(customer.getId(), customer);
+        }
+
+        int sizeBefore = customers.size();
+        customers.removeIf(customer -> !latestById.containsKey(customer.getId()));
+        int changes = sizeBefore - customers.size();
+
+        for (Customer current : customers) {
+            if (updateRow(current, latestById.remove(current.getId()))) {
+                changes++;
+            }
+        }
+
+        // Whatever is left in the map was not shown yet
+        customers.addAll(latestById.values());
+        return changes + latestById.size();
+    }
+
+    /**
+     * Applies a delta from the change log: removes deleted customers and updates or adds changed ones.
+     *
+     * @return the number of rows that were added, updated or removed
+     */
+    private int applyChanges(List<Customer> changed, List<String> deletedIds) {
+        Set<String> deleted = new HashSet<>(deletedIds);
+        int sizeBefore = customers.size();
+        customers.removeIf(customer -> deleted.contains(customer.getId()));
+        int changes = sizeBefore - customers.size();
+
+        Map<String, Customer> shownById = new HashMap<>();
+        for (Customer customer : customers) {
+            shownById.put(customer.getId(), customer);
+        }
+        for (Customer fresh : changed) {
+            Customer current = shownById.get(fresh.getId());
+            if (current == null) {
+                customers.add(fresh);
+                changes++;
+            } else if (updateRow(current, fresh)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Copies the fields of {@code fresh} into the displayed row, touching only the properties that differ.
+     *
+     * @return true if any visible field changed
+     */
+    private boolean updateRow(Customer current, Customer fresh) {
+        boolean changed = false;
+        if (!Objects.equals(current.getName(), fresh.getName())) {
+            current.setName(fresh.getName());
+            changed = true;
+        }
+        if (!Objects.equals(current.getEmail(), fresh.getEmail())) {
+            current.setEmail(fresh.getEmail());
+            changed = true;
+        }
+        if (!Objects.equals(current.getPhoneNumber(), fresh.getPhoneNumber())) {
+            current.setPhoneNumber(fresh.getPhoneNumber());
+            changed = true;
+        }
+        if (!Objects.equals(current.getAddress(), fresh.getAddress())) {
+            current.setAddress(fresh.getAddress());
+            changed = true;
+        }
+        current.setPurchases(fresh.getPurchases());
+        return changed;
+    }
+
+    /**
+     * Writes the currently displayed customers to the local snapshot on the background thread.
+     */
+    public void saveSnapshot() {
+        List<Customer> copy = new ArrayList<>(customers);
+        long version = syncVersion;
+        LOADER.submit(() -> writeSnapshot(copy, version));
+    }
+
+    /**
+     * Writes the currently displayed customers to the local snapshot and waits for it to finish.
+     * Used when the application exits.
+     */
+    public void saveSnapshotNow() {
+        writeSnapshot(new ArrayList<>(customers), syncVersion);
+    }
+
+    private void writeSnapshot(List<Customer> snapshot, long version) {
+        if (!redisStorage) {
+            return; // In-memory data is gone after exit, a snapshot of it would be misleading
+        }
+        if (!snapshotLoaded) {
+            return; // Closed before the snapshot was shown: keep it instead of overwriting it with nothing
+        }
+        try {
+            snapshotStore.save(snapshot, version);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save customer snapshot", e);
+        }
+    }
+
     /**
      * Handles the action for adding a new customer.
      * Opens the Create Customer window for user input.
@@ -134,44 +420,120 @@ public class CustomerController {
             stage.setScene(scene);
             stage.show();
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.log(Level.SEVERE, "Failed to open the Create Customer window", e);
         }
     }
 
 
     /**
-     * Handles the action for deleting a customer.
-     * Prompts the user for confirmation before deletion.
+     * Handles the action for deleting the selected customers.
+     * Prompts the user once for all of them; they are deleted in one batch on the background thread and removed
+     * from the table directly.
      */
     @FXML
     private void handleDeleteCustomer() {
-        Customer selectedCustomer = customerTableView.getSelectionModel().getSelectedItem();
-
-        if (selectedCustomer != null) {
-            System.out.println("Selected customer ID: " + selectedCustomer.getId()); // Debugging message
+        List<Customer> selectedCustomers = new ArrayList<>(customerTableView.getSelectionModel().getSelectedItems());
 
+        if (!selectedCustomers.isEmpty()) {
             // Show a confirmation dialog before deletion
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
             alert.setTitle("Delete Confirmation");
-            alert.setHeaderText("Are you sure you want to delete this customer?");
-            alert.setContentText("Customer ID: " + selectedCustomer.getId() + "\nName: " + selectedCustomer.getName());
+            if (selectedCustomers.size() == 1) {
+                Customer selectedCustomer = selectedCustomers.get(0);
+                alert.setHeaderText("Are you sure you want to delete this customer?");
+                alert.setContentText("Customer ID: " + selectedCustomer.getId() + "\nName: " + selectedCustomer.getName());
+            } else {
+                alert.setHeaderText("Are you sure you want to delete " + selectedCustomers.size() + " customers?");
+                alert.setContentText("Their purchases are deleted as well.");
+            }
 
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
-                System.out.println("User confirmed deletion."); // Debugging message
-                // Proceed with deletion
-                customerService.deleteCustomer(selectedCustomer.getId());
-                System.out.println("Customer deleted from database."); // Debugging message
-                loadCustomerData(); // Refresh the table view after deletion
-                showAlert("Success", "Customer deleted successfully!");
+                List<String> ids = new ArrayList<>(selectedCustomers.size());
+                for (Customer customer : selectedCustomers) {
+                    ids.add(customer.getId());
+                }
+                Task<Integer> deleteTask = new Task<>() {
+                    @Override
+                    protected Integer call() {
+                        return CommandTracer.call("CustomerController.handleDeleteCustomer",
+                                () -> customerService.deleteCustomers(ids));
+                    }
+                };
+                deleteTask.setOnSucceeded(event -> {
+                    int deleted = deleteTask.getValue();
+                    // Silinenleri tabloda doğrudan kaldır; diğer değişiklikler bir sonraki senkronizasyonda gelir
+                    customers.removeAll(selectedCustomers);
+                    orderStats.keySet().removeAll(ids);
+                    showAlert("Success", deleted == 1 ? "Customer deleted successfully!" : deleted + " customers deleted successfully!");
+                });
+                deleteTask.setOnFailed(event -> {
+                    LOG.log(Level.WARNING, "Could not delete customers", deleteTask.getException());
+                    showAlert("Delete Error", "Failed to delete the selected customers.");
+                });
+                LOADER.submit(deleteTask);
             }
         } else {
-            // Show an alert if no customer is selected
-            System.out.println("No customer selected."); // Debugging message
             showAlert("No Selection", "Please select a customer to delete.");
         }
     }
 
+    /**
+     * Handles the bulk edit of the selected customers: one field is set to the same value for all of them and
+     * written in one batch on the background thread. The rows are updated in place once it is written.
+     */
+    @FXML
+    private void handleBulkEditCustomers() {
+        List<Customer> selectedCustomers = new ArrayList<>(customerTableView.getSelectionModel().getSelectedItems());
+        if (selectedCustomers.isEmpty()) {
+            showAlert("No Selection", "Please select the customers to edit.");
+            return;
+        }
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        fields.put("Email", List.of());
+        fields.put("Phone Number", List.of());
+        fields.put("Address", List.of());
+        Optional<Map.Entry<String, String>> edit = BulkEditDialog.show("Edit Customers", selectedCustomers.size(), fields);
+        if (edit.isEmpty()) {
+            return;
+        }
+
+        List<Customer> edited = new ArrayList<>(selectedCustomers.size());
+        for (Customer customer : selectedCustomers) {
+            Customer copy = new Customer(customer.getId(), customer.getName(), customer.getEmail(),
+                    customer.getPhoneNumber(), customer.getAddress(), customer.getPurchases());
+            switch (edit.get().getKey()) {
+                case "Email":
+                    copy.setEmail(edit.get().getValue());
+                    break;
+                case "Phone Number":
+                    copy.setPhoneNumber(edit.get().getValue());
+                    break;
+                default:
+                    copy.setAddress(edit.get().getValue());
+            }
+            edited.add(copy);
+        }
+        Task<Integer> updateTask = new Task<>() {
+            @Override
+            protected Integer call() {
+                return CommandTracer.call("CustomerController.handleBulkEditCustomers",
+                        () -> customerService.updateCustomers(edited));
+            }
+        };
+        updateTask.setOnSucceeded(event -> {
+            for (int i = 0; i < selectedCustomers.size(); i++) {
+                updateRow(selectedCustomers.get(i), edited.get(i));
+            }
+            showAlert("Success", updateTask.getValue() + " customers updated successfully!");
+        });
+        updateTask.setOnFailed(event -> {
+            LOG.log(Level.WARNING, "Could not update customers", updateTask.getException());
+            showAlert("Update Error", "Failed to update the selected customers.");
+        });
+        LOADER.submit(updateTask);
+    }
+
     /**
      * Handles the action for updating a customer's details.
      * Opens the Update Customer window for editing.
@@ -200,7 +562,7 @@ public class CustomerController {
                 stage.show();
 
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.log(Level.SEVERE, "Failed to open the Update Customer window", e);
             }
         } else {
             showAlert("No Selection", "Please select a customer to update.");
@@ -232,9 +594,10 @@ public class CustomerController {
 
                 stage.setScene(scene);
                 stage.getIcons().add(new Image("/icons/order.png"));
+                stage.setOnHidden(event -> loadOrderStats()); // Orders may have changed
                 stage.show();
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.log(Level.SEVERE, "Failed to open the Order Management window", e);
             }
         } else {
             showAlert("No Selection", "Please select a customer to view orders.");
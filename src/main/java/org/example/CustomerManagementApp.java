@@ -1,8 +1,11 @@
 package org.example;
 
 import org.example.model.Customer;
+import org.example.model.OrderStatusRule;
 import org.example.service.CustomerService;
+import org.example.service.OrderService;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -12,7 +15,8 @@ import java.util.regex.Pattern;
  * Terminal-based Customer Management Application.
  * <p>
  * This application allows users to manage customer data, including adding, viewing, updating,
- * and deleting customer records, as well as listing all customers.
+ * and deleting customer records, as well as listing all customers, changing the status of many orders at once
+ * and archiving old orders.
  * <p>
  * Data is stored in a Redis database using the CustomerService class.
  *
@@ -21,6 +25,7 @@ import java.util.regex.Pattern;
 public class CustomerManagementApp {
 
     private static final CustomerService customerService = new CustomerService(); // Service for handling Redis operations
+    private static final OrderService orderService = new OrderService(); // Service for bulk order status transitions
     private static final Scanner scanner = new Scanner(System.in); // Input scanner
 
     // Regular expressions for input validation
@@ -28,6 +33,9 @@ public class CustomerManagementApp {
     private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z ]+"); // Only letters and spaces
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$"); // Basic email format
     private static final Pattern PHONE_PATTERN = Pattern.compile("\\d{10}"); // 10-digit phone number
+    private static final Pattern DAYS_PATTERN = Pattern.compile("\\d{1,5}"); // Number of days
+    private static final Pattern STATUS_PATTERN =
+            Pattern.compile(String.join("|", UpdateOrderController.ORDER_STATUSES)); // Known order statuses
 
 //    When you want to run application do not forget to comment out main function
 
@@ -39,13 +47,15 @@ public class CustomerManagementApp {
 //            System.out.println("3. Update Customer");
 //            System.out.println("4. Delete Customer");
 //            System.out.println("5. List All Customers");
-//            System.out.println("6. Exit");
+//            System.out.println("6. Bulk Order Status Transition");
+//            System.out.println("7. Archive Old Orders");
+//            System.out.println("8. Exit");
 //            System.out.print("Choose an option: ");
 //
 //            String input = scanner.nextLine().trim();
 //
 //            if (!input.matches("\\d+")) { // Only digits allowed for menu choice
-//                System.out.println("Invalid input. Please enter a number between 1 and 6.");
+//                System.out.println("Invalid input. Please enter a number between 1 and 8.");
 //                continue; // Invalid input, ask again
 //            }
 //
@@ -68,6 +78,12 @@ public class CustomerManagementApp {
 //                    listAllCustomers();
 //                    break;
 //                case 6:
+//                    transitionOrders();
+//                    break;
+//                case 7:
+//                    archiveOrders();
+//                    break;
+//                case 8:
 //                    System.out.println("Exiting...");
 //                    RedisConnection.closeConnection(); // Close Redis connection
 //                    return;
@@ -221,6 +237,49 @@ public class CustomerManagementApp {
         }
     }
 
+    /**
+     * Changes the status of all orders matching a rule, e.g. every Pending order older than 3 days to Canceled.
+     * The rule is first run as a dry run to show how many orders it affects, and applied after confirmation.
+     */
+    private static void transitionOrders() {
+        String statuses = String.join(", ", UpdateOrderController.ORDER_STATUSES);
+        String fromStatus = getInput("Enter current Order Status: ", STATUS_PATTERN, "Unknown status. Please enter one of: " + statuses);
+        String toStatus = getInput("Enter new Order Status: ", STATUS_PATTERN, "Unknown status. Please enter one of: " + statuses);
+        String days = getInput("Change orders older than how many days: ", DAYS_PATTERN, "Invalid number. Please enter numbers only.");
+        String customerId = getOptionalInput("Enter Customer ID (or press Enter for all customers): ", ID_PATTERN, "Invalid ID format. Please enter numbers only.");
+        OrderStatusRule rule = OrderStatusRule.olderThan(fromStatus, toStatus, Integer.parseInt(days), LocalDate.now(), customerId);
+
+        try {
+            int matching = orderService.transitionOrders(rule, true); // Dry run
+            if (matching == 0) {
+                System.out.println("No orders match the rule.");
+                return;
+            }
+            System.out.print(matching + " orders match (" + rule + "). Apply the change? (yes/no): ");
+            if ("yes".equalsIgnoreCase(scanner.nextLine().trim())) {
+                int changed = orderService.transitionOrders(rule, false);
+                System.out.println(changed + " orders changed to " + toStatus + ".");
+            } else {
+                System.out.println("No orders changed.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Moves old delivered and canceled orders into cold storage (age and statuses are configured with
+     * {@code cms.archive.afterDays} and {@code cms.archive.statuses}).
+     */
+    private static void archiveOrders() {
+        try {
+            int archived = orderService.archiveOrders();
+            System.out.println(archived + " orders archived.");
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
     /**
      * Prompts the user for input with validation.
      */
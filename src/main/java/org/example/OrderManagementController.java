@@ -1,11 +1,13 @@
 package org.example;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
-import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
+import javafx.css.PseudoClass;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -14,11 +16,23 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import org.example.metrics.CommandTracer;
 import org.example.model.Order;
+import org.example.repository.OrderPage;
+import org.example.repository.OrderSort;
+import org.example.repository.SortedPage;
 import org.example.service.OrderService;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Controller class for managing order-related functionality in the application.
@@ -31,6 +45,8 @@ import java.util.Optional;
  */
 public class OrderManagementController {
 
+    private static final Logger LOG = Logger.getLogger(OrderManagementController.class.getName());
+
     private String customerId;  // Stores the customer ID for which orders are managed.
 
     @FXML
@@ -62,6 +78,29 @@ public class OrderManagementController {
 
     private OrderService orderService;  // Service class responsible for handling Redis operations.
 
+    // Single background thread for deletes and bulk edits, so they are written in the order they were made
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int PAGE_SIZE = 100; // Sayfa başına sipariş sayısı
+
+    private final ObservableList<Order> orders = FXCollections.observableArrayList(); // Yüklenmiş sayfalar
+    private String nextCursor;
+    private int nextPage; // Sunucu tarafı sıralamada sıradaki sayfa numarası
+    private boolean hasMorePages;
+    private boolean pageRequested;
+    private FilteredList<Order> filteredData;
+    private final Map<TableColumn<Order, ?>, OrderSort> sortColumns = new HashMap<>();
+    private OrderSort sortedBy; // null: history order, newest first
+    private boolean ascending;
+
+    private static final int SEARCH_LIMIT = 200; // Sunucu tarafı aramada gösterilecek en fazla sipariş
+
+    private static final PseudoClass ARCHIVED = PseudoClass.getPseudoClass("archived"); // Salt okunur satırlar
+
     // Constructor initializing the OrderService instance.
     public OrderManagementController() {
         this.orderService = new OrderService();
@@ -86,41 +125,134 @@ public class OrderManagementController {
         itemCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(cellData.getValue().getItemCount()).asObject());
         orderStatusColumn.setCellValueFactory(new PropertyValueFactory<>("orderStatus"));
 
+        // Only the columns with a sort index on the server can be sorted
+        sortColumns.put(orderDateColumn, OrderSort.ORDER_DATE);
+        sortColumns.put(orderStatusColumn, OrderSort.ORDER_STATUS);
+        sortColumns.put(itemCountColumn, OrderSort.ITEM_COUNT);
+        for (TableColumn<Order, ?> column : orderTableView.getColumns()) {
+            column.setSortable(sortColumns.containsKey(column));
+        }
+
+        // Several orders can be selected for bulk delete and bulk edit
+        orderTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        bindOrderTable();
+
         // Load the order data for the selected customer.
         loadOrderData();
     }
 
     /**
-     * Loads and displays the order data for the current customer ID.
-     * It also sets up filtering and sorting functionality.
+     * Loads and displays the first page of the current customer's orders, in the order of the sorted column or
+     * newest first; further pages are loaded when the last row becomes visible (see {@link #loadNextPage()}).
+     * Searching applies to the loaded orders.
      */
     public void loadOrderData() {
         if (customerId != null) {
-            ObservableList<Order> orders = FXCollections.observableArrayList(orderService.getOrdersByCustomerId(customerId));
+            orders.clear();
+            nextCursor = null;
+            nextPage = 0;
+            hasMorePages = true;
+            loadNextPage();
+        }
+    }
 
-            // Create a filtered list for the search functionality.
-            FilteredList<Order> filteredData = new FilteredList<>(orders, p -> true);
+    /**
+     * Appends the next page of orders, newest first. Only one page is held per scroll step, so a customer with
+     * a long order history opens as fast as any other.
+     */
+    private void loadNextPage() {
+        pageRequested = false;
+        if (customerId == null || !hasMorePages) {
+            return;
+        }
+        if (sortedBy != null) {
+            SortedPage<Order> sortedPage = CommandTracer.call("OrderManagementController.loadNextPage",
+                    () -> orderService.getSortedOrderPage(customerId, sortedBy, ascending, nextPage, PAGE_SIZE));
+            nextPage++;
+            hasMorePages = sortedPage.hasNext();
+            orders.addAll(sortedPage.getItems());
+            return;
+        }
+        OrderPage page = CommandTracer.call("OrderManagementController.loadNextPage",
+                () -> orderService.getOrderPage(customerId, nextCursor, PAGE_SIZE));
+        nextCursor = page.getNextCursor();
+        hasMorePages = nextCursor != null;
+        orders.addAll(page.getOrders());
+    }
 
-            // Add a listener to the search field to filter orders dynamically.
-            searchOrder.textProperty().addListener((observable, oldValue, newValue) -> {
-                filteredData.setPredicate(order -> {
-                    if (newValue == null || newValue.isEmpty()) {
-                        return true; // Show all orders if the search field is empty.
-                    }
-                    String lowerCaseFilter = newValue.toLowerCase();
-                    // Filter orders by order number, customer ID, or address.
-                    return order.getOrderNumber().toLowerCase().contains(lowerCaseFilter) ||
-                            order.getCustomerId().toLowerCase().contains(lowerCaseFilter) ||
-                            order.getAddress().toLowerCase().contains(lowerCaseFilter);
-                });
+    /**
+     * Sets up searching on the loaded orders, sorting on the server and the row factory that loads the next page.
+     */
+    private void bindOrderTable() {
+        // Create a filtered list for the search functionality.
+        filteredData = new FilteredList<>(orders, p -> true);
+
+        // Add a listener to the search field to filter orders dynamically.
+        searchOrder.textProperty().addListener((observable, oldValue, newValue) -> {
+            filteredData.setPredicate(order -> {
+                if (newValue == null || newValue.isEmpty()) {
+                    return true; // Show all orders if the search field is empty.
+                }
+                String lowerCaseFilter = newValue.toLowerCase();
+                // Filter orders by order number, customer ID, address or items.
+                return order.getOrderNumber().toLowerCase().contains(lowerCaseFilter) ||
+                        order.getCustomerId().toLowerCase().contains(lowerCaseFilter) ||
+                        order.getAddress().toLowerCase().contains(lowerCaseFilter) ||
+                        order.getItems().stream().anyMatch(item -> item.toLowerCase().contains(lowerCaseFilter));
             });
+        });
 
-            // Create a sorted list and bind it to the TableView comparator.
-            SortedList<Order> sortedData = new SortedList<>(filteredData);
-            sortedData.comparatorProperty().bind(orderTableView.comparatorProperty());
+        // Only some pages are loaded, so a header click loads the pages again, sorted by the server's index
+        orderTableView.setSortPolicy(table -> {
+            TableColumn<Order, ?> column = table.getSortOrder().isEmpty() ? null : table.getSortOrder().get(0);
+            OrderSort requested = column == null ? null : sortColumns.get(column);
+            boolean requestedAscending = column != null && column.getSortType() == TableColumn.SortType.ASCENDING;
+            if (requested != sortedBy || requestedAscending != ascending) {
+                sortedBy = requested;
+                ascending = requestedAscending;
+                Platform.runLater(this::loadOrderData); // Tablo sıralanırken listeyi değiştirmeden
+            }
+            return true;
+        });
 
-            // Set the sorted and filtered data to the TableView.
-            orderTableView.setItems(sortedData);
+        // Set the filtered data to the TableView.
+        orderTableView.setItems(filteredData);
+
+        orderTableView.setRowFactory(table -> new TableRow<Order>() {
+            @Override
+            protected void updateItem(Order order, boolean empty) {
+                super.updateItem(order, empty);
+                pseudoClassStateChanged(ARCHIVED, !empty && order.isArchived());
+                // Son satır görünür olduysa sonraki sayfayı yükle (tablo çizilirken listeyi değiştirmeden)
+                if (!empty && hasMorePages && !pageRequested && getIndex() == table.getItems().size() - 1) {
+                    pageRequested = true;
+                    Platform.runLater(OrderManagementController.this::loadNextPage);
+                }
+            }
+        });
+    }
+
+    /**
+     * Searches the items and addresses of the customer's whole order history on the server (Enter in the search
+     * field) and shows the best matches instead of the loaded pages; an empty search shows the pages again.
+     */
+    @FXML
+    private void handleSearchOrders() {
+        String query = searchOrder.getText();
+        if (customerId == null) {
+            return;
+        }
+        if (query == null || query.isBlank()) {
+            loadOrderData();
+            return;
+        }
+        List<Order> found = CommandTracer.call("OrderManagementController.handleSearchOrders",
+                () -> orderService.searchOrders(query, customerId, SEARCH_LIMIT));
+        hasMorePages = false; // Arama sonuçları sayfalanmaz
+        filteredData.setPredicate(order -> true); // Already matched by the index (accents and case ignored)
+        orders.setAll(found);
+        if (found.isEmpty()) {
+            showAlert("No Results", "No orders contain: " + query);
         }
     }
 
@@ -146,37 +278,119 @@ public class OrderManagementController {
             stage.getIcons().add(new Image(getClass().getResourceAsStream("/icons/add_order.png")));
             stage.show();
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.log(Level.SEVERE, "Failed to load Add Order page", e);
             showAlert("Loading Error", "Failed to load Add Order page.");
         }
     }
 
 
     /**
-     * Handles deleting a selected order.
-     * Prompts the user for confirmation before deletion.
+     * Handles deleting the selected orders.
+     * Prompts the user once for all of them; they are deleted in one batch on a background thread and removed
+     * from the table directly.
      */
     @FXML
     private void handleDeleteOrder() {
-        Order selectedOrder = orderTableView.getSelectionModel().getSelectedItem();
+        List<Order> selectedOrders = new ArrayList<>(orderTableView.getSelectionModel().getSelectedItems());
+        if (containsArchived(selectedOrders)) {
+            return;
+        }
 
-        if (selectedOrder != null) {
+        if (!selectedOrders.isEmpty()) {
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
             alert.setTitle("Delete Confirmation");
-            alert.setHeaderText("Are you sure you want to delete this order?");
-            alert.setContentText("Order Number: " + selectedOrder.getOrderNumber());
+            if (selectedOrders.size() == 1) {
+                alert.setHeaderText("Are you sure you want to delete this order?");
+                alert.setContentText("Order Number: " + selectedOrders.get(0).getOrderNumber());
+            } else {
+                alert.setHeaderText("Are you sure you want to delete " + selectedOrders.size() + " orders?");
+            }
 
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
-                orderService.deleteOrder(selectedOrder.getOrderNumber());
-                loadOrderData();  // Refresh the data after deletion.
-                showAlert("Success", "Order deleted successfully!");
+                List<String> orderNumbers = new ArrayList<>(selectedOrders.size());
+                for (Order order : selectedOrders) {
+                    orderNumbers.add(order.getOrderNumber());
+                }
+                Task<Integer> deleteTask = new Task<>() {
+                    @Override
+                    protected Integer call() {
+                        return CommandTracer.call("OrderManagementController.handleDeleteOrder",
+                                () -> orderService.deleteOrders(orderNumbers));
+                    }
+                };
+                deleteTask.setOnSucceeded(event -> {
+                    int deleted = deleteTask.getValue();
+                    orders.removeAll(selectedOrders); // Sayfaları yeniden yüklemeden tablodan kaldır
+                    showAlert("Success", deleted == 1 ? "Order deleted successfully!" : deleted + " orders deleted successfully!");
+                });
+                deleteTask.setOnFailed(event -> {
+                    LOG.log(Level.WARNING, "Could not delete orders", deleteTask.getException());
+                    showAlert("Delete Error", "Failed to delete the selected orders.");
+                });
+                WRITER.submit(deleteTask);
             }
         } else {
             showAlert("No Selection", "Please select an order to delete.");
         }
     }
 
+    /**
+     * Handles the bulk edit of the selected orders, e.g. marking them all as shipped: one field is set to the same
+     * value for all of them and written in one batch on a background thread. The rows are updated in place once
+     * it is written.
+     */
+    @FXML
+    private void handleBulkEditOrders() {
+        List<Order> selectedOrders = new ArrayList<>(orderTableView.getSelectionModel().getSelectedItems());
+        if (selectedOrders.isEmpty()) {
+            showAlert("No Selection", "Please select the orders to edit.");
+            return;
+        }
+        if (containsArchived(selectedOrders)) {
+            return;
+        }
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        fields.put("Order Status", UpdateOrderController.ORDER_STATUSES);
+        fields.put("Address", List.of());
+        Optional<Map.Entry<String, String>> edit = BulkEditDialog.show("Edit Orders", selectedOrders.size(), fields);
+        if (edit.isEmpty()) {
+            return;
+        }
+
+        boolean statusEdit = edit.get().getKey().equals("Order Status");
+        String value = edit.get().getValue();
+        List<Order> edited = new ArrayList<>(selectedOrders.size());
+        for (Order order : selectedOrders) {
+            edited.add(new Order(order.getOrderNumber(), order.getCustomerId(),
+                    statusEdit ? order.getAddress() : value, order.getItems(), order.getOrderDate(),
+                    statusEdit ? value : order.getOrderStatus()));
+        }
+        Task<Integer> updateTask = new Task<>() {
+            @Override
+            protected Integer call() {
+                return CommandTracer.call("OrderManagementController.handleBulkEditOrders",
+                        () -> orderService.updateOrders(edited));
+            }
+        };
+        updateTask.setOnSucceeded(event -> {
+            for (Order order : selectedOrders) {
+                if (statusEdit) {
+                    order.setOrderStatus(value);
+                } else {
+                    order.setAddress(value);
+                }
+            }
+            orderTableView.refresh();
+            showAlert("Success", updateTask.getValue() + " orders updated successfully!");
+        });
+        updateTask.setOnFailed(event -> {
+            LOG.log(Level.WARNING, "Could not update orders", updateTask.getException());
+            showAlert("Update Error", "Failed to update the selected orders.");
+        });
+        WRITER.submit(updateTask);
+    }
+
     /**
      * Handles updating a selected order.
      * Opens a new window pre-filled with the order details for editing.
@@ -184,6 +398,9 @@ public class OrderManagementController {
     @FXML
     private void handleUpdateOrder() {
         Order selectedOrder = orderTableView.getSelectionModel().getSelectedItem();
+        if (selectedOrder != null && containsArchived(List.of(selectedOrder))) {
+            return;
+        }
         if (selectedOrder != null) {
             try {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/UpdateOrder.fxml"));
@@ -205,7 +422,7 @@ public class OrderManagementController {
                 stage.getIcons().add(new Image("/icons/update_order.png"));
                 stage.show();
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.log(Level.SEVERE, "Failed to load Update Order page", e);
                 showAlert("Loading Error", "Failed to load Update Order page.");
             }
         } else {
@@ -214,6 +431,20 @@ public class OrderManagementController {
     }
 
 
+    /**
+     * Archived orders are shown in the history but can no longer be changed (see
+     * {@link org.example.repository.OrderRepository#archive}); tells the user if the selection contains any.
+     *
+     * @return true if it does, and the action should not run
+     */
+    private boolean containsArchived(List<Order> selectedOrders) {
+        if (selectedOrders.stream().noneMatch(Order::isArchived)) {
+            return false;
+        }
+        showAlert("Archived Orders", "Archived orders are read-only. Please select only orders that are not archived.");
+        return true;
+    }
+
     /**
      * Displays an alert message to the user.
      */
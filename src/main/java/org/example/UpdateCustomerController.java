@@ -4,6 +4,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
+import org.example.metrics.CommandTracer;
 import org.example.model.Customer;
 import org.example.service.CustomerService;
 
@@ -85,7 +86,8 @@ public class UpdateCustomerController {
         selectedCustomer.setAddress(address);
 
         // Save the updated customer in Redis
-        customerService.updateCustomer(selectedCustomer);
+        CommandTracer.run("UpdateCustomerController.saveUpdatedCustomer",
+                () -> customerService.updateCustomer(selectedCustomer));
 
         // Show success message
         showAlert("Success", "Customer updated successfully!");
@@ -3,11 +3,13 @@ package org.example;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
+import org.example.metrics.CommandTracer;
 import org.example.model.Order;
 import org.example.service.OrderService;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Controller class responsible for handling the update of an existing order.
@@ -19,6 +21,9 @@ import java.util.Arrays;
  */
 public class UpdateOrderController {
 
+    // Predefined order statuses, also offered by the bulk edit of the order table
+    static final List<String> ORDER_STATUSES = List.of("Pending", "Processing", "Shipped", "Delivered", "Canceled");
+
     @FXML
     private TextField orderNumberField;
 
@@ -47,7 +52,7 @@ public class UpdateOrderController {
     @FXML
     public void initialize() {
         // Add predefined order statuses to the ComboBox
-        orderStatusComboBox.getItems().addAll("Pending", "Processing", "Shipped", "Delivered", "Canceled");
+        orderStatusComboBox.getItems().addAll(ORDER_STATUSES);
     }
 
     /**
@@ -93,7 +98,7 @@ public class UpdateOrderController {
         currentOrder.setItems(Arrays.asList(items.split("\n"))); // Store each item as a separate entry
 
         // Save the updated order in Redis
-        orderService.updateOrder(currentOrder);
+        CommandTracer.run("UpdateOrderController.saveOrder", () -> orderService.updateOrder(currentOrder));
 
         // Show success message
         showAlert(Alert.AlertType.INFORMATION, "Success", "Order updated successfully!");
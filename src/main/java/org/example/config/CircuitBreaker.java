@@ -0,0 +1,117 @@
+package org.example.config;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Stops sending commands to a Redis server that does not answer.
+ * <p>
+ * After {@code cms.redis.breaker.failures} (default 3) connection failures or timeouts in a row the circuit
+ * opens: {@link #check()} then fails immediately instead of letting every caller wait for the socket timeout.
+ * While it is open, a background probe connects to the server with exponential backoff, from
+ * {@code cms.redis.retry.minMillis} (default 250) up to {@code cms.redis.retry.maxMillis} (default 30000); the
+ * first probe that gets an answer closes the circuit again.
+ *
+ * @author isil
+ */
+final class CircuitBreaker {
+
+    private static final Logger LOG = Logger.getLogger(CircuitBreaker.class.getName());
+
+    static final long MIN_RETRY_MILLIS = Long.getLong("cms.redis.retry.minMillis", 250L);
+    static final long MAX_RETRY_MILLIS = Long.getLong("cms.redis.retry.maxMillis", 30_000L);
+    private static final int FAILURE_THRESHOLD = Integer.getInteger("cms.redis.breaker.failures", 3);
+
+    /**
+     * Runs the probes, and the reconnects of {@link RedisConnection}.
+     */
+    static final ScheduledExecutorService HEALTH = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "redis-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final BooleanSupplier probe;
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile boolean open;
+    private volatile boolean closed;
+
+    /**
+     * @param name  the server, for log messages
+     * @param probe connects to the server outside the pool and returns true if it answered
+     */
+    CircuitBreaker(String name, BooleanSupplier probe) {
+        this.name = name;
+        this.probe = probe;
+    }
+
+    /**
+     * @throws JedisConnectionException if the circuit is open
+     */
+    void check() {
+        if (open) {
+            throw new JedisConnectionException("Redis at " + name + " is unreachable, failing fast until it answers");
+        }
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    void success() {
+        if (failures.get() != 0) { // Most calls succeed; do not write the shared counter for each of them
+            failures.set(0);
+        }
+    }
+
+    void failure() {
+        if (failures.incrementAndGet() < FAILURE_THRESHOLD) {
+            return;
+        }
+        synchronized (this) {
+            if (open || closed) {
+                return;
+            }
+            open = true;
+        }
+        LOG.warning("Redis at " + name + " is unreachable, calls fail fast until it answers again");
+        schedule(MIN_RETRY_MILLIS);
+    }
+
+    /**
+     * Stops probing, when the client is closed.
+     */
+    void close() {
+        closed = true;
+    }
+
+    private void schedule(long delayMillis) {
+        HEALTH.schedule(() -> probe(delayMillis), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(long delayMillis) {
+        if (closed) {
+            return;
+        }
+        boolean answered;
+        try {
+            answered = probe.getAsBoolean();
+        } catch (RuntimeException e) {
+            answered = false; // A failed probe must not end the probing
+        }
+        if (answered) {
+            failures.set(0);
+            open = false;
+            LOG.info("Redis at " + name + " answers again");
+        } else {
+            schedule(Math.min(delayMillis * 2, MAX_RETRY_MILLIS));
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.example.config;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.example.metrics.CommandTracer;
+import org.example.metrics.Metrics;
+import org.example.metrics.OperationMetrics;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisSocketFactory;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.providers.PooledConnectionProvider;
+
+import java.util.List;
+
+/**
+ * Connection pool that measures how long it takes to acquire a connection and whose connections count every
+ * request flushed to Redis as one round trip (see {@link Metrics#roundTrip()}). When command tracing is enabled,
+ * the connections also report every command and the time spent waiting for replies to the
+ * {@link CommandTracer} action running on the calling thread.
+ * <p>
+ * Connection failures and timeouts feed a {@link CircuitBreaker}: while it is open, connections are refused
+ * immediately. When the server answers again, the idle connections, which were opened before the outage, are
+ * dropped, so the next calls do not fail on dead sockets. A pool for long-running commands to the same server
+ * ({@link #forBulk}) shares the breaker but does not feed it, so a slow scan does not count as an outage.
+ *
+ * @author isil
+ */
+class InstrumentedConnectionProvider extends PooledConnectionProvider {
+
+    private static final OperationMetrics ACQUIRE = Metrics.operation("RedisConnection.acquire");
+
+    private final CircuitBreaker breaker;
+    private final boolean reportsFailures;
+
+    /**
+     * @param name the server, for log messages
+     */
+    InstrumentedConnectionProvider(String name, JedisSocketFactory socketFactory, JedisClientConfig clientConfig,
+                                   GenericObjectPoolConfig<Connection> poolConfig) {
+        this(name, new Factory(socketFactory, clientConfig), poolConfig);
+    }
+
+    private InstrumentedConnectionProvider(String name, Factory factory,
+                                           GenericObjectPoolConfig<Connection> poolConfig) {
+        super(factory, poolConfig);
+        breaker = new CircuitBreaker(name, () -> probe(factory));
+        reportsFailures = true;
+        factory.breaker = breaker; // Set before the first connection is made, which is in the first getConnection()
+    }
+
+    private InstrumentedConnectionProvider(CircuitBreaker breaker, Factory factory,
+                                           GenericObjectPoolConfig<Connection> poolConfig) {
+        super(factory, poolConfig);
+        this.breaker = breaker;
+        reportsFailures = false;
+    }
+
+    /**
+     * Creates a pool to the same server for bulk and maintenance commands, which are given a longer timeout:
+     * it refuses connections while this pool's circuit is open, but its failures and timeouts are not counted.
+     */
+    InstrumentedConnectionProvider forBulk(JedisSocketFactory socketFactory, JedisClientConfig clientConfig,
+                                           GenericObjectPoolConfig<Connection> poolConfig) {
+        return new InstrumentedConnectionProvider(breaker, new Factory(socketFactory, clientConfig), poolConfig);
+    }
+
+    /**
+     * @return true if the circuit is open, i.e. connections are refused
+     */
+    boolean isUnavailable() {
+        return breaker.isOpen();
+    }
+
+    private boolean probe(Factory factory) {
+        try (Connection connection = new Connection(factory.socketFactory, factory.clientConfig)) {
+            if (!connection.ping()) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            return false;
+        }
+        getPool().clear();
+        return true;
+    }
+
+    @Override
+    public Connection getConnection() {
+        breaker.check();
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } catch (JedisConnectionException e) {
+            if (reportsFailures) {
+                breaker.failure();
+            }
+            ACQUIRE.error();
+            throw e;
+        } catch (RuntimeException e) {
+            ACQUIRE.error();
+            throw e;
+        } finally {
+            ACQUIRE.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(CommandArguments args) {
+        return getConnection(); // A single pool serves every command
+    }
+
+    @Override
+    public void close() {
+        if (reportsFailures) { // Owns the breaker
+            breaker.close();
+        }
+        super.close();
+    }
+
+    /**
+     * A connection that reports each flush of its output buffer (one request or one pipeline batch) and, when
+     * traced, each command it sends. Replies and connection failures are reported to the circuit breaker.
+     */
+    private static final class CountingConnection extends Connection {
+        private final CircuitBreaker breaker;
+
+        CountingConnection(JedisSocketFactory socketFactory, JedisClientConfig clientConfig, CircuitBreaker breaker) {
+            super(socketFactory, clientConfig);
+            this.breaker = breaker;
+        }
+
+        @Override
+        protected void flush() {
+            Metrics.roundTrip();
+            super.flush();
+        }
+
+        @Override
+        public void sendCommand(CommandArguments args) {
+            CommandTracer.Action action = CommandTracer.current();
+            if (action != null) {
+                action.command(args);
+            }
+            super.sendCommand(args);
+        }
+
+        @Override
+        public <T> T executeCommand(CommandObject<T> commandObject) {
+            CommandTracer.Action action = CommandTracer.current();
+            long start = action == null ? 0 : System.nanoTime();
+            try {
+                T reply = super.executeCommand(commandObject);
+                succeeded();
+                return reply;
+            } catch (JedisConnectionException e) {
+                failed();
+                throw e;
+            } finally {
+                if (action != null) {
+                    action.redisTime(System.nanoTime() - start);
+                }
+            }
+        }
+
+        @Override
+        public List<Object> getMany(int count) {
+            CommandTracer.Action action = CommandTracer.current();
+            long start = action == null ? 0 : System.nanoTime();
+            try {
+                List<Object> replies = super.getMany(count); // Replies of a pipeline batch
+                succeeded();
+                return replies;
+            } catch (JedisConnectionException e) {
+                failed();
+                throw e;
+            } finally {
+                if (action != null) {
+                    action.redisTime(System.nanoTime() - start);
+                }
+            }
+        }
+
+        // The breaker is not set yet while the super constructor sets up the connection; failures there reach
+        // the breaker through getConnection()
+
+        private void succeeded() {
+            if (breaker != null) {
+                breaker.success();
+            }
+        }
+
+        private void failed() {
+            if (breaker != null) {
+                breaker.failure();
+            }
+        }
+    }
+
+    /**
+     * Same as Jedis' own ConnectionFactory, but creates counting connections.
+     */
+    private static final class Factory implements PooledObjectFactory<Connection> {
+        private final JedisSocketFactory socketFactory;
+        private final JedisClientConfig clientConfig;
+        private CircuitBreaker breaker;
+
+        Factory(JedisSocketFactory socketFactory, JedisClientConfig clientConfig) {
+            this.socketFactory = socketFactory;
+            this.clientConfig = clientConfig;
+        }
+
+        @Override
+        public PooledObject<Connection> makeObject() {
+            return new DefaultPooledObject<>(new CountingConnection(socketFactory, clientConfig, breaker));
+        }
+
+        @Override
+        public void destroyObject(PooledObject<Connection> pooledConnection) {
+            Connection connection = pooledConnection.getObject();
+            if (connection.isConnected()) {
+                try {
+                    connection.close();
+                } catch (RuntimeException e) {
+                    // The connection is being discarded anyway
+                }
+            }
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<Connection> pooledConnection) {
+            try {
+                return pooledConnection.getObject().isConnected() && pooledConnection.getObject().ping();
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void activateObject(PooledObject<Connection> pooledConnection) {
+        }
+
+        @Override
+        public void passivateObject(PooledObject<Connection> pooledConnection) {
+        }
+    }
+}
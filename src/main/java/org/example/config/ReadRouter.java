@@ -0,0 +1,145 @@
+package org.example.config;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Sends reads to replicas and writes to the primary.
+ * <p>
+ * Replica lag is measured with a heartbeat: every {@code cms.redis.replica.heartbeatMillis} (default 250) the
+ * current time is written to the primary and read back from each replica. The age of the value a replica
+ * returns is its lag (with the heartbeat interval as resolution). Replicas that lag more than
+ * {@code cms.redis.replica.maxLagMillis} (default 1000) or cannot be reached are skipped; if no replica is
+ * usable, reads go to the primary.
+ * <p>
+ * Read-your-writes: for {@code cms.redis.readYourWrites.millis} (default 2000, 0 disables it) after a write
+ * was started through {@link RedisConnection#getWriteConnection()}, all reads go to the primary, so a table
+ * that is refreshed right after a save always shows the saved data.
+ *
+ * @author isil
+ */
+final class ReadRouter implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ReadRouter.class.getName());
+
+    static final String HEARTBEAT_KEY = "heartbeat:replication";
+
+    private static final long HEARTBEAT_MILLIS = Long.getLong("cms.redis.replica.heartbeatMillis", 250L);
+    private static final long MAX_LAG_MILLIS = Long.getLong("cms.redis.replica.maxLagMillis", 1000L);
+    private static final long STICKY_MILLIS = Long.getLong("cms.redis.readYourWrites.millis", 2000L);
+
+    private final UnifiedJedis primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ScheduledExecutorService heartbeat;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile long lastWriteMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * @param primary       the primary's client
+     * @param addresses     the replicas
+     * @param clientFactory creates the client of one replica
+     */
+    ReadRouter(UnifiedJedis primary, List<HostAndPort> addresses, Function<HostAndPort, UnifiedJedis> clientFactory) {
+        this.primary = primary;
+        for (HostAndPort address : addresses) {
+            replicas.add(new Replica(address, clientFactory.apply(address)));
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::beat, 0, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return a usable replica (round robin), or the primary if there is none or a write was made recently
+     */
+    UnifiedJedis forRead() {
+        long now = System.currentTimeMillis();
+        if (now - lastWriteMillis < STICKY_MILLIS) {
+            return primary;
+        }
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.isUsable(now)) {
+                return replica.client;
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Records that a write is being made, starting the read-your-writes period.
+     */
+    void wrote() {
+        lastWriteMillis = System.currentTimeMillis();
+    }
+
+    private void beat() {
+        try {
+            primary.set(HEARTBEAT_KEY, String.valueOf(System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            // Primary unreachable; the replicas' heartbeats age and they are taken out of rotation
+        }
+        for (Replica replica : replicas) {
+            replica.check();
+        }
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.client.close();
+        }
+    }
+
+    private static final class Replica {
+        private final HostAndPort address;
+        private final UnifiedJedis client;
+        private volatile boolean inSync;
+        private volatile long checkedMillis;
+
+        Replica(HostAndPort address, UnifiedJedis client) {
+            this.address = address;
+            this.client = client;
+        }
+
+        boolean isUsable(long now) {
+            // A heartbeat thread that stopped checking must not keep a replica in rotation
+            return inSync && now - checkedMillis <= MAX_LAG_MILLIS + HEARTBEAT_MILLIS;
+        }
+
+        void check() {
+            long lag;
+            try {
+                String value = client.get(HEARTBEAT_KEY);
+                lag = value == null ? Long.MAX_VALUE : System.currentTimeMillis() - Long.parseLong(value);
+            } catch (RuntimeException e) {
+                lag = Long.MAX_VALUE;
+            }
+            boolean nowInSync = lag <= MAX_LAG_MILLIS;
+            if (nowInSync != inSync) {
+                if (nowInSync) {
+                    LOG.info("Replica " + address + " is in sync, reads are routed to it");
+                } else {
+                    LOG.warning("Replica " + address + " is lagging or unreachable"
+                            + (lag == Long.MAX_VALUE ? "" : " (" + lag + " ms)") + ", reads skip it");
+                }
+            }
+            inSync = nowInSync;
+            checkedMillis = System.currentTimeMillis();
+        }
+    }
+}
@@ -1,34 +1,330 @@
 package org.example.config;
 
-import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.DefaultJedisSocketFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Manages the Redis database connection for the application.
  * Provides methods to establish and close a connection with Redis.
- * The connection is established using Jedis client with default settings (localhost and port 6379).
+ * The connection is established using a pooled Jedis client with default settings (localhost and port 6379).
+ * Host and port can be overridden with the {@code cms.redis.host} and {@code cms.redis.port} system properties,
+ * the maximum number of pooled connections with {@code cms.redis.pool.size} (default 8).
+ * A server on the same host can be reached through its Unix domain socket instead of TCP by setting
+ * {@code cms.redis.socket} to the socket's path (Java 16 or later, single-server mode only, see
+ * {@link UnixSocketFactory}); host and port are then ignored. Replicas are always reached through TCP.
+ * Connection acquisition time and Redis round trips are recorded in {@link org.example.metrics.Metrics}.
+ * <p>
+ * Cluster mode: if {@code cms.redis.cluster} is set to a comma-separated list of seed nodes
+ * ({@code host:port,host:port}), a {@link JedisCluster} is used instead and host/port are ignored. The services
+ * then switch to a hash-tagged key scheme, and full scans run on all masters in parallel (see {@link RedisNodes}).
+ * The cluster client keeps its own pools per node, so acquisition time and round trips are not measured there.
+ * <p>
+ * Replicas: with {@code cms.redis.replicas=host:port,...} (single-server mode only) the services send reads
+ * through {@link #getReadConnection()} to up-to-date replicas and writes through {@link #getWriteConnection()}
+ * to the primary; see {@link ReadRouter} for the lag threshold and read-your-writes settings.
+ * <p>
+ * The connection is created lazily and asynchronously: the first call to {@link #connectAsync()} starts a
+ * warm-up (connect, PING and preloading of all registered Lua scripts) on a background thread, so callers
+ * such as the JavaFX GUI can paint their first frame while Redis is still being reached.
+ * {@link #getConnection()} only blocks when the data is actually needed.
+ * <p>
+ * Outages: every call is bounded by {@code cms.redis.timeoutMillis} (default 1000), used as connect and socket
+ * timeout and as the longest wait for a pooled connection. If the warm-up fails, calls fail immediately and
+ * the warm-up is retried in the background with exponential backoff (see {@link CircuitBreaker} for the
+ * settings). Once connected, a {@link CircuitBreaker} per server refuses calls while the server does not answer,
+ * so that callers fail fast ({@link JedisConnectionException}) instead of each waiting for the timeout; the
+ * services then serve cached data where they have it. The cluster client is only bounded by the timeout.
+ * Full scans, pipelined bulk writes and maintenance jobs legitimately take longer: they use
+ * {@link #getBulkConnection(boolean)}, a separate client to the primary with {@code cms.redis.bulkTimeoutMillis}
+ * (default 60000) whose timeouts do not open the circuit.
  *
  * @author isil
  */
 public class RedisConnection {
-    private static Jedis jedis = null;
+    private static final Logger LOG = Logger.getLogger(RedisConnection.class.getName());
+    private static final String DEFAULT_HOST = "127.0.0.1"; // localhost
+    private static final int DEFAULT_PORT = 6379; // default port
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final int TIMEOUT_MILLIS = Integer.getInteger("cms.redis.timeoutMillis", 1000);
+    private static final int BULK_TIMEOUT_MILLIS = Integer.getInteger("cms.redis.bulkTimeoutMillis", 60_000);
+
+    private static volatile CompletableFuture<UnifiedJedis> connection = null;
+    private static volatile long connectMillis = -1;
+    private static volatile ReadRouter readRouter = null; // Only set if replicas are configured
+    private static volatile InstrumentedConnectionProvider primaryProvider = null; // Not set in cluster mode
+    private static volatile UnifiedJedis bulkConnection = null;
+    private static long retryMillis = CircuitBreaker.MIN_RETRY_MILLIS; // Guarded by the class
+
+    private RedisConnection() {
+    }
+
+    /**
+     * Checks whether the application is configured to use a Redis Cluster. Known before the connection exists,
+     * so it can be used to choose the key scheme.
+     *
+     * @return true if {@code cms.redis.cluster} is set
+     */
+    public static boolean isClusterMode() {
+        return System.getProperty("cms.redis.cluster") != null;
+    }
+
+    /**
+     * Starts the connection warm-up in the background if it has not been started yet.
+     * Calling this method several times returns the same future.
+     *
+     * @return a future completed with the warmed-up connection, or completed exceptionally if Redis is unreachable
+     */
+    public static CompletableFuture<UnifiedJedis> connectAsync() {
+        CompletableFuture<UnifiedJedis> current = connection;
+        if (current == null) {
+            synchronized (RedisConnection.class) {
+                current = connection;
+                if (current == null) {
+                    current = new CompletableFuture<>();
+                    connection = current;
+                    Thread warmUp = new Thread(warmUpTask(current), "redis-warm-up");
+                    warmUp.setDaemon(true);
+                    warmUp.start();
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Runnable warmUpTask(CompletableFuture<UnifiedJedis> target) {
+        return () -> {
+            long start = System.nanoTime();
+            UnifiedJedis jedis = null;
+            UnifiedJedis bulk = null;
+            try {
+                // Initialize and connect to Redis server
+                ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+                int poolSize = Integer.getInteger("cms.redis.pool.size", DEFAULT_POOL_SIZE);
+                poolConfig.setMaxTotal(poolSize);
+                poolConfig.setMaxIdle(poolSize);
+                poolConfig.setMaxWait(Duration.ofMillis(TIMEOUT_MILLIS));
+                JedisClientConfig clientConfig = DefaultJedisClientConfig.builder().timeoutMillis(TIMEOUT_MILLIS)
+                        .build();
+                ConnectionPoolConfig bulkPoolConfig = new ConnectionPoolConfig();
+                bulkPoolConfig.setMaxTotal(poolSize);
+                bulkPoolConfig.setMaxIdle(poolSize);
+                bulkPoolConfig.setMaxWait(Duration.ofMillis(BULK_TIMEOUT_MILLIS));
+                JedisClientConfig bulkClientConfig = DefaultJedisClientConfig.builder()
+                        .connectionTimeoutMillis(TIMEOUT_MILLIS).socketTimeoutMillis(BULK_TIMEOUT_MILLIS).build();
+                InstrumentedConnectionProvider provider = null;
+                if (isClusterMode()) {
+                    if (System.getProperty("cms.redis.socket") != null) {
+                        LOG.warning("cms.redis.socket is ignored in cluster mode");
+                    }
+                    // Discovers the slot layout from the seed nodes, with a pool per node
+                    Set<HostAndPort> nodes = clusterNodes(System.getProperty("cms.redis.cluster"));
+                    jedis = new JedisCluster(nodes, clientConfig, poolConfig);
+                    bulk = new JedisCluster(nodes, bulkClientConfig, bulkPoolConfig);
+                } else {
+                    String socket = System.getProperty("cms.redis.socket");
+                    if (socket != null) {
+                        provider = new InstrumentedConnectionProvider("unix:" + socket,
+                                new UnixSocketFactory(socket, clientConfig), clientConfig, poolConfig);
+                        bulk = new JedisPooled(provider.forBulk(new UnixSocketFactory(socket, bulkClientConfig),
+                                bulkClientConfig, bulkPoolConfig));
+                    } else {
+                        HostAndPort address = new HostAndPort(System.getProperty("cms.redis.host", DEFAULT_HOST),
+                                Integer.getInteger("cms.redis.port", DEFAULT_PORT));
+                        provider = new InstrumentedConnectionProvider(address.toString(),
+                                new DefaultJedisSocketFactory(address, clientConfig), clientConfig, poolConfig);
+                        bulk = new JedisPooled(provider.forBulk(new DefaultJedisSocketFactory(address,
+                                bulkClientConfig), bulkClientConfig, bulkPoolConfig));
+                    }
+                    jedis = new JedisPooled(provider);
+                }
+                jedis.ping(); // forces the first physical connection
+                RedisScript.preloadAll(jedis);
+                readRouter = createReadRouter(jedis, poolConfig, clientConfig);
+                primaryProvider = provider;
+                bulkConnection = bulk;
+                connectMillis = (System.nanoTime() - start) / 1_000_000;
+                synchronized (RedisConnection.class) {
+                    retryMillis = CircuitBreaker.MIN_RETRY_MILLIS;
+                }
+                target.complete(jedis);
+            } catch (Exception e) {
+                if (jedis != null) {
+                    jedis.close();
+                }
+                if (bulk != null) {
+                    bulk.close();
+                }
+                scheduleRetry(target, e);
+                target.completeExceptionally(e);
+            }
+        };
+    }
 
-    static {
+    /**
+     * Keeps the failed warm-up for a while, so that callers fail immediately, then starts a new one in the
+     * background. The delay doubles with every failure.
+     */
+    private static void scheduleRetry(CompletableFuture<UnifiedJedis> failed, Exception cause) {
+        long delay;
+        synchronized (RedisConnection.class) {
+            delay = retryMillis;
+            retryMillis = Math.min(retryMillis * 2, CircuitBreaker.MAX_RETRY_MILLIS);
+        }
+        LOG.warning("Could not connect to Redis (" + cause.getMessage() + "), retrying in " + delay + " ms");
+        CircuitBreaker.HEALTH.schedule(() -> {
+            synchronized (RedisConnection.class) {
+                if (connection != failed) {
+                    return; // Closed in the meantime
+                }
+                connection = null;
+            }
+            connectAsync();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static ReadRouter createReadRouter(UnifiedJedis primary, ConnectionPoolConfig poolConfig,
+                                               JedisClientConfig clientConfig) {
+        String replicas = System.getProperty("cms.redis.replicas");
+        if (replicas == null) {
+            return null;
+        }
+        if (isClusterMode()) {
+            LOG.warning("cms.redis.replicas is ignored in cluster mode");
+            return null;
+        }
+        List<HostAndPort> addresses = new ArrayList<>();
+        for (String replica : replicas.split(",")) {
+            addresses.add(HostAndPort.from(replica.trim()));
+        }
+        return new ReadRouter(primary, addresses, address -> new JedisPooled(new InstrumentedConnectionProvider(
+                address.toString(), new DefaultJedisSocketFactory(address, clientConfig), clientConfig, poolConfig)));
+    }
+
+    private static Set<HostAndPort> clusterNodes(String seeds) {
+        Set<HostAndPort> nodes = new HashSet<>();
+        for (String seed : seeds.split(",")) {
+            nodes.add(HostAndPort.from(seed.trim()));
+        }
+        return nodes;
+    }
+
+    /**
+     * Provides the Redis connection instance, waiting for the warm-up to finish if necessary.
+     *
+     * @return the pooled jedis instance, or the cluster client in cluster mode
+     * @throws JedisConnectionException if Redis could not be reached
+     */
+    public static UnifiedJedis getConnection() {
         try {
-            // Initialize and connect to Redis server
-            jedis = new Jedis("127.0.0.1", 6379); // localhost and default port 6379
-            jedis.connect();
-        } catch (Exception e) {
-            e.printStackTrace();
+            return connectAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException("Interrupted while connecting to Redis", e);
+        } catch (ExecutionException e) {
+            throw new JedisConnectionException("Failed to connect to Redis", e.getCause());
+        }
+    }
+
+    /**
+     * Provides a connection for read-only commands: an up-to-date replica if replicas are configured and no write
+     * was made recently, otherwise the primary. Callers that read several keys which must be consistent with each
+     * other should get the connection once and use it for all of them.
+     *
+     * @return the client to read from
+     * @throws JedisConnectionException if Redis could not be reached
+     */
+    public static UnifiedJedis getReadConnection() {
+        UnifiedJedis primary = getConnection();
+        ReadRouter router = readRouter;
+        return router == null ? primary : router.forRead();
+    }
+
+    /**
+     * Provides the primary for commands that modify data and starts the read-your-writes period, during which
+     * reads are served by the primary as well.
+     *
+     * @return the primary's client
+     * @throws JedisConnectionException if Redis could not be reached
+     */
+    public static UnifiedJedis getWriteConnection() {
+        UnifiedJedis primary = getConnection();
+        ReadRouter router = readRouter;
+        if (router != null) {
+            router.wrote();
+        }
+        return primary;
+    }
+
+    /**
+     * Provides the client for full scans, pipelined bulk writes and maintenance jobs: the primary, with the
+     * longer {@code cms.redis.bulkTimeoutMillis}, and without counting its timeouts as an outage. It refuses
+     * calls while the primary's circuit is open, like the other clients.
+     *
+     * @param write true if the commands modify data, which starts the read-your-writes period
+     * @return the primary's client for long-running commands
+     * @throws JedisConnectionException if Redis could not be reached
+     */
+    public static UnifiedJedis getBulkConnection(boolean write) {
+        UnifiedJedis primary = write ? getWriteConnection() : getConnection();
+        UnifiedJedis bulk = bulkConnection;
+        return bulk == null ? primary : bulk; // Only null if closed in the meantime
+    }
+
+    /**
+     * Checks whether the warm-up has completed successfully, without blocking.
+     *
+     * @return true if a connection is ready to use
+     */
+    public static boolean isConnected() {
+        CompletableFuture<UnifiedJedis> current = connection;
+        return current != null && current.isDone() && !current.isCompletedExceptionally();
+    }
+
+    /**
+     * Checks whether calls are currently refused because Redis did not answer, without blocking.
+     *
+     * @return true if the last warm-up failed or the primary's circuit is open
+     */
+    public static boolean isUnavailable() {
+        CompletableFuture<UnifiedJedis> current = connection;
+        if (current != null && current.isCompletedExceptionally()) {
+            return true;
         }
+        InstrumentedConnectionProvider provider = primaryProvider;
+        return provider != null && provider.isUnavailable();
     }
 
     /**
-     * Provides the Redis connection instance.
+     * @return the connect and socket timeout of the Redis clients
+     */
+    public static int getTimeoutMillis() {
+        return TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Returns how long the last successful warm-up took.
      *
-     * @return jedis instance if connected, null otherwise
+     * @return warm-up duration in milliseconds, or -1 if no connection has been established yet
      */
-    public static Jedis getConnection() {
-        return jedis;
+    public static long getConnectMillis() {
+        return connectMillis;
     }
 
     /**
@@ -36,12 +332,13 @@ public class RedisConnection {
      * It checks if the connection is successful by sending a PING command.
      */
     public static void main(String[] args) {
-        Jedis jedis = getConnection();
-        if (jedis != null) {
-            System.out.println("Connection successful: " + jedis.ping());
-        } else {
+        try {
+            UnifiedJedis jedis = getConnection();
+            System.out.println("Connection successful: " + jedis.ping() + " (" + connectMillis + " ms)");
+        } catch (JedisConnectionException e) {
             System.out.println("Failed to connect to Redis.");
         }
+        closeConnection();
     }
 
     /**
@@ -49,8 +346,26 @@ public class RedisConnection {
      * It ensures the connection is properly terminated to avoid resource leaks.
      */
     public static void closeConnection() {
-        if (jedis != null) {
-            jedis.close();
+        CompletableFuture<UnifiedJedis> current;
+        ReadRouter router;
+        UnifiedJedis bulk;
+        synchronized (RedisConnection.class) {
+            current = connection;
+            connection = null;
+            router = readRouter;
+            readRouter = null;
+            primaryProvider = null;
+            bulk = bulkConnection;
+            bulkConnection = null;
+        }
+        if (router != null) {
+            router.close();
+        }
+        if (bulk != null) {
+            bulk.close();
+        }
+        if (current != null) {
+            current.thenAccept(UnifiedJedis::close);
         }
     }
 }
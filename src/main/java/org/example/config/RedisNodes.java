@@ -0,0 +1,140 @@
+package org.example.config;
+
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.ConnectionPool;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Runs work that has to look at every key of the data set (full scans) on each master node.
+ * <p>
+ * With a single server the task simply runs once on a connection of the pool. In cluster mode the current
+ * masters are read from CLUSTER NODES and the task runs on all of them in parallel; the results are merged.
+ * Since a task gets a connection to one specific node, it may only access keys stored on that node, i.e. keys
+ * it found with {@link #scan(Jedis, String, String)} and keys sharing their hash tag.
+ *
+ * @author isil
+ */
+public final class RedisNodes {
+
+    private static final int SCAN_COUNT = 1000;
+
+    private static final ExecutorService FAN_OUT = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "redis-fan-out");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RedisNodes() {
+    }
+
+    /**
+     * Runs the task once per master node and merges the results.
+     *
+     * @param client the application's client, see {@link RedisConnection#getConnection()}
+     * @param task   the work to do on one node
+     * @return the results of all nodes, in no particular order
+     */
+    public static <T> List<T> onEachMaster(UnifiedJedis client, Function<Jedis, List<T>> task) {
+        if (client instanceof JedisPooled) {
+            return run(((JedisPooled) client).getPool(), task);
+        }
+        if (!(client instanceof JedisCluster)) {
+            throw new IllegalArgumentException("Unsupported Redis client: " + client.getClass().getName());
+        }
+
+        List<CompletableFuture<List<T>>> results = new ArrayList<>();
+        for (ConnectionPool master : masters((JedisCluster) client)) {
+            results.add(CompletableFuture.supplyAsync(() -> run(master, task), FAN_OUT));
+        }
+        List<T> merged = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<T>> result : results) {
+                merged.addAll(result.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return merged;
+    }
+
+    /**
+     * Iterates over the keys of one node with SCAN, without blocking the server like KEYS does.
+     *
+     * @param node    a connection to the node
+     * @param pattern the glob-style key pattern
+     * @param type    the Redis type of the keys to return, e.g. "hash"
+     * @return the matching keys
+     */
+    public static List<String> scan(Jedis node, String pattern, String type) {
+        ScanParams params = new ScanParams().match(pattern).count(SCAN_COUNT);
+        List<String> keys = new ArrayList<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = node.scan(cursor, params, type);
+            keys.addAll(page.getResult());
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return keys;
+    }
+
+    private static <T> List<T> run(Pool<Connection> pool, Function<Jedis, List<T>> task) {
+        try (Jedis node = new Jedis(pool.getResource())) { // Closing returns the connection to the pool
+            return task.apply(node);
+        }
+    }
+
+    /**
+     * Reads the current masters from the topology reported by the first reachable node.
+     */
+    private static List<ConnectionPool> masters(JedisCluster cluster) {
+        Map<String, ConnectionPool> nodes = cluster.getClusterNodes();
+        String topology = null;
+        for (ConnectionPool pool : nodes.values()) {
+            try (Jedis node = new Jedis(pool.getResource())) {
+                topology = node.clusterNodes();
+                break;
+            } catch (JedisConnectionException e) {
+                // Try the next node
+            }
+        }
+        if (topology == null) {
+            throw new JedisConnectionException("No cluster node is reachable");
+        }
+
+        List<ConnectionPool> masters = new ArrayList<>();
+        for (String line : topology.split("\n")) {
+            // <id> <ip:port@cport[,hostname]> <flags> <master id> ...
+            String[] fields = line.trim().split(" ");
+            if (fields.length < 3 || !fields[2].contains("master") || fields[2].contains("fail")) {
+                continue;
+            }
+            String address = fields[1].split("@")[0];
+            ConnectionPool pool = nodes.get(address);
+            if (pool == null) {
+                throw new JedisConnectionException("No connection to master " + address
+                        + "; the cluster topology is changing");
+            }
+            masters.add(pool);
+        }
+        return masters;
+    }
+}
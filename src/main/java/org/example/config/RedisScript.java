@@ -0,0 +1,85 @@
+package org.example.config;
+
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A Lua script executed on the Redis server.
+ * Every script created through {@link #of(String)} is registered so that {@link RedisConnection} can preload it
+ * with SCRIPT LOAD during warm-up; afterwards it is invoked by its SHA1 digest (EVALSHA) to avoid sending the
+ * script body on every call.
+ *
+ * @author isil
+ */
+public final class RedisScript {
+    private static final List<RedisScript> REGISTRY = new CopyOnWriteArrayList<>();
+
+    private final String source;
+    private volatile String sha;
+
+    private RedisScript(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Creates and registers a script.
+     *
+     * @param source the Lua source code
+     * @return the registered script
+     */
+    public static RedisScript of(String source) {
+        RedisScript script = new RedisScript(source);
+        REGISTRY.add(script);
+        return script;
+    }
+
+    /**
+     * Loads every registered script into the Redis script cache.
+     */
+    static void preloadAll(UnifiedJedis jedis) {
+        for (RedisScript script : REGISTRY) {
+            script.sha = jedis.scriptLoad(script.source);
+        }
+    }
+
+    /**
+     * Executes the script, loading it again if the server's script cache has been flushed.
+     *
+     * @param jedis the connection to run the script on
+     * @param keys  the keys the script touches
+     * @param args  additional script arguments
+     * @return the raw script result
+     */
+    public Object eval(UnifiedJedis jedis, List<String> keys, List<String> args) {
+        String digest = sha;
+        if (digest != null) {
+            try {
+                return jedis.evalsha(digest, keys, args);
+            } catch (JedisNoScriptException e) {
+                // Server restarted or SCRIPT FLUSH was issued; fall through and reload
+            }
+        }
+        sha = jedis.scriptLoad(source);
+        return jedis.evalsha(sha, keys, args);
+    }
+
+    /**
+     * Queues the script on a pipeline. A script cache flush cannot be handled transparently here: the response
+     * then throws {@link JedisNoScriptException}, and the caller should retry with
+     * {@link #eval(UnifiedJedis, List, List)}.
+     *
+     * @param pipeline the pipeline to queue the script on
+     * @param keys     the keys the script touches
+     * @param args     additional script arguments
+     * @return the pending script result
+     */
+    public Response<Object> eval(AbstractPipeline pipeline, List<String> keys, List<String> args) {
+        String digest = sha;
+        return digest != null ? pipeline.evalsha(digest, keys, args) : pipeline.eval(source, keys, args);
+    }
+}
@@ -0,0 +1,227 @@
+package org.example.config;
+
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisSocketFactory;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Connects to a Redis server on the same host through its Unix domain socket ({@code unixsocket} in
+ * redis.conf) instead of TCP, see {@code cms.redis.socket} in {@link RedisConnection}. A round trip then skips
+ * the loopback TCP/IP stack, which is a noticeable part of the latency of small commands.
+ * <p>
+ * Jedis reads and writes a {@link Socket}, while the JDK offers Unix domain sockets only as a
+ * {@link SocketChannel} (Java 16 and later), so {@link ChannelSocket} adapts the channel; the connect and
+ * socket timeouts are enforced with a selector. The Java 16 classes are looked up by reflection, so the
+ * application still runs on Java 11 as long as the setting is not used.
+ *
+ * @author isil
+ */
+final class UnixSocketFactory implements JedisSocketFactory {
+
+    private final String path;
+    private final int connectionTimeoutMillis;
+    private final int socketTimeoutMillis;
+
+    UnixSocketFactory(String path, JedisClientConfig clientConfig) {
+        this.path = path;
+        this.connectionTimeoutMillis = clientConfig.getConnectionTimeoutMillis();
+        this.socketTimeoutMillis = clientConfig.getSocketTimeoutMillis();
+    }
+
+    @Override
+    public Socket createSocket() {
+        SocketChannel channel = openChannel();
+        ChannelSocket socket = null;
+        try {
+            channel.configureBlocking(false);
+            socket = new ChannelSocket(channel, path);
+            if (!channel.connect(address())) {
+                socket.setSoTimeout(connectionTimeoutMillis);
+                while (!channel.finishConnect()) {
+                    socket.await(SelectionKey.OP_CONNECT, "Connect timed out");
+                }
+            }
+            socket.setSoTimeout(socketTimeoutMillis);
+            return socket;
+        } catch (IOException e) {
+            try {
+                if (socket != null) {
+                    socket.close(); // With its selector
+                } else {
+                    channel.close();
+                }
+            } catch (IOException closeError) {
+                // Not connected anyway
+            }
+            throw new JedisConnectionException("Failed to connect to " + path, e);
+        }
+    }
+
+    private SocketChannel openChannel() {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            return (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (InvocationTargetException e) {
+            throw new JedisConnectionException("Failed to open a socket for " + path, e.getCause());
+        } catch (IllegalArgumentException | ReflectiveOperationException e) {
+            throw new JedisConnectionException("Unix domain sockets (cms.redis.socket) need Java 16 or later", e);
+        }
+    }
+
+    private SocketAddress address() {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class)
+                    .invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new JedisConnectionException("Invalid Unix domain socket path: " + path, e);
+        }
+    }
+
+    /**
+     * A connected non-blocking channel behind the part of the {@link Socket} API that Jedis uses: the streams,
+     * the timeout and the state checks. A connection is only used by one thread at a time, so a single selector
+     * serves both directions.
+     */
+    private static final class ChannelSocket extends Socket {
+        private final SocketChannel channel;
+        private final Selector selector;
+        private final SelectionKey key;
+        private final String path;
+        private volatile int timeoutMillis;
+
+        private final InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (true) {
+                    int read = channel.read(buffer);
+                    if (read != 0) {
+                        return read; // -1 at the end of the stream
+                    }
+                    await(SelectionKey.OP_READ, "Read timed out");
+                }
+            }
+        };
+
+        private final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) {
+                    if (channel.write(buffer) == 0) {
+                        await(SelectionKey.OP_WRITE, "Write timed out");
+                    }
+                }
+            }
+        };
+
+        ChannelSocket(SocketChannel channel, String path) throws IOException {
+            this.channel = channel;
+            this.path = path;
+            selector = Selector.open();
+            key = channel.register(selector, 0);
+        }
+
+        /**
+         * Waits until the channel is ready for the operation.
+         *
+         * @throws SocketTimeoutException if it is not ready within the timeout (0 waits forever)
+         */
+        void await(int operation, String timeoutMessage) throws IOException {
+            int timeout = timeoutMillis;
+            key.interestOps(operation);
+            int ready = selector.select(timeout);
+            selector.selectedKeys().clear();
+            if (ready == 0 && timeout > 0) {
+                throw new SocketTimeoutException(timeoutMessage);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) {
+            timeoutMillis = timeout;
+        }
+
+        @Override
+        public int getSoTimeout() {
+            return timeoutMillis;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return channel.isConnected();
+        }
+
+        @Override
+        public boolean isBound() {
+            return channel.isConnected();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !channel.isOpen();
+        }
+
+        @Override
+        public boolean isInputShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isOutputShutdown() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                selector.close();
+            } finally {
+                channel.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ChannelSocket[unix:" + path + "]";
+        }
+    }
+}
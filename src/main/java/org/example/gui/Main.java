@@ -1,30 +1,68 @@
 package org.example.gui;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import org.example.CustomerController;
+import org.example.config.RedisConnection;
+import org.example.metrics.CommandTracer;
+import org.example.repository.Repositories;
+import org.example.service.OrderService;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Main entry point for the Customer Management System application.
  * This class is responsible for launching the JavaFX application and loading the primary GUI scene.
+ * <p>
+ * The Redis connection is warmed up in parallel with the JavaFX startup, so the main window is shown
+ * (in a "connecting" state) without waiting for Redis. The time until the first frame is rendered is
+ * measured from the launch and logged. On exit the customer table is saved to the local
+ * snapshot that is shown on the next start.
  *
  * @author isil
  */
 public class Main extends Application {
 
+    private static final Logger LOG = Logger.getLogger(Main.class.getName());
+
+    private static final long LAUNCH_NANOS = System.nanoTime(); // Reference point for startup measurements
+
+    private CustomerController customerController;
+
     public static void main(String[] args) {
         // Launches the JavaFX application
         launch(args);
     }
 
+    /**
+     * Returns the time elapsed since the application class was loaded.
+     *
+     * @return elapsed milliseconds since launch
+     */
+    public static long millisSinceLaunch() {
+        return (System.nanoTime() - LAUNCH_NANOS) / 1_000_000;
+    }
+
+    @Override
+    public void init() {
+        // Start connecting to Redis while the JavaFX toolkit builds the window
+        if (Repositories.usesRedis()) {
+            RedisConnection.connectAsync();
+        }
+    }
+
     @Override
     public void start(Stage primaryStage) {
         try {
             // Loads the FXML file for the main GUI interface
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/gui.fxml"));
             Scene scene = new Scene(loader.load());
+            customerController = loader.getController();
 
             // Sets up the main stage (window) properties
             primaryStage.setScene(scene);
@@ -36,10 +74,39 @@ public class Main extends Application {
 
             // Displays the main stage
             primaryStage.show();
+            reportFirstFrame();
 
         } catch (Exception e) {
             // Handles and logs any exceptions during the loading process
-            System.out.println("Exception occurred while loading the GUI: " + e);
+            LOG.log(Level.SEVERE, "Exception occurred while loading the GUI", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Persist the customer table so the next start can show it immediately
+        if (customerController != null) {
+            customerController.saveSnapshotNow();
+        }
+        // Write queued order updates (write-behind mode); anything left stays in the journal
+        if (!OrderService.flushPendingWrites(5_000)) {
+            LOG.warning("Some order updates are still queued; they will be written on the next start");
         }
+        RedisConnection.closeConnection();
+        CommandTracer.logSummary(); // Per-action Redis command statistics, if tracing is enabled
+    }
+
+    /**
+     * Logs the time-to-first-frame once the first pulse after showing the stage has been processed.
+     */
+    private void reportFirstFrame() {
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop(); // Only the first frame is of interest
+                LOG.info("Time to first frame: " + millisSinceLaunch() + " ms"
+                        + (!Repositories.usesRedis() || RedisConnection.isConnected() ? "" : " (Redis still connecting)"));
+            }
+        }.start();
     }
 }
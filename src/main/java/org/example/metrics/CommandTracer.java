@@ -0,0 +1,196 @@
+package org.example.metrics;
+
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.args.Rawable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opt-in tracer that attributes every Redis command to the user action (controller method) that caused it.
+ * <p>
+ * Enable it with {@code -Dcms.redis.trace=true}. Controllers wrap their service calls in
+ * {@code CommandTracer.call("...", () -> ...)} (or {@link #run(String, Runnable)} when nothing is returned);
+ * every command sent on that thread is then counted with its size and time. Per action name the number of executions, commands, bytes
+ * sent, time spent waiting for Redis and total time are aggregated and logged with the metrics summary.
+ * <p>
+ * Any single execution slower than {@code cms.redis.trace.slowMillis} (default 200) is written, with its
+ * per-command breakdown, to the slow operation log ({@code cms.redis.trace.slowLog}, default
+ * {@code ~/.cms/slow-operations.log}) and logged as a warning.
+ * <p>
+ * When tracing is disabled the work runs directly and the connections skip all bookkeeping.
+ *
+ * @author isil
+ */
+public final class CommandTracer {
+
+    private static final Logger LOG = Logger.getLogger(CommandTracer.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("cms.redis.trace");
+    private static final long SLOW_NANOS = Long.getLong("cms.redis.trace.slowMillis", 200L) * 1_000_000L;
+    private static final Path SLOW_LOG = Paths.get(System.getProperty("cms.redis.trace.slowLog",
+            Paths.get(System.getProperty("user.home"), ".cms", "slow-operations.log").toString()));
+
+    private static final ThreadLocal<Action> CURRENT = new ThreadLocal<>();
+    private static final Map<String, ActionStats> STATS = new ConcurrentSkipListMap<>();
+
+    private CommandTracer() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Runs a user action on the current thread and traces the commands it sends. Actions may be nested; commands
+     * are attributed to the innermost one.
+     *
+     * @param name a stable name for the action, e.g. "CustomerController.handleDeleteCustomer"
+     * @param work the service calls of the action
+     * @return what the work returned
+     */
+    public static <T> T call(String name, Supplier<T> work) {
+        if (!ENABLED) {
+            return work.get();
+        }
+        Action action = new Action(name, CURRENT.get());
+        CURRENT.set(action);
+        try {
+            return work.get();
+        } finally {
+            action.end();
+        }
+    }
+
+    /**
+     * Like {@link #call(String, Supplier)}, for an action without a result.
+     */
+    public static void run(String name, Runnable work) {
+        call(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the action currently traced on this thread, or null if there is none or tracing is disabled
+     */
+    public static Action current() {
+        return ENABLED ? CURRENT.get() : null;
+    }
+
+    /**
+     * Logs the aggregated command statistics of every traced action.
+     */
+    public static void logSummary() {
+        if (!ENABLED || STATS.isEmpty()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("[redis-trace]");
+        for (Map.Entry<String, ActionStats> entry : STATS.entrySet()) {
+            ActionStats stats = entry.getValue();
+            long executions = stats.executions.sum();
+            line.append(String.format(Locale.ROOT,
+                    " %s runs=%d commands/run=%.1f bytes/run=%.0f redis=%.2fms/run total=%.2fms/run;",
+                    entry.getKey(), executions, (double) stats.commands.sum() / executions,
+                    (double) stats.bytes.sum() / executions, stats.redisNanos.sum() / 1e6 / executions,
+                    stats.totalNanos.sum() / 1e6 / executions));
+        }
+        LOG.info(line.toString());
+    }
+
+    private static void logSlow(Action action, long totalNanos) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(String.format(Locale.ROOT, "%s SLOW %s took %.1f ms: %d commands, %d bytes, %.1f ms in Redis [",
+                LocalDateTime.now(), action.name, totalNanos / 1e6, action.commands, action.bytes,
+                action.redisNanos / 1e6));
+        String separator = "";
+        for (Map.Entry<String, Integer> command : action.commandCounts.entrySet()) {
+            entry.append(separator).append(command.getKey()).append('=').append(command.getValue());
+            separator = ", ";
+        }
+        entry.append(']');
+        LOG.warning(entry.toString());
+        entry.append(System.lineSeparator());
+        try {
+            if (SLOW_LOG.getParent() != null) {
+                Files.createDirectories(SLOW_LOG.getParent());
+            }
+            Files.write(SLOW_LOG, entry.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not write slow operation log " + SLOW_LOG, e);
+        }
+    }
+
+    /**
+     * One execution of a traced user action. Only used by the thread that started it.
+     */
+    public static final class Action {
+        private final String name;
+        private final Action parent;
+        private final long start = System.nanoTime();
+        private final Map<String, Integer> commandCounts = new TreeMap<>();
+        private int commands;
+        private long bytes;
+        private long redisNanos;
+
+        private Action(String name, Action parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        /**
+         * Records a command sent to Redis.
+         */
+        public void command(CommandArguments args) {
+            commands++;
+            commandCounts.merge(new String(args.getCommand().getRaw(), StandardCharsets.US_ASCII), 1, Integer::sum);
+            for (Rawable arg : args) {
+                bytes += arg.getRaw().length;
+            }
+        }
+
+        /**
+         * Records time spent waiting for a Redis reply.
+         */
+        public void redisTime(long nanos) {
+            redisNanos += nanos;
+        }
+
+        private void end() {
+            CURRENT.set(parent);
+            long totalNanos = System.nanoTime() - start;
+            ActionStats stats = STATS.computeIfAbsent(name, key -> new ActionStats());
+            stats.executions.increment();
+            stats.commands.add(commands);
+            stats.bytes.add(bytes);
+            stats.redisNanos.add(redisNanos);
+            stats.totalNanos.add(totalNanos);
+            if (totalNanos > SLOW_NANOS) {
+                logSlow(this, totalNanos);
+            }
+        }
+    }
+
+    private static final class ActionStats {
+        final LongAdder executions = new LongAdder();
+        final LongAdder commands = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder redisNanos = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the per-operation metrics of the service layer.
+ * <p>
+ * Every operation is exported as a JMX MBean ({@code org.example:type=OperationMetrics,name=...}), so it can be
+ * inspected with JConsole or VisualVM while the application runs. In addition, with
+ * {@code -Dcms.metrics.log.seconds=N} a summary line of all operations that have been called is logged every N
+ * seconds (java.util.logging, INFO), followed by the per-action command statistics if {@link CommandTracer} is
+ * enabled. The periodic summary is off by default.
+ *
+ * @author isil
+ */
+public final class Metrics {
+
+    private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentSkipListMap<>();
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+    private static final long LOG_SECONDS = Long.getLong("cms.metrics.log.seconds", 0L);
+
+    static {
+        if (LOG_SECONDS > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(Metrics::logSummary, LOG_SECONDS, LOG_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the metrics of the named operation, creating and registering them on first use.
+     * Intended to be called once per operation and kept in a static field.
+     *
+     * @param name the operation name, e.g. "CustomerService.getCustomer"
+     */
+    public static OperationMetrics operation(String name) {
+        return OPERATIONS.computeIfAbsent(name, key -> {
+            OperationMetrics metrics = new OperationMetrics(key);
+            register(metrics);
+            return metrics;
+        });
+    }
+
+    /**
+     * Counts one Redis round trip for every operation currently running on this thread.
+     * Called by the instrumented connections whenever a request is flushed to the server.
+     */
+    public static void roundTrip() {
+        CallStack.current().roundTrips++;
+    }
+
+    /**
+     * Logs one line with the calls, errors, latency percentiles and round trips of every operation used so far.
+     */
+    public static void logSummary() {
+        StringBuilder line = new StringBuilder("[metrics]");
+        for (OperationMetrics metrics : OPERATIONS.values()) {
+            if (metrics.getCalls() == 0) {
+                continue;
+            }
+            line.append(String.format(Locale.ROOT, " %s calls=%d errors=%d p50=%.2fms p99=%.2fms max=%.2fms rt/call=%.1f;",
+                    metrics.getName(), metrics.getCalls(), metrics.getErrors(), metrics.getP50Millis(),
+                    metrics.getP99Millis(), metrics.getMaxMillis(), metrics.getRoundTripsPerCall()));
+        }
+        LOG.info(line.toString());
+        CommandTracer.logSummary();
+    }
+
+    private static void register(OperationMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.example:type=OperationMetrics,name="
+                    + ObjectName.quote(metrics.getName()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException e) {
+            LOG.warning("Could not register metrics for " + metrics.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Per-thread round-trip counter with a small stack of baselines, so that nested operations can each compute
+     * their own number of round trips without allocating.
+     */
+    static final class CallStack {
+        private static final ThreadLocal<CallStack> CURRENT = ThreadLocal.withInitial(CallStack::new);
+        private static final int MAX_DEPTH = 16;
+
+        private final long[] baselines = new long[MAX_DEPTH];
+        private int depth;
+        private long roundTrips;
+
+        static CallStack current() {
+            return CURRENT.get();
+        }
+
+        void push() {
+            if (depth < MAX_DEPTH) {
+                baselines[depth] = roundTrips;
+            }
+            depth++;
+        }
+
+        long pop() {
+            depth--;
+            return depth < MAX_DEPTH ? roundTrips - baselines[depth] : 0;
+        }
+    }
+}
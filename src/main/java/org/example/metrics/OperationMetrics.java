@@ -0,0 +1,148 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency histogram, call and error counters and Redis round-trip count of one service operation.
+ * <p>
+ * Usage: {@code return METRICS.call(() -> repository.findAll());}, or {@link #run(Runnable)} for an operation
+ * without a result. Code that has to react to a failure itself uses {@link #start()}, {@link #error()} and
+ * {@link #stop(long)} directly.
+ * Round trips are counted per thread by the instrumented Redis connections (see {@link Metrics#roundTrip()});
+ * nested operations, such as {@code getCustomer} called from {@code changesSince}, are counted for both.
+ *
+ * @author isil
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Runs one call of the operation and records its latency, round trips and, if it throws, the error.
+     *
+     * @return what the operation returned
+     */
+    public <T> T call(Supplier<T> operation) {
+        long start = start();
+        try {
+            return operation.get();
+        } catch (RuntimeException e) {
+            error();
+            throw e;
+        } finally {
+            stop(start);
+        }
+    }
+
+    /**
+     * Like {@link #call(Supplier)}, for an operation without a result.
+     */
+    public void run(Runnable operation) {
+        long start = start();
+        try {
+            operation.run();
+        } catch (RuntimeException e) {
+            error();
+            throw e;
+        } finally {
+            stop(start);
+        }
+    }
+
+    /**
+     * Marks the start of a call.
+     *
+     * @return the start timestamp to pass to {@link #stop(long)}
+     */
+    public long start() {
+        Metrics.CallStack.current().push();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a call started with {@link #start()}.
+     */
+    public void stop(long start) {
+        latency.record(System.nanoTime() - start);
+        roundTrips.add(Metrics.CallStack.current().pop());
+    }
+
+    /**
+     * Counts a failed call. The call must still be finished with {@link #stop(long)}.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * Records a call whose duration was measured elsewhere, e.g. connection acquisition.
+     */
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRedisRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public double getRoundTripsPerCall() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : (double) getRedisRoundTrips() / calls;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return latency.getValueAtPercentile(90) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMaxNanos() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+        roundTrips.reset();
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.metrics;
+
+/**
+ * JMX view of the metrics of one service operation.
+ * Registered as {@code org.example:type=OperationMetrics,name=<operation>}.
+ *
+ * @author isil
+ */
+public interface OperationMetricsMXBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRedisRoundTrips();
+
+    double getRoundTripsPerCall();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
@@ -21,6 +21,7 @@ public class Order {
     private final ObjectProperty<LocalDate> orderDate;
     private final StringProperty orderStatus;
     private final IntegerProperty itemCount;
+    private boolean archived; // Arşivden okundu, salt okunur (bkz. OrderRepository#archive)
 
     public Order(String orderNumber, String customerId, String address, List<String> items, LocalDate orderDate, String orderStatus) {
         // Initialize properties using JavaFX property classes
@@ -114,4 +115,12 @@ public class Order {
     public IntegerProperty itemCountProperty() {
         return itemCount;
     }
+
+    public boolean isArchived() {
+        return archived;
+    }
+
+    public void setArchived(boolean archived) {
+        this.archived = archived;
+    }
 }
@@ -0,0 +1,68 @@
+package org.example.model;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Order statistics of one customer, maintained incrementally whenever an order is saved, updated or deleted,
+ * so they can be shown without loading the customer's orders.
+ *
+ * @author isil
+ */
+public class OrderStats {
+
+    public static final OrderStats EMPTY = new OrderStats(0, 0, null, null, Collections.emptyMap());
+
+    private final long orderCount;
+    private final long itemTotal;
+    private final LocalDate firstOrderDate;
+    private final LocalDate lastOrderDate;
+    private final Map<String, Long> countsByStatus;
+
+    public OrderStats(long orderCount, long itemTotal, LocalDate firstOrderDate, LocalDate lastOrderDate,
+                      Map<String, Long> countsByStatus) {
+        this.orderCount = orderCount;
+        this.itemTotal = itemTotal;
+        this.firstOrderDate = firstOrderDate;
+        this.lastOrderDate = lastOrderDate;
+        this.countsByStatus = Collections.unmodifiableMap(countsByStatus);
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * @return the sum of the item counts of all orders
+     */
+    public long getItemTotal() {
+        return itemTotal;
+    }
+
+    /**
+     * @return the earliest order date, or null if the customer has no orders
+     */
+    public LocalDate getFirstOrderDate() {
+        return firstOrderDate;
+    }
+
+    /**
+     * @return the latest order date, or null if the customer has no orders
+     */
+    public LocalDate getLastOrderDate() {
+        return lastOrderDate;
+    }
+
+    /**
+     * @return the number of orders per status, e.g. "Pending" -&gt; 3; statuses without orders are left out
+     */
+    public Map<String, Long> getCountsByStatus() {
+        return countsByStatus;
+    }
+
+    @Override
+    public String toString() {
+        return orderCount + " orders, " + itemTotal + " items, " + countsByStatus;
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.model;
+
+import java.time.LocalDate;
+
+/**
+ * A bulk status transition: every order with status {@link #getFromStatus()} whose order date lies in the given
+ * range (and, optionally, that belongs to the given customer) gets status {@link #getToStatus()}, e.g.
+ * "every Pending order older than 3 days becomes Canceled".
+ *
+ * @author isil
+ */
+public class OrderStatusRule {
+
+    private final String fromStatus;
+    private final String toStatus;
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+    private final String customerId;
+
+    /**
+     * @param fromDate   first order date, inclusive, or null for no lower bound
+     * @param toDate     last order date, inclusive, or null for no upper bound
+     * @param customerId if not null, only this customer's orders are changed
+     */
+    public OrderStatusRule(String fromStatus, String toStatus, LocalDate fromDate, LocalDate toDate,
+                           String customerId) {
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.customerId = customerId;
+    }
+
+    /**
+     * @return a rule for all orders with status {@code fromStatus} placed more than {@code days} days before
+     * {@code today}
+     */
+    public static OrderStatusRule olderThan(String fromStatus, String toStatus, int days, LocalDate today,
+                                            String customerId) {
+        return new OrderStatusRule(fromStatus, toStatus, null, today.minusDays(days + 1L), customerId);
+    }
+
+    public String getFromStatus() {
+        return fromStatus;
+    }
+
+    public String getToStatus() {
+        return toStatus;
+    }
+
+    /**
+     * @return first order date, inclusive, or null
+     */
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    /**
+     * @return last order date, inclusive, or null
+     */
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
+    /**
+     * @return the customer whose orders are changed, or null for all customers
+     */
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * @return true if the rule applies to an order with these fields
+     */
+    public boolean matches(String customerId, LocalDate orderDate, String orderStatus) {
+        return fromStatus.equals(orderStatus)
+                && (this.customerId == null || this.customerId.equals(customerId))
+                && (fromDate == null || !orderDate.isBefore(fromDate))
+                && (toDate == null || !orderDate.isAfter(toDate));
+    }
+
+    @Override
+    public String toString() {
+        return fromStatus + " -> " + toStatus
+                + (fromDate != null || toDate != null ? ", ordered " + (fromDate != null ? fromDate : "...")
+                + " to " + (toDate != null ? toDate : "...") : "")
+                + (customerId != null ? ", customer " + customerId : "");
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.repository;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One entry of a change data capture stream: a customer or order was created, updated or deleted.
+ * <p>
+ * Upsert events carry the fields as they were written, so consumers usually do not have to read the record
+ * again. The version is the same one used for delta synchronisation ({@link ChangeSet}).
+ *
+ * @author isil
+ */
+public final class ChangeEvent {
+
+    public enum Operation {
+        UPSERT("upsert"), DELETE("delete");
+
+        private final String wireName;
+
+        Operation(String wireName) {
+            this.wireName = wireName;
+        }
+
+        String wireName() {
+            return wireName;
+        }
+
+        static Operation fromWireName(String wireName) {
+            return "delete".equals(wireName) ? DELETE : UPSERT;
+        }
+    }
+
+    private final String eventId;
+    private final Operation operation;
+    private final String recordId;
+    private final long version;
+    private final Map<String, String> fields;
+
+    ChangeEvent(String eventId, Operation operation, String recordId, long version, Map<String, String> fields) {
+        this.eventId = eventId;
+        this.operation = operation;
+        this.recordId = recordId;
+        this.version = version;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * @return the position of the event in its stream, e.g. "1718000000000-0"
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the customer ID or order number
+     */
+    public String getRecordId() {
+        return recordId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the written fields (as stored in Redis, e.g. dates in ISO format); empty for deletions
+     */
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return eventId + " " + operation.wireName() + " " + recordId + " v" + version;
+    }
+}
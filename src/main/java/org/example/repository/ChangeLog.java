@@ -0,0 +1,747 @@
+package org.example.repository;
+
+import org.example.config.RedisScript;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.resps.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned change log used for delta synchronisation of one entity type (customers or orders).
+ * <p>
+ * Every mutation runs as a single Lua script that applies the write, takes the next value of a monotonically
+ * increasing version counter, stores it in the record's {@code version} field and records the ID with that
+ * version as score in a sorted set. Because all of this happens atomically, a client that has seen version N
+ * can fetch exactly the IDs changed after N with one ZRANGEBYSCORE.
+ * <p>
+ * Compaction: the sorted set holds one entry per ID, and only the newest {@code cms.changelog.retain}
+ * entries (default 10000) are kept. When older entries are trimmed, the highest trimmed version is stored as
+ * the log's floor; clients whose version is below the floor can no longer be served a delta and fall back to
+ * a full reload.
+ * <p>
+ * Change data capture: the same script appends an event (operation, ID, version and, for upserts, the written
+ * fields) to the entity's Redis Stream, unless {@code -Dcms.cdc.enabled=false}. Downstream systems read it
+ * through {@link RedisChangeStream}, and events leave the stream once every consumer group has acknowledged them
+ * ({@link ChangeStream#trim()}). {@code cms.cdc.maxLen} (default 0, none) adds a hard cap of about that many
+ * entries for systems without consumers; it also drops events that a group has not processed yet.
+ * <p>
+ * In cluster mode a record and the change log live in different slots, so no script can write the record and
+ * stamp it atomically. The record (with its record hooks) is written first, and a second script, in the slot of
+ * the change log's hash tag {@code {<entity>}}, stamps it and runs the stamp hooks. A reader that sees the new
+ * version (or its event) therefore always finds the new data. The {@code version} field is not stored in the
+ * record in that mode, a write is lost from the log if the client dies between the two scripts, and when the
+ * same record is written concurrently its events may list the writes in a different order than they were
+ * applied; delta readers are not affected by the latter, since they read the records themselves.
+ *
+ * @author isil
+ */
+class ChangeLog {
+
+    private static final long RETAIN = Long.getLong("cms.changelog.retain", 10_000L);
+    static final boolean EVENTS = Boolean.parseBoolean(System.getProperty("cms.cdc.enabled", "true"));
+    static final long EVENTS_MAX_LEN = Long.getLong("cms.cdc.maxLen", 0L);
+
+    /**
+     * Returned by a script when a hook's guarded field no longer holds the expected value; nothing was written.
+     */
+    private static final long STALE = -2;
+
+    // KEYS: counter, log, floor, events, record key, [hook keys], [additional keys to delete]
+    // ARGV: id, condition, retain, operation, events, hook data, [hooks, see bindHooks], [field, value, ...]
+    // condition: 0 = none, 1 = the record must exist, <field>=<value> = it must exist with that field value
+    // events: 'off' = none, 0 = no cap, otherwise the approximate maximum length of the stream
+    private static final String STAMP_AND_TRIM =
+            "local version = redis.call('INCR', KEYS[1])\n" +
+            "redis.call('ZADD', KEYS[2], version, ARGV[1])\n" +
+            "local retain = tonumber(ARGV[3])\n" +
+            "local size = redis.call('ZCARD', KEYS[2])\n" +
+            "if size > retain + math.floor(retain / 10) then\n" +
+            "  local cut = size - retain\n" +
+            "  local last = redis.call('ZRANGE', KEYS[2], cut - 1, cut - 1, 'WITHSCORES')\n" +
+            "  redis.call('ZREMRANGEBYRANK', KEYS[2], 0, cut - 1)\n" +
+            "  redis.call('SET', KEYS[3], last[2])\n" +
+            "end\n" +
+            "if ARGV[5] ~= 'off' then\n" +
+            "  local event = {'op', ARGV[4], 'id', ARGV[1], 'version', version}\n" +
+            "  for i = fields, #ARGV do event[#event + 1] = ARGV[i] end\n" +
+            "  if ARGV[5] == '0' then\n" +
+            "    redis.call('XADD', KEYS[4], '*', unpack(event))\n" +
+            "  else\n" +
+            "    redis.call('XADD', KEYS[4], 'MAXLEN', '~', ARGV[5], '*', unpack(event))\n" +
+            "  end\n" +
+            "end\n";
+
+    private static final String CHECK =
+            "if ARGV[2] ~= '0' then\n" +
+            "  if redis.call('EXISTS', record) == 0 then return -1 end\n" +
+            "  local guard = string.find(ARGV[2], '=', 1, true)\n" +
+            "  if guard and redis.call('HGET', record, string.sub(ARGV[2], 1, guard - 1))\n" +
+            "      ~= string.sub(ARGV[2], guard + 1) then\n" +
+            "    return -1\n" +
+            "  end\n" +
+            "end\n";
+
+    // Per hook, from ARGV[7] on: guarded field ('' if none), its expected value, key count, argument count,
+    // arguments. The hook keys follow the fixed KEYS, a guarded hook's first key is the hash of its field.
+    // Checks every guard before anything is written and leaves the index of the first record field in 'fields'.
+    private static String bindHooks(int hooks, int firstKey) {
+        return "local hookKeys, hookArgs = {}, {}\n" +
+                "local nextKey, nextArg = " + firstKey + ", 7\n" +
+                "for h = 1, " + hooks + " do\n" +
+                "  local guarded, expected = ARGV[nextArg], ARGV[nextArg + 1]\n" +
+                "  local keyCount, argCount = tonumber(ARGV[nextArg + 2]), tonumber(ARGV[nextArg + 3])\n" +
+                "  if guarded ~= '' then\n" +
+                "    local stored = redis.call('HGET', KEYS[nextKey], guarded)\n" +
+                "    if stored and stored ~= expected then return " + STALE + " end\n" +
+                "  end\n" +
+                "  hookKeys[h] = {unpack(KEYS, nextKey, nextKey + keyCount - 1)}\n" +
+                "  hookArgs[h] = {unpack(ARGV, nextArg + 4, nextArg + 3 + argCount)}\n" +
+                "  nextKey, nextArg = nextKey + keyCount, nextArg + 4 + argCount\n" +
+                "end\n" +
+                "local fields = nextArg\n";
+    }
+
+    private static String runHooks(List<Hook> hooks, int first) {
+        StringBuilder lua = new StringBuilder();
+        for (int h = 0; h < hooks.size(); h++) {
+            lua.append("do\n")
+                    .append("local keys, args = hookKeys[").append(first + h + 1).append("], hookArgs[")
+                    .append(first + h + 1).append("]\n")
+                    .append(hooks.get(h).lua)
+                    .append("end\n");
+        }
+        return lua.toString();
+    }
+
+    private static final Scripts PLAIN = new Scripts(Collections.emptyList(), Collections.emptyList());
+
+    /**
+     * The scripts that write and stamp a record, optionally with entity-specific hooks (see {@link Hook}).
+     * <ul>
+     * <li>Record hooks run after the existence check and before the record is changed. They can update keys
+     * derived from the record (in cluster mode only keys in the record's slot).</li>
+     * <li>Stamp hooks run right after the version stamp and can update keys tagged like the change log, i.e. like
+     * {@link KeySpace#syncKey}.</li>
+     * </ul>
+     * With a single server both run in the same script as the write; in cluster mode the stamp and the stamp hooks
+     * follow in a second script. A rewrite ({@link #rewriteAll}) runs the same hooks without the stamp. The scripts
+     * do not depend on the key scheme, so each entity needs them only once.
+     */
+    static final class Scripts {
+        final List<Hook> recordHooks;
+        final List<Hook> stampHooks;
+        final List<Hook> hooks;
+        // Standalone: record and log in one script
+        final RedisScript upsert;
+        final RedisScript delete;
+        // Cluster mode: the record and its hooks, with the record key first in KEYS, then the stamp and its hooks
+        final RedisScript recordUpsert;
+        final RedisScript recordDelete;
+        final RedisScript stamp;
+        // Rewrites without a stamp: standalone the record and all hooks, in cluster mode the stamp hooks alone
+        // (after recordUpsert)
+        final RedisScript rewrite;
+        final RedisScript rewriteHooks;
+
+        Scripts(List<Hook> recordHooks, List<Hook> stampHooks) {
+            this.recordHooks = recordHooks;
+            this.stampHooks = stampHooks;
+            this.hooks = new ArrayList<>(recordHooks);
+            this.hooks.addAll(stampHooks);
+            String write =
+                    "for i = fields, #ARGV, 2 do\n" +
+                    "  redis.call('HSET', record, ARGV[i], ARGV[i + 1])\n" +
+                    "end\n";
+            String remove = "redis.call('DEL', record, unpack(KEYS, nextKey))\n";
+            upsert = RedisScript.of(
+                    "local record = KEYS[5]\n" +
+                    CHECK +
+                    bindHooks(hooks.size(), 6) +
+                    runHooks(recordHooks, 0) +
+                    write +
+                    STAMP_AND_TRIM +
+                    runHooks(stampHooks, recordHooks.size()) +
+                    "redis.call('HSET', record, 'version', version)\n" +
+                    "return version");
+            delete = RedisScript.of(
+                    "local record = KEYS[5]\n" +
+                    CHECK +
+                    bindHooks(hooks.size(), 6) +
+                    runHooks(recordHooks, 0) +
+                    remove +
+                    STAMP_AND_TRIM +
+                    runHooks(stampHooks, recordHooks.size()) +
+                    "return version");
+            recordUpsert = RedisScript.of(
+                    "local record = KEYS[1]\n" +
+                    CHECK +
+                    bindHooks(recordHooks.size(), 2) +
+                    runHooks(recordHooks, 0) +
+                    write +
+                    "return 0");
+            recordDelete = RedisScript.of(
+                    "local record = KEYS[1]\n" +
+                    CHECK +
+                    bindHooks(recordHooks.size(), 2) +
+                    runHooks(recordHooks, 0) +
+                    remove +
+                    "return 0");
+            stamp = RedisScript.of(
+                    bindHooks(stampHooks.size(), 5) +
+                    STAMP_AND_TRIM +
+                    runHooks(stampHooks, 0) +
+                    "return version");
+            rewrite = RedisScript.of(
+                    "local record = KEYS[1]\n" +
+                    CHECK +
+                    bindHooks(hooks.size(), 2) +
+                    runHooks(recordHooks, 0) +
+                    write +
+                    runHooks(stampHooks, recordHooks.size()) +
+                    "return 0");
+            rewriteHooks = RedisScript.of(
+                    bindHooks(stampHooks.size(), 1) +
+                    runHooks(stampHooks, 0) +
+                    "return 0");
+        }
+    }
+
+    /**
+     * Maintains keys derived from the records in the write scripts: Lua code, and the Java side that names the
+     * keys it touches, since a script may only access keys passed in KEYS.
+     * <p>
+     * The Lua runs in a block of its own with the hook's keys as {@code keys} and its arguments as {@code args}.
+     * It sees the record ID as {@code ARGV[1]}, the operation as {@code ARGV[4]} ("upsert" or "delete"), the hook
+     * data passed to {@link #upsert(UnifiedJedis, String, String, Map, String, boolean)} or {@link #deleteAllIf}
+     * as {@code ARGV[6]} (otherwise empty) and the new fields from {@code ARGV[fields]} on; record hooks also see
+     * the record key as {@code record}.
+     * <p>
+     * When the keys depend on stored state, for example on the customer an order belonged to before, the hook
+     * names the hash field holding it ({@link #guard}). Its keys are derived from the value the field is expected
+     * to have ({@link #expected}, or else the stored value, read first), and the script checks the field before it
+     * writes anything: if it holds another value, nothing is written and the write is repeated with the keys
+     * derived from the stored value.
+     */
+    static class Hook {
+        final String lua;
+
+        Hook(String lua) {
+            this.lua = lua;
+        }
+
+        /**
+         * @return the field the hook's keys depend on, or null if they are fixed
+         */
+        Guard guard(KeySpace keys, Write write) {
+            return null;
+        }
+
+        /**
+         * @return the value the guarded field most likely holds ("" for none), so that the write needs no read
+         * first; null if it cannot be guessed
+         */
+        String expected(Write write) {
+            return null;
+        }
+
+        /**
+         * Adds the hook's keys (after the guarded hash, which is always first) and arguments for a write.
+         *
+         * @param guarded the value of the guarded field the keys are derived from, "" if it is not set
+         */
+        void bind(KeySpace keys, Write write, String guarded, List<String> hookKeys, List<String> args) {
+        }
+    }
+
+    /**
+     * A hash field the keys of a {@link Hook} depend on.
+     */
+    static final class Guard {
+        final String key;
+        final String field;
+
+        Guard(String key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+    }
+
+    /**
+     * One record write, as the hooks see it.
+     */
+    static final class Write {
+        final String id;
+        final String recordKey;
+        final boolean upsert;
+        final Map<String, String> fields; // Empty for deletes
+        final String hookData;
+        private final String condition;
+        private final List<String> relatedKeys;
+        private final boolean stamped; // False for rewrites
+
+        private Write(String id, String recordKey, boolean upsert, Map<String, String> fields, String hookData,
+                      String condition, List<String> relatedKeys, boolean stamped) {
+            this.id = id;
+            this.recordKey = recordKey;
+            this.upsert = upsert;
+            this.fields = fields;
+            this.hookData = hookData;
+            this.condition = condition;
+            this.relatedKeys = relatedKeys;
+            this.stamped = stamped;
+        }
+
+        static Write upsert(String id, String recordKey, Map<String, String> fields, String hookData,
+                            String condition) {
+            return new Write(id, recordKey, true, fields, hookData, condition, Collections.emptyList(), true);
+        }
+
+        static Write rewrite(String id, String recordKey, Map<String, String> fields, String hookData,
+                             String condition) {
+            return new Write(id, recordKey, true, fields, hookData, condition, Collections.emptyList(), false);
+        }
+
+        static Write delete(String id, String recordKey, List<String> relatedKeys, String hookData,
+                            String condition) {
+            return new Write(id, recordKey, false, Collections.emptyMap(), hookData, condition, relatedKeys, true);
+        }
+
+        /**
+         * @return the value of a new field, "" if the write does not set it
+         */
+        String field(String name) {
+            String value = fields.get(name);
+            return value == null ? "" : value;
+        }
+    }
+
+    /**
+     * The KEYS and ARGV of one script call.
+     */
+    private static final class Call {
+        final List<String> keys = new ArrayList<>();
+        final List<String> args = new ArrayList<>();
+    }
+
+    private final Scripts scripts;
+    private final KeySpace keys;
+    private final boolean clustered;
+    private final String counterKey;
+    private final String logKey;
+    private final String floorKey;
+    private final String eventsKey;
+
+    /**
+     * @param entity the entity name used in the key names, e.g. "customer"
+     * @param keys   the key scheme of the connection mode
+     */
+    ChangeLog(String entity, KeySpace keys) {
+        this(entity, keys, PLAIN);
+    }
+
+    /**
+     * @param scripts the write scripts, see {@link Scripts}; create them once per entity, not per instance
+     */
+    ChangeLog(String entity, KeySpace keys, Scripts scripts) {
+        this.scripts = scripts;
+        this.keys = keys;
+        this.clustered = keys.isClustered();
+        this.counterKey = keys.syncKey(entity, "version");
+        this.logKey = keys.syncKey(entity, "changes");
+        this.floorKey = keys.syncKey(entity, "floor");
+        this.eventsKey = eventsKey(entity, keys);
+    }
+
+    /**
+     * @return the key of the entity's change event stream, in the same slot as the change log
+     */
+    static String eventsKey(String entity, KeySpace keys) {
+        return keys.syncKey(entity, "events");
+    }
+
+    /**
+     * Writes the given fields into the record hash and stamps it with a new version.
+     *
+     * @param mustExist if true, nothing is written when the record does not exist
+     * @return the new version, or -1 if {@code mustExist} was set and the record does not exist
+     */
+    long upsert(UnifiedJedis jedis, String id, String recordKey, Map<String, String> fields, boolean mustExist) {
+        return upsert(jedis, id, recordKey, fields, "", mustExist);
+    }
+
+    /**
+     * Like {@link #upsert(UnifiedJedis, String, String, Map, boolean)}, passing data to the hooks that is not
+     * stored in the record, see {@link Hook}.
+     */
+    long upsert(UnifiedJedis jedis, String id, String recordKey, Map<String, String> fields, String hookData,
+                boolean mustExist) {
+        return write(jedis, Write.upsert(id, recordKey, fields, hookData, condition(mustExist)));
+    }
+
+    /**
+     * Pipelined variant of {@link #upsert} for many records, sent in a single round trip. In cluster mode the
+     * stamps of the records that were written follow in a second pipelined round trip.
+     *
+     * @param ids        the record IDs
+     * @param recordKeys the record keys, in the same order
+     * @param fields     the fields of each record, in the same order
+     * @param hookData   the hook data of each record, in the same order
+     * @return the new version of each record, or -1 for records that did not exist although {@code mustExist} was
+     * set
+     */
+    long[] upsertAll(UnifiedJedis jedis, List<String> ids, List<String> recordKeys, List<Map<String, String>> fields,
+                     List<String> hookData, boolean mustExist) {
+        return upsertAll(jedis, ids, recordKeys, fields, hookData, condition(mustExist));
+    }
+
+    /**
+     * Like {@link #upsertAll(UnifiedJedis, List, List, List, List, boolean)}, but each record is only written if
+     * it still has the expected value in the given field (compare-and-set), e.g. when the new fields were derived
+     * from a state read before.
+     *
+     * @return the new version of each record, or -1 for records that do not exist or no longer match
+     */
+    long[] upsertAllIf(UnifiedJedis jedis, List<String> ids, List<String> recordKeys, List<Map<String, String>> fields,
+                       List<String> hookData, String field, String expected) {
+        return upsertAll(jedis, ids, recordKeys, fields, hookData, field + "=" + expected);
+    }
+
+    private long[] upsertAll(UnifiedJedis jedis, List<String> ids, List<String> recordKeys,
+                             List<Map<String, String>> fields, List<String> hookData, String condition) {
+        List<Write> writes = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            writes.add(Write.upsert(ids.get(i), recordKeys.get(i), fields.get(i), hookData.get(i), condition));
+        }
+        return writeAll(jedis, writes);
+    }
+
+    /**
+     * Deletes the record (and any related keys) and stamps the deletion with a new version.
+     *
+     * @return the new version, or -1 if {@code mustExist} was set and the record does not exist
+     */
+    long delete(UnifiedJedis jedis, String id, String recordKey, List<String> relatedKeys, boolean mustExist) {
+        return write(jedis, Write.delete(id, recordKey, relatedKeys, "", condition(mustExist)));
+    }
+
+    /**
+     * Pipelined variant of {@link #delete} for many records, sent in a single round trip. In cluster mode the
+     * stamps of the records that were deleted follow in a second pipelined round trip.
+     *
+     * @param ids         the record IDs
+     * @param recordKeys  the record keys, in the same order
+     * @param relatedKeys the related keys of each record, in the same order
+     * @return the new version of each record, or -1 for records that did not exist
+     */
+    long[] deleteAll(UnifiedJedis jedis, List<String> ids, List<String> recordKeys, List<List<String>> relatedKeys) {
+        return deleteAll(jedis, ids, recordKeys, relatedKeys, "", Collections.nCopies(ids.size(), condition(true)));
+    }
+
+    /**
+     * Like {@link #deleteAll(UnifiedJedis, List, List, List)}, but each record is only deleted if it still has
+     * the expected value in the given field, and the hooks get {@code hookData} (see {@link Hook}).
+     *
+     * @param expected the expected value of each record, in the same order
+     * @return the new version of each record, or -1 for records that do not exist or no longer match
+     */
+    long[] deleteAllIf(UnifiedJedis jedis, List<String> ids, List<String> recordKeys, List<List<String>> relatedKeys,
+                       String hookData, String field, List<String> expected) {
+        List<String> conditions = new ArrayList<>(expected.size());
+        for (String value : expected) {
+            conditions.add(field + "=" + value);
+        }
+        return deleteAll(jedis, ids, recordKeys, relatedKeys, hookData, conditions);
+    }
+
+    private long[] deleteAll(UnifiedJedis jedis, List<String> ids, List<String> recordKeys,
+                             List<List<String>> relatedKeys, String hookData, List<String> conditions) {
+        List<Write> writes = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            writes.add(Write.delete(ids.get(i), recordKeys.get(i), relatedKeys.get(i), hookData, conditions.get(i)));
+        }
+        return writeAll(jedis, writes);
+    }
+
+    /**
+     * Writes the records again, e.g. in a newer format, and runs all hooks, but takes no version and appends no
+     * event: for changes the clients cannot see, such as indexing records written before the hooks existed. Each
+     * record is only written if it still has the expected value in the given field. Pipelined like
+     * {@link #upsertAll(UnifiedJedis, List, List, List, List, boolean)}.
+     *
+     * @param expected the expected value of each record, in the same order
+     * @return 0 for each record that was written, -1 for records that do not exist or no longer match
+     */
+    long[] rewriteAll(UnifiedJedis jedis, List<String> ids, List<String> recordKeys, List<Map<String, String>> fields,
+                      List<String> hookData, String field, List<String> expected) {
+        List<Write> writes = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            writes.add(Write.rewrite(ids.get(i), recordKeys.get(i), fields.get(i), hookData.get(i),
+                    field + "=" + expected.get(i)));
+        }
+        return writeAll(jedis, writes);
+    }
+
+    private static String condition(boolean mustExist) {
+        return mustExist ? "1" : "0";
+    }
+
+    private long write(UnifiedJedis jedis, Write write) {
+        long result = run(jedis, write, true);
+        return clustered && result >= 0 ? run(jedis, write, false) : result;
+    }
+
+    /**
+     * Runs the record script of the write (with a single server the whole write), or in cluster mode the stamp
+     * script, until no guard fails.
+     */
+    private long run(UnifiedJedis jedis, Write write, boolean record) {
+        List<Hook> hooks = hooks(record);
+        String[] guarded = expected(write, hooks);
+        while (true) {
+            if (guarded == null) {
+                guarded = readGuarded(jedis, Collections.singletonList(write), hooks).get(0);
+            }
+            Call call = call(write, hooks, guarded, record);
+            long result = (Long) script(write, record).eval(jedis, call.keys, call.args);
+            if (result != STALE) {
+                return result;
+            }
+            guarded = null; // Changed since it was read or guessed
+        }
+    }
+
+    /**
+     * Runs all writes in one pipelined round trip, preceded by one that reads the guarded fields that cannot be
+     * guessed; in cluster mode the stamps of the written records follow in another one.
+     *
+     * @return the result of each write, see {@link #upsert} and {@link #delete}
+     */
+    private long[] writeAll(UnifiedJedis jedis, List<Write> writes) {
+        boolean[] all = new boolean[writes.size()];
+        Arrays.fill(all, true);
+        long[] results = runAll(jedis, writes, all, true);
+        if (clustered) { // Stamps, or the stamp hooks of rewrites
+            boolean[] written = new boolean[writes.size()];
+            for (int i = 0; i < written.length; i++) {
+                written[i] = results[i] >= 0;
+            }
+            long[] versions = runAll(jedis, writes, written, false);
+            for (int i = 0; i < written.length; i++) {
+                if (written[i]) {
+                    results[i] = versions[i];
+                }
+            }
+        }
+        return results;
+    }
+
+    private long[] runAll(UnifiedJedis jedis, List<Write> writes, boolean[] selected, boolean record) {
+        List<Hook> hooks = hooks(record);
+        String[][] guarded = new String[writes.size()][];
+        List<Write> unknown = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            if (selected[i]) {
+                guarded[i] = expected(writes.get(i), hooks);
+                if (guarded[i] == null) {
+                    unknown.add(writes.get(i));
+                }
+            }
+        }
+        if (!unknown.isEmpty()) {
+            List<String[]> read = readGuarded(jedis, unknown, hooks);
+            for (int i = 0, next = 0; i < writes.size(); i++) {
+                if (selected[i] && guarded[i] == null) {
+                    guarded[i] = read.get(next++);
+                }
+            }
+        }
+
+        List<Response<Object>> responses = new ArrayList<>(Collections.nCopies(writes.size(), null));
+        try (AbstractPipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < writes.size(); i++) {
+                if (selected[i]) {
+                    Call call = call(writes.get(i), hooks, guarded[i], record);
+                    responses.set(i, script(writes.get(i), record).eval(pipeline, call.keys, call.args));
+                }
+            }
+            pipeline.sync();
+        }
+
+        long[] results = new long[writes.size()];
+        for (int i = 0; i < writes.size(); i++) {
+            if (!selected[i]) {
+                continue;
+            }
+            try {
+                results[i] = (Long) responses.get(i).get();
+            } catch (JedisNoScriptException e) {
+                results[i] = STALE; // Script cache was flushed; the non-pipelined call reloads the script
+            }
+            if (results[i] == STALE) {
+                results[i] = run(jedis, writes.get(i), record);
+            }
+        }
+        return results;
+    }
+
+    private List<Hook> hooks(boolean record) {
+        if (!record) {
+            return scripts.stampHooks;
+        }
+        return clustered ? scripts.recordHooks : scripts.hooks;
+    }
+
+    private RedisScript script(Write write, boolean record) {
+        if (!record) {
+            return write.stamped ? scripts.stamp : scripts.rewriteHooks;
+        }
+        if (clustered) {
+            return write.upsert ? scripts.recordUpsert : scripts.recordDelete;
+        }
+        if (!write.stamped) {
+            return scripts.rewrite;
+        }
+        return write.upsert ? scripts.upsert : scripts.delete;
+    }
+
+    /**
+     * @return the expected value of each hook's guarded field ("" for hooks without one), or null if one of
+     * them has to be read
+     */
+    private String[] expected(Write write, List<Hook> hooks) {
+        String[] expected = new String[hooks.size()];
+        for (int h = 0; h < hooks.size(); h++) {
+            if (hooks.get(h).guard(keys, write) == null) {
+                expected[h] = "";
+            } else if ((expected[h] = hooks.get(h).expected(write)) == null) {
+                return null;
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * @return the stored value of each hook's guarded field per write, read in one pipelined round trip
+     */
+    private List<String[]> readGuarded(UnifiedJedis jedis, List<Write> writes, List<Hook> hooks) {
+        List<Response<String>> responses = new ArrayList<>(writes.size() * hooks.size());
+        try (AbstractPipeline pipeline = jedis.pipelined()) {
+            for (Write write : writes) {
+                for (Hook hook : hooks) {
+                    Guard guard = hook.guard(keys, write);
+                    responses.add(guard == null ? null : pipeline.hget(guard.key, guard.field));
+                }
+            }
+            pipeline.sync();
+        }
+        List<String[]> guarded = new ArrayList<>(writes.size());
+        for (int w = 0; w < writes.size(); w++) {
+            String[] values = new String[hooks.size()];
+            for (int h = 0; h < hooks.size(); h++) {
+                Response<String> response = responses.get(w * hooks.size() + h);
+                String value = response == null ? null : response.get();
+                values[h] = value == null ? "" : value;
+            }
+            guarded.add(values);
+        }
+        return guarded;
+    }
+
+    /**
+     * @param record false for the stamp script in cluster mode
+     */
+    private Call call(Write write, List<Hook> hooks, String[] guarded, boolean record) {
+        Call call = new Call();
+        if (write.stamped && record != clustered) { // The script that stamps
+            call.keys.addAll(Arrays.asList(counterKey, logKey, floorKey, eventsKey));
+        }
+        if (record) {
+            call.keys.add(write.recordKey);
+        }
+        call.args.addAll(Arrays.asList(write.id, write.condition, String.valueOf(RETAIN),
+                (write.upsert ? ChangeEvent.Operation.UPSERT : ChangeEvent.Operation.DELETE).wireName(),
+                EVENTS ? String.valueOf(EVENTS_MAX_LEN) : "off", write.hookData));
+        for (int h = 0; h < hooks.size(); h++) {
+            Guard guard = hooks.get(h).guard(keys, write);
+            List<String> hookKeys = new ArrayList<>();
+            List<String> hookArgs = new ArrayList<>();
+            if (guard != null) {
+                hookKeys.add(guard.key);
+            }
+            hooks.get(h).bind(keys, write, guarded[h], hookKeys, hookArgs);
+            call.keys.addAll(hookKeys);
+            call.args.add(guard == null ? "" : guard.field);
+            call.args.add(guarded[h]);
+            call.args.add(String.valueOf(hookKeys.size()));
+            call.args.add(String.valueOf(hookArgs.size()));
+            call.args.addAll(hookArgs);
+        }
+        if (record) {
+            call.keys.addAll(write.relatedKeys);
+        }
+        for (Map.Entry<String, String> field : write.fields.entrySet()) {
+            call.args.add(field.getKey());
+            call.args.add(field.getValue());
+        }
+        return call;
+    }
+
+    /**
+     * @return the latest version handed out, 0 if nothing has been stamped yet
+     */
+    long currentVersion(UnifiedJedis jedis) {
+        String value = jedis.get(counterKey);
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    /**
+     * Reads the IDs changed after the given version.
+     *
+     * @return the changed IDs and the new version, or null if the client must do a full reload
+     */
+    Delta readSince(UnifiedJedis jedis, long version) {
+        if (version <= 0) {
+            return null; // The client has no data yet
+        }
+        List<Tuple> entries = jedis.zrangeByScoreWithScores(logKey, "(" + version, "+inf");
+
+        // Checked after reading the range, so a compaction that raced with the read is always noticed
+        List<String> bounds = jedis.mget(floorKey, counterKey);
+        String floor = bounds.get(0);
+        String counter = bounds.get(1);
+        if (floor != null && version < (long) Double.parseDouble(floor)) {
+            return null;
+        }
+        if (counter == null || version > Long.parseLong(counter)) {
+            return null; // The client's version is from before the data was flushed
+        }
+
+        List<String> ids = new ArrayList<>(entries.size());
+        long latest = version;
+        for (Tuple entry : entries) {
+            ids.add(entry.getElement());
+            latest = Math.max(latest, (long) entry.getScore());
+        }
+        return new Delta(ids, latest);
+    }
+
+    /**
+     * IDs changed since a given version, and the version they bring the client to.
+     */
+    static final class Delta {
+        final List<String> ids;
+        final long version;
+
+        Delta(List<String> ids, long version) {
+            this.ids = ids;
+            this.version = version;
+        }
+    }
+}
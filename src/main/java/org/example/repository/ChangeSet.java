@@ -0,0 +1,59 @@
+package org.example.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a delta synchronisation request.
+ * Contains the records that were created or changed and the IDs of the records that were deleted since the
+ * version the client asked for, together with the version the client should ask for next time.
+ * <p>
+ * If the client was too far behind (its version has already been compacted out of the change log) or had no
+ * data yet, {@link #isFullReload()} is true and {@link #getChanged()} holds the complete data set instead.
+ *
+ * @param <T> the record type, e.g. Customer or Order
+ * @author isil
+ */
+public class ChangeSet<T> {
+    private final List<T> changed;
+    private final List<String> deletedIds;
+    private final long version;
+    private final boolean fullReload;
+
+    private ChangeSet(List<T> changed, List<String> deletedIds, long version, boolean fullReload) {
+        this.changed = Collections.unmodifiableList(changed);
+        this.deletedIds = Collections.unmodifiableList(deletedIds);
+        this.version = version;
+        this.fullReload = fullReload;
+    }
+
+    static <T> ChangeSet<T> delta(List<T> changed, List<String> deletedIds, long version) {
+        return new ChangeSet<>(changed, deletedIds, version, false);
+    }
+
+    static <T> ChangeSet<T> fullReload(List<T> all, long version) {
+        return new ChangeSet<>(all, Collections.emptyList(), version, true);
+    }
+
+    public List<T> getChanged() {
+        return changed;
+    }
+
+    public List<String> getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * @return the version to pass to the next {@code changesSince} call
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if {@link #getChanged()} contains the whole data set and the local copy must be replaced
+     */
+    public boolean isFullReload() {
+        return fullReload;
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.repository;
+
+import java.util.List;
+
+/**
+ * Consumer-group reader for the change events of one entity type.
+ * <p>
+ * Each consumer group sees every event once; within a group the events are shared between its consumers.
+ * An event stays pending for the consumer it was delivered to until it is acknowledged, so after a crash a
+ * consumer first calls {@link #readPending} and then continues with {@link #read}.
+ * <p>
+ * Typical loop: read a batch, process it, {@link #ack} it, and call {@link #trim()} now and then so the stream
+ * does not keep events every group has already processed.
+ * <p>
+ * Change events need a single Redis server (or the in-memory engine): in cluster mode they cannot be written
+ * atomically with the records (see {@link ChangeLog}), and every method throws
+ * {@link UnsupportedOperationException}.
+ *
+ * @author isil
+ */
+public interface ChangeStream {
+
+    /**
+     * Creates the consumer group if it does not exist yet.
+     *
+     * @param fromStart if true the group starts with the oldest retained event, otherwise with the next new one
+     */
+    void createGroup(String group, boolean fromStart);
+
+    /**
+     * Reads events that were never delivered to the group, waiting up to {@code blockMillis} if there are none.
+     *
+     * @param maxEvents   the maximum batch size
+     * @param blockMillis the maximum time to wait; 0 returns immediately
+     * @return the events, oldest first; empty if none arrived in time
+     */
+    List<ChangeEvent> read(String group, String consumer, int maxEvents, long blockMillis);
+
+    /**
+     * Reads events delivered to this consumer earlier but not acknowledged yet.
+     */
+    List<ChangeEvent> readPending(String group, String consumer, int maxEvents);
+
+    /**
+     * Marks events as processed by the group.
+     */
+    void ack(String group, List<ChangeEvent> events);
+
+    /**
+     * Removes the events that every consumer group has acknowledged. This is the only trimming unless a hard cap
+     * is set with {@code cms.cdc.maxLen}; it does nothing while there are no groups.
+     *
+     * @return the number of removed events
+     */
+    long trim();
+}
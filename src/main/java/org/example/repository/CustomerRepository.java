@@ -0,0 +1,91 @@
+package org.example.repository;
+
+import org.example.model.Customer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of customers. Implementations must be thread-safe.
+ * <p>
+ * Use {@link Repositories#customers()} to get the engine selected by configuration.
+ *
+ * @author isil
+ */
+public interface CustomerRepository {
+
+    /**
+     * @return a new, unique customer ID
+     */
+    String nextId();
+
+    /**
+     * Stores the customer, replacing any existing customer with the same ID.
+     */
+    void save(Customer customer);
+
+    /**
+     * Replaces the stored fields of an existing customer.
+     *
+     * @return false if no customer with that ID exists
+     */
+    boolean update(Customer customer);
+
+    /**
+     * Updates many existing customers at once, e.g. in a single round trip.
+     *
+     * @return for each customer whether it existed and was updated
+     */
+    boolean[] updateAll(List<Customer> customers);
+
+    /**
+     * Deletes the customer and its purchases.
+     *
+     * @return false if no customer with that ID exists
+     */
+    boolean delete(String id);
+
+    /**
+     * Deletes many customers and their purchases at once, e.g. in a single round trip.
+     *
+     * @return for each ID whether the customer existed and was deleted
+     */
+    boolean[] deleteAll(List<String> ids);
+
+    /**
+     * @return the customer, or null if it does not exist
+     */
+    Customer findById(String id);
+
+    /**
+     * Loads many customers at once, e.g. in a single round trip.
+     *
+     * @return the customers by ID; IDs that do not exist are left out
+     */
+    Map<String, Customer> findByIds(Collection<String> ids);
+
+    List<Customer> findAll();
+
+    /**
+     * Loads one page of the customers sorted by a column, from a sort index kept up to date on every write, so
+     * the cost does not depend on the number of customers or the page number.
+     *
+     * @param page     the page number, from 0
+     * @param pageSize the number of customers per page
+     */
+    SortedPage<Customer> findPage(CustomerSort sort, boolean ascending, int page, int pageSize);
+
+    /**
+     * Returns the customers created, updated or deleted after the given version. A version of 0, or one that is
+     * older than the compacted part of the change log, results in a full reload.
+     *
+     * @param version the version the client's data corresponds to
+     */
+    ChangeSet<Customer> changesSince(long version);
+
+    /**
+     * @return the change data capture stream with one event per mutation, for downstream consumers
+     */
+    ChangeStream changeStream();
+}
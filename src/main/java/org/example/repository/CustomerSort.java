@@ -0,0 +1,29 @@
+package org.example.repository;
+
+/**
+ * The columns customers can be sorted by on the server, see {@link CustomerRepository#findPage}. Text columns
+ * compare the exact text (like the table's default comparator), ties are ordered by ID.
+ *
+ * @author isil
+ */
+public enum CustomerSort {
+    /**
+     * Numerically; IDs that are not numbers come first, as text.
+     */
+    ID("id"),
+    NAME("name"),
+    EMAIL("email");
+
+    private final String indexName;
+
+    CustomerSort(String indexName) {
+        this.indexName = indexName;
+    }
+
+    /**
+     * @return the name of the index in key names, e.g. "name"
+     */
+    String indexName() {
+        return indexName;
+    }
+}
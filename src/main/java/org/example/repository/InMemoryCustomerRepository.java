@@ -0,0 +1,234 @@
+package org.example.repository;
+
+import org.example.model.Customer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Customers kept in the memory of this process ({@code -Dcms.storage=memory}).
+ * <p>
+ * Records are stored as immutable snapshots and every read returns a new {@link Customer}, so the JavaFX
+ * properties of objects handed to the UI never share state with the store.
+ * <p>
+ * The sort indexes ({@link CustomerSort}) hold the same entries as with Redis and are updated inside the atomic
+ * {@code compute} of their customer, as is the version stamp (see {@link MemoryChangeLog#write}).
+ *
+ * @author isil
+ */
+public class InMemoryCustomerRepository implements CustomerRepository {
+
+    private final ConcurrentHashMap<String, Stored> customers = new ConcurrentHashMap<>();
+    private final AtomicLong idCounter = new AtomicLong();
+    private final MemoryChangeLog changeLog = new MemoryChangeLog();
+    private final Map<CustomerSort, ConcurrentSkipListSet<String>> sortIndexes = new EnumMap<>(CustomerSort.class);
+
+    // Redis'teki gibi: sayısal ID'ler sayı olarak, diğerleri önce ve metin olarak
+    private static final Comparator<String> ID_ORDER =
+            Comparator.comparingDouble(InMemoryCustomerRepository::idScore).thenComparing(Comparator.naturalOrder());
+
+    public InMemoryCustomerRepository() {
+        sortIndexes.put(CustomerSort.ID, new ConcurrentSkipListSet<>(ID_ORDER));
+        sortIndexes.put(CustomerSort.NAME, new ConcurrentSkipListSet<>());
+        sortIndexes.put(CustomerSort.EMAIL, new ConcurrentSkipListSet<>());
+    }
+
+    private static double idScore(String id) {
+        try {
+            return Double.parseDouble(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String nextId() {
+        return String.valueOf(idCounter.incrementAndGet());
+    }
+
+    @Override
+    public void save(Customer customer) {
+        Stored stored = new Stored(customer, customer.getPurchases());
+        changeLog.write(() -> customers.compute(customer.getId(), (id, current) -> {
+            reindex(id, current, stored);
+            changeLog.stamp(id, stored.toFields());
+            return stored;
+        }));
+    }
+
+    @Override
+    public boolean update(Customer customer) {
+        // Purchases are not part of an update, as with Redis
+        Stored updated = changeLog.write(() -> customers.computeIfPresent(customer.getId(), (id, current) -> {
+            Stored next = new Stored(customer, current.purchases);
+            reindex(id, current, next);
+            changeLog.stamp(id, next.toFields());
+            return next;
+        }));
+        return updated != null;
+    }
+
+    @Override
+    public boolean[] updateAll(List<Customer> customerList) {
+        boolean[] updated = new boolean[customerList.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = update(customerList.get(i));
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean[] deleteAll(List<String> ids) {
+        boolean[] deleted = new boolean[ids.size()];
+        for (int i = 0; i < deleted.length; i++) {
+            deleted[i] = delete(ids.get(i));
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean delete(String id) {
+        boolean[] deleted = new boolean[1];
+        changeLog.write(() -> customers.computeIfPresent(id, (key, current) -> {
+            reindex(key, current, null);
+            changeLog.stamp(key, null);
+            deleted[0] = true;
+            return null;
+        }));
+        return deleted[0];
+    }
+
+    /**
+     * Moves a customer's sort index entries from its old to its new state; called inside the customer's compute.
+     *
+     * @param previous the stored state, or null for a new customer
+     * @param next     the new state, or null if the customer is deleted
+     */
+    private void reindex(String id, Stored previous, Stored next) {
+        if (previous != null) {
+            sortIndexes.get(CustomerSort.NAME).remove(entry(previous.name, id));
+            sortIndexes.get(CustomerSort.EMAIL).remove(entry(previous.email, id));
+        }
+        if (next != null) {
+            sortIndexes.get(CustomerSort.NAME).add(entry(next.name, id));
+            sortIndexes.get(CustomerSort.EMAIL).add(entry(next.email, id));
+            sortIndexes.get(CustomerSort.ID).add(id);
+        } else {
+            sortIndexes.get(CustomerSort.ID).remove(id);
+        }
+    }
+
+    private static String entry(String value, String id) {
+        return (value == null ? "" : value) + '\0' + id;
+    }
+
+    @Override
+    public Customer findById(String id) {
+        Stored stored = customers.get(id);
+        return stored == null ? null : stored.toCustomer(id);
+    }
+
+    @Override
+    public Map<String, Customer> findByIds(Collection<String> ids) {
+        Map<String, Customer> found = new LinkedHashMap<>();
+        for (String id : ids) {
+            Customer customer = findById(id);
+            if (customer != null) {
+                found.put(id, customer);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Customer> findAll() {
+        List<Customer> customerList = new ArrayList<>(customers.size());
+        customers.forEach((id, stored) -> customerList.add(stored.toCustomer(id)));
+        return customerList;
+    }
+
+    @Override
+    public SortedPage<Customer> findPage(CustomerSort sort, boolean ascending, int page, int pageSize) {
+        NavigableSet<String> index = ascending ? sortIndexes.get(sort) : sortIndexes.get(sort).descendingSet();
+        Iterator<String> entries = index.iterator();
+        for (long skip = (long) page * pageSize; skip > 0 && entries.hasNext(); skip--) {
+            entries.next();
+        }
+        List<Customer> customerList = new ArrayList<>(pageSize);
+        while (customerList.size() < pageSize && entries.hasNext()) {
+            String entry = entries.next();
+            Customer customer = findById(entry.substring(entry.lastIndexOf('\0') + 1));
+            if (customer != null) {
+                customerList.add(customer);
+            }
+        }
+        return new SortedPage<>(customerList, page, pageSize, customers.size());
+    }
+
+    @Override
+    public ChangeStream changeStream() {
+        return changeLog.events();
+    }
+
+    @Override
+    public ChangeSet<Customer> changesSince(long version) {
+        ChangeLog.Delta delta = changeLog.readSince(version);
+        if (delta == null) {
+            // Read the version first, so changes made during the reload are delivered again next time
+            long current = changeLog.currentVersion();
+            return ChangeSet.fullReload(findAll(), current);
+        }
+
+        List<Customer> changed = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        for (String id : delta.ids) {
+            Customer customer = findById(id);
+            if (customer != null) {
+                changed.add(customer);
+            } else {
+                deletedIds.add(id);
+            }
+        }
+        return ChangeSet.delta(changed, deletedIds, delta.version);
+    }
+
+    private static final class Stored {
+        final String name;
+        final String email;
+        final String phoneNumber;
+        final String address;
+        final List<String> purchases;
+
+        Stored(Customer customer, List<String> purchases) {
+            this.name = customer.getName();
+            this.email = customer.getEmail();
+            this.phoneNumber = customer.getPhoneNumber();
+            this.address = customer.getAddress();
+            this.purchases = purchases == null ? Collections.emptyList() : new ArrayList<>(purchases);
+        }
+
+        Map<String, String> toFields() {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("name", name);
+            fields.put("email", email);
+            fields.put("phoneNumber", phoneNumber);
+            fields.put("address", address);
+            return fields;
+        }
+
+        Customer toCustomer(String id) {
+            return new Customer(id, name, email, phoneNumber, address, new ArrayList<>(purchases));
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.example.model.OrderStats;
+import org.example.model.OrderStatusRule;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Orders kept in the memory of this process ({@code -Dcms.storage=memory}).
+ * <p>
+ * Besides the orders by number, four secondary indexes are maintained: by customer ID, by status, by order
+ * date (sorted, so date ranges are a sub-map) and each customer's history sorted by date and number (for
+ * {@link OrderPage}s), plus the customer's sort indexes by status and item count ({@link OrderSort}, the history
+ * being the one by date). An index entry is updated inside the atomic {@code compute} of
+ * its order, as is the version stamp (see {@link MemoryChangeLog#write}), but indexes and orders are not updated as one unit; readers therefore check each order they find
+ * through an index against the query again, so a concurrent update never yields a wrong result.
+ * <p>
+ * Items are stored as IDs of a product catalog ({@link ItemCatalog}); orders are built with the catalog's shared
+ * name instances.
+ * <p>
+ * Per-customer statistics are immutable snapshots, replaced in the same step as the index entries; the item
+ * ranking and the search index are updated in that step as well.
+ * <p>
+ * Archived orders are kept as compressed segments ({@link MemoryOrderArchive}) and only read by the history.
+ *
+ * @author isil
+ */
+public class InMemoryOrderRepository implements OrderRepository {
+
+    private final ConcurrentHashMap<String, Stored> orders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> byCustomer = new ConcurrentHashMap<>(); // Müşteri ID -> sipariş no
+    private final ConcurrentHashMap<String, Set<String>> byStatus = new ConcurrentHashMap<>(); // Durum -> sipariş no
+    private final ConcurrentSkipListMap<LocalDate, Set<String>> byDate = new ConcurrentSkipListMap<>(); // Tarih -> sipariş no
+    // Müşteri ID -> "tarih:sipariş no" (sayfalı sipariş geçmişi için sıralı)
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<String>> history = new ConcurrentHashMap<>();
+    // Sütun -> müşteri ID -> sıralama indeksi girişleri (tarih sütunu = history)
+    private final Map<OrderSort, ConcurrentHashMap<String, ConcurrentSkipListSet<String>>> sortIndexes =
+            new EnumMap<>(OrderSort.class);
+    private final ConcurrentHashMap<String, StatsState> statsByCustomer = new ConcurrentHashMap<>();
+    private final MemoryItemRanking topItems = new MemoryItemRanking();
+    private final ItemCatalog catalog = new ItemCatalog();
+    private final MemoryOrderSearch searchIndex = new MemoryOrderSearch();
+    private final MemoryOrderArchive archive = new MemoryOrderArchive();
+    private final AtomicLong orderCounter = new AtomicLong();
+    private final MemoryChangeLog changeLog = new MemoryChangeLog();
+
+    public InMemoryOrderRepository() {
+        sortIndexes.put(OrderSort.ORDER_DATE, history);
+        sortIndexes.put(OrderSort.ORDER_STATUS, new ConcurrentHashMap<>());
+        sortIndexes.put(OrderSort.ITEM_COUNT, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public String nextOrderNumber() {
+        return String.valueOf(orderCounter.incrementAndGet());
+    }
+
+    @Override
+    public void save(Order order) {
+        Stored stored = new Stored(order, catalog);
+        changeLog.write(() -> orders.compute(order.getOrderNumber(), (orderNumber, current) -> {
+            reindex(orderNumber, current, stored);
+            changeLog.stamp(orderNumber, stored.toFields());
+            return stored;
+        }));
+    }
+
+    @Override
+    public boolean update(Order order) {
+        Stored stored = new Stored(order, catalog);
+        Stored updated = changeLog.write(() -> orders.computeIfPresent(order.getOrderNumber(),
+                (orderNumber, current) -> {
+                    reindex(orderNumber, current, stored);
+                    changeLog.stamp(orderNumber, stored.toFields());
+                    return stored;
+                }));
+        return updated != null;
+    }
+
+    @Override
+    public boolean[] updateAll(List<Order> orderList) {
+        boolean[] updated = new boolean[orderList.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = update(orderList.get(i));
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean[] deleteAll(List<String> orderNumbers) {
+        boolean[] deleted = new boolean[orderNumbers.size()];
+        for (int i = 0; i < deleted.length; i++) {
+            deleted[i] = delete(orderNumbers.get(i));
+        }
+        return deleted;
+    }
+
+    /**
+     * Starts from the status index; each order is checked and changed inside its own compute, so a concurrent
+     * update is never overwritten.
+     */
+    @Override
+    public int applyStatusRule(OrderStatusRule rule, boolean dryRun) {
+        Set<String> candidates = byStatus.get(rule.getFromStatus());
+        if (candidates == null) {
+            return 0;
+        }
+        int affected = 0;
+        for (String orderNumber : new ArrayList<>(candidates)) {
+            boolean[] changed = new boolean[1];
+            changeLog.write(() -> orders.computeIfPresent(orderNumber, (number, current) -> {
+                if (!rule.matches(current.customerId, current.orderDate, current.orderStatus)) {
+                    return current;
+                }
+                changed[0] = true;
+                if (dryRun) {
+                    return current;
+                }
+                Stored next = current.withStatus(rule.getToStatus());
+                reindex(number, current, next);
+                changeLog.stamp(number, next.toFields());
+                return next;
+            }));
+            if (changed[0]) {
+                affected++;
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Like the Redis engine, writes the segments first and then removes the orders, each only if it was not
+     * replaced in between; statistics, item ranking and history keep the archived orders.
+     */
+    @Override
+    public int archive(LocalDate before, Collection<String> statuses) {
+        synchronized (archive) { // One job at a time, see RedisOrderArchive
+            Map<String, Stored> candidates = new LinkedHashMap<>();
+            for (Set<String> numbers : byDate.headMap(before, false).values()) {
+                for (String orderNumber : numbers) {
+                    Stored stored = orders.get(orderNumber);
+                    if (stored != null && stored.orderDate.isBefore(before) && statuses.contains(stored.orderStatus)) {
+                        candidates.put(orderNumber, stored);
+                    }
+                }
+            }
+            Map<String, Map<YearMonth, Map<String, Order>>> segments = new HashMap<>();
+            for (Map.Entry<String, Stored> candidate : candidates.entrySet()) {
+                Stored stored = candidate.getValue();
+                segments.computeIfAbsent(stored.customerId, customerId -> new HashMap<>())
+                        .computeIfAbsent(YearMonth.from(stored.orderDate),
+                                month -> archive.read(stored.customerId, month))
+                        .put(candidate.getKey(), stored.toOrder(candidate.getKey(), catalog));
+            }
+            writeSegments(segments);
+
+            int archived = 0;
+            for (Map.Entry<String, Stored> candidate : candidates.entrySet()) {
+                String orderNumber = candidate.getKey();
+                Stored stored = candidate.getValue();
+                boolean[] moved = new boolean[1];
+                changeLog.write(() -> orders.computeIfPresent(orderNumber, (number, current) -> {
+                    if (current != stored) {
+                        return current; // Updated since it was selected
+                    }
+                    unindexArchived(number, current);
+                    changeLog.stamp(number, null);
+                    moved[0] = true;
+                    return null;
+                }));
+                if (moved[0]) {
+                    archived++;
+                } else {
+                    segments.get(stored.customerId).get(YearMonth.from(stored.orderDate)).remove(orderNumber);
+                }
+            }
+            if (archived < candidates.size()) {
+                writeSegments(segments);
+            }
+            return archived;
+        }
+    }
+
+    private void writeSegments(Map<String, Map<YearMonth, Map<String, Order>>> segments) {
+        for (Map.Entry<String, Map<YearMonth, Map<String, Order>>> customer : segments.entrySet()) {
+            for (Map.Entry<YearMonth, Map<String, Order>> segment : customer.getValue().entrySet()) {
+                archive.write(customer.getKey(), segment.getKey(), segment.getValue().values());
+            }
+        }
+    }
+
+    /**
+     * Removes an archived order from the indexes that only cover stored orders; statistics, item ranking and
+     * history keep it.
+     */
+    private void unindexArchived(String orderNumber, Stored archived) {
+        searchIndex.index(orderNumber, archived.searchTokens(catalog), -1);
+        unindex(byCustomer, archived.customerId, orderNumber);
+        unindex(byStatus, archived.orderStatus, orderNumber);
+        Set<String> sameDate = byDate.get(archived.orderDate);
+        if (sameDate != null) {
+            sameDate.remove(orderNumber);
+        }
+    }
+
+    @Override
+    public boolean delete(String orderNumber) {
+        boolean[] deleted = new boolean[1];
+        changeLog.write(() -> orders.computeIfPresent(orderNumber, (number, current) -> {
+            reindex(number, current, null);
+            changeLog.stamp(number, null);
+            deleted[0] = true;
+            return null;
+        }));
+        return deleted[0];
+    }
+
+    /**
+     * Moves an order's index entries from its old to its new state. Called inside the order's compute, so
+     * updates of the same order are applied to the indexes in order.
+     *
+     * @param previous the stored state, or null for a new order
+     * @param next     the new state, or null if the order is deleted
+     */
+    private void reindex(String orderNumber, Stored previous, Stored next) {
+        if (previous != null) {
+            count(previous, -1);
+            searchIndex.index(orderNumber, previous.searchTokens(catalog), -1);
+            String position = OrderPage.cursorOf(previous.orderDate.toString(), orderNumber);
+            for (OrderSort sort : OrderSort.values()) {
+                String entry = sort.entry(position, previous.orderStatus, previous.itemIds.length);
+                sortIndexes.get(sort).computeIfPresent(previous.customerId, (customerId, entries) -> {
+                    entries.remove(entry);
+                    return entries.isEmpty() ? null : entries;
+                });
+            }
+            if (next == null || !previous.customerId.equals(next.customerId)) {
+                unindex(byCustomer, previous.customerId, orderNumber);
+            }
+            if (next == null || !previous.orderStatus.equals(next.orderStatus)) {
+                unindex(byStatus, previous.orderStatus, orderNumber);
+            }
+            if (next == null || !previous.orderDate.equals(next.orderDate)) {
+                // Date sets are not removed when they run empty: there are only a few per year
+                Set<String> sameDate = byDate.get(previous.orderDate);
+                if (sameDate != null) {
+                    sameDate.remove(orderNumber);
+                }
+            }
+        }
+        if (next != null) {
+            count(next, 1);
+            searchIndex.index(orderNumber, next.searchTokens(catalog), 1);
+            String position = OrderPage.cursorOf(next.orderDate.toString(), orderNumber);
+            for (OrderSort sort : OrderSort.values()) {
+                sortIndexes.get(sort).computeIfAbsent(next.customerId, customerId -> new ConcurrentSkipListSet<>())
+                        .add(sort.entry(position, next.orderStatus, next.itemIds.length));
+            }
+            index(byCustomer, next.customerId, orderNumber);
+            index(byStatus, next.orderStatus, orderNumber);
+            byDate.computeIfAbsent(next.orderDate, date -> ConcurrentHashMap.newKeySet()).add(orderNumber);
+        }
+    }
+
+    private void count(Stored order, int sign) {
+        statsByCustomer.compute(order.customerId,
+                (customerId, current) -> (current == null ? StatsState.NONE : current).plus(order, sign));
+        topItems.count(order.items(catalog), YearMonth.from(order.orderDate), sign);
+    }
+
+    private static void index(ConcurrentHashMap<String, Set<String>> index, String key, String orderNumber) {
+        index.compute(key, (k, numbers) -> {
+            Set<String> set = numbers != null ? numbers : ConcurrentHashMap.newKeySet();
+            set.add(orderNumber);
+            return set;
+        });
+    }
+
+    private static void unindex(ConcurrentHashMap<String, Set<String>> index, String key, String orderNumber) {
+        index.computeIfPresent(key, (k, numbers) -> {
+            numbers.remove(orderNumber);
+            return numbers.isEmpty() ? null : numbers;
+        });
+    }
+
+    @Override
+    public Order findByNumber(String orderNumber) {
+        Stored stored = orders.get(orderNumber);
+        return stored == null ? null : stored.toOrder(orderNumber, catalog);
+    }
+
+    @Override
+    public List<Order> findByCustomerId(String customerId) {
+        return lookup(byCustomer.get(customerId), stored -> stored.customerId.equals(customerId));
+    }
+
+    @Override
+    public OrderPage findPageByCustomerId(String customerId, String cursor, int limit) {
+        List<Order> orders = new ArrayList<>();
+        ConcurrentSkipListSet<String> positions = history.get(customerId);
+        if (positions == null) {
+            return new OrderPage(orders, null);
+        }
+        NavigableSet<String> newestFirst = positions.descendingSet();
+        if (cursor != null) {
+            newestFirst = newestFirst.tailSet(cursor, false);
+        }
+        String last = null;
+        Map<YearMonth, Map<String, Order>> archived = new HashMap<>();
+        for (String position : newestFirst) {
+            if (orders.size() == limit) {
+                return new OrderPage(orders, last);
+            }
+            Order order = atPosition(customerId, position, archived);
+            if (order != null) {
+                orders.add(order);
+            }
+            last = position;
+        }
+        return new OrderPage(orders, null);
+    }
+
+    @Override
+    public SortedPage<Order> findSortedPageByCustomerId(String customerId, OrderSort sort, boolean ascending,
+                                                        int page, int pageSize) {
+        List<Order> orders = new ArrayList<>(pageSize);
+        ConcurrentSkipListSet<String> entries = sortIndexes.get(sort).get(customerId);
+        if (entries == null) {
+            return new SortedPage<>(orders, page, pageSize, 0);
+        }
+        Iterator<String> iterator = ascending ? entries.iterator() : entries.descendingIterator();
+        for (long skip = (long) page * pageSize; skip > 0 && iterator.hasNext(); skip--) {
+            iterator.next();
+        }
+        Map<YearMonth, Map<String, Order>> archived = new HashMap<>();
+        while (orders.size() < pageSize && iterator.hasNext()) {
+            Order order = atPosition(customerId, OrderSort.position(iterator.next()), archived);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        // Statistics count the same orders as the indexes, archived ones included
+        return new SortedPage<>(orders, page, pageSize, findStatsByCustomerId(customerId).getOrderCount());
+    }
+
+    /**
+     * @param position an entry of the history, see {@link OrderPage#cursorOf}
+     * @param archived the segments read so far, by month
+     * @return the stored or archived order at that position, or null if it changed since it was indexed
+     */
+    private Order atPosition(String customerId, String position, Map<YearMonth, Map<String, Order>> archived) {
+        String orderNumber = position.substring(position.indexOf(':') + 1);
+        Order order = findByNumber(orderNumber);
+        if (order == null) { // Arşivlenmiş olabilir
+            YearMonth month = YearMonth.parse(position.substring(0, 7));
+            order = archived.computeIfAbsent(month, m -> archive.read(customerId, m)).get(orderNumber);
+        }
+        return order != null && order.getCustomerId().equals(customerId) ? order : null;
+    }
+
+    @Override
+    public List<Order> findByStatus(String orderStatus) {
+        return lookup(byStatus.get(orderStatus), stored -> stored.orderStatus.equals(orderStatus));
+    }
+
+    @Override
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) {
+        List<Order> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        Predicate<Stored> inRange = stored -> !stored.orderDate.isBefore(from) && !stored.orderDate.isAfter(to);
+        for (Set<String> numbers : byDate.subMap(from, true, to, true).values()) {
+            result.addAll(lookup(numbers, inRange));
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the order numbers of an index entry, skipping orders that changed since they were indexed.
+     */
+    private List<Order> lookup(Collection<String> orderNumbers, Predicate<Stored> stillMatches) {
+        List<Order> result = new ArrayList<>();
+        if (orderNumbers == null) {
+            return result;
+        }
+        for (String orderNumber : orderNumbers) {
+            Stored stored = orders.get(orderNumber);
+            if (stored != null && stillMatches.test(stored)) {
+                result.add(stored.toOrder(orderNumber, catalog));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Order> findAll() {
+        List<Order> all = new ArrayList<>(orders.size());
+        for (Map.Entry<String, Stored> entry : orders.entrySet()) {
+            all.add(entry.getValue().toOrder(entry.getKey(), catalog));
+        }
+        return all;
+    }
+
+    @Override
+    public OrderStats findStatsByCustomerId(String customerId) {
+        StatsState state = statsByCustomer.get(customerId);
+        return state == null ? OrderStats.EMPTY : state.toStats();
+    }
+
+    @Override
+    public Map<String, OrderStats> findStatsByCustomerIds(Collection<String> customerIds) {
+        Map<String, OrderStats> stats = new LinkedHashMap<>();
+        for (String customerId : customerIds) {
+            stats.put(customerId, findStatsByCustomerId(customerId));
+        }
+        return stats;
+    }
+
+    @Override
+    public List<Order> search(String query, String customerId, int limit) {
+        List<Order> orders = new ArrayList<>();
+        for (String orderNumber : searchIndex.search(query, customerId, limit).keySet()) {
+            Order order = findByNumber(orderNumber);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    @Override
+    public Map<String, Long> findTopItems(int limit) {
+        return topItems.top(null, limit);
+    }
+
+    @Override
+    public Map<String, Long> findTopItems(YearMonth month, int limit) {
+        return topItems.top(month, limit);
+    }
+
+    @Override
+    public List<String> decodeItems(String itemIds) {
+        List<String> items = new ArrayList<>();
+        if (!itemIds.isEmpty()) {
+            for (String id : itemIds.split(",")) {
+                items.add(catalog.name(Integer.parseInt(id)));
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public ChangeStream changeStream() {
+        return changeLog.events();
+    }
+
+    @Override
+    public ChangeSet<Order> changesSince(long version) {
+        ChangeLog.Delta delta = changeLog.readSince(version);
+        if (delta == null) {
+            long current = changeLog.currentVersion();
+            return ChangeSet.fullReload(findAll(), current);
+        }
+
+        List<Order> changed = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        for (String orderNumber : delta.ids) {
+            Order order = findByNumber(orderNumber);
+            if (order != null) {
+                changed.add(order);
+            } else {
+                deletedIds.add(orderNumber);
+            }
+        }
+        return ChangeSet.delta(changed, deletedIds, delta.version);
+    }
+
+    /**
+     * Order statistics of one customer; the order dates are kept as a multiset, so first and last date stay
+     * correct when orders are deleted.
+     */
+    private static final class StatsState {
+        static final StatsState NONE = new StatsState(0, 0, new HashMap<>(), new TreeMap<>());
+
+        final long orderCount;
+        final long itemTotal;
+        final Map<String, Long> countsByStatus;
+        final TreeMap<LocalDate, Integer> dates;
+
+        StatsState(long orderCount, long itemTotal, Map<String, Long> countsByStatus,
+                   TreeMap<LocalDate, Integer> dates) {
+            this.orderCount = orderCount;
+            this.itemTotal = itemTotal;
+            this.countsByStatus = countsByStatus;
+            this.dates = dates;
+        }
+
+        /**
+         * @return the new state, or null if no orders are left
+         */
+        StatsState plus(Stored order, int sign) {
+            if (orderCount + sign <= 0) {
+                return null;
+            }
+            Map<String, Long> statuses = new HashMap<>(countsByStatus);
+            statuses.merge(order.orderStatus, (long) sign, Long::sum);
+            statuses.values().removeIf(count -> count == 0);
+            TreeMap<LocalDate, Integer> newDates = new TreeMap<>(dates);
+            newDates.merge(order.orderDate, sign, Integer::sum);
+            newDates.values().removeIf(count -> count == 0);
+            return new StatsState(orderCount + sign, itemTotal + (long) sign * order.itemIds.length, statuses,
+                    newDates);
+        }
+
+        OrderStats toStats() {
+            return new OrderStats(orderCount, itemTotal, dates.firstKey(), dates.lastKey(), countsByStatus);
+        }
+    }
+
+    private static final class Stored {
+        final String customerId;
+        final String address;
+        final int[] itemIds; // Ürün kataloğu ID'leri
+        final LocalDate orderDate;
+        final String orderStatus;
+
+        private Stored(String customerId, String address, int[] itemIds, LocalDate orderDate, String orderStatus) {
+            this.customerId = customerId;
+            this.address = address;
+            this.itemIds = itemIds;
+            this.orderDate = orderDate;
+            this.orderStatus = orderStatus;
+        }
+
+        Stored(Order order, ItemCatalog catalog) {
+            this.customerId = order.getCustomerId();
+            this.address = order.getAddress();
+            List<String> items = order.getItems();
+            this.itemIds = new int[items.size()];
+            for (int i = 0; i < itemIds.length; i++) {
+                itemIds[i] = catalog.assign(items.get(i));
+            }
+            this.orderDate = order.getOrderDate();
+            this.orderStatus = order.getOrderStatus();
+        }
+
+        Stored withStatus(String status) {
+            return new Stored(customerId, address, itemIds, orderDate, status);
+        }
+
+        Map<String, String> toFields() {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("customerId", customerId);
+            fields.put("address", address);
+            fields.put("orderDate", orderDate.toString());
+            fields.put("orderStatus", orderStatus);
+            StringBuilder ids = new StringBuilder();
+            for (int id : itemIds) {
+                ids.append(ids.length() > 0 ? "," : "").append(id);
+            }
+            fields.put("itemIds", ids.toString());
+            fields.put("itemCount", String.valueOf(itemIds.length));
+            return fields;
+        }
+
+        List<String> items(ItemCatalog catalog) {
+            List<String> items = new ArrayList<>(itemIds.length);
+            for (int id : itemIds) {
+                items.add(catalog.name(id));
+            }
+            return items;
+        }
+
+        List<String> searchTokens(ItemCatalog catalog) {
+            return SearchTokens.of(customerId, address, items(catalog));
+        }
+
+        Order toOrder(String orderNumber, ItemCatalog catalog) {
+            return new Order(orderNumber, customerId, address, items(catalog), orderDate, orderStatus);
+        }
+    }
+}
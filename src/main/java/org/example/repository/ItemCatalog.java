@@ -0,0 +1,108 @@
+package org.example.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The in-process lookup table of the product catalog: item name &lt;-&gt; compact integer ID.
+ * <p>
+ * Every name is kept as one shared instance, and orders are built with these instances, so a name repeated in
+ * many orders is stored on the heap once and two equal names of loaded orders are usually the same object
+ * ({@code String.equals} then returns without comparing characters). IDs are small and dense, so the names are
+ * looked up in an array.
+ *
+ * @author isil
+ */
+final class ItemCatalog {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64]; // ID -> isim
+    private int nextId = 1; // Sadece bellek motoru için
+
+    /**
+     * @return the ID of the name, or null if it is not known in this process yet
+     */
+    Integer id(String name) {
+        return ids.get(name);
+    }
+
+    /**
+     * @return the name of the ID, or null if it is not known in this process yet
+     */
+    String name(int id) {
+        String[] table = names;
+        String name = id >= 0 && id < table.length ? table[id] : null;
+        if (name == null) {
+            synchronized (this) { // It may be being added right now
+                table = names;
+                name = id >= 0 && id < table.length ? table[id] : null;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Records a mapping that was assigned elsewhere, e.g. by the Redis catalog.
+     *
+     * @return the shared instance of the name
+     */
+    synchronized String put(int id, String name) {
+        String[] table = names;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(table.length * 2, id + 1));
+        }
+        String shared = table[id] != null ? table[id] : name;
+        table[id] = shared;
+        names = table;
+        ids.putIfAbsent(shared, id);
+        nextId = Math.max(nextId, id + 1);
+        return shared;
+    }
+
+    /**
+     * Returns the ID of the name, assigning the next free one if it is new (when this process owns the catalog).
+     */
+    int assign(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                id = nextId;
+                put(id, name);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return the IDs of the names, in the same order; all names must be known
+     */
+    int[] ids(List<String> items) {
+        int[] result = new int[items.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(items.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return the names of the given collection that are not known in this process yet
+     */
+    List<String> unknown(Collection<String> items) {
+        Set<String> unknown = new LinkedHashSet<>();
+        for (String item : items) {
+            if (!ids.containsKey(item)) {
+                unknown.add(item);
+            }
+        }
+        return new ArrayList<>(unknown);
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.repository;
+
+import org.example.config.RedisConnection;
+
+/**
+ * Key names used by the services.
+ * <p>
+ * With a single server the original key scheme is kept ({@code customer:<id>}, {@code customer:<id>:purchases},
+ * {@code order:<number>}), so existing data stays readable.
+ * <p>
+ * In cluster mode the customer ID is used as hash tag: {@code customer:{<id>}}, {@code customer:{<id>}:purchases}
+ * and {@code order:{<customerId>}:<number>}. Redis only hashes the part between the braces, so a customer and all
+ * of its orders live in the same slot and scripts touching several of them stay atomic. The change log keys of
+ * one entity share the tag {@code {<entity>}} for the same reason.
+ *
+ * @author isil
+ */
+final class KeySpace {
+
+    private static final KeySpace STANDALONE = new KeySpace(false);
+    private static final KeySpace CLUSTERED = new KeySpace(true);
+
+    private final boolean clustered;
+
+    private KeySpace(boolean clustered) {
+        this.clustered = clustered;
+    }
+
+    /**
+     * @return the key scheme matching the configured connection mode
+     */
+    static KeySpace current() {
+        return RedisConnection.isClusterMode() ? CLUSTERED : STANDALONE;
+    }
+
+    boolean isClustered() {
+        return clustered;
+    }
+
+    String customerKey(String id) {
+        return clustered ? "customer:{" + id + "}" : "customer:" + id;
+    }
+
+    String purchasesKey(String id) {
+        return customerKey(id) + ":purchases";
+    }
+
+    /**
+     * @return a SCAN pattern matching every customer hash (and, with a single server, other customer keys)
+     */
+    String customerPattern() {
+        return clustered ? "customer:{*}" : "customer:*";
+    }
+
+    String customerId(String customerKey) {
+        return clustered
+                ? customerKey.substring("customer:{".length(), customerKey.length() - 1)
+                : customerKey.split(":")[1];
+    }
+
+    /**
+     * @param customerId only used in cluster mode, where it is part of the key
+     */
+    String orderKey(String customerId, String orderNumber) {
+        return clustered ? "order:{" + customerId + "}:" + orderNumber : "order:" + orderNumber;
+    }
+
+    String orderPattern() {
+        return clustered ? "order:{*}:*" : "order:*";
+    }
+
+    /**
+     * @return a SCAN pattern matching the customer's orders; with a single server it matches all orders
+     */
+    String orderPattern(String customerId) {
+        return clustered ? "order:{" + customerId + "}:*" : "order:*";
+    }
+
+    String orderNumber(String orderKey) {
+        return clustered ? orderKey.substring(orderKey.indexOf("}:") + 2) : orderKey.split(":")[1];
+    }
+
+    /**
+     * The per-customer order statistics hash. Kept outside the {@code customer:*} names so that customer scans
+     * never see it; in cluster mode it shares the customer's hash tag, so it lives in the same slot as the
+     * customer's orders.
+     */
+    String orderStatsKey(String customerId) {
+        return clustered ? "stats:order:{" + customerId + "}" : "stats:order:" + customerId;
+    }
+
+    /**
+     * The customer's orders by date, a sorted set next to {@link #orderStatsKey(String)} with members
+     * {@code <orderDate>:<orderNumber>} and equal scores, i.e. sorted by that text.
+     */
+    String orderDatesKey(String customerId) {
+        return orderSortKey(customerId, OrderSort.ORDER_DATE);
+    }
+
+    /**
+     * A sort index of the customer's orders next to {@link #orderStatsKey(String)}, see {@link RedisOrderStats}.
+     */
+    String orderSortKey(String customerId, OrderSort sort) {
+        return orderStatsKey(customerId) + ":" + sort.indexName();
+    }
+
+    /**
+     * @return a SCAN pattern matching every customer's {@link #orderDatesKey(String)}
+     */
+    String orderDatesPattern() {
+        return clustered ? "stats:order:{*}:dates" : "stats:order:*:dates";
+    }
+
+    String customerIdOfDates(String orderDatesKey) {
+        String statsKey = orderDatesKey.substring(0, orderDatesKey.length() - ":dates".length());
+        return clustered
+                ? statsKey.substring("stats:order:{".length(), statsKey.length() - 1)
+                : statsKey.substring("stats:order:".length());
+    }
+
+    /**
+     * The product catalog, see {@link RedisItemCatalog}; its keys share the tag {@code {item}} in cluster mode.
+     *
+     * @param name the structure name, e.g. "ids"
+     */
+    String catalogKey(String name) {
+        return clustered ? "catalog:{item}:" + name : "catalog:item:" + name;
+    }
+
+    /**
+     * The order search index ({@link RedisOrderSearch}): one sorted set per token, tagged like the order change
+     * log so that its stamp hook can maintain it in cluster mode.
+     *
+     * @param token a token from {@link SearchTokens}, or "" for the key prefix
+     */
+    String searchKey(String token) {
+        return clustered ? "search:{order}:" + token : "search:order:" + token;
+    }
+
+    /**
+     * The customer's archived orders, see {@link RedisOrderArchive}; shares the customer's hash tag in cluster mode.
+     */
+    String archiveKey(String customerId) {
+        return clustered ? "archive:order:{" + customerId + "}" : "archive:order:" + customerId;
+    }
+
+    /**
+     * A customer sort index ({@link RedisCustomerSort}), tagged like the customer change log so that its stamp
+     * hook can maintain it in cluster mode.
+     *
+     * @param name the index name, or another structure of the indexes, e.g. "values"
+     */
+    String customerSortKey(String name) {
+        return syncKey("customer", "sort:" + name);
+    }
+
+    /**
+     * @param entity the entity name, e.g. "customer"
+     * @param name   the structure name, e.g. "version"
+     */
+    String syncKey(String entity, String name) {
+        return clustered ? "sync:{" + entity + "}:" + name : "sync:" + entity + ":" + name;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * The in-memory counterpart of {@link ChangeLog}: a version counter plus the last version each record was changed
+ * in, trimmed to the newest {@code cms.changelog.retain} (default 10000) records.
+ * <p>
+ * Records are stamped inside the write ({@link #write}), so the versions and events of a record follow the order
+ * its writes were applied in. Versions are only read while no write is running, so a client that receives a
+ * version always finds data at least as new as that version. Every stamp also appends a change event to
+ * {@link #events()}.
+ *
+ * @author isil
+ */
+final class MemoryChangeLog {
+
+    private static final long RETAIN = Long.getLong("cms.changelog.retain", 10_000L);
+
+    private final TreeMap<Long, String> changes = new TreeMap<>(); // Versiyon -> kayıt ID
+    private final Map<String, Long> lastChange = new HashMap<>(); // Kayıt ID -> son versiyon
+    private long version;
+    private long floor; // Bu versiyon ve öncesi budanmış
+    private final MemoryChangeStream events = new MemoryChangeStream();
+    // Yazmalar paylaşımlı, versiyon okumaları özel kilitle: okunan versiyonun tüm yazmaları tamamlanmış olur
+    private final ReentrantReadWriteLock writes = new ReentrantReadWriteLock();
+
+    MemoryChangeStream events() {
+        return events;
+    }
+
+    /**
+     * Runs a write, which stamps the records it changes ({@link #stamp}) in the same critical section, e.g. the
+     * {@code compute} that applies it. Writes run concurrently; reading a version waits until they are done.
+     */
+    <T> T write(Supplier<T> write) {
+        writes.readLock().lock();
+        try {
+            return write.get();
+        } finally {
+            writes.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stamps a record as part of the write that changes it, see {@link #write}.
+     *
+     * @param fields the record's new fields in the same format as the Redis hash, or null if it was deleted
+     */
+    synchronized long stamp(String id, Map<String, String> fields) {
+        version++;
+        Long previous = lastChange.put(id, version);
+        if (previous != null) {
+            changes.remove(previous);
+        }
+        changes.put(version, id);
+        while (changes.size() > RETAIN) {
+            Map.Entry<Long, String> oldest = changes.pollFirstEntry();
+            lastChange.remove(oldest.getValue());
+            floor = oldest.getKey();
+        }
+        if (fields == null) {
+            events.append(ChangeEvent.Operation.DELETE, id, version, Collections.emptyMap());
+        } else {
+            events.append(ChangeEvent.Operation.UPSERT, id, version, fields);
+        }
+        return version;
+    }
+
+    long currentVersion() {
+        writes.writeLock().lock();
+        try {
+            synchronized (this) {
+                return version;
+            }
+        } finally {
+            writes.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the IDs changed after the given version, or null if the client needs a full reload
+     */
+    ChangeLog.Delta readSince(long since) {
+        writes.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (since <= 0 || since < floor || since > version) {
+                    return null;
+                }
+                List<String> ids = new ArrayList<>(changes.tailMap(since, false).values());
+                return new ChangeLog.Delta(ids, version);
+            }
+        } finally {
+            writes.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The in-memory counterpart of a Redis Stream with consumer groups, filled by {@link MemoryChangeLog}.
+ * Event IDs look like stream IDs ({@code <sequence>-0}) so consumers can treat both engines alike.
+ *
+ * @author isil
+ */
+final class MemoryChangeStream implements ChangeStream {
+
+    private final TreeMap<Long, ChangeEvent> events = new TreeMap<>(); // Sıra no -> olay
+    private final Map<String, Group> groups = new HashMap<>();
+    private long lastSeq;
+
+    private static final class Group {
+        long lastDelivered;
+        final TreeMap<Long, String> pending = new TreeMap<>(); // Sıra no -> tüketici
+    }
+
+    synchronized void append(ChangeEvent.Operation operation, String recordId, long version,
+                             Map<String, String> fields) {
+        if (!ChangeLog.EVENTS) {
+            return;
+        }
+        lastSeq++;
+        events.put(lastSeq, new ChangeEvent(lastSeq + "-0", operation, recordId, version, fields));
+        while (ChangeLog.EVENTS_MAX_LEN > 0 && events.size() > ChangeLog.EVENTS_MAX_LEN) {
+            events.pollFirstEntry();
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void createGroup(String group, boolean fromStart) {
+        if (!groups.containsKey(group)) {
+            Group created = new Group();
+            created.lastDelivered = fromStart ? 0 : lastSeq;
+            groups.put(group, created);
+        }
+    }
+
+    @Override
+    public synchronized List<ChangeEvent> read(String group, String consumer, int maxEvents, long blockMillis) {
+        Group state = group(group);
+        long deadline = System.currentTimeMillis() + blockMillis;
+        while (events.higherKey(state.lastDelivered) == null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return new ArrayList<>();
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ArrayList<>();
+            }
+        }
+
+        List<ChangeEvent> batch = new ArrayList<>();
+        for (Map.Entry<Long, ChangeEvent> entry : events.tailMap(state.lastDelivered, false).entrySet()) {
+            if (batch.size() >= maxEvents) {
+                break;
+            }
+            batch.add(entry.getValue());
+            state.pending.put(entry.getKey(), consumer);
+            state.lastDelivered = entry.getKey();
+        }
+        return batch;
+    }
+
+    @Override
+    public synchronized List<ChangeEvent> readPending(String group, String consumer, int maxEvents) {
+        List<ChangeEvent> batch = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : group(group).pending.entrySet()) {
+            if (batch.size() >= maxEvents) {
+                break;
+            }
+            ChangeEvent event = events.get(entry.getKey());
+            if (event != null && entry.getValue().equals(consumer)) {
+                batch.add(event);
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public synchronized void ack(String group, List<ChangeEvent> acknowledged) {
+        Group state = group(group);
+        for (ChangeEvent event : acknowledged) {
+            state.pending.remove(sequence(event.getEventId()));
+        }
+    }
+
+    @Override
+    public synchronized long trim() {
+        if (groups.isEmpty()) {
+            return 0;
+        }
+        long keepFrom = Long.MAX_VALUE;
+        for (Group state : groups.values()) {
+            long needed = state.pending.isEmpty() ? state.lastDelivered : state.pending.firstKey();
+            keepFrom = Math.min(keepFrom, needed);
+        }
+        long removed = 0;
+        Iterator<Long> it = events.headMap(keepFrom, false).keySet().iterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+            removed++;
+        }
+        return removed;
+    }
+
+    private Group group(String group) {
+        Group state = groups.get(group);
+        if (state == null) {
+            throw new IllegalStateException("No consumer group " + group + "; call createGroup first");
+        }
+        return state;
+    }
+
+    private static long sequence(String eventId) {
+        return Long.parseLong(eventId.substring(0, eventId.indexOf('-')));
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.repository;
+
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The in-memory counterpart of {@link RedisItemRanking}: item counts over all orders and per order month, each
+ * kept both by name and sorted by count, so the top N are read without sorting all items.
+ *
+ * @author isil
+ */
+final class MemoryItemRanking {
+
+    private static final boolean MONTHLY = Boolean.parseBoolean(System.getProperty("cms.topItems.monthly", "true"));
+
+    private final Ranking all = new Ranking();
+    private final Map<YearMonth, Ranking> byMonth = new HashMap<>();
+
+    /**
+     * @param sign 1 when the order's items are added, -1 when they are removed
+     */
+    synchronized void count(List<String> items, YearMonth month, int sign) {
+        Ranking monthly = MONTHLY ? byMonth.computeIfAbsent(month, m -> new Ranking()) : null;
+        for (String item : items) {
+            if (item.isEmpty()) {
+                continue;
+            }
+            all.add(item, sign);
+            if (monthly != null) {
+                monthly.add(item, sign);
+            }
+        }
+        if (monthly != null && monthly.counts.isEmpty()) {
+            byMonth.remove(month);
+        }
+    }
+
+    /**
+     * @param month the order month, or null for all orders
+     */
+    synchronized Map<String, Long> top(YearMonth month, int limit) {
+        Ranking ranking = month == null ? all : byMonth.get(month);
+        Map<String, Long> top = new LinkedHashMap<>();
+        if (ranking == null) {
+            return top;
+        }
+        Iterator<Map.Entry<String, Long>> sorted = ranking.sorted.iterator();
+        while (top.size() < limit && sorted.hasNext()) {
+            Map.Entry<String, Long> entry = sorted.next();
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    private static final class Ranking {
+        // Önce sayıya göre azalan, eşitlikte isme göre (Redis ZREVRANGE gibi)
+        private static final Comparator<Map.Entry<String, Long>> ORDER =
+                Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()).reversed();
+
+        final Map<String, Long> counts = new HashMap<>();
+        final TreeSet<Map.Entry<String, Long>> sorted = new TreeSet<>(ORDER);
+
+        void add(String item, int sign) {
+            Long current = counts.get(item);
+            long next = (current == null ? 0 : current) + sign;
+            if (current != null) {
+                sorted.remove(Map.entry(item, current));
+            }
+            if (next > 0) {
+                counts.put(item, next);
+                sorted.add(Map.entry(item, next));
+            } else {
+                counts.remove(item);
+            }
+        }
+    }
+}
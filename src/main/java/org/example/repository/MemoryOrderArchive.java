@@ -0,0 +1,44 @@
+package org.example.repository;
+
+import org.example.model.Order;
+
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The in-memory counterpart of {@link RedisOrderArchive}: compressed segments ({@link OrderArchiveCodec}) per
+ * customer and order month.
+ *
+ * @author isil
+ */
+final class MemoryOrderArchive {
+
+    private final Map<String, Map<YearMonth, byte[]>> segments = new HashMap<>(); // Müşteri ID -> ay -> segment
+
+    /**
+     * @return the archived orders of the customer and month by number; empty if there are none
+     */
+    synchronized Map<String, Order> read(String customerId, YearMonth month) {
+        Map<YearMonth, byte[]> months = segments.get(customerId);
+        return OrderArchiveCodec.decode(months == null ? null : months.get(month));
+    }
+
+    /**
+     * Replaces the segment of the customer and month; an empty collection removes it.
+     */
+    synchronized void write(String customerId, YearMonth month, Collection<Order> orders) {
+        if (orders.isEmpty()) {
+            Map<YearMonth, byte[]> months = segments.get(customerId);
+            if (months != null) {
+                months.remove(month);
+                if (months.isEmpty()) {
+                    segments.remove(customerId);
+                }
+            }
+        } else {
+            segments.computeIfAbsent(customerId, id -> new HashMap<>()).put(month, OrderArchiveCodec.encode(orders));
+        }
+    }
+}
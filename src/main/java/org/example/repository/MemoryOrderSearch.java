@@ -0,0 +1,85 @@
+package org.example.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The in-memory counterpart of {@link RedisOrderSearch}: token -&gt; (order number -&gt; occurrences), ranked the
+ * same way. Queries start from the smallest candidate set, so a rare word keeps them fast.
+ *
+ * @author isil
+ */
+final class MemoryOrderSearch {
+
+    private static final int ITEM_WEIGHT = 2;
+
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+
+    /**
+     * @param sign 1 when the order's tokens are added, -1 when they are removed
+     */
+    synchronized void index(String orderNumber, List<String> tokens, int sign) {
+        for (String token : tokens) {
+            Map<String, Integer> orders = postings.computeIfAbsent(token, t -> new HashMap<>());
+            if (orders.merge(orderNumber, sign, Integer::sum) <= 0) {
+                orders.remove(orderNumber);
+                if (orders.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param customerId if not null, only this customer's orders are searched
+     * @return order number -&gt; relevance, best first; empty if the query has no searchable words
+     */
+    synchronized Map<String, Double> search(String query, String customerId, int limit) {
+        List<Map<String, Integer>> perWord = new ArrayList<>();
+        for (String word : SearchTokens.queryWords(query)) {
+            Map<String, Integer> matches = new HashMap<>();
+            postings.getOrDefault(SearchTokens.ITEM + word, Collections.emptyMap())
+                    .forEach((orderNumber, count) -> matches.merge(orderNumber, ITEM_WEIGHT * count, Integer::sum));
+            postings.getOrDefault(SearchTokens.ADDRESS + word, Collections.emptyMap())
+                    .forEach((orderNumber, count) -> matches.merge(orderNumber, count, Integer::sum));
+            if (matches.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            perWord.add(matches);
+        }
+        if (perWord.isEmpty() || limit <= 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> customerOrders = customerId == null ? null
+                : postings.getOrDefault(SearchTokens.customer(customerId), Collections.emptyMap());
+
+        perWord.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>();
+        for (Map.Entry<String, Integer> candidate : perWord.get(0).entrySet()) {
+            String orderNumber = candidate.getKey();
+            if (customerOrders != null && !customerOrders.containsKey(orderNumber)) {
+                continue;
+            }
+            double score = candidate.getValue();
+            for (int w = 1; w < perWord.size() && score > 0; w++) {
+                Integer other = perWord.get(w).get(orderNumber);
+                score = other == null ? 0 : score + other;
+            }
+            if (score > 0) {
+                ranked.add(Map.entry(orderNumber, score));
+            }
+        }
+        // Redis ZREVRANGE gibi: puana, eşitlikte sipariş numarasına göre azalan
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey())
+                .reversed());
+        Map<String, Double> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.repository;
+
+import org.example.model.Order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The format of an archive segment: the orders of one customer and month, gzip-compressed. Items are stored by
+ * name, so a segment can be read without the product catalog.
+ *
+ * @author isil
+ */
+final class OrderArchiveCodec {
+
+    private static final int FORMAT = 1;
+
+    private OrderArchiveCodec() {
+    }
+
+    static byte[] encode(Collection<Order> orders) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + orders.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeByte(FORMAT);
+            out.writeInt(orders.size());
+            for (Order order : orders) {
+                out.writeUTF(order.getOrderNumber());
+                out.writeUTF(order.getCustomerId());
+                out.writeUTF(order.getAddress());
+                out.writeUTF(order.getOrderDate().toString());
+                out.writeUTF(order.getOrderStatus());
+                out.writeInt(order.getItems().size());
+                for (String item : order.getItems()) {
+                    out.writeUTF(item);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In-memory stream, not expected
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param segment a segment, or null for an empty one
+     * @return the orders by number, in the stored order
+     */
+    static Map<String, Order> decode(byte[] segment) {
+        Map<String, Order> orders = new LinkedHashMap<>();
+        if (segment == null) {
+            return orders;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(segment)))) {
+            int format = in.readUnsignedByte();
+            if (format != FORMAT) {
+                throw new IllegalStateException("Unknown order archive format: " + format);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String orderNumber = in.readUTF();
+                String customerId = in.readUTF();
+                String address = in.readUTF();
+                LocalDate orderDate = LocalDate.parse(in.readUTF());
+                String orderStatus = in.readUTF();
+                int itemCount = in.readInt();
+                List<String> items = new ArrayList<>(itemCount);
+                for (int j = 0; j < itemCount; j++) {
+                    items.add(in.readUTF());
+                }
+                Order order = new Order(orderNumber, customerId, address, items, orderDate, orderStatus);
+                order.setArchived(true);
+                orders.put(orderNumber, order);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt order archive segment", e);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.repository;
+
+import org.example.model.Order;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a customer's order history, newest first by order date; orders of the same day are ordered by
+ * order number (compared as text), so the order is stable.
+ * <p>
+ * The next page is requested with {@link #getNextCursor()}. The cursor is the position of the last order on
+ * this page, not an offset, so pages neither skip nor repeat orders when orders are added or deleted in between,
+ * and a page deep in the history costs the same as the first one.
+ *
+ * @author isil
+ */
+public class OrderPage {
+    private final List<Order> orders;
+    private final String nextCursor;
+
+    /**
+     * @param nextCursor the cursor of the next page, null if this is the last page
+     */
+    public OrderPage(List<Order> orders, String nextCursor) {
+        this.orders = Collections.unmodifiableList(orders);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * @return the cursor of the next page, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the cursor position of an order: order date and number, which sort newest first when compared
+     * as text in reverse
+     */
+    static String cursorOf(String orderDate, String orderNumber) {
+        return orderDate + ":" + orderNumber;
+    }
+}
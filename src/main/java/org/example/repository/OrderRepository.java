@@ -0,0 +1,173 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.example.model.OrderStats;
+import org.example.model.OrderStatusRule;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of orders. Implementations must be thread-safe.
+ * <p>
+ * Use {@link Repositories#orders()} to get the engine selected by configuration.
+ *
+ * @author isil
+ */
+public interface OrderRepository {
+
+    /**
+     * @return a new, unique order number
+     */
+    String nextOrderNumber();
+
+    /**
+     * Stores the order, replacing any existing order with the same number.
+     */
+    void save(Order order);
+
+    /**
+     * Replaces the stored fields of an existing order.
+     *
+     * @return false if no order with that number exists
+     */
+    boolean update(Order order);
+
+    /**
+     * Updates many existing orders at once, e.g. in a single round trip.
+     *
+     * @return for each order whether it existed and was updated
+     */
+    boolean[] updateAll(List<Order> orders);
+
+    /**
+     * @return false if no order with that number exists
+     */
+    boolean delete(String orderNumber);
+
+    /**
+     * Deletes many orders at once, e.g. in a single round trip.
+     *
+     * @return for each order number whether the order existed and was deleted
+     */
+    boolean[] deleteAll(List<String> orderNumbers);
+
+    /**
+     * Applies a bulk status transition to all orders matching the rule. An order that changes concurrently is
+     * only transitioned if it still matches when it is written.
+     *
+     * @param dryRun if true, the matching orders are only counted
+     * @return the number of orders changed, or that would be changed in a dry run
+     */
+    int applyStatusRule(OrderStatusRule rule, boolean dryRun);
+
+    /**
+     * Moves old orders into compressed cold storage. Archived orders are only read by
+     * {@link #findPageByCustomerId} and {@link #findSortedPageByCustomerId}, marked as
+     * {@link Order#isArchived() archived}; they are read-only, every other query, update and delete sees them as
+     * deleted. Statistics and the item ranking keep counting them.
+     *
+     * @param before   orders placed before this date are archived
+     * @param statuses only orders with one of these statuses are archived, e.g. "Delivered"
+     * @return the number of orders archived
+     */
+    int archive(LocalDate before, Collection<String> statuses);
+
+    /**
+     * @return the order, or null if it does not exist
+     */
+    Order findByNumber(String orderNumber);
+
+    List<Order> findByCustomerId(String customerId);
+
+    /**
+     * Returns one page of the customer's orders, newest first, see {@link OrderPage}. Archived orders are
+     * included.
+     *
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param limit  the maximum number of orders on the page
+     */
+    OrderPage findPageByCustomerId(String customerId, String cursor, int limit);
+
+    /**
+     * Loads one page of the customer's orders sorted by a column, archived orders included, from sort indexes
+     * kept up to date on every write, so the cost does not grow with the order history or the page number.
+     *
+     * @param page     the page number, from 0
+     * @param pageSize the number of orders per page
+     */
+    SortedPage<Order> findSortedPageByCustomerId(String customerId, OrderSort sort, boolean ascending, int page,
+                                                 int pageSize);
+
+    List<Order> findByStatus(String orderStatus);
+
+    /**
+     * Loads every order, e.g. for a consistency check; a full scan. Archived orders are left out.
+     */
+    List<Order> findAll();
+
+    /**
+     * @param from first order date, inclusive
+     * @param to   last order date, inclusive
+     */
+    List<Order> findByDateRange(LocalDate from, LocalDate to);
+
+    /**
+     * @return the customer's order statistics; {@link OrderStats#EMPTY} if the customer has no orders
+     */
+    OrderStats findStatsByCustomerId(String customerId);
+
+    /**
+     * Loads the order statistics of many customers at once, e.g. for a table.
+     *
+     * @return the statistics by customer ID, with an entry for every given ID
+     */
+    Map<String, OrderStats> findStatsByCustomerIds(Collection<String> customerIds);
+
+    /**
+     * Full-text search over item names and addresses of all orders, answered from an index maintained on every
+     * write. Every word of the query must occur in the order's items or address; orders matching in their items
+     * rank higher.
+     *
+     * @param customerId if not null, only this customer's orders are searched
+     * @param limit      the maximum number of orders
+     * @return the matching orders, best match first
+     */
+    List<Order> search(String query, String customerId, int limit);
+
+    /**
+     * Returns the best-selling items: how often each item appears in the stored orders.
+     *
+     * @param limit the maximum number of items
+     * @return item name -&gt; count, highest count first
+     */
+    Map<String, Long> findTopItems(int limit);
+
+    /**
+     * Returns the best-selling items of the orders placed in one month.
+     *
+     * @return item name -&gt; count, highest count first; empty if per-month rankings are disabled
+     */
+    Map<String, Long> findTopItems(YearMonth month, int limit);
+
+    /**
+     * Returns the orders created, updated or deleted after the given version. A version of 0, or one that is
+     * older than the compacted part of the change log, results in a full reload.
+     *
+     * @param version the version the client's data corresponds to
+     */
+    ChangeSet<Order> changesSince(long version);
+
+    /**
+     * Resolves the {@code itemIds} field of a change event (comma-separated product catalog IDs) to item names.
+     */
+    List<String> decodeItems(String itemIds);
+
+    /**
+     * @return the change data capture stream with one event per mutation, for downstream consumers
+     */
+    ChangeStream changeStream();
+}
@@ -0,0 +1,50 @@
+package org.example.repository;
+
+/**
+ * The columns a customer's orders can be sorted by on the server, see
+ * {@link OrderRepository#findSortedPageByCustomerId}. Ties are ordered by the position in the history (order
+ * date, then order number as text).
+ *
+ * @author isil
+ */
+public enum OrderSort {
+    ORDER_DATE("dates"),
+    ORDER_STATUS("status"),
+    ITEM_COUNT("items");
+
+    private final String indexName;
+
+    OrderSort(String indexName) {
+        this.indexName = indexName;
+    }
+
+    /**
+     * @return the name of the index in key names, e.g. "dates"
+     */
+    String indexName() {
+        return indexName;
+    }
+
+    /**
+     * @param position the history position, see {@link OrderPage#cursorOf(String, String)}
+     * @return the index entry of an order: the sort value and the position, separated by a NUL character (which
+     * sorts before every other character, so shorter values come first); the date index holds the position only
+     */
+    String entry(String position, String orderStatus, int itemCount) {
+        switch (this) {
+            case ORDER_STATUS:
+                return orderStatus + '\0' + position;
+            case ITEM_COUNT:
+                return String.format("%010d", itemCount) + '\0' + position;
+            default:
+                return position;
+        }
+    }
+
+    /**
+     * @return the history position of an index entry
+     */
+    static String position(String entry) {
+        return entry.substring(entry.lastIndexOf('\0') + 1);
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.repository;
+
+import org.example.config.RedisConnection;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.params.XTrimParams;
+import redis.clients.jedis.resps.StreamEntry;
+import redis.clients.jedis.resps.StreamGroupInfo;
+import redis.clients.jedis.resps.StreamPendingSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the Redis Stream written by {@link ChangeLog} ({@code sync:<entity>:events}) with consumer groups.
+ * All commands go to the primary, since reading with a group changes the group's state.
+ *
+ * @author isil
+ */
+class RedisChangeStream implements ChangeStream {
+
+    // Kept below the socket timeout, so a blocking read never looks like a broken connection
+    private static final long MAX_BLOCK_MILLIS = Math.min(1_000L, RedisConnection.getTimeoutMillis() / 2);
+
+    private final String streamKey;
+
+    RedisChangeStream(String entity, KeySpace keys) {
+        this.streamKey = ChangeLog.eventsKey(entity, keys);
+    }
+
+    private UnifiedJedis jedis() {
+        return RedisConnection.getWriteConnection();
+    }
+
+    @Override
+    public void createGroup(String group, boolean fromStart) {
+        try {
+            jedis().xgroupCreate(streamKey, group, fromStart ? new StreamEntryID() : StreamEntryID.XGROUP_LAST_ENTRY,
+                    true);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) {
+                throw e;
+            }
+            // Grup zaten var
+        }
+    }
+
+    @Override
+    public List<ChangeEvent> read(String group, String consumer, int maxEvents, long blockMillis) {
+        XReadGroupParams params = XReadGroupParams.xReadGroupParams().count(maxEvents);
+        if (blockMillis > 0) {
+            params.block((int) Math.min(blockMillis, MAX_BLOCK_MILLIS));
+        }
+        return readGroup(group, consumer, params, StreamEntryID.XREADGROUP_UNDELIVERED_ENTRY);
+    }
+
+    @Override
+    public List<ChangeEvent> readPending(String group, String consumer, int maxEvents) {
+        return readGroup(group, consumer, XReadGroupParams.xReadGroupParams().count(maxEvents), new StreamEntryID());
+    }
+
+    private List<ChangeEvent> readGroup(String group, String consumer, XReadGroupParams params, StreamEntryID from) {
+        List<Map.Entry<String, List<StreamEntry>>> result =
+                jedis().xreadGroup(group, consumer, params, Collections.singletonMap(streamKey, from));
+        if (result == null || result.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<StreamEntry> entries = result.get(0).getValue();
+        List<ChangeEvent> events = new ArrayList<>(entries.size());
+        for (StreamEntry entry : entries) {
+            if (entry.getFields() == null) {
+                continue; // Pending entry that was trimmed away in the meantime
+            }
+            events.add(toEvent(entry));
+        }
+        return events;
+    }
+
+    private static ChangeEvent toEvent(StreamEntry entry) {
+        Map<String, String> fields = new LinkedHashMap<>(entry.getFields());
+        ChangeEvent.Operation operation = ChangeEvent.Operation.fromWireName(fields.remove("op"));
+        String recordId = fields.remove("id");
+        String version = fields.remove("version");
+        return new ChangeEvent(entry.getID().toString(), operation, recordId,
+                version == null ? 0 : Long.parseLong(version), fields);
+    }
+
+    @Override
+    public void ack(String group, List<ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        StreamEntryID[] ids = new StreamEntryID[events.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = new StreamEntryID(events.get(i).getEventId());
+        }
+        jedis().xack(streamKey, group, ids);
+    }
+
+    @Override
+    public long trim() {
+        UnifiedJedis jedis = jedis();
+        if (!jedis.exists(streamKey)) {
+            return 0;
+        }
+        // The oldest event some group still needs: its oldest pending one, or else the last one it was given
+        StreamEntryID keepFrom = null;
+        for (StreamGroupInfo group : jedis.xinfoGroups(streamKey)) {
+            StreamEntryID needed = group.getLastDeliveredId();
+            if (group.getPending() > 0) {
+                StreamPendingSummary pending = jedis.xpending(streamKey, group.getName());
+                if (pending.getMinId() != null) {
+                    needed = pending.getMinId();
+                }
+            }
+            if (keepFrom == null || needed.compareTo(keepFrom) < 0) {
+                keepFrom = needed;
+            }
+        }
+        if (keepFrom == null) {
+            return 0;
+        }
+        return jedis.xtrim(streamKey, XTrimParams.xTrimParams().minId(keepFrom.toString()));
+    }
+}
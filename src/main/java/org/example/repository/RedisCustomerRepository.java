@@ -0,0 +1,295 @@
+package org.example.repository;
+
+import org.example.config.RedisConnection;
+import org.example.config.RedisNodes;
+import org.example.model.Customer;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Customers stored in Redis: one hash per customer plus a list of purchases, key names as described in
+ * {@link KeySpace}. Every mutation is recorded in a {@link ChangeLog} for delta synchronisation.
+ *
+ * @author isil
+ */
+public class RedisCustomerRepository implements CustomerRepository {
+
+    static final String CUSTOMER_KEY = "customer"; // Müşteri keyinin sabit kısmı
+    static final String CUSTOMER_ID_COUNTER_KEY = "customer:id:counter"; // ID sayacı için anahtar
+
+    // The customer write scripts with the sort index hook
+    private static final ChangeLog.Scripts SCRIPTS =
+            new ChangeLog.Scripts(Collections.emptyList(), Collections.singletonList(RedisCustomerSort.HOOK));
+
+    private final KeySpace keys = KeySpace.current();
+
+    // Delta senkronizasyonu için değişiklik günlüğü; yazma scriptleri sıralama indekslerini de günceller
+    private final ChangeLog changeLog = new ChangeLog(CUSTOMER_KEY, keys, SCRIPTS);
+    private final RedisChangeStream changeStream = new RedisChangeStream(CUSTOMER_KEY, keys);
+    private volatile boolean sortIndexesBuilt;
+
+    /**
+     * The connection is looked up on every call instead of in the constructor, so creating the repository
+     * (for example while an FXML controller is being built) never waits for Redis to become reachable.
+     * Reads may be served by a replica, writes always go to the primary (see RedisConnection). Full scans and
+     * bulk writes use the primary's client with the longer bulk timeout.
+     */
+    private UnifiedJedis readJedis() {
+        return RedisConnection.getReadConnection();
+    }
+
+    private UnifiedJedis writeJedis() {
+        return RedisConnection.getWriteConnection();
+    }
+
+    private UnifiedJedis scanJedis() {
+        return RedisConnection.getBulkConnection(false);
+    }
+
+    private UnifiedJedis bulkWriteJedis() {
+        return RedisConnection.getBulkConnection(true);
+    }
+
+    @Override
+    public String nextId() { //ID oluşturuyor
+        // jedis.incr CUSTOMER_ID_COUNTER_KEY anahtarının değerini atomik olarak bir artırır ve bu değeri yeni müşteri ID'si olarak döndürür
+        return String.valueOf(writeJedis().incr(CUSTOMER_ID_COUNTER_KEY));
+    }
+
+    @Override
+    public void save(Customer customer) {
+        changeLog.upsert(writeJedis(), customer.getId(), keys.customerKey(customer.getId()), toHash(customer), false);
+    }
+
+    @Override
+    public boolean update(Customer customer) {
+        // Existence check and write are atomic; the version stamp is part of the same script
+        // (in cluster mode it follows in a second one, see ChangeLog)
+        return changeLog.upsert(writeJedis(), customer.getId(), keys.customerKey(customer.getId()), toHash(customer),
+                true) >= 0;
+    }
+
+    @Override
+    public boolean delete(String id) {
+        // Müşteri bilgilerini ve alımları sil, silme işlemini değişiklik günlüğüne yaz
+        return changeLog.delete(writeJedis(), id, keys.customerKey(id),
+                Collections.singletonList(keys.purchasesKey(id)), true) >= 0;
+    }
+
+    /**
+     * Writes all updates in one pipelined round trip.
+     */
+    @Override
+    public boolean[] updateAll(List<Customer> customers) {
+        List<String> ids = new ArrayList<>(customers.size());
+        List<String> customerKeys = new ArrayList<>(customers.size());
+        List<Map<String, String>> fields = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            ids.add(customer.getId());
+            customerKeys.add(keys.customerKey(customer.getId()));
+            fields.add(toHash(customer));
+        }
+        return written(changeLog.upsertAll(bulkWriteJedis(), ids, customerKeys, fields,
+                Collections.nCopies(ids.size(), ""), true));
+    }
+
+    /**
+     * Deletes all customers (and their purchases) in one pipelined round trip.
+     */
+    @Override
+    public boolean[] deleteAll(List<String> ids) {
+        List<String> customerKeys = new ArrayList<>(ids.size());
+        List<List<String>> purchaseKeys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            customerKeys.add(keys.customerKey(id));
+            purchaseKeys.add(Collections.singletonList(keys.purchasesKey(id)));
+        }
+        return written(changeLog.deleteAll(bulkWriteJedis(), ids, customerKeys, purchaseKeys));
+    }
+
+    private static boolean[] written(long[] versions) {
+        boolean[] written = new boolean[versions.length];
+        for (int i = 0; i < versions.length; i++) {
+            written[i] = versions[i] >= 0;
+        }
+        return written;
+    }
+
+    private static Map<String, String> toHash(Customer customer) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", customer.getName());
+        fields.put("email", customer.getEmail());
+        fields.put("phoneNumber", customer.getPhoneNumber());
+        fields.put("address", customer.getAddress());
+        return fields;
+    }
+
+    @Override
+    public Customer findById(String id) {
+        return findByIds(Collections.singletonList(id)).get(id); // Tek round trip
+    }
+
+    /**
+     * Reads the hashes and purchases of all customers in one pipelined round trip (one per node in cluster mode).
+     */
+    @Override
+    public Map<String, Customer> findByIds(Collection<String> ids) {
+        return findByIds(readJedis(), ids);
+    }
+
+    private Map<String, Customer> findByIds(UnifiedJedis jedis, Collection<String> ids) {
+        Map<String, Response<Map<String, String>>> data = new LinkedHashMap<>();
+        Map<String, Response<List<String>>> purchases = new LinkedHashMap<>();
+        try (AbstractPipeline pipeline = jedis.pipelined()) {
+            for (String id : ids) {
+                data.put(id, pipeline.hgetAll(keys.customerKey(id)));
+                purchases.put(id, pipeline.lrange(keys.purchasesKey(id), 0, -1));
+            }
+            pipeline.sync();
+        }
+        Map<String, Customer> found = new LinkedHashMap<>();
+        for (Map.Entry<String, Response<Map<String, String>>> entry : data.entrySet()) {
+            Map<String, String> customerData = entry.getValue().get();
+            if (customerData.isEmpty()) {
+                continue; // Böyle bir müşteri yok
+            }
+            found.put(entry.getKey(), new Customer(
+                    entry.getKey(),
+                    customerData.get("name"),
+                    customerData.get("email"),
+                    customerData.get("phoneNumber"),
+                    customerData.get("address"),
+                    purchases.get(entry.getKey()).get()
+            ));
+        }
+        return found;
+    }
+
+    /**
+     * Reads a rank range of the sort index (and its size), then the customers in a second pipelined round trip.
+     */
+    @Override
+    public SortedPage<Customer> findPage(CustomerSort sort, boolean ascending, int page, int pageSize) {
+        ensureSortIndexes();
+        String index = keys.customerSortKey(sort.indexName());
+        long start = (long) page * pageSize;
+        Response<Long> total;
+        Response<List<String>> entries;
+        try (AbstractPipeline pipeline = readJedis().pipelined()) {
+            total = pipeline.zcard(index);
+            entries = ascending
+                    ? pipeline.zrange(index, start, start + pageSize - 1)
+                    : pipeline.zrevrange(index, start, start + pageSize - 1);
+            pipeline.sync();
+        }
+        List<String> ids = new ArrayList<>(entries.get().size());
+        for (String entry : entries.get()) {
+            ids.add(RedisCustomerSort.id(entry));
+        }
+        Map<String, Customer> found = findByIds(ids);
+        List<Customer> customers = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Customer customer = found.get(id);
+            if (customer != null) { // Sıralama okunduktan sonra silinmiş olabilir
+                customers.add(customer);
+            }
+        }
+        return new SortedPage<>(customers, page, pageSize, total.get());
+    }
+
+    /**
+     * Indexes the customers written before the sort indexes existed, once per database.
+     */
+    private void ensureSortIndexes() {
+        if (sortIndexesBuilt) {
+            return;
+        }
+        UnifiedJedis jedis = bulkWriteJedis();
+        if (!RedisCustomerSort.isBuilt(jedis, keys)) {
+            RedisCustomerSort.build(jedis, keys, RedisNodes.onEachMaster(jedis, this::loadCustomers));
+        }
+        sortIndexesBuilt = true;
+    }
+
+    @Override
+    public List<Customer> findAll() {
+        // Tüm master node'larda paralel olarak taranır
+        return RedisNodes.onEachMaster(scanJedis(), this::loadCustomers);
+    }
+
+    /**
+     * Loads the customers stored on one node: SCAN for the customer hashes, then one pipelined batch for their
+     * fields and purchases (a customer's purchases share its hash tag, so they are on the same node).
+     */
+    private List<Customer> loadCustomers(Jedis node) {
+        List<String> customerKeys = RedisNodes.scan(node, keys.customerPattern(), "hash");
+        List<Response<Map<String, String>>> data = new ArrayList<>(customerKeys.size());
+        List<Response<List<String>>> purchases = new ArrayList<>(customerKeys.size());
+        Pipeline pipeline = node.pipelined();
+        for (String customerKey : customerKeys) {
+            data.add(pipeline.hgetAll(customerKey));
+            purchases.add(pipeline.lrange(customerKey + ":purchases", 0, -1));
+        }
+        pipeline.sync();
+
+        List<Customer> customerList = new ArrayList<>(customerKeys.size());
+        for (int i = 0; i < customerKeys.size(); i++) {
+            Map<String, String> customerData = data.get(i).get();
+            if (customerData.isEmpty()) {
+                continue; // Deleted between SCAN and HGETALL
+            }
+            customerList.add(new Customer(
+                    keys.customerId(customerKeys.get(i)),
+                    customerData.get("name"),
+                    customerData.get("email"),
+                    customerData.get("phoneNumber"),
+                    customerData.get("address"),
+                    purchases.get(i).get()
+            ));
+        }
+        return customerList;
+    }
+
+    @Override
+    public ChangeStream changeStream() {
+        return changeStream;
+    }
+
+    @Override
+    public ChangeSet<Customer> changesSince(long version) {
+        // One connection for the whole call, so the version and the data come from the same server
+        UnifiedJedis jedis = readJedis();
+        ChangeLog.Delta delta = changeLog.readSince(jedis, version);
+        if (delta == null) {
+            // Read the version first, so changes made during the reload are delivered again next time; both on
+            // the primary, where the scan runs
+            UnifiedJedis scan = scanJedis();
+            long current = changeLog.currentVersion(scan);
+            return ChangeSet.fullReload(RedisNodes.onEachMaster(scan, this::loadCustomers), current);
+        }
+
+        // Değişen müşteriler tek pipelined round trip ile okunur
+        Map<String, Customer> found = findByIds(jedis, delta.ids);
+        List<Customer> changed = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        for (String id : delta.ids) {
+            Customer customer = found.get(id);
+            if (customer != null) {
+                changed.add(customer);
+            } else {
+                deletedIds.add(id);
+            }
+        }
+        return ChangeSet.delta(changed, deletedIds, delta.version);
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.repository;
+
+import org.example.config.RedisScript;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The product catalog in Redis: {@code catalog:item:ids} (name -&gt; ID), {@code catalog:item:names}
+ * (ID -&gt; name) and the counter {@code catalog:item:next}. Orders store their items as comma-separated IDs
+ * ({@code itemIds}) instead of repeating the names in every order hash.
+ * <p>
+ * IDs are assigned by a script, so concurrent clients agree on them, and never change. Each process caches the
+ * catalog in an {@link ItemCatalog}; a name is sent to Redis once per process, an unknown ID reloads the whole
+ * catalog (it is as small as the product range).
+ *
+ * @author isil
+ */
+final class RedisItemCatalog {
+
+    // KEYS: ids, names, counter; ARGV: names -> their IDs
+    private static final RedisScript ASSIGN = RedisScript.of(
+            "local result = {}\n" +
+            "for i = 1, #ARGV do\n" +
+            "  local id = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "  if not id then\n" +
+            "    id = redis.call('INCR', KEYS[3])\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[i], id)\n" +
+            "    redis.call('HSET', KEYS[2], id, ARGV[i])\n" +
+            "  end\n" +
+            "  result[i] = tonumber(id)\n" +
+            "end\n" +
+            "return result");
+
+    private final ItemCatalog table = new ItemCatalog();
+    private final List<String> catalogKeys;
+    private final String namesKey;
+    private final Supplier<UnifiedJedis> reads;
+    private final Supplier<UnifiedJedis> writes;
+
+    /**
+     * @param reads  the connection for loading the catalog when an ID is not cached
+     * @param writes used when a replica does not know an ID yet
+     */
+    RedisItemCatalog(KeySpace keys, Supplier<UnifiedJedis> reads, Supplier<UnifiedJedis> writes) {
+        this.namesKey = keys.catalogKey("names");
+        this.catalogKeys = Arrays.asList(keys.catalogKey("ids"), namesKey, keys.catalogKey("next"));
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    /**
+     * Makes sure all names have an ID, assigning the missing ones in one call.
+     *
+     * @param jedis the primary connection of the write the names belong to
+     */
+    void register(UnifiedJedis jedis, Collection<String> items) {
+        List<String> unknown = table.unknown(items);
+        if (unknown.isEmpty()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Long> ids = (List<Long>) ASSIGN.eval(jedis, catalogKeys, unknown);
+        for (int i = 0; i < ids.size(); i++) {
+            table.put(ids.get(i).intValue(), unknown.get(i));
+        }
+    }
+
+    /**
+     * @param jedis the primary connection of the write the items belong to
+     * @return the value of the {@code itemIds} field for the items, e.g. "3,17,3"
+     */
+    String encode(UnifiedJedis jedis, List<String> items) {
+        register(jedis, items);
+        StringBuilder encoded = new StringBuilder(items.size() * 4);
+        for (int id : table.ids(items)) {
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+            encoded.append(id);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @param itemIds the value of an {@code itemIds} field
+     * @return the shared name instances, in the same order
+     */
+    List<String> decode(String itemIds) {
+        if (itemIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] parts = itemIds.split(",");
+        List<String> items = new ArrayList<>(parts.length);
+        for (String part : parts) {
+            items.add(name(Integer.parseInt(part)));
+        }
+        return items;
+    }
+
+    /**
+     * @return the name of the ID; "#&lt;id&gt;" if the catalog does not contain it (never expected)
+     */
+    String name(int id) {
+        String name = table.name(id);
+        if (name == null) {
+            load(reads.get());
+            name = table.name(id);
+        }
+        if (name == null) {
+            load(writes.get());
+            name = table.name(id);
+        }
+        return name != null ? name : "#" + id;
+    }
+
+    private void load(UnifiedJedis jedis) {
+        for (Map.Entry<String, String> entry : jedis.hgetAll(namesKey).entrySet()) {
+            table.put(Integer.parseInt(entry.getKey()), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.repository;
+
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.resps.Tuple;
+
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The best-selling items in Redis: a sorted set of item ID (see {@link RedisItemCatalog}) -&gt; number of orders
+ * containing it (an item listed twice in one order counts twice), plus one set per order month unless
+ * {@code -Dcms.topItems.monthly=false}. Maintained by a stamp hook in the order write scripts (see
+ * {@link ChangeLog.Scripts}).
+ * <p>
+ * A delete does not pass the old record to the stamp hook, so the hook keeps what each order contributed
+ * ({@code itemIdsByOrder}: order number -&gt; {@code <yyyy-MM>|<itemIds>}), subtracts that and adds the new
+ * items. All keys carry the change log's hash tag, so in cluster mode they share its slot.
+ * <p>
+ * Orders written before this existed are added by the repository's one-time conversion of old-format orders,
+ * which runs this hook as well (see {@link RedisOrderRepository}).
+ *
+ * @author isil
+ */
+final class RedisItemRanking {
+
+    private static final boolean MONTHLY = Boolean.parseBoolean(System.getProperty("cms.topItems.monthly", "true"));
+
+    private RedisItemRanking() {
+    }
+
+    /**
+     * The stamp hook maintaining the ranking, see {@link ChangeLog.Hook}. Its keys are the contributions, the
+     * overall ranking and the rankings of the stored contribution's month (guarded by the contribution) and of the
+     * new order's month. Orders moved into the archive stay counted.
+     */
+    static final ChangeLog.Hook HOOK = new ChangeLog.Hook(
+            // keys: contributions, ranking, [previous month's ranking], [new month's ranking]
+            "local function bump(ranking, item, sign)\n" +
+            "  if redis.call('ZINCRBY', ranking, sign, item) + 0 <= 0 then redis.call('ZREM', ranking, item) end\n" +
+            "end\n" +
+            "local function contribute(entry, sign, monthly)\n" +
+            "  local items = string.sub(entry, 9)\n" +
+            "  local from = 1\n" +
+            "  while from <= #items do\n" +
+            "    local to = string.find(items, ',', from, true) or (#items + 1)\n" +
+            "    local item = string.sub(items, from, to - 1)\n" +
+            "    if item ~= '' then\n" +
+            "      bump(keys[2], item, sign)\n" +
+            "      if monthly then bump(monthly, item, sign) end\n" +
+            "    end\n" +
+            "    from = to + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "if not " + RedisOrderArchive.ARCHIVING + " then\n" +
+            "  local previous = redis.call('HGET', keys[1], ARGV[1])\n" +
+            "  if previous then contribute(previous, -1, keys[3]) end\n" +
+            "  if ARGV[4] == 'upsert' then\n" +
+            "    local new = {}\n" +
+            "    for i = fields, #ARGV, 2 do new[ARGV[i]] = ARGV[i + 1] end\n" +
+            "    local entry = string.sub(new['orderDate'] or '', 1, 7) .. '|' .. (new['itemIds'] or '')\n" +
+            "    redis.call('HSET', keys[1], ARGV[1], entry)\n" +
+            "    contribute(entry, 1, keys[4])\n" +
+            "  elseif previous then\n" +
+            "    redis.call('HDEL', keys[1], ARGV[1])\n" +
+            "  end\n" +
+            "end\n") {
+
+        @Override
+        ChangeLog.Guard guard(KeySpace keys, ChangeLog.Write write) {
+            return archiving(write) ? null : new ChangeLog.Guard(keys.syncKey("order", "itemIdsByOrder"), write.id);
+        }
+
+        @Override
+        String expected(ChangeLog.Write write) {
+            return write.upsert ? entry(write) : null; // Most updates keep the items and the date
+        }
+
+        @Override
+        void bind(KeySpace keys, ChangeLog.Write write, String guarded, List<String> hookKeys, List<String> args) {
+            if (archiving(write)) {
+                return;
+            }
+            hookKeys.add(key(keys, null));
+            if (!MONTHLY) {
+                return;
+            }
+            if (!guarded.isEmpty()) {
+                hookKeys.add(monthKey(keys, guarded));
+            } else if (write.upsert) {
+                hookKeys.add(monthKey(keys, entry(write))); // Fills the previous month's place, not used
+            }
+            if (write.upsert) {
+                hookKeys.add(monthKey(keys, entry(write)));
+            }
+        }
+    };
+
+    private static boolean archiving(ChangeLog.Write write) {
+        return !write.upsert && RedisOrderArchive.HOOK_DATA.equals(write.hookData);
+    }
+
+    /**
+     * @return what an order write contributes, {@code <yyyy-MM>|<itemIds>}
+     */
+    private static String entry(ChangeLog.Write write) {
+        String date = write.field("orderDate");
+        return date.substring(0, Math.min(7, date.length())) + "|" + write.field("itemIds");
+    }
+
+    private static String monthKey(KeySpace keys, String entry) {
+        return key(keys, null) + ":" + entry.substring(0, entry.indexOf('|'));
+    }
+
+    /**
+     * @param month the order month, or null for all orders
+     * @return item name -&gt; count, highest count first; empty for a month if per-month rankings are disabled
+     */
+    static Map<String, Long> top(UnifiedJedis jedis, KeySpace keys, RedisItemCatalog catalog, YearMonth month,
+                                 int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        if (limit <= 0) {
+            return top;
+        }
+        for (Tuple entry : jedis.zrevrangeWithScores(key(keys, month), 0, limit - 1)) {
+            top.put(catalog.name(Integer.parseInt(entry.getElement())), (long) entry.getScore());
+        }
+        return top;
+    }
+
+    private static String key(KeySpace keys, YearMonth month) {
+        String ranking = keys.syncKey("order", "topItemIds");
+        return month == null ? ranking : ranking + ":" + month;
+    }
+}
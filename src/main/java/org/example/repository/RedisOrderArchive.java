@@ -0,0 +1,86 @@
+package org.example.repository;
+
+import org.example.config.RedisScript;
+import org.example.model.Order;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.SetParams;
+
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Cold storage for old orders in Redis: one hash per customer ({@link KeySpace#archiveKey(String)}) with one
+ * field per order month, holding the month's orders as a compressed segment ({@link OrderArchiveCodec}).
+ * Archived orders cost a few bytes each instead of a hash, and scans over the orders no longer visit them.
+ * <p>
+ * Orders are moved by deleting them through the change log with {@link #HOOK_DATA} as hook data: the search
+ * index forgets them, but the statistics, the item ranking and the customer's date index keep counting them
+ * ({@link #ARCHIVING} lets the hooks tell the difference), so the paginated history still lists them and reads
+ * them from here. Change events report them as deleted.
+ * <p>
+ * A segment is rewritten as a whole, so only one archival job may run at a time; a lock key ensures that.
+ *
+ * @author isil
+ */
+final class RedisOrderArchive {
+
+    /**
+     * The hook data of the deletes that move orders into the archive.
+     */
+    static final String HOOK_DATA = "archive";
+
+    /**
+     * A Lua condition that is true in the write scripts while an order is moved into the archive.
+     */
+    static final String ARCHIVING = "(ARGV[4] == 'delete' and ARGV[6] == '" + HOOK_DATA + "')";
+
+    private static final String LOCK_KEY = "archive:order:lock";
+    private static final long LOCK_MILLIS = 10 * 60 * 1000L;
+
+    // KEYS: lock; ARGV: owner token
+    private static final RedisScript UNLOCK = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end\n" +
+            "return 0");
+
+    private RedisOrderArchive() {
+    }
+
+    /**
+     * @param owner a token identifying this job run
+     * @return false if another job holds the lock
+     */
+    static boolean lock(UnifiedJedis jedis, String owner) {
+        return "OK".equals(jedis.set(LOCK_KEY, owner, SetParams.setParams().nx().px(LOCK_MILLIS)));
+    }
+
+    static void unlock(UnifiedJedis jedis, String owner) {
+        UNLOCK.eval(jedis, Collections.singletonList(LOCK_KEY), Collections.singletonList(owner));
+    }
+
+    /**
+     * @return the archived orders of the customer and month by number; empty if there are none
+     */
+    static Map<String, Order> read(UnifiedJedis jedis, KeySpace keys, String customerId, YearMonth month) {
+        return OrderArchiveCodec.decode(jedis.hget(bytes(keys.archiveKey(customerId)), bytes(month.toString())));
+    }
+
+    /**
+     * Replaces the segment of the customer and month; an empty collection removes it.
+     */
+    static void write(UnifiedJedis jedis, KeySpace keys, String customerId, YearMonth month,
+                      Collection<Order> orders) {
+        byte[] archiveKey = bytes(keys.archiveKey(customerId));
+        if (orders.isEmpty()) {
+            jedis.hdel(archiveKey, bytes(month.toString()));
+        } else {
+            jedis.hset(archiveKey, bytes(month.toString()), OrderArchiveCodec.encode(orders));
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
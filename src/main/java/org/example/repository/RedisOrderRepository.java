@@ -0,0 +1,750 @@
+package org.example.repository;
+
+import org.example.config.RedisConnection;
+import org.example.config.RedisNodes;
+import org.example.model.Order;
+import org.example.model.OrderStats;
+import org.example.model.OrderStatusRule;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Orders stored in Redis: one hash per order, key names as described in {@link KeySpace}. In cluster mode an
+ * order's key contains its customer's ID, so an extra hash ({@code locator:order}) maps order numbers to
+ * customer IDs for the methods that only get an order number.
+ * <p>
+ * Redis keeps no global secondary indexes for orders yet; the queries by customer, status and date scan all
+ * orders. A customer's history is sorted by the sort indexes next to its statistics, see {@link OrderSort}.
+ * Bulk status transitions and the archival job run over the per-customer date indexes, see
+ * {@link RedisOrderTransitions} and {@link RedisOrderArchive}.
+ * Per-customer statistics, the item ranking and the search index are maintained by the write scripts, see
+ * {@link RedisOrderStats}, {@link RedisItemRanking} and {@link RedisOrderSearch}.
+ * <p>
+ * Items are stored as product catalog IDs ({@code itemIds}, see {@link RedisItemCatalog}); orders written before
+ * that still have the names in {@code items}. The first read of an index converts them once per database, which
+ * adds them to the indexes as well ({@link #ensureIndexes()}). Change events carry the IDs, too,
+ * {@link #decodeItems(String)} turns them back into names.
+ *
+ * @author isil
+ */
+public class RedisOrderRepository implements OrderRepository {
+
+    private static final String ORDER_ID_COUNTER_KEY = "order:id:counter"; // Sipariş ID'si için sayaç anahtarı
+    private static final String ORDER_LOCATOR_KEY = "locator:order"; // Cluster modunda sipariş no -> müşteri ID
+    private static final int REINDEX_CHUNK = 500;
+
+    // Eski formatta yazılmış siparişlerin isim listesi; itemIds yazılınca gereksiz
+    private static final ChangeLog.Hook DROP_ITEM_NAMES =
+            new ChangeLog.Hook("if ARGV[4] == 'upsert' then redis.call('HDEL', record, 'items') end\n");
+
+    // The order write scripts with the statistics, ranking and search hooks
+    private static final ChangeLog.Scripts SCRIPTS = new ChangeLog.Scripts(
+            Arrays.asList(RedisOrderStats.HOOK, DROP_ITEM_NAMES),
+            Arrays.asList(RedisItemRanking.HOOK, RedisOrderSearch.HOOK));
+
+    private final KeySpace keys = KeySpace.current();
+
+    // Delta senkronizasyonu için değişiklik günlüğü; yazma scriptleri istatistikleri ve sıralamayı da günceller
+    private final ChangeLog changeLog = new ChangeLog("order", keys, SCRIPTS);
+    private final RedisChangeStream changeStream = new RedisChangeStream("order", keys);
+    private final RedisItemCatalog catalog = new RedisItemCatalog(keys, this::readJedis, this::writeJedis);
+    private volatile boolean indexed;
+
+    /**
+     * The connection is looked up on every call instead of in the constructor, so creating the repository
+     * (for example while an FXML controller is being built) never waits for Redis to become reachable.
+     * Reads may be served by a replica, writes always go to the primary (see RedisConnection). Full scans and
+     * bulk writes use the primary's client with the longer bulk timeout.
+     */
+    private UnifiedJedis readJedis() {
+        return RedisConnection.getReadConnection();
+    }
+
+    private UnifiedJedis writeJedis() {
+        return RedisConnection.getWriteConnection();
+    }
+
+    private UnifiedJedis scanJedis() {
+        return RedisConnection.getBulkConnection(false);
+    }
+
+    private UnifiedJedis bulkWriteJedis() {
+        return RedisConnection.getBulkConnection(true);
+    }
+
+    /**
+     * Finds the key of an order by its number alone.
+     *
+     * @return the order key, or null if the order is unknown (cluster mode only)
+     */
+    private String orderKey(UnifiedJedis jedis, String orderNumber) {
+        if (!keys.isClustered()) {
+            return keys.orderKey(null, orderNumber);
+        }
+        String customerId = jedis.hget(ORDER_LOCATOR_KEY, orderNumber);
+        return customerId == null ? null : keys.orderKey(customerId, orderNumber);
+    }
+
+    @Override
+    public String nextOrderNumber() {
+        return String.valueOf(writeJedis().incr(ORDER_ID_COUNTER_KEY));
+    }
+
+    @Override
+    public void save(Order order) {
+        String orderKey = keys.orderKey(order.getCustomerId(), order.getOrderNumber());
+        UnifiedJedis jedis = writeJedis();
+        if (keys.isClustered()) {
+            // Written first, so the order can always be located once it exists
+            jedis.hset(ORDER_LOCATOR_KEY, order.getOrderNumber(), order.getCustomerId());
+        }
+        changeLog.upsert(jedis, order.getOrderNumber(), orderKey, toHash(jedis, order), searchTokens(order), false);
+    }
+
+    @Override
+    public boolean update(Order order) {
+        String orderKey = keys.orderKey(order.getCustomerId(), order.getOrderNumber());
+        UnifiedJedis jedis = writeJedis();
+        // Siparişin mevcut olup olmadığını kontrol et, güncelle ve versiyonla (tek atomik script)
+        return changeLog.upsert(jedis, order.getOrderNumber(), orderKey, toHash(jedis, order), searchTokens(order),
+                true) >= 0;
+    }
+
+    /**
+     * Writes all updates in one pipelined round trip.
+     */
+    @Override
+    public boolean[] updateAll(List<Order> orders) {
+        List<String> orderNumbers = new ArrayList<>(orders.size());
+        List<String> orderKeys = new ArrayList<>(orders.size());
+        List<Map<String, String>> fields = new ArrayList<>(orders.size());
+        List<String> tokens = new ArrayList<>(orders.size());
+        List<String> allItems = new ArrayList<>();
+        for (Order order : orders) {
+            allItems.addAll(order.getItems());
+        }
+        UnifiedJedis jedis = bulkWriteJedis();
+        catalog.register(jedis, allItems); // New names of the whole batch in one call
+        for (Order order : orders) {
+            orderNumbers.add(order.getOrderNumber());
+            orderKeys.add(keys.orderKey(order.getCustomerId(), order.getOrderNumber()));
+            fields.add(toHash(jedis, order));
+            tokens.add(searchTokens(order));
+        }
+        return written(changeLog.upsertAll(jedis, orderNumbers, orderKeys, fields, tokens, true));
+    }
+
+    /**
+     * Deletes all orders in one pipelined round trip; in cluster mode their keys are looked up with one HMGET
+     * first.
+     */
+    @Override
+    public boolean[] deleteAll(List<String> orderNumbers) {
+        boolean[] deleted = new boolean[orderNumbers.size()];
+        if (orderNumbers.isEmpty()) {
+            return deleted;
+        }
+        UnifiedJedis jedis = bulkWriteJedis();
+        List<String> customerIds = keys.isClustered()
+                ? jedis.hmget(ORDER_LOCATOR_KEY, orderNumbers.toArray(new String[0]))
+                : Collections.nCopies(orderNumbers.size(), null);
+
+        List<Integer> positions = new ArrayList<>(orderNumbers.size());
+        List<String> known = new ArrayList<>(orderNumbers.size());
+        List<String> orderKeys = new ArrayList<>(orderNumbers.size());
+        List<List<String>> relatedKeys = new ArrayList<>(orderNumbers.size());
+        for (int i = 0; i < orderNumbers.size(); i++) {
+            if (keys.isClustered() && customerIds.get(i) == null) {
+                continue; // Unknown order
+            }
+            String orderKey = keys.orderKey(customerIds.get(i), orderNumbers.get(i));
+            positions.add(i);
+            known.add(orderNumbers.get(i));
+            orderKeys.add(orderKey);
+            relatedKeys.add(Collections.singletonList(orderKey + ":items"));
+        }
+        boolean[] written = written(changeLog.deleteAll(jedis, known, orderKeys, relatedKeys));
+        List<String> unlocate = new ArrayList<>();
+        for (int i = 0; i < written.length; i++) {
+            deleted[positions.get(i)] = written[i];
+            if (written[i]) {
+                unlocate.add(known.get(i));
+            }
+        }
+        if (keys.isClustered() && !unlocate.isEmpty()) {
+            jedis.hdel(ORDER_LOCATOR_KEY, unlocate.toArray(new String[0]));
+        }
+        return deleted;
+    }
+
+    private static boolean[] written(long[] versions) {
+        boolean[] written = new boolean[versions.length];
+        for (int i = 0; i < versions.length; i++) {
+            written[i] = versions[i] >= 0;
+        }
+        return written;
+    }
+
+    @Override
+    public boolean delete(String orderNumber) {
+        UnifiedJedis jedis = writeJedis();
+        String orderKey = orderKey(jedis, orderNumber);
+        if (orderKey == null
+                || changeLog.delete(jedis, orderNumber, orderKey, Collections.singletonList(orderKey + ":items"), true) < 0) {
+            return false;
+        }
+        if (keys.isClustered()) {
+            jedis.hdel(ORDER_LOCATOR_KEY, orderNumber);
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the rule chunk by chunk in Redis (see {@link RedisOrderTransitions}) and writes each chunk's
+     * matches in one pipelined round trip. Without a customer filter, the customers are found by scanning for
+     * their date indexes.
+     */
+    @Override
+    public int applyStatusRule(OrderStatusRule rule, boolean dryRun) {
+        ensureIndexes();
+        UnifiedJedis jedis = bulkWriteJedis();
+        List<String> customerIds = rule.getCustomerId() != null
+                ? Collections.singletonList(rule.getCustomerId())
+                : customersWithOrders(jedis);
+
+        int affected = 0;
+        for (String customerId : customerIds) {
+            String min = RedisOrderTransitions.min(rule);
+            while (min != null) {
+                RedisOrderTransitions.Chunk chunk = RedisOrderTransitions.select(jedis, keys, customerId, min, rule);
+                if (dryRun) {
+                    affected += chunk.orderNumbers.size();
+                } else if (!chunk.orderNumbers.isEmpty()) {
+                    affected += transition(jedis, chunk, rule);
+                }
+                min = chunk.next;
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @return the customers that have a date index, found by scanning all masters
+     */
+    private List<String> customersWithOrders(UnifiedJedis jedis) {
+        String pattern = keys.orderDatesPattern();
+        return RedisNodes.onEachMaster(jedis, node -> {
+            List<String> customerIds = new ArrayList<>();
+            for (String datesKey : RedisNodes.scan(node, pattern, "zset")) {
+                customerIds.add(keys.customerIdOfDates(datesKey));
+            }
+            return customerIds;
+        });
+    }
+
+    /**
+     * @return the number of orders of the chunk that still had the old status and were written
+     */
+    private int transition(UnifiedJedis jedis, RedisOrderTransitions.Chunk chunk, OrderStatusRule rule) {
+        int size = chunk.orderNumbers.size();
+        List<String> orderKeys = new ArrayList<>(size);
+        List<Map<String, String>> fields = new ArrayList<>(size);
+        List<String> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Order order = toOrder(chunk.orderNumbers.get(i), chunk.orderData.get(i));
+            order.setOrderStatus(rule.getToStatus());
+            orderKeys.add(keys.orderKey(order.getCustomerId(), order.getOrderNumber()));
+            fields.add(toHash(jedis, order));
+            tokens.add(searchTokens(order));
+        }
+        int written = 0;
+        for (long version : changeLog.upsertAllIf(jedis, chunk.orderNumbers, orderKeys, fields, tokens,
+                "orderStatus", rule.getFromStatus())) {
+            if (version >= 0) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Selects the orders chunk by chunk over the customers' date indexes (see {@link RedisOrderTransitions}) and
+     * moves each chunk into the archive: the segments are written first, then the orders are deleted, guarded by
+     * the status they were archived with. Orders changed in between stay and are taken out of the segment again.
+     */
+    @Override
+    public int archive(LocalDate before, Collection<String> statuses) {
+        ensureIndexes();
+        UnifiedJedis jedis = bulkWriteJedis();
+        String owner = UUID.randomUUID().toString();
+        if (!RedisOrderArchive.lock(jedis, owner)) {
+            throw new IllegalStateException("Another order archival job is running.");
+        }
+        try {
+            int archived = 0;
+            for (String customerId : customersWithOrders(jedis)) {
+                String min = "-";
+                while (min != null) {
+                    RedisOrderTransitions.Chunk chunk =
+                            RedisOrderTransitions.select(jedis, keys, customerId, min, "(" + before, statuses);
+                    if (!chunk.orderNumbers.isEmpty()) {
+                        archived += archive(jedis, customerId, chunk);
+                    }
+                    min = chunk.next;
+                }
+            }
+            return archived;
+        } finally {
+            RedisOrderArchive.unlock(jedis, owner);
+        }
+    }
+
+    /**
+     * @return the number of orders of the chunk that were moved
+     */
+    private int archive(UnifiedJedis jedis, String customerId, RedisOrderTransitions.Chunk chunk) {
+        int size = chunk.orderNumbers.size();
+        List<String> orderKeys = new ArrayList<>(size);
+        List<List<String>> relatedKeys = new ArrayList<>(size);
+        List<String> statuses = new ArrayList<>(size);
+        List<YearMonth> months = new ArrayList<>(size);
+        Map<YearMonth, Map<String, Order>> segments = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Order order = toOrder(chunk.orderNumbers.get(i), chunk.orderData.get(i));
+            String orderKey = keys.orderKey(customerId, order.getOrderNumber());
+            orderKeys.add(orderKey);
+            relatedKeys.add(Collections.singletonList(orderKey + ":items"));
+            statuses.add(order.getOrderStatus());
+            YearMonth month = YearMonth.from(order.getOrderDate());
+            months.add(month);
+            segments.computeIfAbsent(month, m -> RedisOrderArchive.read(jedis, keys, customerId, m))
+                    .put(order.getOrderNumber(), order);
+        }
+        for (Map.Entry<YearMonth, Map<String, Order>> segment : segments.entrySet()) {
+            RedisOrderArchive.write(jedis, keys, customerId, segment.getKey(), segment.getValue().values());
+        }
+
+        long[] versions = changeLog.deleteAllIf(jedis, chunk.orderNumbers, orderKeys, relatedKeys,
+                RedisOrderArchive.HOOK_DATA, "orderStatus", statuses);
+        List<String> moved = new ArrayList<>(size);
+        Map<YearMonth, Map<String, Order>> changed = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (versions[i] >= 0) {
+                moved.add(chunk.orderNumbers.get(i));
+            } else { // Changed or deleted in the meantime
+                Map<String, Order> segment = segments.get(months.get(i));
+                segment.remove(chunk.orderNumbers.get(i));
+                changed.put(months.get(i), segment);
+            }
+        }
+        for (Map.Entry<YearMonth, Map<String, Order>> segment : changed.entrySet()) {
+            RedisOrderArchive.write(jedis, keys, customerId, segment.getKey(), segment.getValue().values());
+        }
+        if (keys.isClustered() && !moved.isEmpty()) {
+            jedis.hdel(ORDER_LOCATOR_KEY, moved.toArray(new String[0]));
+        }
+        return moved.size();
+    }
+
+    private Map<String, String> toHash(UnifiedJedis jedis, Order order) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("customerId", order.getCustomerId());
+        fields.put("address", order.getAddress());
+        fields.put("orderDate", order.getOrderDate().toString());
+        fields.put("orderStatus", order.getOrderStatus());
+
+        // Ürünleri katalog ID'leri olarak virgülle ayırarak kaydediyoruz
+        fields.put("itemIds", catalog.encode(jedis, order.getItems()));
+
+        // itemCount değerini kaydediyoruz
+        fields.put("itemCount", String.valueOf(order.getItemCount()));
+        return fields;
+    }
+
+    /**
+     * @return the hook data of an order write, the tokens for the search index
+     */
+    private static String searchTokens(Order order) {
+        return RedisOrderSearch.hookData(order.getCustomerId(), order.getAddress(), order.getItems());
+    }
+
+    @Override
+    public Order findByNumber(String orderNumber) {
+        return readOrder(readJedis(), orderNumber);
+    }
+
+    private Order readOrder(UnifiedJedis jedis, String orderNumber) {
+        String orderKey = orderKey(jedis, orderNumber);
+        if (orderKey == null) {
+            return null;
+        }
+        Map<String, String> orderData = jedis.hgetAll(orderKey);
+        return orderData.isEmpty() ? null : toOrder(orderNumber, orderData);
+    }
+
+    /**
+     * Reads the orders in one pipelined round trip (one per node in cluster mode, where their keys are looked up
+     * with one HMGET first).
+     *
+     * @return order number -&gt; order, for the orders that exist
+     */
+    private Map<String, Order> readOrders(UnifiedJedis jedis, List<String> orderNumbers) {
+        Map<String, Order> found = new LinkedHashMap<>();
+        if (orderNumbers.isEmpty()) {
+            return found;
+        }
+        List<String> customerIds = keys.isClustered()
+                ? jedis.hmget(ORDER_LOCATOR_KEY, orderNumbers.toArray(new String[0]))
+                : Collections.nCopies(orderNumbers.size(), null);
+        Map<String, Response<Map<String, String>>> data = new LinkedHashMap<>();
+        try (AbstractPipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < orderNumbers.size(); i++) {
+                if (keys.isClustered() && customerIds.get(i) == null) {
+                    continue; // Unknown order
+                }
+                data.put(orderNumbers.get(i), pipeline.hgetAll(keys.orderKey(customerIds.get(i), orderNumbers.get(i))));
+            }
+            pipeline.sync();
+        }
+        for (Map.Entry<String, Response<Map<String, String>>> entry : data.entrySet()) {
+            Map<String, String> orderData = entry.getValue().get();
+            if (!orderData.isEmpty()) {
+                found.put(entry.getKey(), toOrder(entry.getKey(), orderData));
+            }
+        }
+        return found;
+    }
+
+    private Order toOrder(String orderNumber, Map<String, String> orderData) {
+        LocalDate orderDate = LocalDate.parse(orderData.get("orderDate"));
+        String itemIds = orderData.get("itemIds");
+        List<String> items = itemIds != null
+                ? catalog.decode(itemIds)
+                : Arrays.asList(orderData.get("items").split(", ")); // Written before the catalog existed
+        return new Order(orderNumber, orderData.get("customerId"), orderData.get("address"), items, orderDate,
+                orderData.get("orderStatus"));
+    }
+
+    @Override
+    public List<Order> findByCustomerId(String customerId) {
+        String pattern = keys.orderPattern(customerId);
+        return RedisNodes.onEachMaster(scanJedis(),
+                node -> loadOrders(node, pattern, orderData -> customerId.equals(orderData.get("customerId"))));
+    }
+
+    /**
+     * Reads the page from the customer's date index (see {@link KeySpace#orderDatesKey(String)}) with
+     * ZREVRANGEBYLEX, then the orders in one pipelined round trip; archived orders are read from their segments
+     * (see {@link RedisOrderArchive}).
+     */
+    @Override
+    public OrderPage findPageByCustomerId(String customerId, String cursor, int limit) {
+        ensureIndexes();
+        UnifiedJedis jedis = readJedis();
+        String max = cursor == null ? "+" : "(" + cursor;
+        // Bir fazlası okunur: sonraki sayfa var mı?
+        List<String> members = jedis.zrevrangeByLex(keys.orderDatesKey(customerId), max, "-", 0, limit + 1);
+        boolean more = members.size() > limit;
+        if (more) {
+            members = members.subList(0, limit);
+        }
+
+        return new OrderPage(loadPositions(jedis, customerId, members), more ? members.get(limit - 1) : null);
+    }
+
+    /**
+     * Reads a rank range of the sort index and its size in one pipelined round trip, then the orders in a second
+     * one. If the index does not cover the customer's older orders yet, it is built first (see
+     * {@link RedisOrderStats#buildSortIndexes}) and read again. Runs on the primary, since building the indexes
+     * writes.
+     */
+    @Override
+    public SortedPage<Order> findSortedPageByCustomerId(String customerId, OrderSort sort, boolean ascending,
+                                                        int page, int pageSize) {
+        ensureIndexes();
+        UnifiedJedis jedis = writeJedis();
+        String index = keys.orderSortKey(customerId, sort);
+        long start = (long) page * pageSize;
+        Response<Boolean> built;
+        Response<Long> total;
+        Response<List<String>> entries;
+        try (AbstractPipeline pipeline = jedis.pipelined()) {
+            built = RedisOrderStats.isSortIndexed(pipeline, keys, customerId);
+            total = pipeline.zcard(index);
+            entries = ascending
+                    ? pipeline.zrange(index, start, start + pageSize - 1)
+                    : pipeline.zrevrange(index, start, start + pageSize - 1);
+            pipeline.sync();
+        }
+        if (!built.get() && RedisOrderStats.buildSortIndexes(jedis, keys, customerId)) {
+            return findSortedPageByCustomerId(customerId, sort, ascending, page, pageSize);
+        }
+        List<String> positions = new ArrayList<>(entries.get().size());
+        for (String entry : entries.get()) {
+            positions.add(OrderSort.position(entry));
+        }
+        return new SortedPage<>(loadPositions(jedis, customerId, positions), page, pageSize, total.get());
+    }
+
+    /**
+     * Writes the orders stored before the write scripts maintained the indexes (the ones that still have their
+     * item names in {@code items}) again in the current format, once per database, so the hooks add them to the
+     * date index and the statistics, the item ranking and the search index. They are rewritten without a version
+     * or change event, since clients see no change, and only if {@code items} is still the same, so a concurrent
+     * write is never undone. Like {@link RedisCustomerSort#build}, the database is marked when all are done.
+     */
+    private void ensureIndexes() {
+        if (indexed) {
+            return;
+        }
+        UnifiedJedis jedis = bulkWriteJedis();
+        String marker = keys.syncKey("order", "indexed");
+        if (!jedis.exists(marker)) {
+            String pattern = keys.orderPattern();
+            RedisNodes.onEachMaster(jedis, node -> {
+                reindex(jedis, node, pattern);
+                return Collections.emptyList();
+            });
+            jedis.set(marker, "1");
+        }
+        indexed = true;
+    }
+
+    /**
+     * Rewrites the old-format orders stored on one node in chunks of {@value #REINDEX_CHUNK}, see
+     * {@link #ensureIndexes()}.
+     */
+    private void reindex(UnifiedJedis jedis, Jedis node, String pattern) {
+        List<String> orderKeys = RedisNodes.scan(node, pattern, "hash");
+        for (int from = 0; from < orderKeys.size(); from += REINDEX_CHUNK) {
+            List<String> chunk = orderKeys.subList(from, Math.min(orderKeys.size(), from + REINDEX_CHUNK));
+            List<Response<Map<String, String>>> data = new ArrayList<>(chunk.size());
+            Pipeline pipeline = node.pipelined();
+            for (String orderKey : chunk) {
+                data.add(pipeline.hgetAll(orderKey));
+            }
+            pipeline.sync();
+
+            List<String> orderNumbers = new ArrayList<>();
+            List<String> legacyKeys = new ArrayList<>();
+            List<String> itemNames = new ArrayList<>();
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, String> orderData = data.get(i).get();
+                if (!orderData.containsKey("items")) {
+                    continue; // Yeni formatta, indekslerde zaten var
+                }
+                String orderNumber = keys.orderNumber(chunk.get(i));
+                orderNumbers.add(orderNumber);
+                legacyKeys.add(chunk.get(i));
+                itemNames.add(orderData.get("items"));
+                orders.add(toOrder(orderNumber, orderData));
+            }
+            if (orders.isEmpty()) {
+                continue;
+            }
+            List<String> allItems = new ArrayList<>();
+            for (Order order : orders) {
+                allItems.addAll(order.getItems());
+            }
+            catalog.register(jedis, allItems);
+            List<Map<String, String>> fields = new ArrayList<>(orders.size());
+            List<String> tokens = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                fields.add(toHash(jedis, order));
+                tokens.add(searchTokens(order));
+            }
+            changeLog.rewriteAll(jedis, orderNumbers, legacyKeys, fields, tokens, "items", itemNames);
+        }
+    }
+
+    /**
+     * Loads the orders at the given history positions ({@link OrderPage#cursorOf}) in one pipelined round trip;
+     * archived orders are read from their segments.
+     */
+    private List<Order> loadPositions(UnifiedJedis jedis, String customerId, List<String> positions) {
+        List<String> orderNumbers = new ArrayList<>(positions.size());
+        List<Response<Map<String, String>>> data = new ArrayList<>(positions.size());
+        try (AbstractPipeline pipeline = jedis.pipelined()) {
+            for (String position : positions) {
+                String orderNumber = position.substring(position.indexOf(':') + 1);
+                orderNumbers.add(orderNumber);
+                data.add(pipeline.hgetAll(keys.orderKey(customerId, orderNumber)));
+            }
+            pipeline.sync();
+        }
+        List<Order> orders = new ArrayList<>(positions.size());
+        Map<YearMonth, Map<String, Order>> archived = new HashMap<>();
+        for (int i = 0; i < positions.size(); i++) {
+            Map<String, String> orderData = data.get(i).get();
+            if (!orderData.isEmpty()) {
+                orders.add(toOrder(orderNumbers.get(i), orderData));
+                continue;
+            }
+            // Arşivde olabilir; yoksa indeks okunduktan sonra silinmiştir
+            YearMonth month = YearMonth.parse(positions.get(i).substring(0, 7));
+            Order order = archived.computeIfAbsent(month, m -> RedisOrderArchive.read(jedis, keys, customerId, m))
+                    .get(orderNumbers.get(i));
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    @Override
+    public List<Order> findByStatus(String orderStatus) {
+        String pattern = keys.orderPattern();
+        return RedisNodes.onEachMaster(scanJedis(),
+                node -> loadOrders(node, pattern, orderData -> orderStatus.equals(orderData.get("orderStatus"))));
+    }
+
+    @Override
+    public List<Order> findAll() {
+        String pattern = keys.orderPattern();
+        return RedisNodes.onEachMaster(scanJedis(), node -> loadOrders(node, pattern, null));
+    }
+
+    @Override
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) {
+        String pattern = keys.orderPattern();
+        return RedisNodes.onEachMaster(scanJedis(), node -> loadOrders(node, pattern, orderData -> {
+            LocalDate orderDate = LocalDate.parse(orderData.get("orderDate"));
+            return !orderDate.isBefore(from) && !orderDate.isAfter(to);
+        }));
+    }
+
+    @Override
+    public OrderStats findStatsByCustomerId(String customerId) {
+        ensureIndexes();
+        return RedisOrderStats.fromHash(readJedis().hgetAll(keys.orderStatsKey(customerId)));
+    }
+
+    /**
+     * Reads all statistics hashes in one pipelined round trip (one per node in cluster mode).
+     */
+    @Override
+    public Map<String, OrderStats> findStatsByCustomerIds(Collection<String> customerIds) {
+        ensureIndexes();
+        Map<String, Response<Map<String, String>>> responses = new LinkedHashMap<>();
+        try (AbstractPipeline pipeline = readJedis().pipelined()) {
+            for (String customerId : customerIds) {
+                responses.put(customerId, pipeline.hgetAll(keys.orderStatsKey(customerId)));
+            }
+            pipeline.sync();
+        }
+        Map<String, OrderStats> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, Response<Map<String, String>>> response : responses.entrySet()) {
+            stats.put(response.getKey(), RedisOrderStats.fromHash(response.getValue().get()));
+        }
+        return stats;
+    }
+
+    /**
+     * Ranks the hits in Redis (see {@link RedisOrderSearch}), then reads them in one pipelined round trip.
+     */
+    @Override
+    public List<Order> search(String query, String customerId, int limit) {
+        ensureIndexes();
+        Map<String, Double> ranked = RedisOrderSearch.search(writeJedis(), keys, query, customerId, limit);
+        Map<String, Order> found = readOrders(readJedis(), new ArrayList<>(ranked.keySet()));
+        List<Order> orders = new ArrayList<>(found.size());
+        for (String orderNumber : ranked.keySet()) {
+            Order order = found.get(orderNumber);
+            if (order != null) { // Sıralamadan sonra silinmiş olabilir
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    @Override
+    public Map<String, Long> findTopItems(int limit) {
+        ensureIndexes();
+        return RedisItemRanking.top(readJedis(), keys, catalog, null, limit);
+    }
+
+    @Override
+    public Map<String, Long> findTopItems(YearMonth month, int limit) {
+        ensureIndexes();
+        return RedisItemRanking.top(readJedis(), keys, catalog, month, limit);
+    }
+
+    @Override
+    public List<String> decodeItems(String itemIds) {
+        return catalog.decode(itemIds);
+    }
+
+    @Override
+    public ChangeStream changeStream() {
+        return changeStream;
+    }
+
+    @Override
+    public ChangeSet<Order> changesSince(long version) {
+        // One connection for the whole call, so the version and the data come from the same server
+        UnifiedJedis jedis = readJedis();
+        ChangeLog.Delta delta = changeLog.readSince(jedis, version);
+        if (delta == null) {
+            UnifiedJedis scan = scanJedis(); // The version and the scan on the same server
+            long current = changeLog.currentVersion(scan);
+            String pattern = keys.orderPattern();
+            return ChangeSet.fullReload(RedisNodes.onEachMaster(scan, node -> loadOrders(node, pattern, null)),
+                    current);
+        }
+
+        Map<String, Order> found = readOrders(jedis, delta.ids);
+        List<Order> changed = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        for (String orderNumber : delta.ids) {
+            Order order = found.get(orderNumber);
+            if (order != null) {
+                changed.add(order);
+            } else {
+                deletedIds.add(orderNumber);
+            }
+        }
+        return ChangeSet.delta(changed, deletedIds, delta.version);
+    }
+
+    /**
+     * Loads the orders stored on one node: SCAN for the order hashes, then one pipelined batch for their fields.
+     *
+     * @param filter if not null, only orders whose fields match are returned
+     */
+    private List<Order> loadOrders(Jedis node, String pattern, Predicate<Map<String, String>> filter) {
+        List<String> orderKeys = RedisNodes.scan(node, pattern, "hash");
+        List<Response<Map<String, String>>> data = new ArrayList<>(orderKeys.size());
+        Pipeline pipeline = node.pipelined();
+        for (String orderKey : orderKeys) {
+            data.add(pipeline.hgetAll(orderKey));
+        }
+        pipeline.sync();
+
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < orderKeys.size(); i++) {
+            Map<String, String> orderData = data.get(i).get();
+            if (orderData.isEmpty() || (filter != null && !filter.test(orderData))) {
+                continue;
+            }
+            orders.add(toOrder(keys.orderNumber(orderKeys.get(i)), orderData));
+        }
+        return orders;
+    }
+}
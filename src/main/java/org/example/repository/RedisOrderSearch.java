@@ -0,0 +1,161 @@
+package org.example.repository;
+
+import org.example.config.RedisScript;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The order search index in Redis: an inverted index with one sorted set per token ({@link SearchTokens}), order
+ * number -&gt; number of times the token occurs in the order. Maintained by a stamp hook in the order write
+ * scripts ({@link #HOOK}), which gets the order's tokens as hook data and keeps them per order
+ * ({@code searchTokensByOrder}) to remove them again on update and delete.
+ * <p>
+ * A query is answered inside Redis: per query word the item and address sets are united (item matches weigh
+ * {@value #ITEM_WEIGHT}, address matches 1), the results of all words are intersected, optionally with the
+ * customer's set, and the best ranked orders are returned. The intermediate sets are temporary keys, so queries
+ * run on the primary.
+ * <p>
+ * Orders written before this existed are indexed by the repository's one-time conversion of old-format orders
+ * (see {@link RedisOrderRepository}).
+ *
+ * @author isil
+ */
+final class RedisOrderSearch {
+
+    private static final int ITEM_WEIGHT = 2;
+
+    // KEYS: result, per word one union key, per word the item and address sets, [customer set]
+    // ARGV: word count, item weight, limit
+    private static final RedisScript SEARCH = RedisScript.of(
+            "local words = tonumber(ARGV[1])\n" +
+            "local temporary = {unpack(KEYS, 1, words + 1)}\n" +
+            "local found = {}\n" +
+            "for w = 1, words do\n" +
+            "  local item, address = KEYS[words + 2 * w], KEYS[words + 2 * w + 1]\n" +
+            "  if redis.call('ZUNIONSTORE', KEYS[1 + w], 2, item, address, 'WEIGHTS', ARGV[2], 1) == 0 then\n" +
+            "    redis.call('DEL', unpack(temporary))\n" +
+            "    return {}\n" +
+            "  end\n" +
+            "  found[w] = KEYS[1 + w]\n" +
+            "end\n" +
+            "if #KEYS > 3 * words + 1 then found[#found + 1] = KEYS[#KEYS] end\n" +
+            // unpack() only expands as the last argument, so the whole command is built as one table
+            "local intersect = {KEYS[1], #found}\n" +
+            "for _, key in ipairs(found) do intersect[#intersect + 1] = key end\n" +
+            "intersect[#intersect + 1] = 'WEIGHTS'\n" +
+            "for w = 1, words do intersect[#intersect + 1] = 1 end\n" +
+            "if #found > words then intersect[#intersect + 1] = 0 end\n" + // Only restricts, does not rank
+            "redis.call('ZINTERSTORE', unpack(intersect))\n" +
+            "local result = redis.call('ZREVRANGE', KEYS[1], 0, tonumber(ARGV[3]) - 1, 'WITHSCORES')\n" +
+            "redis.call('DEL', unpack(temporary))\n" +
+            "return result");
+
+    private RedisOrderSearch() {
+    }
+
+    /**
+     * The stamp hook maintaining the index, see {@link ChangeLog.Hook}. Its keys are the tokens per order, the
+     * sets of the stored tokens (guarded by them) and the sets of the new ones.
+     */
+    static final ChangeLog.Hook HOOK = new ChangeLog.Hook(
+            // keys: tokens per order, [stored tokens' sets], [new tokens' sets]; args: number of stored tokens
+            "local function post(tokens, sign, at)\n" +
+            "  for token in string.gmatch(tokens, '%S+') do\n" +
+            "    if redis.call('ZINCRBY', keys[at], sign, ARGV[1]) + 0 <= 0 then\n" +
+            "      redis.call('ZREM', keys[at], ARGV[1])\n" +
+            "    end\n" +
+            "    at = at + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "local indexed = redis.call('HGET', keys[1], ARGV[1])\n" +
+            "if indexed then post(indexed, -1, 2) end\n" +
+            "if ARGV[4] == 'upsert' and ARGV[6] ~= '' then\n" +
+            "  redis.call('HSET', keys[1], ARGV[1], ARGV[6])\n" +
+            "  post(ARGV[6], 1, 2 + tonumber(args[1]))\n" +
+            "elseif indexed then\n" +
+            "  redis.call('HDEL', keys[1], ARGV[1])\n" +
+            "end\n") {
+
+        @Override
+        ChangeLog.Guard guard(KeySpace keys, ChangeLog.Write write) {
+            return new ChangeLog.Guard(keys.syncKey("order", "searchTokensByOrder"), write.id);
+        }
+
+        @Override
+        String expected(ChangeLog.Write write) {
+            return write.upsert ? write.hookData : null; // Most updates keep the address and the items
+        }
+
+        @Override
+        void bind(KeySpace keys, ChangeLog.Write write, String guarded, List<String> hookKeys, List<String> args) {
+            List<String> stored = SearchTokens.split(guarded);
+            for (String token : stored) {
+                hookKeys.add(keys.searchKey(token));
+            }
+            if (write.upsert) {
+                for (String token : SearchTokens.split(write.hookData)) {
+                    hookKeys.add(keys.searchKey(token));
+                }
+            }
+            args.add(String.valueOf(stored.size()));
+        }
+    };
+
+    /**
+     * @return the hook data of an order write: its tokens
+     */
+    static String hookData(String customerId, String address, List<String> items) {
+        return SearchTokens.join(SearchTokens.of(customerId, address, items));
+    }
+
+    /**
+     * @param customerId if not null, only this customer's orders are searched
+     * @return order number -&gt; relevance, best first; empty if the query has no searchable words
+     */
+    static Map<String, Double> search(UnifiedJedis jedis, KeySpace keys, String query, String customerId,
+                                      int limit) {
+        List<String> words = new ArrayList<>(SearchTokens.queryWords(query));
+        if (words.isEmpty() || limit <= 0) {
+            return Collections.emptyMap();
+        }
+        String temporary = keys.searchKey("~" + UUID.randomUUID() + ":"); // Geçici anahtarlar, script siler
+        List<String> scriptKeys = new ArrayList<>(3 * words.size() + 2);
+        scriptKeys.add(temporary + "result");
+        for (int w = 0; w < words.size(); w++) {
+            scriptKeys.add(temporary + w);
+        }
+        for (String word : words) {
+            scriptKeys.add(keys.searchKey(SearchTokens.ITEM + word));
+            scriptKeys.add(keys.searchKey(SearchTokens.ADDRESS + word));
+        }
+        if (customerId != null) {
+            scriptKeys.add(keys.searchKey(SearchTokens.customer(customerId)));
+        }
+
+        List<String> args = new ArrayList<>(3);
+        args.add(String.valueOf(words.size()));
+        args.add(String.valueOf(ITEM_WEIGHT));
+        args.add(String.valueOf(limit));
+        Object reply = SEARCH.eval(jedis, scriptKeys, args);
+        if (!(reply instanceof List)) {
+            return Collections.emptyMap(); // Jedis decodes an empty array reply as an empty map
+        }
+        List<?> result = (List<?>) reply;
+        Map<String, Double> ranked = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < result.size(); i += 2) {
+            ranked.put(text(result.get(i)), Double.parseDouble(text(result.get(i + 1))));
+        }
+        return ranked;
+    }
+
+    private static String text(Object reply) {
+        return reply instanceof byte[] ? new String((byte[]) reply, StandardCharsets.UTF_8) : String.valueOf(reply);
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.repository;
+
+import org.example.config.RedisScript;
+import org.example.model.OrderStats;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-customer order statistics in Redis, maintained by a record hook in the order write scripts (see
+ * {@link ChangeLog.Scripts}), so they change atomically with the order itself.
+ * <p>
+ * {@code stats:order:<customerId>} is a hash with {@code orderCount}, {@code itemTotal},
+ * {@code firstOrderDate}, {@code lastOrderDate} and {@code status:<status>} counts. The hook subtracts the
+ * stored order (if any) and adds the new one. First and last date cannot be derived from deltas once an order
+ * is deleted, so a sorted set ({@code ...:dates}, members {@code <date>:<orderNumber>} with equal scores, i.e.
+ * ordered by date) backs them. The same set is the index of the paginated order history
+ * ({@link KeySpace#orderDatesKey(String)}).
+ * <p>
+ * Two more sorted sets next to it are the sort indexes by status and by item count
+ * ({@link KeySpace#orderSortKey(String, OrderSort)}, entries see {@link OrderSort#entry}). Orders that are only
+ * in the date index because they were written before these existed are added on the first sorted read
+ * ({@link #buildSortIndexes}); orders archived before that only appear in the date order.
+ * <p>
+ * The scripts get every key they touch in KEYS: the hook's keys are named by {@link #HOOK}, and the index build
+ * reads the date index first and then passes the orders of each chunk.
+ * <p>
+ * Orders written before this existed are counted when the repository first reads the statistics or the history
+ * (see {@link RedisOrderRepository}); until then the hook does not subtract them.
+ *
+ * @author isil
+ */
+final class RedisOrderStats {
+
+    private static final String SORT_INDEXED = "sortIndexed";
+
+    private static final int BUILD_CHUNK = 500;
+
+    // KEYS: stats, status index, item count index, orders; ARGV: their date index entries, then "1" on the last chunk
+    private static final RedisScript BUILD_SORT_INDEXES = RedisScript.of(
+            "for i = 4, #KEYS do\n" +
+            "  local order = redis.call('HMGET', KEYS[i], 'orderStatus', 'itemCount', 'orderDate')\n" +
+            "  if order[1] and order[3] and string.sub(ARGV[i - 3], 1, #order[3] + 1) == order[3] .. ':' then\n" +
+            "    redis.call('ZADD', KEYS[2], 0, order[1] .. '\\0' .. ARGV[i - 3])\n" +
+            "    local items = string.format('%010d', tonumber(order[2]) or 0)\n" +
+            "    redis.call('ZADD', KEYS[3], 0, items .. '\\0' .. ARGV[i - 3])\n" +
+            "  end\n" +
+            "end\n" +
+            "if ARGV[#ARGV] == '1' and redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "  redis.call('HSET', KEYS[1], '" + SORT_INDEXED + "', 1)\n" +
+            "end\n" +
+            "return 0");
+
+    private RedisOrderStats() {
+    }
+
+    /**
+     * @return whether the customer's sort indexes were built before, see {@link #buildSortIndexes}
+     */
+    static Response<Boolean> isSortIndexed(AbstractPipeline pipeline, KeySpace keys, String customerId) {
+        return pipeline.hexists(keys.orderStatsKey(customerId), SORT_INDEXED);
+    }
+
+    /**
+     * Adds the customer's orders to the status and item count indexes, walking the date index in chunks of
+     * {@value #BUILD_CHUNK}, and marks the indexes as built. Orders the hook indexes in the meantime end up with
+     * the same entries, and an order is skipped if its date changed after the date index was read, so the chunks
+     * need not be atomic with each other.
+     *
+     * @return false if the customer has no orders
+     */
+    static boolean buildSortIndexes(UnifiedJedis jedis, KeySpace keys, String customerId) {
+        List<String> positions = jedis.zrange(keys.orderDatesKey(customerId), 0, -1);
+        if (positions.isEmpty()) {
+            return false;
+        }
+        List<String> statsKeys = statsKeys(keys, customerId);
+        for (int from = 0; from < positions.size(); from += BUILD_CHUNK) {
+            List<String> chunk = positions.subList(from, Math.min(positions.size(), from + BUILD_CHUNK));
+            List<String> scriptKeys = new ArrayList<>(chunk.size() + 3);
+            scriptKeys.add(statsKeys.get(0));
+            scriptKeys.add(statsKeys.get(2));
+            scriptKeys.add(statsKeys.get(3));
+            for (String position : chunk) {
+                scriptKeys.add(keys.orderKey(customerId, position.substring(position.indexOf(':') + 1)));
+            }
+            List<String> args = new ArrayList<>(chunk);
+            args.add(from + BUILD_CHUNK >= positions.size() ? "1" : "0");
+            BUILD_SORT_INDEXES.eval(jedis, scriptKeys, args);
+        }
+        return true;
+    }
+
+    /**
+     * @return the statistics hash and the date, status and item count indexes of the customer
+     */
+    private static List<String> statsKeys(KeySpace keys, String customerId) {
+        return Arrays.asList(keys.orderStatsKey(customerId), keys.orderDatesKey(customerId),
+                keys.orderSortKey(customerId, OrderSort.ORDER_STATUS),
+                keys.orderSortKey(customerId, OrderSort.ITEM_COUNT));
+    }
+
+    /**
+     * The record hook maintaining the statistics, see {@link ChangeLog.Hook}. Its keys are the statistics keys of
+     * the customer the stored order belongs to (guarded by its {@code customerId}) and of the new order's customer.
+     * Orders moved into the archive stay counted.
+     */
+    static final ChangeLog.Hook HOOK = new ChangeLog.Hook(
+            // keys: record, [old customer's stats, dates, status, items], [new customer's ...]
+            "local function count(at, items, status, date, sign)\n" +
+            "  local stats = keys[at]\n" +
+            "  redis.call('HINCRBY', stats, 'orderCount', sign)\n" +
+            "  redis.call('HINCRBY', stats, 'itemTotal', sign * items)\n" +
+            "  if redis.call('HINCRBY', stats, 'status:' .. status, sign) == 0 then\n" +
+            "    redis.call('HDEL', stats, 'status:' .. status)\n" +
+            "  end\n" +
+            "  local member = date .. ':' .. ARGV[1]\n" +
+            "  local byStatus = status .. '\\0' .. member\n" +
+            "  local byItems = string.format('%010d', items) .. '\\0' .. member\n" +
+            "  if sign > 0 then\n" +
+            "    redis.call('ZADD', keys[at + 1], 0, member)\n" +
+            "    redis.call('ZADD', keys[at + 2], 0, byStatus)\n" +
+            "    redis.call('ZADD', keys[at + 3], 0, byItems)\n" +
+            "  else\n" +
+            "    redis.call('ZREM', keys[at + 1], member)\n" +
+            "    redis.call('ZREM', keys[at + 2], byStatus)\n" +
+            "    redis.call('ZREM', keys[at + 3], byItems)\n" +
+            "  end\n" +
+            "end\n" +
+            "local function refreshDates(at)\n" +
+            "  local first = redis.call('ZRANGE', keys[at + 1], 0, 0)\n" +
+            "  if #first == 0 then\n" +
+            "    redis.call('DEL', keys[at], keys[at + 1], keys[at + 2], keys[at + 3])\n" +
+            "    return\n" +
+            "  end\n" +
+            "  local newest = redis.call('ZRANGE', keys[at + 1], -1, -1)\n" +
+            "  redis.call('HSET', keys[at], 'firstOrderDate', string.sub(first[1], 1, 10),\n" +
+            "      'lastOrderDate', string.sub(newest[1], 1, 10))\n" +
+            "end\n" +
+            "if not " + RedisOrderArchive.ARCHIVING + " then\n" +
+            "  local old = redis.call('HMGET', record, 'customerId', 'itemCount', 'orderStatus', 'orderDate')\n" +
+            "  -- Only counted orders are subtracted: an order written before the statistics is in no index yet\n" +
+            "  if old[1] and redis.call('ZSCORE', keys[3], (old[4] or '') .. ':' .. ARGV[1]) then\n" +
+            "    count(2, tonumber(old[2]) or 0, old[3] or '', old[4] or '', -1)\n" +
+            "  end\n" +
+            "  local newCustomer = false\n" +
+            "  if ARGV[4] == 'upsert' then\n" +
+            "    local new = {}\n" +
+            "    for i = fields, #ARGV, 2 do new[ARGV[i]] = ARGV[i + 1] end\n" +
+            "    newCustomer = new['customerId']\n" +
+            "    count(#keys - 3, tonumber(new['itemCount']) or 0, new['orderStatus'], new['orderDate'], 1)\n" +
+            "  end\n" +
+            "  if old[1] then refreshDates(2) end\n" +
+            "  if newCustomer and newCustomer ~= old[1] then refreshDates(#keys - 3) end\n" +
+            "end\n") {
+
+        @Override
+        ChangeLog.Guard guard(KeySpace keys, ChangeLog.Write write) {
+            return archiving(write) ? null : new ChangeLog.Guard(write.recordKey, "customerId");
+        }
+
+        @Override
+        String expected(ChangeLog.Write write) {
+            return write.upsert ? write.field("customerId") : null; // Orders rarely change their customer
+        }
+
+        @Override
+        void bind(KeySpace keys, ChangeLog.Write write, String guarded, List<String> hookKeys, List<String> args) {
+            if (archiving(write)) {
+                return;
+            }
+            if (!guarded.isEmpty()) {
+                hookKeys.addAll(statsKeys(keys, guarded));
+            }
+            if (write.upsert) {
+                hookKeys.addAll(statsKeys(keys, write.field("customerId")));
+            }
+        }
+    };
+
+    private static boolean archiving(ChangeLog.Write write) {
+        return !write.upsert && RedisOrderArchive.HOOK_DATA.equals(write.hookData);
+    }
+
+    /**
+     * @param hash the statistics hash, empty if the customer has no orders
+     */
+    static OrderStats fromHash(Map<String, String> hash) {
+        if (hash == null || hash.isEmpty()) {
+            return OrderStats.EMPTY;
+        }
+        Map<String, Long> countsByStatus = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : hash.entrySet()) {
+            if (field.getKey().startsWith("status:")) {
+                countsByStatus.put(field.getKey().substring("status:".length()), Long.parseLong(field.getValue()));
+            }
+        }
+        return new OrderStats(
+                Long.parseLong(hash.getOrDefault("orderCount", "0")),
+                Long.parseLong(hash.getOrDefault("itemTotal", "0")),
+                parseDate(hash.get("firstOrderDate")),
+                parseDate(hash.get("lastOrderDate")),
+                countsByStatus);
+    }
+
+    private static LocalDate parseDate(String value) {
+        return value == null ? null : LocalDate.parse(value);
+    }
+}
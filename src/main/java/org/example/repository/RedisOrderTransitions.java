@@ -0,0 +1,125 @@
+package org.example.repository;
+
+import org.example.config.RedisScript;
+import org.example.model.OrderStatusRule;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an {@link OrderStatusRule} (or the selection of the archival job, see {@link RedisOrderArchive})
+ * inside Redis over a customer's date index ({@link KeySpace#orderDatesKey(String)}): the date range is a
+ * lexicographic range of that sorted set, read in chunks of {@code cms.transition.chunk} entries (default 200),
+ * and a script gets each chunk's orders as KEYS, checks their status in place and returns only the matching ones.
+ * Every call handles one chunk, so Redis is never blocked for longer than that, and the index and the orders of a
+ * customer share a slot in cluster mode.
+ * <p>
+ * The matching orders are then written through the change log like every other update, guarded by their old
+ * status (see {@link ChangeLog#upsertAllIf}), so an order changed in between is left alone. Orders written
+ * before the statistics existed are added to the index first (see {@link RedisOrderRepository}).
+ *
+ * @author isil
+ */
+final class RedisOrderTransitions {
+
+    static final int CHUNK = Integer.getInteger("cms.transition.chunk", 200);
+
+    // KEYS: the orders of the chunk; ARGV: statuses (one per line), then the orders' numbers
+    // Returns the matches: number, fields, ...
+    private static final RedisScript SELECT = RedisScript.of(
+            "local wanted = {}\n" +
+            "for status in string.gmatch(ARGV[1], '[^\\n]+') do wanted[status] = true end\n" +
+            "local matches = {}\n" +
+            "for i, record in ipairs(KEYS) do\n" +
+            "  local status = redis.call('HGET', record, 'orderStatus')\n" +
+            "  if status and wanted[status] then\n" +
+            "    matches[#matches + 1] = ARGV[i + 1]\n" +
+            "    matches[#matches + 1] = redis.call('HGETALL', record)\n" +
+            "  end\n" +
+            "end\n" +
+            "return matches");
+
+    private RedisOrderTransitions() {
+    }
+
+    /**
+     * @return the ZRANGEBYLEX lower bound of the rule's date range
+     */
+    static String min(OrderStatusRule rule) {
+        return rule.getFromDate() == null ? "-" : "[" + rule.getFromDate();
+    }
+
+    /**
+     * @return the ZRANGEBYLEX upper bound of the rule's date range; entries are {@code <date>:<number>}, so the
+     * day after the last date is the exclusive bound
+     */
+    static String max(OrderStatusRule rule) {
+        return rule.getToDate() == null ? "+" : "(" + rule.getToDate().plusDays(1);
+    }
+
+    /**
+     * Reads one chunk of the customer's date index starting at {@code min}.
+     */
+    static Chunk select(UnifiedJedis jedis, KeySpace keys, String customerId, String min, OrderStatusRule rule) {
+        return select(jedis, keys, customerId, min, max(rule), Collections.singleton(rule.getFromStatus()));
+    }
+
+    /**
+     * Reads one chunk of the customer's date index between {@code min} and {@code max} (ZRANGEBYLEX bounds),
+     * returning the orders with one of the statuses.
+     */
+    static Chunk select(UnifiedJedis jedis, KeySpace keys, String customerId, String min, String max,
+                        Collection<String> statuses) {
+        List<String> entries = jedis.zrangeByLex(keys.orderDatesKey(customerId), min, max, 0, CHUNK);
+        Chunk chunk = new Chunk(entries.size() == CHUNK ? "(" + entries.get(entries.size() - 1) : null);
+        if (entries.isEmpty()) {
+            return chunk;
+        }
+        List<String> orderKeys = new ArrayList<>(entries.size());
+        List<String> args = new ArrayList<>(entries.size() + 1);
+        args.add(String.join("\n", statuses));
+        for (String entry : entries) {
+            String orderNumber = entry.substring(entry.indexOf(':') + 1);
+            orderKeys.add(keys.orderKey(customerId, orderNumber));
+            args.add(orderNumber);
+        }
+        Object reply = SELECT.eval(jedis, orderKeys, args);
+        if (!(reply instanceof List)) {
+            return chunk; // No matches: Jedis decodes an empty array reply as an empty map
+        }
+        List<?> matches = (List<?>) reply;
+        for (int i = 0; i + 1 < matches.size(); i += 2) {
+            List<?> fields = (List<?>) matches.get(i + 1);
+            Map<String, String> orderData = new LinkedHashMap<>();
+            for (int f = 0; f + 1 < fields.size(); f += 2) {
+                orderData.put(text(fields.get(f)), text(fields.get(f + 1)));
+            }
+            chunk.orderNumbers.add(text(matches.get(i)));
+            chunk.orderData.add(orderData);
+        }
+        return chunk;
+    }
+
+    private static String text(Object reply) {
+        return reply instanceof byte[] ? new String((byte[]) reply, StandardCharsets.UTF_8) : String.valueOf(reply);
+    }
+
+    /**
+     * The matching orders of one chunk and where the next chunk starts.
+     */
+    static final class Chunk {
+        final List<String> orderNumbers = new ArrayList<>();
+        final List<Map<String, String>> orderData = new ArrayList<>();
+        final String next; // null once the range is exhausted
+
+        Chunk(String next) {
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.repository;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Selects the storage engine used by the services.
+ * <p>
+ * {@code -Dcms.storage=redis} (the default) stores the data in Redis, see {@link org.example.config.RedisConnection}.
+ * {@code -Dcms.storage=memory} keeps it in the memory of this process; nothing is persisted and no Redis server
+ * is needed, which is meant for tests, benchmarks of the service layer and offline demos.
+ * <p>
+ * All services share one repository per entity, so that, for example, every controller sees the same
+ * in-memory data.
+ *
+ * @author isil
+ */
+public final class Repositories {
+
+    private static CustomerRepository customers;
+    private static OrderRepository orders;
+
+    private Repositories() {
+    }
+
+    /**
+     * @return true if the configured engine is Redis
+     */
+    public static boolean usesRedis() {
+        return "redis".equals(engine());
+    }
+
+    /**
+     * @return true if the exception means that the storage could not be reached (a timeout, or Redis is known
+     * to be down, see {@link org.example.config.RedisConnection}), as opposed to a failed operation
+     */
+    public static boolean isUnavailable(RuntimeException e) {
+        return e instanceof JedisConnectionException;
+    }
+
+    /**
+     * @return true if the repository is the one shared by the services ({@link #orders()}), without creating it
+     */
+    public static synchronized boolean isShared(OrderRepository repository) {
+        return repository != null && repository == orders;
+    }
+
+    public static synchronized CustomerRepository customers() {
+        if (customers == null) {
+            customers = usesRedis() ? new RedisCustomerRepository() : new InMemoryCustomerRepository();
+        }
+        return customers;
+    }
+
+    public static synchronized OrderRepository orders() {
+        if (orders == null) {
+            orders = usesRedis() ? new RedisOrderRepository() : new InMemoryOrderRepository();
+        }
+        return orders;
+    }
+
+    private static String engine() {
+        String engine = System.getProperty("cms.storage", "redis");
+        if (!"redis".equals(engine) && !"memory".equals(engine)) {
+            throw new IllegalArgumentException("Unknown storage engine in cms.storage: " + engine);
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.repository;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits order texts into the tokens of the order search index, the same way for both storage engines.
+ * <p>
+ * Words are lower-cased and folded to their base letters ("Şişe" and "sise" give the same token, as do "I"
+ * and "ı"); words shorter than two characters are skipped. Each token names what it was found in:
+ * {@code i:<word>} for item names (repeated once per item, so an order listing a product twice ranks higher),
+ * {@code a:<word>} for the address and {@code c:<customerId>} for the customer, which lets a search be limited
+ * to one customer.
+ *
+ * @author isil
+ */
+final class SearchTokens {
+
+    static final String ITEM = "i:";
+    static final String ADDRESS = "a:";
+    static final String CUSTOMER = "c:";
+
+    private SearchTokens() {
+    }
+
+    /**
+     * @return the index tokens of an order
+     */
+    static List<String> of(String customerId, String address, List<String> items) {
+        List<String> tokens = new ArrayList<>();
+        tokens.add(customer(customerId));
+        for (String item : items) {
+            for (String word : new LinkedHashSet<>(words(item))) {
+                tokens.add(ITEM + word);
+            }
+        }
+        for (String word : new LinkedHashSet<>(words(address))) {
+            tokens.add(ADDRESS + word);
+        }
+        return tokens;
+    }
+
+    static String customer(String customerId) {
+        return CUSTOMER + customerId.replaceAll("\\s", "_");
+    }
+
+    /**
+     * @return the distinct words of a search query, normalized like the indexed texts
+     */
+    static Set<String> queryWords(String query) {
+        return new LinkedHashSet<>(words(query));
+    }
+
+    static String join(List<String> tokens) {
+        return String.join(" ", tokens);
+    }
+
+    /**
+     * @return the tokens of {@link #join(List)}, split like the index scripts do ({@code %S+} in Lua)
+     */
+    static List<String> split(String joined) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : joined.split("\\s+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('ı', 'i');
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() >= 2) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
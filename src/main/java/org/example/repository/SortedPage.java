@@ -0,0 +1,63 @@
+package org.example.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a list sorted on the server by a column ({@link CustomerSort}, {@link OrderSort}), addressed by
+ * page number. Unlike {@link OrderPage} a page is an offset into the sorted index: rows added or deleted in
+ * between shift the following pages, but any page can be opened directly and costs about the same.
+ *
+ * @param <T> the row type
+ * @author isil
+ */
+public class SortedPage<T> {
+    private final List<T> items;
+    private final int page;
+    private final int pageSize;
+    private final long total;
+
+    /**
+     * @param page  the page number, from 0
+     * @param total the number of rows in the index
+     */
+    public SortedPage(List<T> items, int page, int pageSize, long total) {
+        this.items = Collections.unmodifiableList(items);
+        this.page = page;
+        this.pageSize = pageSize;
+        this.total = total;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the page number, from 0
+     */
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the number of rows of all pages together
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getPageCount() {
+        return (int) ((total + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * @return true if there is a page after this one
+     */
+    public boolean hasNext() {
+        return (long) (page + 1) * pageSize < total;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.server;
+
+/**
+ * Ends a request with an HTTP error status and a message, see {@link Endpoint}.
+ *
+ * @author isil
+ */
+class ApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,205 @@
+package org.example.server;
+
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.example.model.OrderStats;
+import org.example.model.OrderStatusRule;
+import org.example.repository.CustomerSort;
+import org.example.repository.OrderSort;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the model to and from the JSON objects of the API. Field names are those of the model classes;
+ * dates are ISO dates ("2024-05-31"). Missing text fields of new records are stored as empty strings.
+ *
+ * @author isil
+ */
+final class ApiMapping {
+
+    private ApiMapping() {
+    }
+
+    static Map<String, Object> customer(Customer customer) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", customer.getId());
+        json.put("name", customer.getName());
+        json.put("email", customer.getEmail());
+        json.put("phoneNumber", customer.getPhoneNumber());
+        json.put("address", customer.getAddress());
+        json.put("purchases", customer.getPurchases());
+        return json;
+    }
+
+    /**
+     * @param current the stored customer whose values are kept for fields missing in the JSON, or null
+     */
+    static Customer toCustomer(Map<String, Object> json, String id, Customer current) {
+        return new Customer(id,
+                text(json, "name", current == null ? "" : current.getName()),
+                text(json, "email", current == null ? "" : current.getEmail()),
+                text(json, "phoneNumber", current == null ? "" : current.getPhoneNumber()),
+                text(json, "address", current == null ? "" : current.getAddress()),
+                texts(json, "purchases", current == null ? new ArrayList<>() : current.getPurchases()));
+    }
+
+    static Map<String, Object> order(Order order) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderNumber", order.getOrderNumber());
+        json.put("customerId", order.getCustomerId());
+        json.put("address", order.getAddress());
+        json.put("items", order.getItems());
+        json.put("itemCount", order.getItemCount());
+        json.put("orderDate", order.getOrderDate());
+        json.put("orderStatus", order.getOrderStatus());
+        if (order.isArchived()) {
+            json.put("archived", true); // Salt okunur
+        }
+        return json;
+    }
+
+    /**
+     * @param current the stored order whose values are kept for fields missing in the JSON, or null for a new
+     *                order (date defaults to today, status to "Pending")
+     */
+    static Order toOrder(Map<String, Object> json, String orderNumber, Order current) {
+        String customerId = text(json, "customerId", current == null ? null : current.getCustomerId());
+        if (customerId == null || customerId.isEmpty()) {
+            throw new IllegalArgumentException("customerId is required");
+        }
+        return new Order(orderNumber, customerId,
+                text(json, "address", current == null ? "" : current.getAddress()),
+                texts(json, "items", current == null ? new ArrayList<>() : current.getItems()),
+                date(json, "orderDate", current == null ? LocalDate.now() : current.getOrderDate()),
+                text(json, "orderStatus", current == null ? "Pending" : current.getOrderStatus()));
+    }
+
+    static Map<String, Object> stats(OrderStats stats) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderCount", stats.getOrderCount());
+        json.put("itemTotal", stats.getItemTotal());
+        json.put("firstOrderDate", stats.getFirstOrderDate());
+        json.put("lastOrderDate", stats.getLastOrderDate());
+        json.put("countsByStatus", stats.getCountsByStatus());
+        return json;
+    }
+
+    /**
+     * Reads a rule: {@code fromStatus} and {@code toStatus} are required, then either {@code olderThanDays} or
+     * {@code fromDate}/{@code toDate}; {@code customerId} is optional.
+     */
+    static OrderStatusRule statusRule(Map<String, Object> json) {
+        String fromStatus = text(json, "fromStatus", null);
+        String toStatus = text(json, "toStatus", null);
+        if (fromStatus == null || toStatus == null) {
+            throw new IllegalArgumentException("fromStatus and toStatus are required");
+        }
+        String customerId = text(json, "customerId", null);
+        Object days = json.get("olderThanDays");
+        if (days != null) {
+            if (!(days instanceof Long)) {
+                throw new IllegalArgumentException("olderThanDays must be a whole number");
+            }
+            return OrderStatusRule.olderThan(fromStatus, toStatus, ((Long) days).intValue(), LocalDate.now(),
+                    customerId);
+        }
+        return new OrderStatusRule(fromStatus, toStatus, date(json, "fromDate", null), date(json, "toDate", null),
+                customerId);
+    }
+
+    /**
+     * @param value "id", "name" or "email"
+     */
+    static CustomerSort customerSort(String value) {
+        switch (value) {
+            case "id":
+                return CustomerSort.ID;
+            case "name":
+                return CustomerSort.NAME;
+            case "email":
+                return CustomerSort.EMAIL;
+            default:
+                throw new IllegalArgumentException("sort must be id, name or email");
+        }
+    }
+
+    /**
+     * @param value "orderDate", "orderStatus" or "itemCount", like the order fields
+     */
+    static OrderSort orderSort(String value) {
+        switch (value) {
+            case "orderDate":
+                return OrderSort.ORDER_DATE;
+            case "orderStatus":
+                return OrderSort.ORDER_STATUS;
+            case "itemCount":
+                return OrderSort.ITEM_COUNT;
+            default:
+                throw new IllegalArgumentException("sort must be orderDate, orderStatus or itemCount");
+        }
+    }
+
+    /**
+     * @param value "asc", "desc" or null (ascending)
+     * @return true for ascending
+     */
+    static boolean ascending(String value) {
+        if (value == null || value.equals("asc")) {
+            return true;
+        }
+        if (value.equals("desc")) {
+            return false;
+        }
+        throw new IllegalArgumentException("order must be asc or desc");
+    }
+
+    static LocalDate date(String value, String name) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be a date like 2024-05-31");
+        }
+    }
+
+    /**
+     * @return the string value; the default if the field is missing or null
+     */
+    private static String text(Map<String, Object> json, String name, String defaultValue) {
+        Object value = json.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(name + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private static List<String> texts(Map<String, Object> json, String name, List<String> defaultValue) {
+        Object value = json.get(name);
+        if (value == null) {
+            return new ArrayList<>(defaultValue);
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(name + " must be an array of strings");
+        }
+        List<String> texts = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            if (!(element instanceof String)) {
+                throw new IllegalArgumentException(name + " must be an array of strings");
+            }
+            texts.add((String) element);
+        }
+        return texts;
+    }
+
+    private static LocalDate date(Map<String, Object> json, String name, LocalDate defaultValue) {
+        String value = text(json, name, null);
+        return value == null ? defaultValue : date(value, name);
+    }
+}
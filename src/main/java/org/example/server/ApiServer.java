@@ -0,0 +1,113 @@
+package org.example.server;
+
+import com.sun.net.httpserver.HttpServer;
+import org.example.config.RedisConnection;
+import org.example.metrics.CommandTracer;
+import org.example.repository.Repositories;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Headless server mode: the customer and order services as HTTP/JSON API on the JDK's {@link HttpServer}, so
+ * that many thin clients and integrations share this process's Redis connections instead of opening their own.
+ * Resources: {@link CustomerEndpoints} ({@code /customers}), {@link OrderEndpoints} ({@code /orders}) and
+ * {@code GET /health}.
+ * <p>
+ * Requests run on a bounded pool of {@code cms.server.threads} threads (default: 4 per processor) with a queue
+ * of {@code cms.server.queue} requests (default 256); when both are full, the accepting thread handles the
+ * request itself and stops accepting until it is done, which pushes back on clients instead of piling up work.
+ * The port is {@code cms.server.port} (default 8080).
+ *
+ * @author isil
+ */
+public class ApiServer {
+
+    private static final Logger LOG = Logger.getLogger(ApiServer.class.getName());
+
+    private static final int PORT = Integer.getInteger("cms.server.port", 8080);
+    private static final int THREADS =
+            Integer.getInteger("cms.server.threads", 4 * Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE = Integer.getInteger("cms.server.queue", 256);
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+
+    public ApiServer(InetSocketAddress address, CustomerService customerService, OrderService orderService)
+            throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "api-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        server = HttpServer.create(address, QUEUE);
+        server.setExecutor(executor);
+        server.createContext("/customers", new CustomerEndpoints(customerService, orderService));
+        server.createContext("/orders", new OrderEndpoints(orderService));
+        server.createContext("/health", exchange -> {
+            try {
+                Map<String, Object> health = new LinkedHashMap<>();
+                boolean unavailable = Repositories.usesRedis() && RedisConnection.isUnavailable();
+                health.put("status", unavailable ? "degraded" : "ok");
+                health.put("storage", Repositories.usesRedis() ? "redis" : "memory");
+                if (Repositories.usesRedis()) {
+                    health.put("redisConnected", RedisConnection.isConnected());
+                    health.put("redisAvailable", !unavailable);
+                }
+                Endpoint.send(exchange, 200, health);
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to {@code delaySeconds} for running ones to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on, e.g. when it was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (Repositories.usesRedis()) {
+            RedisConnection.connectAsync(); // Bağlantı, ilk istekten önce hazırlanır
+        }
+        ApiServer apiServer = new ApiServer(new InetSocketAddress(PORT), new CustomerService(), new OrderService());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.stop(2);
+            // Write queued order updates (write-behind mode); anything left stays in the journal
+            if (!OrderService.flushPendingWrites(5_000)) {
+                LOG.warning("Some order updates are still queued; they will be written on the next start");
+            }
+            RedisConnection.closeConnection();
+            CommandTracer.logSummary();
+        }, "api-shutdown"));
+        apiServer.start();
+        LOG.info("API server listening on port " + apiServer.getPort());
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.example.model.Customer;
+import org.example.model.Order;
+import org.example.repository.OrderPage;
+import org.example.repository.SortedPage;
+import org.example.service.CustomerService;
+import org.example.service.OrderService;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@code /customers}:
+ * <ul>
+ * <li>{@code GET /customers} - all customers, loaded in full; clients with many customers use the sorted
+ * pages</li>
+ * <li>{@code GET /customers?sort=id|name|email&order=asc|desc&page=&size=} - one page sorted on the server,
+ * pages counted from 1</li>
+ * <li>{@code POST /customers} - creates a customer; the ID is generated if missing</li>
+ * <li>{@code GET|PUT|DELETE /customers/{id}} - PUT keeps the values of fields that are not given</li>
+ * <li>{@code GET /customers/{id}/orders?cursor=&limit=} - one page of the order history, archived orders
+ * included</li>
+ * <li>{@code GET /customers/{id}/orders?sort=orderDate|orderStatus|itemCount&order=asc|desc&page=&size=} - one
+ * page of the order history sorted on the server</li>
+ * <li>{@code GET /customers/{id}/stats} - the customer's order statistics</li>
+ * </ul>
+ *
+ * @author isil
+ */
+class CustomerEndpoints extends Endpoint {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final CustomerService customerService;
+    private final OrderService orderService;
+
+    CustomerEndpoints(CustomerService customerService, OrderService orderService) {
+        this.customerService = customerService;
+        this.orderService = orderService;
+    }
+
+    @Override
+    protected void route(HttpExchange exchange, String method, List<String> path) throws IOException {
+        if (path.isEmpty()) {
+            Map<String, String> query = query(exchange);
+            if (method.equals("GET") && query.containsKey("sort")) {
+                SortedPage<Customer> page = customerService.getCustomerPage(ApiMapping.customerSort(query.get("sort")),
+                        ApiMapping.ascending(query.get("order")), pageNumber(query), pageSize(query));
+                send(exchange, 200, sortedPage("customers", page, ApiMapping::customer));
+            } else if (method.equals("GET")) {
+                sendList(exchange, customerService.getAllCustomers(), ApiMapping::customer);
+            } else if (method.equals("POST")) {
+                create(exchange);
+            } else {
+                throw notFound(method, true);
+            }
+        } else if (path.size() == 1) {
+            String id = path.get(0);
+            switch (method) {
+                case "GET":
+                    send(exchange, 200, ApiMapping.customer(find(id)));
+                    break;
+                case "PUT":
+                    Customer customer = ApiMapping.toCustomer(body(exchange), id, find(id));
+                    update(customer);
+                    send(exchange, 200, ApiMapping.customer(customer));
+                    break;
+                case "DELETE":
+                    try {
+                        customerService.deleteCustomer(id);
+                    } catch (IllegalArgumentException e) {
+                        throw new ApiException(404, e.getMessage());
+                    }
+                    sendNoContent(exchange);
+                    break;
+                default:
+                    throw notFound(method, true);
+            }
+        } else if (path.size() == 2 && path.get(1).equals("orders")) {
+            if (!method.equals("GET")) {
+                throw notFound(method, true);
+            }
+            Map<String, String> query = query(exchange);
+            if (query.containsKey("sort")) {
+                SortedPage<Order> page = orderService.getSortedOrderPage(path.get(0),
+                        ApiMapping.orderSort(query.get("sort")), ApiMapping.ascending(query.get("order")),
+                        pageNumber(query), pageSize(query));
+                send(exchange, 200, sortedPage("orders", page, ApiMapping::order));
+                return;
+            }
+            OrderPage page = orderService.getOrderPage(path.get(0), query.get("cursor"),
+                    intParameter(query, "limit", DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE));
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("orders", page.getOrders().stream().map(ApiMapping::order).collect(Collectors.toList()));
+            json.put("nextCursor", page.getNextCursor());
+            send(exchange, 200, json);
+        } else if (path.size() == 2 && path.get(1).equals("stats")) {
+            if (!method.equals("GET")) {
+                throw notFound(method, true);
+            }
+            send(exchange, 200, ApiMapping.stats(orderService.getOrderStats(path.get(0))));
+        } else {
+            throw notFound(method, false);
+        }
+    }
+
+    /**
+     * @return the page number from 0; the API counts from 1
+     */
+    private static int pageNumber(Map<String, String> query) {
+        return intParameter(query, "page", 1, Integer.MAX_VALUE) - 1;
+    }
+
+    private static int pageSize(Map<String, String> query) {
+        return intParameter(query, "size", DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+    }
+
+    private static <T> Map<String, Object> sortedPage(String name, SortedPage<T> page,
+                                                      Function<T, Map<String, Object>> mapping) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put(name, page.getItems().stream().map(mapping).collect(Collectors.toList()));
+        json.put("page", page.getPage() + 1);
+        json.put("size", page.getPageSize());
+        json.put("total", page.getTotal());
+        json.put("pages", page.getPageCount());
+        return json;
+    }
+
+    private void create(HttpExchange exchange) throws IOException {
+        Map<String, Object> json = body(exchange);
+        Object id = json.get("id");
+        if (id != null && !(id instanceof String && ((String) id).matches("\\d+"))) {
+            throw new IllegalArgumentException("id must be a string of digits"); // Like the terminal app
+        }
+        if (id != null && customerService.getCustomer((String) id) != null) {
+            throw new ApiException(409, "Customer with ID " + id + " already exists.");
+        }
+        Customer customer = ApiMapping.toCustomer(json, (String) id, null);
+        customerService.createCustomer(customer);
+        send(exchange, 201, ApiMapping.customer(customer));
+    }
+
+    private void update(Customer customer) {
+        try {
+            customerService.updateCustomer(customer);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(404, e.getMessage()); // Deleted in the meantime
+        }
+    }
+
+    private Customer find(String id) {
+        Customer customer = customerService.getCustomer(id);
+        if (customer == null) {
+            throw new ApiException(404, "Customer with ID " + id + " does not exist.");
+        }
+        return customer;
+    }
+}
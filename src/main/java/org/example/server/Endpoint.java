@@ -0,0 +1,181 @@
+package org.example.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.example.repository.Repositories;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base class of the API's resources: splits the path below the resource's context, turns exceptions into error
+ * responses and writes JSON.
+ * <p>
+ * Errors: {@link ApiException} carries its own status, {@link IllegalArgumentException} (invalid input) is
+ * 400, {@link IllegalStateException} is 409, an unreachable storage ({@link Repositories#isUnavailable}) 503
+ * and anything else 500. The body is {@code {"error": "..."}}; the details of a 500 are only logged, not sent
+ * to the client.
+ *
+ * @author isil
+ */
+abstract class Endpoint implements HttpHandler {
+
+    private static final Logger LOG = Logger.getLogger(Endpoint.class.getName());
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    @Override
+    public final void handle(HttpExchange exchange) throws IOException {
+        try {
+            String context = exchange.getHttpContext().getPath();
+            String rest = exchange.getRequestURI().getPath().substring(context.length());
+            List<String> path = new ArrayList<>();
+            for (String segment : rest.split("/")) {
+                if (!segment.isEmpty()) {
+                    path.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+                }
+            }
+            route(exchange, exchange.getRequestMethod(), path);
+        } catch (ApiException e) {
+            sendError(exchange, e.getStatus(), e.getMessage());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (RuntimeException e) {
+            if (Repositories.isUnavailable(e)) {
+                sendError(exchange, 503, "Storage unavailable: " + e.getMessage());
+            } else {
+                LOG.log(Level.SEVERE, exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed", e);
+                sendError(exchange, 500, "Internal error");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param path the decoded path segments below the resource, e.g. ["42", "orders"] for
+     *             {@code /customers/42/orders}
+     */
+    protected abstract void route(HttpExchange exchange, String method, List<String> path) throws IOException;
+
+    /**
+     * @return 404 for a path that is not part of the API, 405 for a method that the path does not support
+     */
+    static ApiException notFound(String method, boolean pathExists) {
+        return pathExists ? new ApiException(405, "Method " + method + " is not supported here")
+                : new ApiException(404, "Not found");
+    }
+
+    static Map<String, String> query(HttpExchange exchange) {
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the value of an integer query parameter, limited to [1, max]
+     */
+    static int intParameter(Map<String, String> query, String name, int defaultValue, int max) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Math.min(max, Integer.parseInt(value)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number");
+        }
+    }
+
+    /**
+     * @return the request body, which must be a JSON object
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> body(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body too large");
+        }
+        Object body = Json.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (!(body instanceof Map)) {
+            throw new IllegalArgumentException("The request body must be a JSON object");
+        }
+        return (Map<String, Object>) body;
+    }
+
+    static void send(HttpExchange exchange, int status, Object value) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0); // Chunked
+        try (Writer out = writer(exchange)) {
+            Json.write(out, value);
+        }
+    }
+
+    static void sendNoContent(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    /**
+     * Writes a JSON array: elements are converted and written one by one, and the response goes out in chunks
+     * as the buffer fills, so the list is not held a second time as one string. The list itself is loaded in
+     * full by the service; only the paged resources bound the memory of a request.
+     */
+    static <T> void sendList(HttpExchange exchange, Iterable<T> elements, Function<T, Object> mapper)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = writer(exchange)) {
+            out.write('[');
+            Iterator<T> iterator = elements.iterator();
+            while (iterator.hasNext()) {
+                Json.write(out, mapper.apply(iterator.next()));
+                if (iterator.hasNext()) {
+                    out.write(',');
+                }
+            }
+            out.write(']');
+        }
+    }
+
+    private static Writer writer(HttpExchange exchange) {
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            send(exchange, status, Collections.singletonMap("error", message));
+        } catch (IOException e) {
+            // Client gone, or the response had already been started
+        }
+    }
+}
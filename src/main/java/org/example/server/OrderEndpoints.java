@@ -0,0 +1,147 @@
+package org.example.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.example.model.Order;
+import org.example.model.OrderStatusRule;
+import org.example.service.OrderService;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /orders}:
+ * <ul>
+ * <li>{@code GET /orders?status=}, {@code ?from=&to=}, {@code ?customerId=} or {@code ?q=[&customerId=][&limit=]}
+ * - orders by status, date range, customer or full-text search, loaded in full (the search is limited); a
+ * customer's history is paged under {@code /customers/{id}/orders}</li>
+ * <li>{@code POST /orders} - creates an order; number, date and status are filled in if missing</li>
+ * <li>{@code GET|PUT|DELETE /orders/{number}} - PUT keeps the values of fields that are not given</li>
+ * <li>{@code GET /orders/top-items?limit=[&month=yyyy-MM]} - the best-selling items</li>
+ * <li>{@code POST /orders/transitions[?dryRun=true]} - a bulk status transition, see
+ * {@link ApiMapping#statusRule}</li>
+ * <li>{@code POST /orders/archive} - runs the archival job with the configured age and statuses</li>
+ * </ul>
+ *
+ * @author isil
+ */
+class OrderEndpoints extends Endpoint {
+
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+
+    private final OrderService orderService;
+
+    OrderEndpoints(OrderService orderService) {
+        this.orderService = orderService;
+    }
+
+    @Override
+    protected void route(HttpExchange exchange, String method, List<String> path) throws IOException {
+        if (path.isEmpty()) {
+            if (method.equals("GET")) {
+                sendList(exchange, query(query(exchange)), ApiMapping::order);
+            } else if (method.equals("POST")) {
+                Order order = ApiMapping.toOrder(body(exchange), orderService.generateOrderNumber(), null);
+                orderService.saveOrder(order);
+                send(exchange, 201, ApiMapping.order(order));
+            } else {
+                throw notFound(method, true);
+            }
+        } else if (path.size() == 1 && path.get(0).equals("top-items")) {
+            if (!method.equals("GET")) {
+                throw notFound(method, true);
+            }
+            send(exchange, 200, topItems(query(exchange)));
+        } else if (path.size() == 1 && path.get(0).equals("transitions")) {
+            if (!method.equals("POST")) {
+                throw notFound(method, true);
+            }
+            OrderStatusRule rule = ApiMapping.statusRule(body(exchange));
+            boolean dryRun = Boolean.parseBoolean(query(exchange).get("dryRun"));
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("rule", rule.toString());
+            json.put("dryRun", dryRun);
+            json.put("affected", orderService.transitionOrders(rule, dryRun));
+            send(exchange, 200, json);
+        } else if (path.size() == 1 && path.get(0).equals("archive")) {
+            if (!method.equals("POST")) {
+                throw notFound(method, true);
+            }
+            send(exchange, 200, Map.of("archived", orderService.archiveOrders()));
+        } else if (path.size() == 1) {
+            String orderNumber = path.get(0);
+            switch (method) {
+                case "GET":
+                    send(exchange, 200, ApiMapping.order(find(orderNumber)));
+                    break;
+                case "PUT":
+                    Order order = ApiMapping.toOrder(body(exchange), orderNumber, find(orderNumber));
+                    try {
+                        orderService.updateOrder(order);
+                    } catch (IllegalArgumentException e) {
+                        throw new ApiException(404, e.getMessage()); // Deleted in the meantime
+                    }
+                    send(exchange, 200, ApiMapping.order(order));
+                    break;
+                case "DELETE":
+                    try {
+                        orderService.deleteOrder(orderNumber);
+                    } catch (IllegalArgumentException e) {
+                        throw new ApiException(404, e.getMessage());
+                    }
+                    sendNoContent(exchange);
+                    break;
+                default:
+                    throw notFound(method, true);
+            }
+        } else {
+            throw notFound(method, false);
+        }
+    }
+
+    private List<Order> query(Map<String, String> query) {
+        if (query.containsKey("q")) {
+            return orderService.searchOrders(query.get("q"), query.get("customerId"),
+                    intParameter(query, "limit", DEFAULT_LIMIT, MAX_LIMIT));
+        }
+        if (query.containsKey("status")) {
+            return orderService.getOrdersByStatus(query.get("status"));
+        }
+        if (query.containsKey("from") || query.containsKey("to")) {
+            if (!query.containsKey("from") || !query.containsKey("to")) {
+                throw new IllegalArgumentException("from and to are both required");
+            }
+            return orderService.getOrdersBetween(ApiMapping.date(query.get("from"), "from"),
+                    ApiMapping.date(query.get("to"), "to"));
+        }
+        if (query.containsKey("customerId")) {
+            return orderService.getOrdersByCustomerId(query.get("customerId"));
+        }
+        throw new IllegalArgumentException("One of the parameters status, from/to, customerId or q is required");
+    }
+
+    private Map<String, Long> topItems(Map<String, String> query) {
+        int limit = intParameter(query, "limit", 10, MAX_LIMIT);
+        String month = query.get("month");
+        if (month == null) {
+            return orderService.getTopItems(limit);
+        }
+        try {
+            return orderService.getTopItems(YearMonth.parse(month), limit);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("month must be like 2024-05");
+        }
+    }
+
+    private Order find(String orderNumber) {
+        Order order = orderService.getOrder(orderNumber);
+        if (order == null) {
+            throw new ApiException(404, "Order with number " + orderNumber + " does not exist.");
+        }
+        return order;
+    }
+}
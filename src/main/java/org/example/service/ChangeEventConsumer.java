@@ -0,0 +1,144 @@
+package org.example.service;
+
+import org.example.repository.ChangeEvent;
+import org.example.repository.ChangeStream;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes a change data capture stream incrementally for downstream systems (billing, analytics, ...):
+ * reads a batch, hands it to the handler and acknowledges it once the handler returned, so nothing is lost if
+ * the process dies in between. Every {@value #TRIM_EVERY} batches the events all groups have processed are
+ * trimmed from the stream.
+ * <p>
+ * If the handler throws, the batch stays unacknowledged and is handed over again on the next poll.
+ * <p>
+ * Example:
+ * <pre>
+ * ChangeEventConsumer billing = new ChangeEventConsumer(new OrderService().changeEvents(), "billing", "worker-1",
+ *         500, events -&gt; events.forEach(System.out::println));
+ * billing.start();
+ * </pre>
+ *
+ * @author isil
+ */
+public class ChangeEventConsumer implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ChangeEventConsumer.class.getName());
+
+    private static final int TRIM_EVERY = 100;
+    private static final long POLL_BLOCK_MILLIS = 1_000L;
+    private static final long RETRY_MILLIS = 1_000L;
+
+    private final ChangeStream stream;
+    private final String group;
+    private final String consumer;
+    private final int batchSize;
+    private final Consumer<List<ChangeEvent>> handler;
+    private int batches;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * Creates the consumer group if needed; a new group starts with the oldest event still in the stream.
+     *
+     * @param group    the consumer group, e.g. "billing"; every group sees every event
+     * @param consumer the name of this consumer within the group; reuse it after a restart to resume its
+     *                 unacknowledged events
+     */
+    public ChangeEventConsumer(ChangeStream stream, String group, String consumer, int batchSize,
+                               Consumer<List<ChangeEvent>> handler) {
+        this.stream = stream;
+        this.group = group;
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.handler = handler;
+        stream.createGroup(group, true);
+    }
+
+    /**
+     * Processes one batch: first events left unacknowledged by an earlier run, otherwise new ones.
+     *
+     * @param blockMillis how long to wait for new events
+     * @return the number of events processed
+     */
+    public int poll(long blockMillis) {
+        List<ChangeEvent> events = stream.readPending(group, consumer, batchSize);
+        if (events.isEmpty()) {
+            events = stream.read(group, consumer, batchSize, blockMillis);
+        }
+        if (events.isEmpty()) {
+            return 0;
+        }
+        handler.accept(events);
+        stream.ack(group, events);
+        if (++batches % TRIM_EVERY == 0) {
+            stream.trim();
+        }
+        return events.size();
+    }
+
+    /**
+     * Polls continuously on a daemon thread until {@link #close()} is called.
+     */
+    public synchronized void start() {
+        if (worker == Thread.currentThread() || (worker != null && running)) {
+            running = true; // Already running, or started again from the handler: the worker simply goes on
+            return;
+        }
+        if (worker != null) {
+            awaitExit(worker); // Closed from its handler and still finishing that batch
+        }
+        running = true;
+        worker = new Thread(this::run, "cdc-" + group + "-" + consumer);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                poll(POLL_BLOCK_MILLIS);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Change event consumer " + group + "/" + consumer + " failed, retrying", e);
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops polling and waits until the worker has finished the batch it is processing, so a later
+     * {@link #start()} never runs two workers at once. Called from the handler, it returns at once and the
+     * worker ends after the handler returned.
+     */
+    @Override
+    public synchronized void close() {
+        running = false; // The worker notices it after the current poll (at most about a second)
+        if (worker == null || worker == Thread.currentThread()) {
+            return;
+        }
+        awaitExit(worker);
+        worker = null;
+    }
+
+    private static void awaitExit(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
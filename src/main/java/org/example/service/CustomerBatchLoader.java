@@ -0,0 +1,88 @@
+package org.example.service;
+
+import org.example.model.Customer;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Batches concurrent loads of distinct customers: the first call of a batch loads all IDs requested so far with
+ * one multi-get (a single pipelined round trip with Redis) and hands every caller its customer. While another
+ * batch is being loaded, it first waits {@code cms.customers.batchWindowMicros} (default 200, 0 disables the
+ * wait) for more calls to join; a call without company is loaded at once, so it never pays for the window. No
+ * background thread is involved.
+ *
+ * @author isil
+ */
+final class CustomerBatchLoader {
+
+    private static final long WINDOW_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Long.getLong("cms.customers.batchWindowMicros", 200L));
+
+    private final Function<Collection<String>, Map<String, Customer>> multiGet;
+    private Map<String, CompletableFuture<Customer>> pending = new LinkedHashMap<>(); // Sıradaki toplu okuma
+    private boolean collecting;
+    private int loading; // Batches whose multi-get is running
+
+    /**
+     * @param multiGet loads many customers at once; IDs that do not exist are left out of the result
+     */
+    CustomerBatchLoader(Function<Collection<String>, Map<String, Customer>> multiGet) {
+        this.multiGet = multiGet;
+    }
+
+    /**
+     * @return the customer, or null if it does not exist
+     */
+    Customer load(String id) {
+        CompletableFuture<Customer> result;
+        boolean leader = false;
+        boolean contended = false;
+        synchronized (this) {
+            result = pending.computeIfAbsent(id, key -> new CompletableFuture<>());
+            if (!collecting) {
+                collecting = true;
+                leader = true;
+                contended = loading > 0;
+            }
+        }
+        if (leader) {
+            if (contended && WINDOW_NANOS > 0) {
+                LockSupport.parkNanos(WINDOW_NANOS);
+            }
+            Map<String, CompletableFuture<Customer>> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                collecting = false;
+                loading++;
+            }
+            try {
+                run(batch);
+            } finally {
+                synchronized (this) {
+                    loading--;
+                }
+            }
+        }
+        return SingleFlight.await(result);
+    }
+
+    private void run(Map<String, CompletableFuture<Customer>> batch) {
+        try {
+            Map<String, Customer> customers = multiGet.apply(batch.keySet());
+            for (Map.Entry<String, CompletableFuture<Customer>> entry : batch.entrySet()) {
+                entry.getValue().complete(customers.get(entry.getKey()));
+            }
+        } catch (RuntimeException | Error e) {
+            for (CompletableFuture<Customer> result : batch.values()) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
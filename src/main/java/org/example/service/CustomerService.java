@@ -1,119 +1,229 @@
 package org.example.service;
 
-import org.example.config.RedisConnection;
+import org.example.metrics.Metrics;
+import org.example.metrics.OperationMetrics;
 import org.example.model.Customer;
-import redis.clients.jedis.Jedis;
+import org.example.repository.ChangeSet;
+import org.example.repository.ChangeStream;
+import org.example.repository.CustomerRepository;
+import org.example.repository.CustomerSort;
+import org.example.repository.Repositories;
+import org.example.repository.SortedPage;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.logging.Logger;
 
 
 /**
+ * Creates, reads, updates and deletes customers, one by one or in batches, on top of a {@link CustomerRepository}
+ * and records metrics for every operation. The storage engine is selected with {@code -Dcms.storage}, see
+ * {@link Repositories}.
+ * <p>
+ * Concurrent {@link #getCustomer(String)} calls (e.g. from the HTTP API) are coalesced: identical ones share one
+ * load ({@link SingleFlight}), distinct ones arriving together are loaded with one multi-get
+ * ({@link CustomerBatchLoader}).
+ * <p>
+ * While Redis is unreachable, {@link #getAllCustomers()} and {@link #getCustomer(String)} return the customers
+ * of the last successful {@link #getAllCustomers()} call, if there was one, instead of failing.
+ *
  * @author isil
  */
 
 public class CustomerService {
 
-    static final String CUSTOMER_KEY = "customer"; // Müşteri keyinin sabit kısmı
-    static final String CUSTOMER_ID_COUNTER_KEY = "customer:id:counter"; // ID sayacı için anahtar
-    private final Jedis jedis;
+    private static final Logger LOG = Logger.getLogger(CustomerService.class.getName());
+
+    // Latency, error and round-trip metrics per operation (exported via JMX, see Metrics)
+    private static final OperationMetrics CREATE_METRICS = Metrics.operation("CustomerService.createCustomer");
+    private static final OperationMetrics GET_ALL_METRICS = Metrics.operation("CustomerService.getAllCustomers");
+    private static final OperationMetrics GET_METRICS = Metrics.operation("CustomerService.getCustomer");
+    private static final OperationMetrics GET_PAGE_METRICS = Metrics.operation("CustomerService.getCustomerPage");
+    private static final OperationMetrics UPDATE_METRICS = Metrics.operation("CustomerService.updateCustomer");
+    private static final OperationMetrics DELETE_METRICS = Metrics.operation("CustomerService.deleteCustomer");
+    private static final OperationMetrics BULK_UPDATE_METRICS = Metrics.operation("CustomerService.updateCustomers");
+    private static final OperationMetrics BULK_DELETE_METRICS = Metrics.operation("CustomerService.deleteCustomers");
+    private static final OperationMetrics CHANGES_METRICS = Metrics.operation("CustomerService.changesSince");
+
+    private final CustomerRepository repository;
+    private final SingleFlight<String, Customer> customerLoads = new SingleFlight<>(CustomerService::copy);
+    private final CustomerBatchLoader batchLoader;
+    private volatile List<Customer> lastCustomers; // Of the last successful getAllCustomers(), for outages
+    private volatile boolean servingCached;
 
     public CustomerService() {
-        this.jedis = RedisConnection.getConnection();
+        this(Repositories.customers());
     }
 
-    private String generateCustomerId() { //ID oluşturuyor
-        // Sayaç kullanarak yeni bir ID oluşturur
-        return String.valueOf(jedis.incr(CUSTOMER_ID_COUNTER_KEY)); // jedis.incr CUSTOMER_ID_COUNTER_KEY anahtarının değerini atomik olarak bir artırır ve bu değeri yeni müşteri ID'si olarak döndürür
-
+    public CustomerService(CustomerRepository repository) {
+        this.repository = repository;
+        this.batchLoader = new CustomerBatchLoader(repository::findByIds);
     }
 
     public void createCustomer(Customer customer) {
-        // Yeni bir müşteri ID'si oluştur
-        if (customer.getId() == null || customer.getId().isEmpty()) {
-            customer.setId(generateCustomerId());
-        }
+        CREATE_METRICS.run(() -> {
+            // Yeni bir müşteri ID'si oluştur
+            if (customer.getId() == null || customer.getId().isEmpty()) {
+                customer.setId(repository.nextId());
+            }
+            repository.save(customer);
+            customerLoads.forget(customer.getId());
+        });
+    }
 
-        String customerKey = CUSTOMER_KEY + ":" + customer.getId();
-        jedis.hset(customerKey, "name", customer.getName());
-        jedis.hset(customerKey, "email", customer.getEmail());
-        jedis.hset(customerKey, "phoneNumber", customer.getPhoneNumber());
-        jedis.hset(customerKey, "address", customer.getAddress());
+    public List<Customer> getAllCustomers() {
+        try {
+            List<Customer> customers = GET_ALL_METRICS.call(repository::findAll);
+            lastCustomers = new ArrayList<>(customers);
+            servingCached = false;
+            return customers;
+        } catch (RuntimeException e) {
+            List<Customer> cached = cached(e);
+            if (cached == null) {
+                throw e;
+            }
+            List<Customer> copies = new ArrayList<>(cached.size());
+            cached.forEach(customer -> copies.add(copy(customer)));
+            return copies;
+        }
+    }
 
+    /**
+     * Loads one page of the customers sorted by a column on the server, e.g. for a header click in a paged
+     * table; only that page is transferred.
+     *
+     * @param page     the page number, from 0
+     * @param pageSize the number of customers per page
+     */
+    public SortedPage<Customer> getCustomerPage(CustomerSort sort, boolean ascending, int page, int pageSize) {
+        return GET_PAGE_METRICS.call(() -> {
+            if (page < 0 || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+            }
+            return repository.findPage(sort, ascending, page, pageSize);
+        });
     }
 
-    public List<Customer> getAllCustomers() {
-        List<Customer> customerList = new ArrayList<>();
+    public Customer getCustomer(String id) {
+        try {
+            return GET_METRICS.call(() -> customerLoads.run(id, () -> batchLoader.load(id)));
+        } catch (RuntimeException e) {
+            List<Customer> cached = cached(e);
+            if (cached == null) {
+                throw e;
+            }
+            for (Customer customer : cached) {
+                if (customer.getId().equals(id)) {
+                    return copy(customer);
+                }
+            }
+            throw e;
+        }
+    }
 
-        Set<String> customerKeys = jedis.keys(CUSTOMER_KEY + ":*");
+    public void updateCustomer(Customer customer) {
+        UPDATE_METRICS.run(() -> {
+            boolean updated = repository.update(customer);
+            customerLoads.forget(customer.getId()); // Sonraki okumalar yeni değeri görsün
+            if (!updated) {
+                throw new IllegalArgumentException("Customer with ID " + customer.getId() + " does not exist.");
+            }
+        });
+    }
 
-        for (String customerKey : customerKeys) {
-            String type = jedis.type(customerKey);
-            if ("hash".equals(type)) {
-                Map<String, String> customerData = jedis.hgetAll(customerKey);
-                List<String> purchases = jedis.lrange(customerKey + ":purchases", 0, -1);
+    public void deleteCustomer(String id) {
+        DELETE_METRICS.run(() -> {
+            // Müşteri bilgilerini ve alımları sil
+            boolean deleted = repository.delete(id);
+            customerLoads.forget(id);
+            if (!deleted) {
+                throw new IllegalArgumentException("Customer with ID " + id + " does not exist.");
+            }
+            LOG.fine(() -> "Deleted customer " + id);
+        });
+    }
 
-                String id = customerKey.split(":")[1];
+    /**
+     * Updates many customers in one batch (a single round trip with Redis), e.g. after a bulk edit.
+     * Customers that no longer exist are skipped.
+     *
+     * @return the number of customers updated
+     */
+    public int updateCustomers(List<Customer> customers) {
+        return BULK_UPDATE_METRICS.call(() -> {
+            boolean[] updated = repository.updateAll(customers);
+            customers.forEach(customer -> customerLoads.forget(customer.getId()));
+            return count(updated);
+        });
+    }
 
-                Customer customer = new Customer(
-                        id,
-                        customerData.get("name"),
-                        customerData.get("email"),
-                        customerData.get("phoneNumber"),
-                        customerData.get("address"),
-                        purchases
-                );
+    /**
+     * Deletes many customers and their purchases in one batch (a single round trip with Redis).
+     * Customers that no longer exist are skipped.
+     *
+     * @return the number of customers deleted
+     */
+    public int deleteCustomers(List<String> ids) {
+        return BULK_DELETE_METRICS.call(() -> {
+            boolean[] deleted = repository.deleteAll(ids);
+            ids.forEach(customerLoads::forget);
+            return count(deleted);
+        });
+    }
 
-                customerList.add(customer);
-            }
+    /**
+     * @return the customers to serve instead of failing with the exception, or null if there are none or the
+     * exception is not an outage
+     */
+    private List<Customer> cached(RuntimeException e) {
+        List<Customer> cached = lastCustomers;
+        if (cached == null || !Repositories.isUnavailable(e)) {
+            return null;
+        }
+        if (!servingCached) {
+            servingCached = true;
+            LOG.warning("Storage unreachable (" + e.getMessage() + "), serving the " + cached.size()
+                    + " customers loaded last");
         }
-        return customerList;
+        return cached;
     }
 
-    public Customer getCustomer(String id) {
-        String customerKey = CUSTOMER_KEY + ":" + id;
-
-        if (jedis.exists(customerKey)) {
-            List<String> purchases = jedis.lrange(customerKey + ":purchases", 0, -1); //Hepsini alır
-
-            return new Customer(
-                    id,
-                    jedis.hget(customerKey, "name"),
-                    jedis.hget(customerKey, "email"),
-                    jedis.hget(customerKey, "phoneNumber"),
-                    jedis.hget(customerKey, "address"),
-                    purchases
-            );
-        }
-        return null;
+    /**
+     * @return a copy for one caller of a coalesced load
+     */
+    private static Customer copy(Customer customer) {
+        return new Customer(customer.getId(), customer.getName(), customer.getEmail(), customer.getPhoneNumber(),
+                customer.getAddress(), new ArrayList<>(customer.getPurchases()));
     }
 
-    public void updateCustomer(Customer customer) {
-        String customerKey = CUSTOMER_KEY + ":" + customer.getId();
-        if (jedis.exists(customerKey)) {
-            jedis.hset(customerKey, "name", customer.getName());
-            jedis.hset(customerKey, "email", customer.getEmail());
-            jedis.hset(customerKey, "phoneNumber", customer.getPhoneNumber());
-            jedis.hset(customerKey, "address", customer.getAddress());
-
-        } else {
-            throw new IllegalArgumentException("Customer with ID " + customer.getId() + " does not exist.");
+    private static int count(boolean[] results) {
+        int count = 0;
+        for (boolean result : results) {
+            if (result) {
+                count++;
+            }
         }
+        return count;
     }
 
-    public void deleteCustomer(String id) {
-        String customerKey = CUSTOMER_KEY + ":" + id;
-        if (jedis.exists(customerKey)) {
-            System.out.println("Deleting customer with ID: " + id);
-            jedis.del(customerKey); // Müşteri bilgilerini sil
-            String purchasesKey = customerKey + ":purchases";
-            jedis.del(purchasesKey); // Alımları sil
-            System.out.println("Customer deleted successfully.");
-        } else {
-            throw new IllegalArgumentException("Customer with ID " + id + " does not exist.");
-        }
+    /**
+     * Returns the change data capture stream of customer mutations, see {@link ChangeEventConsumer}.
+     */
+    public ChangeStream changeEvents() {
+        return repository.changeStream();
+    }
+
+    /**
+     * Returns the customers created, updated or deleted after the given version.
+     * Clients keep the version of the returned change set and pass it to the next call, so a refresh only
+     * transfers what actually changed. A version of 0 (no local data yet), or a version that is older than
+     * the compacted part of the change log, results in a full reload.
+     *
+     * @param version the version the client's data corresponds to
+     * @return the changes, or the complete customer list if a full reload is required
+     */
+    public ChangeSet<Customer> changesSince(long version) {
+        return CHANGES_METRICS.call(() -> repository.changesSince(version));
     }
 
 
@@ -0,0 +1,196 @@
+package org.example.service;
+
+import org.example.model.Customer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a compact local copy of the last loaded customer list in a memory-mapped file.
+ * The GUI renders this snapshot immediately on startup and then reconciles it with Redis in the background.
+ * <p>
+ * File layout: magic number, format version, record count, the change log version the data corresponds to
+ * (see {@link CustomerService#changesSince(long)}), then for every customer the id, name, email,
+ * phone number and address as length-prefixed UTF-8 strings (length -1 for null), the number of purchases and
+ * the purchases. The purchases are stored as well, since the reconciliation only reloads the customers changed
+ * after the snapshot's version.
+ *
+ * @author isil
+ */
+public class CustomerSnapshotStore {
+
+    private static final Logger LOG = Logger.getLogger(CustomerSnapshotStore.class.getName());
+
+    private static final int MAGIC = 0x434D5331; // "CMS1"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    private final Path file;
+
+    public CustomerSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a store using the file given by the {@code cms.snapshot.file} system property,
+     * or {@code ~/.cms/customers.snapshot} by default.
+     */
+    public static CustomerSnapshotStore defaultStore() {
+        String configured = System.getProperty("cms.snapshot.file");
+        Path path = configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".cms", "customers.snapshot");
+        return new CustomerSnapshotStore(path);
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @return the last snapshot, or an empty snapshot with version 0 if there is no usable snapshot
+     */
+    public Snapshot load() {
+        if (!Files.isRegularFile(file)) {
+            return Snapshot.EMPTY;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return Snapshot.EMPTY; // Unknown or outdated format, ignore it
+            }
+            int count = buffer.getInt();
+            long version = buffer.getLong();
+            List<Customer> customers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Customer customer = new Customer(readString(buffer), readString(buffer), readString(buffer),
+                        readString(buffer), readString(buffer), new ArrayList<>());
+                int purchases = buffer.getInt();
+                for (int p = 0; p < purchases; p++) {
+                    customer.getPurchases().add(readString(buffer));
+                }
+                customers.add(customer);
+            }
+            return new Snapshot(customers, version);
+        } catch (IOException | RuntimeException e) {
+            // A damaged snapshot only costs us the warm start
+            LOG.log(Level.WARNING, "Ignoring unreadable customer snapshot " + file, e);
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /**
+     * Writes the snapshot in place. The magic number is cleared before the records are written and only
+     * restored once they have been flushed, so a crash while saving leaves a snapshot that is ignored on the
+     * next start instead of a half-written one. The file is never renamed or truncated, which keeps saving
+     * possible while an older mapping of the same file is still alive.
+     *
+     * @param customers the customers to persist
+     * @param version   the change log version the customers correspond to
+     */
+    public synchronized void save(List<Customer> customers, long version) throws IOException {
+        List<byte[][]> records = new ArrayList<>(customers.size());
+        long size = HEADER_SIZE;
+        for (Customer customer : customers) {
+            List<String> purchases = customer.getPurchases() == null
+                    ? Collections.emptyList() : customer.getPurchases();
+            byte[][] fields = new byte[5 + purchases.size()][];
+            fields[0] = encode(customer.getId());
+            fields[1] = encode(customer.getName());
+            fields[2] = encode(customer.getEmail());
+            fields[3] = encode(customer.getPhoneNumber());
+            fields[4] = encode(customer.getAddress());
+            for (int p = 0; p < purchases.size(); p++) {
+                fields[5 + p] = encode(purchases.get(p));
+            }
+            size += Integer.BYTES; // Satın alma sayısı
+            for (byte[] field : fields) {
+                size += Integer.BYTES + (field == null ? 0 : field.length);
+            }
+            records.add(fields);
+        }
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, 0); // Invalidate until the records are complete
+            buffer.force();
+
+            buffer.position(Integer.BYTES);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(records.size());
+            buffer.putLong(version);
+            for (byte[][] fields : records) {
+                for (int f = 0; f < 5; f++) {
+                    writeBytes(buffer, fields[f]);
+                }
+                buffer.putInt(fields.length - 5); // Then the purchases
+                for (int f = 5; f < fields.length; f++) {
+                    writeBytes(buffer, fields[f]);
+                }
+            }
+            buffer.force();
+
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(MappedByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Customers read from the snapshot file together with the change log version they correspond to.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), 0);
+
+        private final List<Customer> customers;
+        private final long version;
+
+        Snapshot(List<Customer> customers, long version) {
+            this.customers = customers;
+            this.version = version;
+        }
+
+        public List<Customer> getCustomers() {
+            return customers;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
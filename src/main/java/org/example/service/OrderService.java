@@ -1,103 +1,516 @@
 package org.example.service;
 
-import org.example.config.RedisConnection;
+import org.example.metrics.Metrics;
+import org.example.metrics.OperationMetrics;
 import org.example.model.Order;
-import redis.clients.jedis.Jedis;
+import org.example.model.OrderStats;
+import org.example.model.OrderStatusRule;
+import org.example.repository.ChangeEvent;
+import org.example.repository.ChangeSet;
+import org.example.repository.ChangeStream;
+import org.example.repository.OrderPage;
+import org.example.repository.OrderRepository;
+import org.example.repository.OrderSort;
+import org.example.repository.Repositories;
+import org.example.repository.SortedPage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 /**
+ * Manages orders on top of an {@link OrderRepository}: single and batch writes, the customer's order history,
+ * queries by status, date and text, statistics, bulk status transitions and archiving, with metrics for every
+ * operation. The storage engine is selected with {@code -Dcms.storage}, see {@link Repositories}.
+ * <p>
+ * With {@code -Dcms.orders.writeBehind=true}, {@link #updateOrder(Order)} only queues the update (see
+ * {@link OrderWriteBehind}); reads of this process see queued updates immediately. There is one queue per
+ * repository, shared by the services using it; only the application's shared repository
+ * ({@link Repositories#orders()}) keeps its journal across restarts.
+ * <p>
+ * Concurrent identical {@link #getOrdersByCustomerId(String)} calls share one load, see {@link SingleFlight}; like
+ * the queue, the loads are shared per repository, so a write through any service ends them for all.
+ *
  * @author isil
  */
 
 public class OrderService {
-    private static final String ORDER_KEY_PREFIX = "order:";
-    private static final String ORDER_ID_COUNTER_KEY = "order:id:counter"; // Sipariş ID'si için sayaç anahtarı
-    private Jedis jedis;
+
+    private static final Logger LOG = Logger.getLogger(OrderService.class.getName());
+
+    // Latency, error and round-trip metrics per operation (exported via JMX, see Metrics)
+    private static final OperationMetrics GENERATE_NUMBER_METRICS = Metrics.operation("OrderService.generateOrderNumber");
+    private static final OperationMetrics DELETE_METRICS = Metrics.operation("OrderService.deleteOrder");
+    private static final OperationMetrics SAVE_METRICS = Metrics.operation("OrderService.saveOrder");
+    private static final OperationMetrics UPDATE_METRICS = Metrics.operation("OrderService.updateOrder");
+    private static final OperationMetrics BULK_UPDATE_METRICS = Metrics.operation("OrderService.updateOrders");
+    private static final OperationMetrics BULK_DELETE_METRICS = Metrics.operation("OrderService.deleteOrders");
+    private static final OperationMetrics TRANSITION_METRICS = Metrics.operation("OrderService.transitionOrders");
+    private static final OperationMetrics ARCHIVE_METRICS = Metrics.operation("OrderService.archiveOrders");
+    private static final OperationMetrics GET_BY_CUSTOMER_METRICS = Metrics.operation("OrderService.getOrdersByCustomerId");
+    private static final OperationMetrics GET_PAGE_METRICS = Metrics.operation("OrderService.getOrderPage");
+    private static final OperationMetrics GET_SORTED_PAGE_METRICS = Metrics.operation("OrderService.getSortedOrderPage");
+    private static final OperationMetrics SEARCH_METRICS = Metrics.operation("OrderService.searchOrders");
+    private static final OperationMetrics GET_ALL_METRICS = Metrics.operation("OrderService.getAllOrders");
+    private static final OperationMetrics GET_BY_STATUS_METRICS = Metrics.operation("OrderService.getOrdersByStatus");
+    private static final OperationMetrics GET_BETWEEN_METRICS = Metrics.operation("OrderService.getOrdersBetween");
+    private static final OperationMetrics GET_METRICS = Metrics.operation("OrderService.getOrder");
+    private static final OperationMetrics STATS_METRICS = Metrics.operation("OrderService.getOrderStats");
+    private static final OperationMetrics TOP_ITEMS_METRICS = Metrics.operation("OrderService.getTopItems");
+    private static final OperationMetrics CHANGES_METRICS = Metrics.operation("OrderService.changesSince");
+
+    private static final boolean WRITE_BEHIND = Boolean.getBoolean("cms.orders.writeBehind");
+    private static final long TRANSITION_FLUSH_MILLIS = 5_000L;
+    // Arşivleme: bu kadar günden eski ve bu durumlardaki siparişler soğuk depoya taşınır
+    private static final int ARCHIVE_AFTER_DAYS = Integer.getInteger("cms.archive.afterDays", 365);
+    private static final List<String> ARCHIVE_STATUSES =
+            Arrays.asList(System.getProperty("cms.archive.statuses", "Delivered,Canceled").split(","));
+    // One queue per repository, created on first use
+    private static final Map<OrderRepository, OrderWriteBehind> WRITE_BEHIND_QUEUES = new IdentityHashMap<>();
+    private static final Map<OrderRepository, List<Consumer<Order>>> DROPPED_LISTENERS = new IdentityHashMap<>();
+    // Per repository like the queues: every controller has its own service, but a write through any of them must
+    // be seen by the loads of all
+    private static final Map<OrderRepository, SingleFlight<String, List<Order>>> CUSTOMER_ORDER_LOADS =
+            new IdentityHashMap<>();
+
+    private final OrderRepository repository;
+    // Forgotten after every write, so later reads see it
+    private final SingleFlight<String, List<Order>> customerOrderLoads;
 
     public OrderService() {
-        this.jedis = RedisConnection.getConnection();
+        this(Repositories.orders());
+    }
+
+    public OrderService(OrderRepository repository) {
+        this.repository = repository;
+        synchronized (OrderService.class) {
+            this.customerOrderLoads = CUSTOMER_ORDER_LOADS.computeIfAbsent(repository,
+                    r -> new SingleFlight<>(OrderService::copy));
+        }
+    }
+
+    private OrderWriteBehind writeBehind() {
+        synchronized (OrderService.class) {
+            OrderWriteBehind queue = WRITE_BEHIND_QUEUES.get(repository);
+            if (queue == null) {
+                OrderRepository target = repository;
+                queue = new OrderWriteBehind(target::updateAll, order -> dropped(target, order), journal(target));
+                WRITE_BEHIND_QUEUES.put(target, queue);
+            }
+            return queue;
+        }
+    }
+
+    private static Path journal(OrderRepository repository) {
+        if (Repositories.isShared(repository)) {
+            return OrderWriteBehind.defaultJournal();
+        }
+        try {
+            // Another repository's journal must not be replayed into this one, nor this one's later
+            Path journal = Files.createTempFile("order-writes", ".journal");
+            journal.toFile().deleteOnExit();
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create an order write-behind journal", e);
+        }
+    }
+
+    private static void dropped(OrderRepository repository, Order order) {
+        List<Consumer<Order>> listeners;
+        synchronized (OrderService.class) {
+            listeners = new ArrayList<>(DROPPED_LISTENERS.getOrDefault(repository, Collections.emptyList()));
+        }
+        if (listeners.isEmpty()) {
+            LOG.warning("Order " + order.getOrderNumber() + " no longer exists; its queued update was dropped");
+        }
+        listeners.forEach(listener -> listener.accept(order));
+    }
+
+    /**
+     * Registers a listener for queued updates that could not be written because the order did not exist (write-
+     * behind mode only, where {@link #updateOrder(Order)} no longer checks that). Listeners are called on the
+     * background writer thread. Without a listener, such updates are only logged.
+     */
+    public void addDroppedUpdateListener(Consumer<Order> listener) {
+        synchronized (OrderService.class) {
+            DROPPED_LISTENERS.computeIfAbsent(repository, key -> new ArrayList<>()).add(listener);
+        }
+    }
+
+    /**
+     * Waits until the updates queued in write-behind mode have been written to the repositories, e.g. before the
+     * application exits. Updates that are still queued afterwards are kept in the journal.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if nothing is queued any more
+     */
+    public static boolean flushPendingWrites(long timeoutMillis) {
+        List<OrderWriteBehind> queues;
+        synchronized (OrderService.class) {
+            queues = new ArrayList<>(WRITE_BEHIND_QUEUES.values());
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean drained = true;
+        for (OrderWriteBehind queue : queues) {
+            drained &= queue.drain(Math.max(0, deadline - System.currentTimeMillis()));
+        }
+        return drained;
+    }
+
+    /**
+     * Runs a write and records it in the metrics; the coalesced loads are forgotten afterwards, even if it
+     * failed, so later reads see it.
+     */
+    private <T> T write(OperationMetrics metrics, Supplier<T> operation) {
+        try {
+            return metrics.call(operation);
+        } finally {
+            customerOrderLoads.forgetAll();
+        }
+    }
+
+    private void write(OperationMetrics metrics, Runnable operation) {
+        try {
+            metrics.run(operation);
+        } finally {
+            customerOrderLoads.forgetAll();
+        }
     }
 
     public String generateOrderNumber() {
-        return String.valueOf(jedis.incr(ORDER_ID_COUNTER_KEY));
+        return GENERATE_NUMBER_METRICS.call(repository::nextOrderNumber);
     }
 
     public void deleteOrder(String orderNumber) {
-        String orderKey = ORDER_KEY_PREFIX + orderNumber;
-        if (jedis.exists(orderKey)) {
-            jedis.del(orderKey);
-            jedis.del(orderKey + ":items");
-        } else {
-            throw new IllegalArgumentException("Order with number " + orderNumber + " does not exist.");
-        }
+        write(DELETE_METRICS, () -> {
+            if (WRITE_BEHIND) {
+                writeBehind().discard(orderNumber);
+            }
+            if (!repository.delete(orderNumber)) {
+                throw new IllegalArgumentException("Order with number " + orderNumber + " does not exist.");
+            }
+        });
     }
 
-    public void saveOrder(Order order) { // add Order
-        // Item listesini ve itemCount'u güncelleyin
-        order.setItems(order.getItems());
+    /**
+     * Updates many orders in one batch (a single round trip with Redis), e.g. after a bulk edit. Orders that no
+     * longer exist are skipped. In write-behind mode the updates are queued like {@link #updateOrder(Order)}.
+     *
+     * @return the number of orders updated (queued in write-behind mode)
+     */
+    public int updateOrders(List<Order> orders) {
+        return write(BULK_UPDATE_METRICS, () -> {
+            if (WRITE_BEHIND) {
+                for (Order order : orders) {
+                    writeBehind().submit(order);
+                }
+                return orders.size();
+            }
+            return count(repository.updateAll(orders));
+        });
+    }
 
-        String orderKey = ORDER_KEY_PREFIX + order.getOrderNumber();
-        jedis.hset(orderKey, "customerId", order.getCustomerId());
-        jedis.hset(orderKey, "address", order.getAddress());
-        jedis.hset(orderKey, "orderDate", order.getOrderDate().toString());
-        jedis.hset(orderKey, "orderStatus", order.getOrderStatus());
+    /**
+     * Deletes many orders in one batch (a single round trip with Redis). Orders that no longer exist are
+     * skipped.
+     *
+     * @return the number of orders deleted
+     */
+    public int deleteOrders(List<String> orderNumbers) {
+        return write(BULK_DELETE_METRICS, () -> {
+            if (WRITE_BEHIND) {
+                for (String orderNumber : orderNumbers) {
+                    writeBehind().discard(orderNumber);
+                }
+            }
+            return count(repository.deleteAll(orderNumbers));
+        });
+    }
 
-        // Ürünleri virgülle ayırarak string olarak kaydediyoruz
-        String itemsString = String.join(", ", order.getItems());
-        jedis.hset(orderKey, "items", itemsString);
+    /**
+     * Applies a bulk status transition, e.g. "every Pending order older than 3 days becomes Canceled". With
+     * Redis the rule is evaluated on the server in bounded chunks, see {@link OrderRepository#applyStatusRule}.
+     * In write-behind mode the queued updates are written first, so the rule sees them.
+     *
+     * @param dryRun if true, nothing is changed and the matching orders are only counted
+     * @return the number of orders changed, or that would be changed in a dry run
+     */
+    public int transitionOrders(OrderStatusRule rule, boolean dryRun) {
+        return write(TRANSITION_METRICS, () -> {
+            if (rule.getFromStatus().equals(rule.getToStatus())) {
+                throw new IllegalArgumentException("The old and the new status are the same: " + rule.getToStatus());
+            }
+            if (WRITE_BEHIND && !writeBehind().drain(TRANSITION_FLUSH_MILLIS)) {
+                LOG.warning("Queued order updates could not be written before the status transition");
+            }
+            return repository.applyStatusRule(rule, dryRun);
+        });
+    }
 
-        // itemCount değerini kaydediyoruz
-        jedis.hset(orderKey, "itemCount", String.valueOf(order.getItemCount()));
+    /**
+     * Moves the orders placed more than {@code cms.archive.afterDays} days ago (default 365) with one of the
+     * statuses in {@code cms.archive.statuses} (default "Delivered,Canceled") into cold storage.
+     *
+     * @return the number of orders archived
+     * @see #archiveOrders(LocalDate, Collection)
+     */
+    public int archiveOrders() {
+        return archiveOrders(LocalDate.now().minusDays(ARCHIVE_AFTER_DAYS), ARCHIVE_STATUSES);
     }
 
-    public void updateOrder(Order order) {
-        String orderKey = ORDER_KEY_PREFIX + order.getOrderNumber();
-
-        // Siparişin mevcut olup olmadığını kontrol et
-        if (jedis.exists(orderKey)) {
-            jedis.hset(orderKey, "customerId", order.getCustomerId());
-            jedis.hset(orderKey, "address", order.getAddress());
-            jedis.hset(orderKey, "orderDate", order.getOrderDate().toString());
-            jedis.hset(orderKey, "orderStatus", order.getOrderStatus());
-
-            // Ürünleri virgülle ayrılmış bir string olarak kaydet
-            String itemsString = String.join(", ", order.getItems());
-            jedis.hset(orderKey, "items", itemsString);
-
-            // itemCount değerini güncelle
-            jedis.hset(orderKey, "itemCount", String.valueOf(order.getItemCount()));
-        } else {
-            throw new IllegalArgumentException("Order with number " + order.getOrderNumber() + " does not exist.");
+    /**
+     * Moves old orders into compressed cold storage, so that only active orders take memory and are visited by
+     * scans. The customer's order history ({@link #getOrderPage}) still shows them; the other queries treat them
+     * as deleted. In write-behind mode the queued updates are written first.
+     *
+     * @param before   orders placed before this date are archived
+     * @param statuses only orders with one of these statuses are archived
+     * @return the number of orders archived
+     */
+    public int archiveOrders(LocalDate before, Collection<String> statuses) {
+        return write(ARCHIVE_METRICS, () -> {
+            if (WRITE_BEHIND && !writeBehind().drain(TRANSITION_FLUSH_MILLIS)) {
+                LOG.warning("Queued order updates could not be written before archiving");
+            }
+            return repository.archive(before, statuses);
+        });
+    }
+
+    private static int count(boolean[] results) {
+        int count = 0;
+        for (boolean result : results) {
+            if (result) {
+                count++;
+            }
         }
+        return count;
+    }
+
+    public void saveOrder(Order order) {
+        write(SAVE_METRICS, () -> {
+            // Item listesini ve itemCount'u güncelleyin
+            order.setItems(order.getItems());
+            repository.save(order);
+        });
     }
 
+    /**
+     * Updates an existing order.
+     *
+     * @throws IllegalArgumentException if the order does not exist; in write-behind mode the update is queued
+     *                                  without this check instead, see {@link #addDroppedUpdateListener}
+     */
+    public void updateOrder(Order order) {
+        write(UPDATE_METRICS, () -> {
+            if (WRITE_BEHIND) {
+                writeBehind().submit(order); // Journaled, written in the background
+                return;
+            }
+            // Siparişin mevcut olup olmadığını kontrol et ve güncelle
+            if (!repository.update(order)) {
+                throw new IllegalArgumentException("Order with number " + order.getOrderNumber() + " does not exist.");
+            }
+        });
+    }
 
     public List<Order> getOrdersByCustomerId(String customerId) {
-        List<Order> orders = new ArrayList<>();
-
-        Set<String> orderKeys = jedis.keys(ORDER_KEY_PREFIX + "*");
-
-        for (String orderKey : orderKeys) {
-            if (jedis.type(orderKey).equals("hash")) {
-                String storedCustomerId = jedis.hget(orderKey, "customerId");
-                if (storedCustomerId != null && storedCustomerId.equals(customerId)) {
-                    String orderNumber = orderKey.split(":")[1];
-                    String address = jedis.hget(orderKey, "address");
-                    LocalDate orderDate = LocalDate.parse(jedis.hget(orderKey, "orderDate"));
-                    String itemsString = jedis.hget(orderKey, "items");
-                    List<String> items = Arrays.asList(itemsString.split(", "));
-                    String orderStatus = jedis.hget(orderKey, "orderStatus");
-
-                    Order order = new Order(orderNumber, storedCustomerId, address, items, orderDate, orderStatus);
-                    orders.add(order);
-                }
+        return GET_BY_CUSTOMER_METRICS.call(() -> withPendingWrites(
+                customerOrderLoads.run(customerId, () -> repository.findByCustomerId(customerId))));
+    }
+
+    /**
+     * Loads one page of the customer's orders, newest first; see {@link OrderPage} for the cursor.
+     * Unlike {@link #getOrdersByCustomerId(String)} the cost does not grow with the customer's order history.
+     * In write-behind mode, queued updates are shown at the position of the stored order.
+     *
+     * @param cursor the cursor of the previous page, or null for the first page
+     * @param limit  the page size
+     */
+    public OrderPage getOrderPage(String customerId, String cursor, int limit) {
+        return GET_PAGE_METRICS.call(() -> {
+            OrderPage page = repository.findPageByCustomerId(customerId, cursor, limit);
+            return new OrderPage(withPendingWrites(new ArrayList<>(page.getOrders())), page.getNextCursor());
+        });
+    }
+
+    /**
+     * Loads one page of the customer's orders sorted by a column on the server, archived orders included, e.g.
+     * for a header click in the order table; only that page is transferred. In write-behind mode, queued updates
+     * are shown at the position of the stored order.
+     *
+     * @param page     the page number, from 0
+     * @param pageSize the number of orders per page
+     */
+    public SortedPage<Order> getSortedOrderPage(String customerId, OrderSort sort, boolean ascending, int page,
+                                                int pageSize) {
+        return GET_SORTED_PAGE_METRICS.call(() -> {
+            if (page < 0 || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
             }
+            SortedPage<Order> sorted = repository.findSortedPageByCustomerId(customerId, sort, ascending, page,
+                    pageSize);
+            return new SortedPage<>(withPendingWrites(new ArrayList<>(sorted.getItems())), page, pageSize,
+                    sorted.getTotal());
+        });
+    }
+
+    /**
+     * Searches the item names and addresses of all orders, e.g. "which orders contained product X". Every word
+     * must match; case and accents are ignored ("sise" finds "Şişe"). Answered from an index, not by loading
+     * orders. In write-behind mode, queued updates are shown but not matched against the query again.
+     *
+     * @param customerId if not null, only this customer's orders are searched
+     * @param limit      the maximum number of orders
+     * @return the matching orders, best match first
+     */
+    public List<Order> searchOrders(String query, String customerId, int limit) {
+        return SEARCH_METRICS.call(() -> withPendingWrites(repository.search(query, customerId, limit)));
+    }
+
+    /**
+     * Loads the orders with the given status.
+     * In write-behind mode, queued updates are shown but not matched against the status again.
+     *
+     * @param orderStatus the status, e.g. "Pending"
+     */
+    public List<Order> getOrdersByStatus(String orderStatus) {
+        return GET_BY_STATUS_METRICS.call(() -> withPendingWrites(repository.findByStatus(orderStatus)));
+    }
+
+    /**
+     * Loads every order with a full scan, e.g. for a consistency check; archived orders are left out.
+     * In write-behind mode, queued updates are shown.
+     */
+    public List<Order> getAllOrders() {
+        return GET_ALL_METRICS.call(() -> withPendingWrites(repository.findAll()));
+    }
+
+    /**
+     * Loads the orders placed between two dates, both inclusive.
+     */
+    public List<Order> getOrdersBetween(LocalDate from, LocalDate to) {
+        return GET_BETWEEN_METRICS.call(() -> withPendingWrites(repository.findByDateRange(from, to)));
+    }
+
+    /**
+     * @return a copy for one caller of a coalesced load
+     */
+    private static List<Order> copy(List<Order> orders) {
+        List<Order> copies = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            copies.add(new Order(order.getOrderNumber(), order.getCustomerId(), order.getAddress(),
+                    new ArrayList<>(order.getItems()), order.getOrderDate(), order.getOrderStatus()));
+        }
+        return copies;
+    }
+
+    /**
+     * Replaces stored orders by their queued updates, which are newer (write-behind mode only).
+     */
+    private List<Order> withPendingWrites(List<Order> orders) {
+        if (WRITE_BEHIND) {
+            Map<String, Order> queued = new HashMap<>();
+            for (Order order : writeBehind().pendingOrders()) {
+                queued.put(order.getOrderNumber(), order);
+            }
+            orders.replaceAll(order -> queued.getOrDefault(order.getOrderNumber(), order));
         }
         return orders;
     }
+
+    /**
+     * Loads a single order.
+     *
+     * @param orderNumber the order number
+     * @return the order, or null if it does not exist
+     */
+    public Order getOrder(String orderNumber) {
+        return GET_METRICS.call(() -> {
+            Order queued = WRITE_BEHIND ? writeBehind().pendingOrder(orderNumber) : null;
+            return queued != null ? queued : repository.findByNumber(orderNumber);
+        });
+    }
+
+    /**
+     * Returns the order statistics of a customer without loading its orders.
+     * In write-behind mode, queued updates are not counted until they have been written.
+     *
+     * @param customerId the customer ID
+     * @return the statistics; {@link OrderStats#EMPTY} if the customer has no orders
+     */
+    public OrderStats getOrderStats(String customerId) {
+        return STATS_METRICS.call(() -> repository.findStatsByCustomerId(customerId));
+    }
+
+    /**
+     * Returns the order statistics of many customers in one batch, e.g. for the customer table.
+     *
+     * @return the statistics by customer ID
+     */
+    public Map<String, OrderStats> getOrderStats(Collection<String> customerIds) {
+        return STATS_METRICS.call(() -> repository.findStatsByCustomerIds(customerIds));
+    }
+
+    /**
+     * Returns the best-selling items over all orders, maintained on every order write (no order scan).
+     * In write-behind mode, queued updates are not counted until they have been written.
+     *
+     * @param limit the number of items, e.g. 10
+     * @return item name -> number of times ordered, highest first
+     */
+    public Map<String, Long> getTopItems(int limit) {
+        return TOP_ITEMS_METRICS.call(() -> repository.findTopItems(limit));
+    }
+
+    /**
+     * Returns the best-selling items of the orders placed in one month.
+     *
+     * @return item name -> number of times ordered, highest first; empty if {@code -Dcms.topItems.monthly=false}
+     */
+    public Map<String, Long> getTopItems(YearMonth month, int limit) {
+        return TOP_ITEMS_METRICS.call(() -> repository.findTopItems(month, limit));
+    }
+
+    /**
+     * Returns the change data capture stream of order mutations, see {@link ChangeEventConsumer}.
+     */
+    public ChangeStream changeEvents() {
+        return repository.changeStream();
+    }
+
+    /**
+     * Returns the item names of an order change event; events carry the items as product catalog IDs
+     * ({@code itemIds}).
+     *
+     * @return the items, empty for a DELETE event
+     */
+    public List<String> getItems(ChangeEvent event) {
+        String itemIds = event.getFields().get("itemIds");
+        return itemIds == null ? Collections.emptyList() : repository.decodeItems(itemIds);
+    }
+
+    /**
+     * Returns the orders created, updated or deleted after the given version.
+     * A version of 0, or one that is older than the compacted part of the change log, results in a full reload.
+     *
+     * @param version the version the client's data corresponds to
+     * @return the changes, or all orders if a full reload is required
+     */
+    public ChangeSet<Order> changesSince(long version) {
+        return CHANGES_METRICS.call(() -> repository.changesSince(version));
+    }
 }
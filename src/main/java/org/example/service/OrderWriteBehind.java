@@ -0,0 +1,486 @@
+package org.example.service;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.OperationMetrics;
+import org.example.model.Order;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind queue for order updates, enabled with {@code -Dcms.orders.writeBehind=true}.
+ * <p>
+ * {@link #submit(Order)} appends the update to a local journal (forced to disk) and puts it into an in-memory
+ * queue, then returns without talking to Redis. Successive updates of the same order are coalesced, so only the
+ * latest state is written. A background thread waits {@code cms.orders.writeBehind.flushMillis} (default 20)
+ * after the first queued update, then writes up to {@code cms.orders.writeBehind.batch} (default 500) orders
+ * in one pipelined round trip.
+ * <p>
+ * Backpressure: the queue holds at most {@code cms.orders.writeBehind.capacity} (default 10000) distinct
+ * orders. When it is full, because Redis is slow or unreachable, {@link #submit(Order)} blocks for up to
+ * {@code cms.orders.writeBehind.maxBlockMillis} (default 5000) and then fails.
+ * <p>
+ * Journal: every update is recorded with a sequence number, and every written batch with the sequence numbers
+ * it covered. On start the updates that were never written are queued again. After every written batch the
+ * journal is rewritten to hold only the updates still queued, so it does not grow under steady load.
+ * <p>
+ * The existence check happens when the batch is written, not in {@link #submit(Order)}: updates of orders that
+ * do not exist (any more) are dropped by the flusher and reported to the listener given to the constructor.
+ *
+ * @author isil
+ */
+final class OrderWriteBehind {
+
+    private static final Logger LOG = Logger.getLogger(OrderWriteBehind.class.getName());
+
+    private static final int CAPACITY = Integer.getInteger("cms.orders.writeBehind.capacity", 10_000);
+    private static final int BATCH_SIZE = Integer.getInteger("cms.orders.writeBehind.batch", 500);
+    private static final long FLUSH_MILLIS = Long.getLong("cms.orders.writeBehind.flushMillis", 20L);
+    private static final long MAX_BLOCK_MILLIS = Long.getLong("cms.orders.writeBehind.maxBlockMillis", 5_000L);
+    private static final long RETRY_MILLIS = 1_000L;
+
+    private static final OperationMetrics FLUSH_METRICS = Metrics.operation("OrderService.writeBehindFlush");
+
+    private final Function<List<Order>, boolean[]> writer;
+    private final Consumer<Order> dropped;
+    private final Journal journal;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>(); // Sipariş no -> son güncelleme
+    private final Map<String, Pending> inFlight = new LinkedHashMap<>();
+    private long lastSeq;
+
+    /**
+     * Creates the queue, re-queues the updates left in the journal and starts the flusher.
+     *
+     * @param writer      writes a batch of orders (only if they still exist) and returns for each whether it
+     *                    still existed and was written
+     * @param dropped     called by the flusher with each update whose order did not exist
+     * @param journalPath the journal file, whose unwritten updates are queued again
+     */
+    OrderWriteBehind(Function<List<Order>, boolean[]> writer, Consumer<Order> dropped, Path journalPath) {
+        this.writer = writer;
+        this.dropped = dropped;
+        this.journal = new Journal(journalPath);
+
+        for (Pending recovered : journal.recover()) {
+            pending.put(recovered.order.getOrderNumber(), recovered);
+            lastSeq = Math.max(lastSeq, recovered.seq);
+        }
+        lastSeq = Math.max(lastSeq, journal.maxSeq);
+        if (!pending.isEmpty()) {
+            LOG.info("Re-queued " + pending.size() + " order updates from the write-behind journal");
+        }
+
+        Thread flusher = new Thread(this::flushLoop, "order-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues an order update.
+     *
+     * @throws IllegalStateException if the queue stayed full for longer than the maximum blocking time
+     */
+    void submit(Order order) {
+        Pending update = new Pending(0, copy(order));
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(MAX_BLOCK_MILLIS);
+            while (pending.size() >= CAPACITY && !pending.containsKey(order.getOrderNumber())) {
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Order write-behind queue is full; Redis is not keeping up");
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            update.seq = ++lastSeq;
+            journal.append(update);
+            pending.put(order.getOrderNumber(), update); // Replaces (coalesces) an earlier queued update
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the order write-behind queue", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the queued (or currently written) state of the order, or null if there is none
+     */
+    Order pendingOrder(String orderNumber) {
+        lock.lock();
+        try {
+            Pending update = pending.get(orderNumber);
+            if (update == null) {
+                update = inFlight.get(orderNumber);
+            }
+            return update == null ? null : copy(update.order);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return copies of all orders with queued (or currently written) updates
+     */
+    Collection<Order> pendingOrders() {
+        lock.lock();
+        try {
+            Map<String, Order> orders = new LinkedHashMap<>();
+            for (Pending update : inFlight.values()) {
+                orders.put(update.order.getOrderNumber(), copy(update.order));
+            }
+            for (Pending update : pending.values()) {
+                orders.put(update.order.getOrderNumber(), copy(update.order)); // Newer than the in-flight one
+            }
+            return orders.values();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a queued update, e.g. because the order is being deleted. An update that is already being written
+     * is not affected; the deletion is applied after it.
+     */
+    void discard(String orderNumber) {
+        lock.lock();
+        try {
+            pending.remove(orderNumber);
+            if (pending.isEmpty() && inFlight.isEmpty()) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until all queued updates have been written.
+     *
+     * @return true if the queue is empty, false if the timeout elapsed first
+     */
+    boolean drain(long timeoutMillis) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the journal configured with {@code cms.orders.writeBehind.journal}, by default
+     * {@code ~/.cms/order-writes.journal}
+     */
+    static Path defaultJournal() {
+        return Paths.get(System.getProperty("cms.orders.writeBehind.journal",
+                Paths.get(System.getProperty("user.home"), ".cms", "order-writes.journal").toString()));
+    }
+
+    private void flushLoop() {
+        while (true) {
+            try {
+                List<Pending> batch = takeBatch();
+                long start = FLUSH_METRICS.start();
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    FLUSH_METRICS.error();
+                    requeue(batch);
+                    LOG.log(Level.WARNING, "Order write-behind flush failed, retrying", e);
+                    Thread.sleep(RETRY_MILLIS);
+                } finally {
+                    FLUSH_METRICS.stop(start);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Keep the flusher alive, e.g. after a journal I/O error
+                LOG.log(Level.SEVERE, "Order write-behind flusher failed", e);
+            }
+        }
+    }
+
+    private List<Pending> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                notEmpty.await();
+            }
+            // Short delay so that rapid successive updates of the same order are coalesced into one write
+            long remaining = TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS);
+            while (remaining > 0 && pending.size() < BATCH_SIZE) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+
+            List<Pending> batch = new ArrayList<>(Math.min(pending.size(), BATCH_SIZE));
+            Iterator<Pending> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                Pending update = iterator.next();
+                iterator.remove();
+                inFlight.put(update.order.getOrderNumber(), update);
+                batch.add(update);
+            }
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (Pending update : batch) {
+            orders.add(update.order);
+        }
+        boolean[] written = writer.apply(orders);
+
+        lock.lock();
+        try {
+            journal.markWritten(batch);
+            inFlight.clear();
+            journal.compact(pending.values()); // Empty if everything is stored
+            if (pending.isEmpty()) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (int i = 0; i < written.length; i++) {
+            if (!written[i]) {
+                try {
+                    dropped.accept(orders.get(i));
+                } catch (RuntimeException e) {
+                    // A failing listener must not stop the flusher
+                    LOG.log(Level.WARNING, "Dropped order listener failed", e);
+                }
+            }
+        }
+    }
+
+    private void requeue(List<Pending> batch) {
+        lock.lock();
+        try {
+            for (Pending update : batch) {
+                pending.putIfAbsent(update.order.getOrderNumber(), update); // Unless a newer update was queued
+            }
+            inFlight.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Order copy(Order order) {
+        return new Order(order.getOrderNumber(), order.getCustomerId(), order.getAddress(),
+                new ArrayList<>(order.getItems()), order.getOrderDate(), order.getOrderStatus());
+    }
+
+    private static final class Pending {
+        long seq;
+        final Order order;
+
+        Pending(long seq, Order order) {
+            this.seq = seq;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Append-only text journal. Lines are {@code U <seq> <order fields...>} for a queued update and
+     * {@code W <seq> <seq> ...} for a written batch, tab-separated with backslash escapes.
+     */
+    private static final class Journal {
+        private final Path path;
+        private FileChannel channel;
+        long maxSeq;
+
+        Journal(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return the updates that were journaled but never written, in journal order
+         */
+        List<Pending> recover() {
+            Map<String, Pending> latest = new LinkedHashMap<>();
+            Set<Long> written = new HashSet<>();
+            if (Files.exists(path)) {
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        try {
+                            String[] fields = line.split("\t", -1);
+                            if ("U".equals(fields[0])) {
+                                String items = unescape(fields[7]);
+                                Pending update = new Pending(Long.parseLong(fields[1]), new Order(unescape(fields[2]),
+                                        unescape(fields[3]), unescape(fields[4]),
+                                        items.isEmpty() ? new ArrayList<>() : Arrays.asList(items.split("\n")),
+                                        LocalDate.parse(unescape(fields[5])), unescape(fields[6])));
+                                latest.put(update.order.getOrderNumber(), update);
+                                maxSeq = Math.max(maxSeq, update.seq);
+                            } else if ("W".equals(fields[0])) {
+                                for (int i = 1; i < fields.length; i++) {
+                                    written.add(Long.parseLong(fields[i]));
+                                }
+                            }
+                        } catch (RuntimeException e) {
+                            // Torn last line from a crash while appending; the update was never acknowledged
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read the order write-behind journal " + path, e);
+                }
+            }
+
+            TreeMap<Long, Pending> unwritten = new TreeMap<>();
+            for (Pending update : latest.values()) {
+                if (!written.contains(update.seq)) {
+                    unwritten.put(update.seq, update);
+                }
+            }
+            return new ArrayList<>(unwritten.values());
+        }
+
+        void append(Pending update) {
+            write(updateLine(update));
+        }
+
+        private static String updateLine(Pending update) {
+            Order order = update.order;
+            return "U\t" + update.seq + "\t" + escape(order.getOrderNumber()) + "\t" + escape(order.getCustomerId())
+                    + "\t" + escape(order.getAddress()) + "\t" + escape(order.getOrderDate().toString())
+                    + "\t" + escape(order.getOrderStatus()) + "\t" + escape(String.join("\n", order.getItems()));
+        }
+
+        void markWritten(List<Pending> batch) {
+            StringBuilder line = new StringBuilder("W");
+            for (Pending update : batch) {
+                line.append('\t').append(update.seq);
+            }
+            write(line.toString());
+        }
+
+        /**
+         * Replaces the journal by one holding only the given (unwritten) updates. The new file is written next to
+         * the journal and moved over it, so a crash leaves either the old or the new journal.
+         */
+        void compact(Collection<Pending> unwritten) {
+            try {
+                if (unwritten.isEmpty()) {
+                    open().truncate(0);
+                    channel.force(true);
+                    return;
+                }
+                Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+                try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    StringBuilder lines = new StringBuilder();
+                    for (Pending update : unwritten) {
+                        lines.append(updateLine(update)).append('\n');
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    out.force(false);
+                }
+                channel.close();
+                channel = null;
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not compact the order write-behind journal " + path, e);
+            }
+        }
+
+        private void write(String line) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+                FileChannel out = open();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(false); // Durable before the caller is acknowledged
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the order write-behind journal " + path, e);
+            }
+        }
+
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+            return channel;
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "\\0";
+            }
+            return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+        }
+
+        private static String unescape(String value) {
+            if ("\\0".equals(value)) {
+                return null;
+            }
+            StringBuilder result = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < value.length()) {
+                    char next = value.charAt(++i);
+                    result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.toString();
+        }
+    }
+}
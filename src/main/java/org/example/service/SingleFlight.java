@@ -0,0 +1,87 @@
+package org.example.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Request coalescing: while a load for a key is in flight, further calls for the same key wait for its result
+ * instead of starting their own. The model objects are mutable (the GUI edits them in place), so every caller
+ * gets its own copy of the shared result.
+ * <p>
+ * A caller that wrote a key must not receive a result that was loaded before its write; writers therefore call
+ * {@link #forget(Object)}, so that later reads start a new load.
+ *
+ * @param <K> the key, e.g. a customer ID
+ * @param <V> the loaded value
+ * @author isil
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> copier;
+
+    /**
+     * @param copier creates a caller's copy of a loaded value (never called with null)
+     */
+    SingleFlight(UnaryOperator<V> copier) {
+        this.copier = copier;
+    }
+
+    /**
+     * Loads the value with {@code loader}, or waits for the load of the same key already in flight. Exceptions of
+     * the load are thrown to every waiting caller.
+     */
+    V run(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return copy(await(running));
+        }
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return copy(value);
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Detaches the load in flight for the key, if any: its waiters still get its result, later calls load again.
+     */
+    void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * Detaches all loads in flight.
+     */
+    void forgetAll() {
+        inFlight.clear();
+    }
+
+    private V copy(V value) {
+        return value == null ? null : copier.apply(value);
+    }
+
+    static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
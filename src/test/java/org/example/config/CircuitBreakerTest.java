@@ -0,0 +1,84 @@
+package org.example.config;
+
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class CircuitBreakerTest {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @Test
+    void opensAfterConsecutiveFailuresOnly() {
+        CircuitBreaker breaker = new CircuitBreaker("test", () -> false);
+        breaker.failure();
+        breaker.failure();
+        breaker.success(); // Resets the count
+        breaker.failure();
+        breaker.failure();
+        breaker.check();
+        assertFalse(breaker.isOpen());
+
+        breaker.failure();
+        assertTrue(breaker.isOpen());
+        assertThrows(JedisConnectionException.class, breaker::check);
+        breaker.close();
+    }
+
+    @Test
+    void probeClosesTheCircuitOnceTheServerAnswers() throws InterruptedException {
+        AtomicBoolean answers = new AtomicBoolean(false);
+        AtomicInteger probes = new AtomicInteger();
+        CircuitBreaker breaker = new CircuitBreaker("test", () -> {
+            probes.incrementAndGet();
+            return answers.get();
+        });
+        for (int i = 0; i < 3; i++) {
+            breaker.failure();
+        }
+
+        waitFor(() -> probes.get() >= 1);
+        assertTrue(breaker.isOpen()); // The first probe got no answer
+
+        answers.set(true);
+        waitFor(() -> !breaker.isOpen());
+        breaker.check();
+        breaker.close();
+    }
+
+    @Test
+    void closedBreakerStopsProbing() throws InterruptedException {
+        AtomicInteger probes = new AtomicInteger();
+        CircuitBreaker breaker = new CircuitBreaker("test", () -> {
+            probes.incrementAndGet();
+            return true;
+        });
+        breaker.close();
+        for (int i = 0; i < 3; i++) {
+            breaker.failure();
+        }
+
+        Thread.sleep(CircuitBreaker.MIN_RETRY_MILLIS * 2);
+        assertFalse(breaker.isOpen());
+        assertEquals(0, probes.get());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(17, LatencyHistogram.upperBoundOf(16)); // 16..17, then 18..19 and so on
+    }
+
+    @Test
+    void everyValueFallsIntoABucketWithinItsBounds() {
+        long previousUpper = -1;
+        for (int bucket = 0; bucket < 16 + 59 * 8; bucket++) {
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            long lower = previousUpper + 1;
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertTrue(upper - lower <= Math.max(0, upper / 8), "bucket " + bucket + " is wider than 12.5%");
+            previousUpper = upper;
+        }
+        assertEquals(Long.MAX_VALUE, previousUpper); // The buckets cover the whole positive range
+    }
+
+    @Test
+    void percentilesAreUpperBoundsCappedAtTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxNanos());
+        assertEquals(50_500, histogram.getMeanNanos(), 0.001);
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 50_000 && median <= 50_000 * 1.125, "median " + median);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void negativeValuesCountAsZeroAndResetClears() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(1, histogram.getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+}
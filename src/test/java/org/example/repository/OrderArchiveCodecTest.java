@@ -0,0 +1,59 @@
+package org.example.repository;
+
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class OrderArchiveCodecTest {
+
+    @Test
+    void segmentsRoundTrip() {
+        List<Order> orders = Arrays.asList(
+                new Order("12", "7", "Kızılay\tAnkara", Arrays.asList("Şişe", "Şişe", "Kalem"),
+                        LocalDate.of(2023, 3, 1), "Delivered"),
+                new Order("9", "7", "", new ArrayList<>(), LocalDate.of(2023, 3, 31), "Canceled"));
+
+        Map<String, Order> decoded = OrderArchiveCodec.decode(OrderArchiveCodec.encode(orders));
+
+        assertEquals(Arrays.asList("12", "9"), new ArrayList<>(decoded.keySet())); // Stored order kept
+        Order first = decoded.get("12");
+        assertEquals("7", first.getCustomerId());
+        assertEquals("Kızılay\tAnkara", first.getAddress());
+        assertEquals(Arrays.asList("Şişe", "Şişe", "Kalem"), first.getItems());
+        assertEquals(3, first.getItemCount());
+        assertEquals(LocalDate.of(2023, 3, 1), first.getOrderDate());
+        assertEquals("Delivered", first.getOrderStatus());
+        assertTrue(first.isArchived()); // Read-only from now on
+        assertTrue(decoded.get("9").getItems().isEmpty());
+    }
+
+    @Test
+    void missingSegmentIsEmpty() {
+        assertTrue(OrderArchiveCodec.decode(null).isEmpty());
+        assertTrue(OrderArchiveCodec.decode(OrderArchiveCodec.encode(Collections.emptyList())).isEmpty());
+    }
+
+    @Test
+    void corruptSegmentIsRejected() {
+        byte[] segment = OrderArchiveCodec.encode(Collections.singletonList(
+                new Order("1", "7", "Ankara", Arrays.asList("Kalem"), LocalDate.of(2023, 1, 1), "Delivered")));
+
+        assertThrows(UncheckedIOException.class,
+                () -> OrderArchiveCodec.decode(Arrays.copyOf(segment, segment.length / 2)));
+        assertThrows(UncheckedIOException.class, () -> OrderArchiveCodec.decode(new byte[]{1, 2, 3}));
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author isil
+ */
+class SearchTokensTest {
+
+    @Test
+    void wordsAreFoldedAndTagged() {
+        List<String> tokens = SearchTokens.of("7", "Kızılay Mah. 5", Arrays.asList("Cam Şişe", "IŞIK"));
+
+        assertEquals(Arrays.asList("c:7", "i:cam", "i:sise", "i:isik", "a:kizilay", "a:mah"), tokens);
+    }
+
+    @Test
+    void repeatedItemsAreIndexedOncePerItem() {
+        List<String> tokens = SearchTokens.of("7", null, Arrays.asList("Kalem kalem", "Kalem"));
+
+        assertEquals(Arrays.asList("c:7", "i:kalem", "i:kalem"), tokens);
+    }
+
+    @Test
+    void queriesAreNormalizedLikeTheIndex() {
+        assertEquals(Arrays.asList("sise", "cam"), List.copyOf(SearchTokens.queryWords("ŞİŞE  cam, şişe a")));
+        assertEquals("c:a_b", SearchTokens.customer("a b"));
+    }
+
+    @Test
+    void joinAndSplitRoundTrip() {
+        List<String> tokens = Arrays.asList("c:7", "i:cam", "a:kizilay");
+
+        assertEquals(tokens, SearchTokens.split(SearchTokens.join(tokens)));
+        assertEquals(Arrays.asList("i:cam", "a:x1"), SearchTokens.split("  i:cam \t a:x1 "));
+    }
+}
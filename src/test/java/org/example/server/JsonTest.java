@@ -0,0 +1,74 @@
+package org.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class JsonTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void parsesObjectsArraysAndScalars() {
+        Map<String, Object> parsed = (Map<String, Object>) Json.parse(
+                " {\"name\": \"Ayşe\", \"count\": 3, \"price\": -1.5e2, \"active\": true, \"note\": null,"
+                        + " \"items\": [\"Kalem\", 2, [], {}]} ");
+
+        assertEquals("Ayşe", parsed.get("name"));
+        assertEquals(3L, parsed.get("count"));
+        assertEquals(-150.0, parsed.get("price"));
+        assertEquals(Boolean.TRUE, parsed.get("active"));
+        assertTrue(parsed.containsKey("note"));
+        assertNull(parsed.get("note"));
+        List<Object> items = (List<Object>) parsed.get("items");
+        assertEquals("Kalem", items.get(0));
+        assertEquals(2L, items.get(1));
+        assertTrue(((List<Object>) items.get(2)).isEmpty());
+        assertTrue(((Map<String, Object>) items.get(3)).isEmpty());
+    }
+
+    @Test
+    void parsesEscapes() {
+        assertEquals("a\"b\\c/d\n\t\u015f", Json.parse("\"a\\\"b\\\\c\\/d\\n\\t\\u015f\""));
+    }
+
+    @Test
+    void rejectsInvalidText() {
+        for (String invalid : Arrays.asList("", "{", "{\"a\" 1}", "{a: 1}", "[1,]", "\"open", "tru", "1 2",
+                "\"\\u12\"", "--1")) {
+            assertThrows(IllegalArgumentException.class, () -> Json.parse(invalid), invalid);
+        }
+    }
+
+    @Test
+    void writesWhatItParses() throws IOException {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("name", "Ayşe \"A\"\n");
+        value.put("count", 3L);
+        value.put("items", Arrays.asList("Kalem", true, null));
+        value.put("date", LocalDate.of(2024, 5, 1));
+        value.put("control", "\u0001");
+
+        StringWriter out = new StringWriter();
+        Json.write(out, value);
+
+        assertEquals("{\"name\":\"Ayşe \\\"A\\\"\\n\",\"count\":3,\"items\":[\"Kalem\",true,null],"
+                + "\"date\":\"2024-05-01\",\"control\":\"\\u0001\"}", out.toString());
+        Map<String, Object> expected = new LinkedHashMap<>(value);
+        expected.put("date", "2024-05-01");
+        assertEquals(expected, Json.parse(out.toString()));
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.service;
+
+import org.example.model.Customer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class CustomerBatchLoaderTest {
+
+    private final List<List<String>> batches = new ArrayList<>();
+
+    private Map<String, Customer> multiGet(Collection<String> ids) {
+        synchronized (batches) {
+            batches.add(new ArrayList<>(ids));
+        }
+        Map<String, Customer> found = new LinkedHashMap<>();
+        for (String id : ids) {
+            if (!id.startsWith("missing")) {
+                found.put(id, new Customer(id, "Customer " + id, null, null, null, new ArrayList<>()));
+            }
+        }
+        return found;
+    }
+
+    @Test
+    void aSingleCallIsLoadedAtOnce() {
+        CustomerBatchLoader loader = new CustomerBatchLoader(this::multiGet);
+
+        assertEquals("Customer 1", loader.load("1").getName());
+        assertNull(loader.load("missing"));
+        assertEquals(List.of(List.of("1"), List.of("missing")), batches);
+    }
+
+    @Test
+    void callsArrivingDuringALoadShareTheNextBatch() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CustomerBatchLoader loader = new CustomerBatchLoader(ids -> {
+            if (ids.contains("0")) {
+                firstStarted.countDown();
+                try {
+                    releaseFirst.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return multiGet(ids);
+        });
+        ExecutorService callers = Executors.newCachedThreadPool();
+        Future<Customer> first = callers.submit(() -> loader.load("0"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        // The next leader finds a batch loading and waits for the window (100 ms in the tests, see pom.xml)
+        List<Future<Customer>> waiting = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            String id = String.valueOf(i);
+            waiting.add(callers.submit(() -> loader.load(id)));
+        }
+        for (int i = 0; i < waiting.size(); i++) {
+            assertEquals(String.valueOf(i + 1), waiting.get(i).get(5, TimeUnit.SECONDS).getId());
+        }
+        releaseFirst.countDown();
+        assertEquals("0", first.get(5, TimeUnit.SECONDS).getId());
+
+        Set<Set<String>> loaded = new HashSet<>();
+        batches.forEach(batch -> loaded.add(new HashSet<>(batch)));
+        assertEquals(Set.of(Set.of("0"), Set.of("1", "2", "3", "4")), loaded, "batches " + batches);
+        assertEquals(2, batches.size());
+        callers.shutdown();
+    }
+
+    @Test
+    void aFailedLoadFailsEveryCallOfTheBatch() {
+        CustomerBatchLoader loader = new CustomerBatchLoader(ids -> {
+            throw new IllegalStateException("down");
+        });
+
+        assertThrows(IllegalStateException.class, () -> loader.load("1"));
+        assertThrows(IllegalStateException.class, () -> loader.load("1")); // Not remembered
+    }
+}
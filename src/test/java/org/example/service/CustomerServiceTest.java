@@ -0,0 +1,147 @@
+package org.example.service;
+
+import org.example.model.Customer;
+import org.example.repository.ChangeSet;
+import org.example.repository.CustomerSort;
+import org.example.repository.InMemoryCustomerRepository;
+import org.example.repository.SortedPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class CustomerServiceTest {
+
+    private CustomerService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CustomerService(new InMemoryCustomerRepository());
+    }
+
+    private static Customer customer(String id, String name) {
+        return new Customer(id, name, name.toLowerCase() + "@example.com", "555", "Ankara", new ArrayList<>());
+    }
+
+    @Test
+    void createAssignsAnIdWhenMissing() {
+        Customer first = customer(null, "Ayşe");
+        Customer second = customer("", "Mehmet");
+        service.createCustomer(first);
+        service.createCustomer(second);
+
+        assertNotNull(first.getId());
+        assertNotNull(second.getId());
+        assertFalse(first.getId().equals(second.getId()));
+        assertEquals("Ayşe", service.getCustomer(first.getId()).getName());
+    }
+
+    @Test
+    void createKeepsAGivenId() {
+        service.createCustomer(customer("42", "Ayşe"));
+
+        assertEquals("Ayşe", service.getCustomer("42").getName());
+        assertNull(service.getCustomer("43"));
+    }
+
+    @Test
+    void getCustomerReturnsACopy() {
+        service.createCustomer(customer("1", "Ayşe"));
+
+        service.getCustomer("1").setName("Changed in the table");
+
+        assertEquals("Ayşe", service.getCustomer("1").getName());
+    }
+
+    @Test
+    void updateIsVisibleToTheNextRead() {
+        service.createCustomer(customer("1", "Ayşe"));
+        service.getCustomer("1"); // Cached load
+
+        service.updateCustomer(customer("1", "Ayşe Yılmaz"));
+
+        assertEquals("Ayşe Yılmaz", service.getCustomer("1").getName());
+    }
+
+    @Test
+    void updateAndDeleteOfAMissingCustomerFail() {
+        assertThrows(IllegalArgumentException.class, () -> service.updateCustomer(customer("7", "Nobody")));
+        assertThrows(IllegalArgumentException.class, () -> service.deleteCustomer("7"));
+    }
+
+    @Test
+    void deleteRemovesTheCustomer() {
+        service.createCustomer(customer("1", "Ayşe"));
+
+        service.deleteCustomer("1");
+
+        assertNull(service.getCustomer("1"));
+        assertTrue(service.getAllCustomers().isEmpty());
+    }
+
+    @Test
+    void batchWritesSkipMissingCustomers() {
+        service.createCustomer(customer("1", "Ayşe"));
+        service.createCustomer(customer("2", "Mehmet"));
+
+        assertEquals(2, service.updateCustomers(Arrays.asList(customer("1", "A"), customer("2", "M"),
+                customer("3", "Missing"))));
+        assertEquals("M", service.getCustomer("2").getName());
+        assertEquals(1, service.deleteCustomers(Arrays.asList("1", "3")));
+        assertEquals(1, service.getAllCustomers().size());
+    }
+
+    @Test
+    void pagesAreSortedOnTheServer() {
+        service.createCustomer(customer("1", "Cem"));
+        service.createCustomer(customer("2", "Ali"));
+        service.createCustomer(customer("10", "Banu"));
+
+        SortedPage<Customer> byName = service.getCustomerPage(CustomerSort.NAME, true, 0, 2);
+        assertEquals(Arrays.asList("Ali", "Banu"), names(byName.getItems()));
+        assertEquals(3, byName.getTotal());
+        assertEquals(2, byName.getPageCount());
+
+        // IDs are ordered as numbers, not as text
+        SortedPage<Customer> byIdDescending = service.getCustomerPage(CustomerSort.ID, false, 0, 3);
+        assertEquals(Arrays.asList("Banu", "Ali", "Cem"), names(byIdDescending.getItems()));
+
+        assertThrows(IllegalArgumentException.class, () -> service.getCustomerPage(CustomerSort.ID, true, -1, 10));
+    }
+
+    @Test
+    void changesSinceReturnsOnlyNewChanges() {
+        service.createCustomer(customer("1", "Ayşe"));
+        service.createCustomer(customer("2", "Mehmet"));
+        long version = service.changesSince(0).getVersion();
+
+        service.createCustomer(customer("3", "Cem"));
+        service.deleteCustomer("1");
+        ChangeSet<Customer> changes = service.changesSince(version);
+
+        assertFalse(changes.isFullReload());
+        assertEquals(Arrays.asList("Cem"), names(changes.getChanged()));
+        assertEquals(Arrays.asList("1"), changes.getDeletedIds());
+        assertTrue(changes.getVersion() > version);
+    }
+
+    private static List<String> names(List<Customer> customers) {
+        List<String> names = new ArrayList<>();
+        for (Customer customer : customers) {
+            names.add(customer.getName());
+        }
+        return names;
+    }
+}
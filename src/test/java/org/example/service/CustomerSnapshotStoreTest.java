@@ -0,0 +1,68 @@
+package org.example.service;
+
+import org.example.model.Customer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class CustomerSnapshotStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void customersRoundTripWithTheirPurchases() throws IOException {
+        CustomerSnapshotStore store = new CustomerSnapshotStore(directory.resolve("customers.snapshot"));
+        Customer first = new Customer("1", "Ayşe", "ayse@example.com", "555", "Kızılay, Ankara",
+                new ArrayList<>(Arrays.asList("Kalem", "Şişe")));
+        Customer second = new Customer("2", "Mehmet", null, "", "İzmir", new ArrayList<>());
+        store.save(Arrays.asList(first, second), 42);
+
+        CustomerSnapshotStore.Snapshot snapshot = store.load();
+        assertEquals(42, snapshot.getVersion());
+        List<Customer> customers = snapshot.getCustomers();
+        assertEquals(2, customers.size());
+        assertEquals("Kızılay, Ankara", customers.get(0).getAddress());
+        assertEquals(Arrays.asList("Kalem", "Şişe"), customers.get(0).getPurchases());
+        assertNull(customers.get(1).getEmail());
+        assertTrue(customers.get(1).getPurchases().isEmpty());
+    }
+
+    @Test
+    void aSmallerSnapshotReplacesALargerOne() throws IOException {
+        CustomerSnapshotStore store = new CustomerSnapshotStore(directory.resolve("customers.snapshot"));
+        store.save(Collections.nCopies(50, new Customer("1", "Ayşe", "ayse@example.com", "555", "Ankara",
+                new ArrayList<>(Arrays.asList("Kalem")))), 7);
+        store.save(Collections.singletonList(new Customer("2", "Cem", "", "", "", null)), 8);
+
+        CustomerSnapshotStore.Snapshot snapshot = store.load();
+        assertEquals(8, snapshot.getVersion());
+        assertEquals(1, snapshot.getCustomers().size());
+        assertEquals("Cem", snapshot.getCustomers().get(0).getName());
+    }
+
+    @Test
+    void missingOrDamagedFilesGiveAnEmptySnapshot() throws IOException {
+        Path file = directory.resolve("customers.snapshot");
+        assertEquals(0, new CustomerSnapshotStore(file).load().getVersion());
+
+        Files.write(file, new byte[]{1, 2, 3});
+        CustomerSnapshotStore.Snapshot snapshot = new CustomerSnapshotStore(file).load();
+        assertEquals(0, snapshot.getVersion());
+        assertTrue(snapshot.getCustomers().isEmpty());
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.service;
+
+import org.example.model.Order;
+import org.example.model.OrderStats;
+import org.example.model.OrderStatusRule;
+import org.example.repository.InMemoryOrderRepository;
+import org.example.repository.OrderPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class OrderServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 15);
+
+    private OrderService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new OrderService(new InMemoryOrderRepository());
+    }
+
+    private Order save(String customerId, LocalDate date, String status, String... items) {
+        Order order = new Order(service.generateOrderNumber(), customerId, "Kızılay, Ankara",
+                new ArrayList<>(Arrays.asList(items)), date, status);
+        service.saveOrder(order);
+        return order;
+    }
+
+    @Test
+    void savedOrdersAreFoundByNumberAndCustomer() {
+        Order order = save("1", TODAY, "Pending", "Şişe", "Kalem");
+        save("2", TODAY, "Pending", "Defter");
+
+        Order found = service.getOrder(order.getOrderNumber());
+        assertEquals(Arrays.asList("Şişe", "Kalem"), found.getItems());
+        assertEquals(2, found.getItemCount());
+        assertEquals(1, service.getOrdersByCustomerId("1").size());
+        assertNull(service.getOrder("999"));
+    }
+
+    @Test
+    void updateAndDeleteOfAMissingOrderFail() {
+        Order missing = new Order("999", "1", "Ankara", new ArrayList<>(), TODAY, "Pending");
+
+        assertThrows(IllegalArgumentException.class, () -> service.updateOrder(missing));
+        assertThrows(IllegalArgumentException.class, () -> service.deleteOrder("999"));
+    }
+
+    @Test
+    void updateIsVisibleToTheNextRead() {
+        Order order = save("1", TODAY, "Pending", "Kalem");
+        service.getOrdersByCustomerId("1");
+
+        order.setOrderStatus("Shipped");
+        service.updateOrder(order);
+
+        assertEquals("Shipped", service.getOrder(order.getOrderNumber()).getOrderStatus());
+        assertEquals("Shipped", service.getOrdersByCustomerId("1").get(0).getOrderStatus());
+    }
+
+    @Test
+    void statisticsFollowTheWrites() {
+        save("1", TODAY.minusDays(10), "Delivered", "Kalem", "Defter");
+        Order latest = save("1", TODAY, "Pending", "Kalem");
+
+        OrderStats stats = service.getOrderStats("1");
+        assertEquals(2, stats.getOrderCount());
+        assertEquals(3, stats.getItemTotal());
+        assertEquals(TODAY, stats.getLastOrderDate());
+        assertEquals(1L, stats.getCountsByStatus().get("Pending"));
+
+        service.deleteOrder(latest.getOrderNumber());
+        Map<String, OrderStats> byCustomer = service.getOrderStats(Arrays.asList("1", "2"));
+        assertEquals(1, byCustomer.get("1").getOrderCount());
+        assertEquals(0, byCustomer.getOrDefault("2", OrderStats.EMPTY).getOrderCount());
+    }
+
+    @Test
+    void searchIgnoresCaseAndAccents() {
+        Order bottle = save("1", TODAY, "Pending", "Cam Şişe");
+        save("2", TODAY, "Pending", "Cam Şişe");
+        save("1", TODAY, "Pending", "Kalem");
+
+        assertEquals(2, service.searchOrders("sise", null, 10).size());
+        List<Order> own = service.searchOrders("CAM şişe", "1", 10);
+        assertEquals(1, own.size());
+        assertEquals(bottle.getOrderNumber(), own.get(0).getOrderNumber());
+        assertTrue(service.searchOrders("defter", null, 10).isEmpty());
+    }
+
+    @Test
+    void statusTransitionChangesOnlyMatchingOrders() {
+        Order old = save("1", TODAY.minusDays(5), "Pending", "Kalem");
+        Order recent = save("1", TODAY, "Pending", "Kalem");
+        OrderStatusRule rule = OrderStatusRule.olderThan("Pending", "Canceled", 3, TODAY, null);
+
+        assertEquals(1, service.transitionOrders(rule, true));
+        assertEquals("Pending", service.getOrder(old.getOrderNumber()).getOrderStatus()); // Dry run
+
+        assertEquals(1, service.transitionOrders(rule, false));
+        assertEquals("Canceled", service.getOrder(old.getOrderNumber()).getOrderStatus());
+        assertEquals("Pending", service.getOrder(recent.getOrderNumber()).getOrderStatus());
+
+        assertThrows(IllegalArgumentException.class, () -> service.transitionOrders(
+                new OrderStatusRule("Pending", "Pending", null, null, null), false));
+    }
+
+    @Test
+    void archivedOrdersStayInTheHistoryOnly() {
+        Order old = save("1", TODAY.minusYears(2), "Delivered", "Kalem");
+        Order active = save("1", TODAY, "Delivered", "Defter");
+
+        assertEquals(1, service.archiveOrders(TODAY.minusYears(1), Collections.singletonList("Delivered")));
+
+        assertNull(service.getOrder(old.getOrderNumber()));
+        assertEquals(1, service.getOrdersByStatus("Delivered").size());
+        List<Order> history = service.getOrderPage("1", null, 10).getOrders();
+        assertEquals(Arrays.asList(active.getOrderNumber(), old.getOrderNumber()), numbers(history));
+        assertEquals(2, service.getOrderStats("1").getOrderCount());
+    }
+
+    @Test
+    void orderHistoryIsPagedNewestFirst() {
+        Order first = save("1", TODAY.minusDays(2), "Delivered", "Kalem");
+        Order second = save("1", TODAY.minusDays(1), "Delivered", "Kalem");
+        Order third = save("1", TODAY, "Pending", "Kalem");
+
+        OrderPage page = service.getOrderPage("1", null, 2);
+        assertEquals(Arrays.asList(third.getOrderNumber(), second.getOrderNumber()), numbers(page.getOrders()));
+
+        OrderPage next = service.getOrderPage("1", page.getNextCursor(), 2);
+        assertEquals(Collections.singletonList(first.getOrderNumber()), numbers(next.getOrders()));
+        assertNull(next.getNextCursor());
+    }
+
+    @Test
+    void topItemsAreRankedByQuantity() {
+        save("1", TODAY, "Pending", "Kalem", "Kalem", "Defter");
+        save("2", TODAY, "Pending", "Kalem", "Defter", "Silgi");
+
+        Map<String, Long> top = service.getTopItems(2);
+        assertEquals(Arrays.asList("Kalem", "Defter"), new ArrayList<>(top.keySet()));
+        assertEquals(3L, top.get("Kalem"));
+        assertEquals(2L, top.get("Defter"));
+    }
+
+    private static List<String> numbers(List<Order> orders) {
+        List<String> numbers = new ArrayList<>();
+        for (Order order : orders) {
+            numbers.add(order.getOrderNumber());
+        }
+        return numbers;
+    }
+
+    @Test
+    void aWriteThroughOneServiceEndsTheSharedLoadsOfAll() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        InMemoryOrderRepository repository = new InMemoryOrderRepository() {
+            @Override
+            public List<Order> findByCustomerId(String customerId) {
+                List<Order> orders = super.findByCustomerId(customerId);
+                if (first.getAndSet(false)) { // Only the first load is held, with the data read before the write
+                    loading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return orders;
+            }
+        };
+        OrderService reader = new OrderService(repository);
+        OrderService writer = new OrderService(repository); // E.g. another window's controller
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Order>> stale = threads.submit(() -> reader.getOrdersByCustomerId("1"));
+            loading.await();
+            writer.saveOrder(new Order(writer.generateOrderNumber(), "1", "Ankara",
+                    new ArrayList<>(Arrays.asList("Kalem")), TODAY, "Pending"));
+
+            Future<List<Order>> fresh = threads.submit(() -> reader.getOrdersByCustomerId("1"));
+            assertEquals(1, fresh.get(5, TimeUnit.SECONDS).size()); // Not joined to the held load
+            release.countDown();
+            assertTrue(stale.get(5, TimeUnit.SECONDS).isEmpty());
+            assertFalse(first.get());
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+}
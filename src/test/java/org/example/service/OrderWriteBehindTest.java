@@ -0,0 +1,124 @@
+package org.example.service;
+
+import org.example.model.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Journal recovery of {@link OrderWriteBehind}: what a restart writes again after a crash.
+ *
+ * @author isil
+ */
+class OrderWriteBehindTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<Order> written = new CopyOnWriteArrayList<>();
+
+    private final Function<List<Order>, boolean[]> writer = orders -> {
+        written.addAll(orders);
+        boolean[] result = new boolean[orders.size()];
+        Arrays.fill(result, true);
+        return result;
+    };
+
+    private static Order order(String orderNumber, String status, String... items) {
+        return new Order(orderNumber, "7", "Kızılay\tAnkara", new ArrayList<>(Arrays.asList(items)),
+                LocalDate.of(2024, 5, 1), status);
+    }
+
+    @Test
+    void unwrittenUpdatesAreWrittenAfterARestart() throws IOException {
+        Path journal = directory.resolve("orders.journal");
+        Files.write(journal, Arrays.asList(
+                "U\t1\t10\t7\tAnkara\t2024-05-01\tPending\tKalem",
+                "U\t2\t11\t7\tAnkara\t2024-05-01\tPending\tDefter",
+                "W\t1",                                                   // Order 10 was written
+                "U\t3\t11\t7\tAnkara\\tMerkez\t2024-05-01\tShipped\tDefter\\nSilgi", // Newer state of 11
+                "U\t4\t12\t7\tAnka"                                        // Torn by the crash
+        ), StandardCharsets.UTF_8);
+
+        OrderWriteBehind queue = new OrderWriteBehind(writer, order -> { }, journal);
+        assertTrue(queue.drain(5_000));
+
+        assertEquals(1, written.size());
+        Order recovered = written.get(0);
+        assertEquals("11", recovered.getOrderNumber());
+        assertEquals("Shipped", recovered.getOrderStatus());
+        assertEquals("Ankara\tMerkez", recovered.getAddress());
+        assertEquals(Arrays.asList("Defter", "Silgi"), recovered.getItems());
+        assertEquals(0, Files.size(journal)); // Compacted once everything is stored
+    }
+
+    @Test
+    void submittedUpdatesSurviveAFailedWriter() throws IOException {
+        Path journal = directory.resolve("orders.journal");
+        CountDownLatch never = new CountDownLatch(1);
+        OrderWriteBehind crashed = new OrderWriteBehind(orders -> {
+            try {
+                never.await(); // The process dies before Redis answers
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Not written");
+        }, order -> { }, journal);
+        crashed.submit(order("20", "Pending", "Kalem"));
+        crashed.submit(order("20", "Shipped", "Kalem", "Silgi"));
+        crashed.submit(order("21", "Pending", "Defter"));
+
+        OrderWriteBehind restarted = new OrderWriteBehind(writer, order -> { }, journal);
+        assertTrue(restarted.drain(5_000));
+
+        assertEquals(Arrays.asList("20", "21"), numbers(written));
+        assertEquals("Shipped", written.get(0).getOrderStatus());
+        assertEquals(Arrays.asList("Kalem", "Silgi"), written.get(0).getItems());
+        assertEquals("Kızılay\tAnkara", written.get(0).getAddress());
+    }
+
+    @Test
+    void droppedUpdatesAreReported() throws IOException, InterruptedException {
+        List<Order> dropped = new CopyOnWriteArrayList<>();
+        OrderWriteBehind queue = new OrderWriteBehind(orders -> {
+            boolean[] result = new boolean[orders.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = !orders.get(i).getOrderNumber().equals("31"); // 31 was deleted meanwhile
+            }
+            return result;
+        }, dropped::add, directory.resolve("orders.journal"));
+
+        queue.submit(order("30", "Pending", "Kalem"));
+        queue.submit(order("31", "Pending", "Kalem"));
+        assertTrue(queue.drain(5_000));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (dropped.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10); // Reported by the flusher right after the batch
+        }
+        assertEquals(Arrays.asList("31"), numbers(dropped));
+        assertEquals(0, Files.size(directory.resolve("orders.journal")));
+    }
+
+    private static List<String> numbers(List<Order> orders) {
+        List<String> numbers = new ArrayList<>();
+        for (Order order : orders) {
+            numbers.add(order.getOrderNumber());
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author isil
+ */
+class SingleFlightTest {
+
+    private final SingleFlight<String, StringBuilder> flight = new SingleFlight<>(StringBuilder::new);
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    /**
+     * Starts a load of "key" that blocks until {@code release} is counted down.
+     */
+    private Future<StringBuilder> blockedLoad(AtomicInteger loads, CountDownLatch started, CountDownLatch release,
+                                              String value) {
+        return callers.submit(() -> flight.run("key", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return new StringBuilder(value);
+        }));
+    }
+
+    @Test
+    void concurrentCallsShareOneLoadAndGetTheirOwnCopy() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<StringBuilder> leader = blockedLoad(loads, started, release, "loaded");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Future<StringBuilder>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(callers.submit(() -> flight.run("key", () -> {
+                loads.incrementAndGet();
+                return new StringBuilder("second load");
+            })));
+        }
+        Thread.sleep(50); // Let the followers join the load in flight
+        release.countDown();
+
+        StringBuilder first = leader.get(5, TimeUnit.SECONDS);
+        assertEquals("loaded", first.toString());
+        for (Future<StringBuilder> follower : followers) {
+            StringBuilder result = follower.get(5, TimeUnit.SECONDS);
+            assertEquals("loaded", result.toString());
+            assertNotSame(first, result);
+        }
+        assertEquals(1, loads.get());
+        callers.shutdown();
+    }
+
+    @Test
+    void forgottenLoadIsNotJoined() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<StringBuilder> stale = blockedLoad(loads, started, release, "before the write");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        flight.forget("key"); // A writer changed the key
+        assertEquals("after the write", flight.run("key", () -> {
+            loads.incrementAndGet();
+            return new StringBuilder("after the write");
+        }).toString());
+        release.countDown();
+
+        assertEquals("before the write", stale.get(5, TimeUnit.SECONDS).toString());
+        assertEquals(2, loads.get());
+        callers.shutdown();
+    }
+
+    @Test
+    void failuresReachTheCallerAndAreNotCached() {
+        assertThrows(IllegalStateException.class, () -> flight.run("key", () -> {
+            throw new IllegalStateException("down");
+        }));
+        assertNull(flight.run("key", () -> null));
+        assertEquals("ok", flight.run("key", () -> new StringBuilder("ok")).toString());
+        callers.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}